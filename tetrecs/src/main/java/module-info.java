@@ -13,4 +13,6 @@ module uk.ac.soton.comp1206 {
     exports uk.ac.soton.comp1206.event;
     exports uk.ac.soton.comp1206.component;
     exports uk.ac.soton.comp1206.game;
+    exports uk.ac.soton.comp1206.replay;
+    exports uk.ac.soton.comp1206.server;
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package uk.ac.soton.comp1206;
 
+import java.io.IOException;
 import javafx.application.Application;
 import javafx.stage.Stage;
 
@@ -7,6 +8,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import uk.ac.soton.comp1206.scene.SettingsScene;
+import uk.ac.soton.comp1206.server.GameServer;
 import uk.ac.soton.comp1206.ui.GameWindow;
 
 /**
@@ -28,6 +30,11 @@ public class App extends Application {
     private static final Logger logger = LogManager.getLogger(App.class);
     private Stage stage;
 
+    /**
+     * The game server running inside the game, or null if playing on the TetrECS server
+     */
+    private GameServer localServer;
+
     /**
      * Start the game
      * @param args commandline arguments
@@ -46,6 +53,11 @@ public class App extends Application {
         instance = this;
         this.stage = stage;
 
+        //Host a game server inside the game, for playing on a local network or without the internet
+        if (Boolean.getBoolean("tetrecs.local")) {
+            startLocalServer();
+        }
+
         //Open game window
         openGame();
     }
@@ -56,9 +68,12 @@ public class App extends Application {
     public void openGame() {
         logger.info("Opening game window");
 
-        var temp = new SettingsScene(new GameWindow(stage,width,height));
+        var settingsWindow = new GameWindow(stage,width,height);
+        var temp = new SettingsScene(settingsWindow);
         width = temp.getWidth();
         height = temp.getHeight();
+        //Only used to read the settings
+        settingsWindow.getCommunicator().close();
         //Change the width and height in this class to change the base rendering resolution for all game parts
         var gameWindow = new GameWindow(stage,width,height);
 
@@ -68,11 +83,32 @@ public class App extends Application {
         stage.show();
     }
 
+    /**
+     * Start the game server inside the game, and connect to it unless another server was asked for
+     */
+    private void startLocalServer() {
+        var port = Integer.getInteger("tetrecs.port", GameServer.DEFAULT_PORT);
+        localServer = new GameServer(port, 2);
+        try {
+            localServer.start();
+        } catch (IOException e) {
+            logger.error("Unable to start local server on port " + port + ": " + e.getMessage());
+            localServer = null;
+            return;
+        }
+        if (System.getProperty("tetrecs.server") == null) {
+            System.setProperty("tetrecs.server", "ws://localhost:" + localServer.getPort());
+        }
+    }
+
     /**
      * Shutdown the game
      */
     public void shutdown() {
         logger.info("Shutting down");
+        if (localServer != null) {
+            localServer.stop();
+        }
         System.exit(0);
     }
 
@@ -3,9 +3,8 @@ package uk.ac.soton.comp1206.Utility;
 import java.io.File;
 import javafx.animation.ParallelTransition;
 import javafx.beans.property.SimpleBooleanProperty;
-import javafx.scene.media.Media;
-import javafx.scene.media.MediaPlayer;
 import javafx.scene.media.MediaPlayer.Status;
+import javafx.util.Duration;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -21,21 +20,6 @@ public class Multimedia {
    */
   private static SimpleBooleanProperty audioEnabled = new SimpleBooleanProperty(true);
 
-  /**
-   * Audio player for playing sound effects
-   */
-  private static MediaPlayer effectPlayer;
-
-  /**
-   * Music player for playing background music
-   */
-  private static MediaPlayer musicLoopPlayer;
-
-  /**
-   * Music player for non-looped music
-   */
-  private static MediaPlayer musicPlayer;
-
   /**
    * The sfx volume
    */
@@ -50,20 +34,14 @@ public class Multimedia {
 
 
   /**
-   * Plays an audiofile without a loop
+   * Plays a sound effect from the sound bank, without a loop
    * @param file the audio file
    */
   public static void playAudioEffect(String file){
     if(!audioEnabled.get()) return;
 
-    String audioFile = Multimedia.class.getResource("/" + file).toExternalForm();
-    logger.info("Playing audio: " + audioFile);
-
     try {
-      Media media = new Media(audioFile);
-      effectPlayer = new MediaPlayer(media);
-      effectPlayer.setVolume(sfxVolume);
-      effectPlayer.play();
+      SoundBank.play(file, sfxVolume);
     } catch (Exception e){
       audioEnabled.set(false);
       e.printStackTrace();
@@ -77,28 +55,24 @@ public class Multimedia {
    */
   public static void playLoopedMusic(String file){
     if(!audioEnabled.get()) return;
-    String musicFile = Multimedia.class.getResource("/" + file).toExternalForm();
-    logger.info("Playing loop: " + musicFile);
-    try {
-      Media media = new Media(musicFile);
-      musicLoopPlayer = new MediaPlayer(media);
-      musicLoopPlayer.setVolume(musicVolume);
-      musicLoopPlayer.play();
-      musicLoopPlayer.setOnEndOfMedia(() -> playLoopedMusic(file));
-    } catch (Exception e){
-      audioEnabled.set(false);
-      e.printStackTrace();
-      logger.error("Unable to play music file, disabling audio");
-    }
+    MusicEngine.loop(file);
+  }
+
+  /**
+   * Plays an audiofile once, then loops another after it ends
+   * @param intro the music file to play first
+   * @param loop the music file to loop after it
+   */
+  public static void playMusicThenLoop(String intro, String loop){
+    if(!audioEnabled.get()) return;
+    MusicEngine.playThenLoop(intro, loop);
   }
 
   /**
    * Stops the looped music from playing
    */
   public static void stopLM(){
-    if(musicLoopPlayer != null){
-      musicLoopPlayer.stop();
-    }
+    MusicEngine.stop();
   }
 
   /**
@@ -107,29 +81,14 @@ public class Multimedia {
    */
   public static void playMusic(String file){
     if(!audioEnabled.get()) return;
-
-    String musicFile = Multimedia.class.getResource("/" + file).toExternalForm();
-    logger.info("Playing music: " + musicFile);
-
-    try {
-      Media media = new Media(musicFile);
-      musicPlayer = new MediaPlayer(media);
-      musicPlayer.setVolume(musicVolume);
-      musicPlayer.play();
-    } catch (Exception e){
-      audioEnabled.set(false);
-      e.printStackTrace();
-      logger.error("Unable to play audio file, disabling audio");
-    }
+    MusicEngine.play(file);
   }
 
   /**
    * Stops the music
    */
   public static void stopM(){
-    if(musicPlayer != null){
-      musicPlayer.stop();
-    }
+    MusicEngine.stop();
   }
 
   /**
@@ -138,9 +97,6 @@ public class Multimedia {
    */
   public static void changeSFX(double value){
     sfxVolume = value;
-    if(effectPlayer != null) {
-      effectPlayer.setVolume(sfxVolume);
-    }
   }
 
   /**
@@ -149,11 +105,14 @@ public class Multimedia {
    */
   public static void changeMusic(double value){
     musicVolume = value;
-    if(musicPlayer != null){
-      musicPlayer.setVolume(musicVolume);
-    }
-    if(musicLoopPlayer != null){
-      musicLoopPlayer.setVolume(musicVolume);
-    }
+    MusicEngine.setVolume(musicVolume);
+  }
+
+  /**
+   * Set how long one music track fades into the next
+   * @param seconds the length of the crossfade, zero to cut straight over
+   */
+  public static void changeCrossfade(double seconds){
+    MusicEngine.setCrossfade(Duration.seconds(seconds));
   }
 }
@@ -0,0 +1,270 @@
+package uk.ac.soton.comp1206.Utility;
+
+import java.util.HashMap;
+import javafx.animation.KeyFrame;
+import javafx.animation.KeyValue;
+import javafx.animation.Timeline;
+import javafx.scene.media.Media;
+import javafx.scene.media.MediaPlayer;
+import javafx.util.Duration;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The MusicEngine plays the background music. Each track has one MediaPlayer, created the first
+ * time it is played and reused after that.
+ * <p>
+ * Looping uses the cycle count of the player, so a loop restarts without a gap. Moving from one
+ * track to the next is driven by the events of the media: the next track starts when the first
+ * ends, or at a marker placed before its end when crossfading. Only one track plays at a time,
+ * apart from during a crossfade. A missing or unplayable track is skipped. Must only be used on the
+ * FX thread.
+ */
+public class MusicEngine {
+
+  /**
+   * Logger for outputting info
+   */
+  private static final Logger logger = LogManager.getLogger(MusicEngine.class);
+
+  /**
+   * The name of the marker which starts the next track
+   */
+  private static final String NEXT_MARKER = "next";
+
+  /**
+   * The player of each track, by file
+   */
+  private static final HashMap<String, MediaPlayer> players = new HashMap<>();
+
+  /**
+   * The track playing, or null
+   */
+  private static MediaPlayer current;
+
+  /**
+   * The track fading out during a crossfade, or null
+   */
+  private static MediaPlayer fadingOut;
+
+  /**
+   * The crossfade running, or null
+   */
+  private static Timeline fade;
+
+  /**
+   * The music volume
+   */
+  private static double volume = 1;
+
+  /**
+   * How long one track fades into the next, zero to cut straight over
+   */
+  private static Duration crossfade = Duration.ZERO;
+
+  /**
+   * Play a track once
+   *
+   * @param file the music file
+   */
+  public static void play(String file) {
+    start(file, false, null);
+  }
+
+  /**
+   * Play a track on a loop, leaving it playing if it already is
+   *
+   * @param file the music file
+   */
+  public static void loop(String file) {
+    var player = players.get(file);
+    if (player != null && player == current && player.getCycleCount() == MediaPlayer.INDEFINITE
+        && player.getStatus() == MediaPlayer.Status.PLAYING) {
+      return;
+    }
+    start(file, true, null);
+  }
+
+  /**
+   * Play a track once, then loop another when it ends
+   *
+   * @param intro the track to play first
+   * @param next  the track to loop after it
+   */
+  public static void playThenLoop(String intro, String next) {
+    start(intro, false, next);
+  }
+
+  /**
+   * Get the player of a track, creating it if needed
+   *
+   * @param file the music file
+   * @return the player, or null if the track cannot be played
+   */
+  private static MediaPlayer player(String file) {
+    var player = players.get(file);
+    if (player != null) {
+      return player;
+    }
+    var resource = MusicEngine.class.getResource("/" + file);
+    if (resource == null) {
+      logger.error("Missing music file {}, skipping it", file);
+      return null;
+    }
+    try {
+      player = new MediaPlayer(new Media(resource.toExternalForm()));
+    } catch (Exception e) {
+      logger.error("Unable to load music file {}: {}", file, e.getMessage());
+      return null;
+    }
+    var created = player;
+    player.setOnError(() -> {
+      logger.error("Unable to play music file {}: {}", file, created.getError().getMessage());
+      players.remove(file);
+    });
+    players.put(file, player);
+    return player;
+  }
+
+  /**
+   * Start a track, moving over from the one playing
+   *
+   * @param file the music file
+   * @param loop whether to loop it
+   * @param next the track to loop after it ends, or null
+   */
+  private static void start(String file, boolean loop, String next) {
+    logger.info("Playing music: {}", file);
+    var player = player(file);
+    if (player == null) {
+      //Skip straight to the next track, if there is one
+      if (next != null) {
+        start(next, true, null);
+      } else {
+        stop();
+      }
+      return;
+    }
+
+    player.setCycleCount(loop ? MediaPlayer.INDEFINITE : 1);
+    player.setOnEndOfMedia(null);
+    player.setOnMarker(null);
+    player.getMedia().getMarkers().remove(NEXT_MARKER);
+    if (next != null) {
+      if (crossfade.greaterThan(Duration.ZERO)) {
+        //Start the next track early, so the two overlap while fading
+        player.setOnMarker((event) -> {
+          if (event.getMarker().getKey().equals(NEXT_MARKER) && player == current) {
+            start(next, true, null);
+          }
+        });
+        if (player.getStatus() == MediaPlayer.Status.UNKNOWN) {
+          player.setOnReady(() -> markNext(player));
+        } else {
+          markNext(player);
+        }
+      } else {
+        player.setOnEndOfMedia(() -> {
+          if (player == current) {
+            start(next, true, null);
+          }
+        });
+      }
+    }
+
+    var previous = current;
+    current = player;
+    transition(previous, player);
+  }
+
+  /**
+   * Place the marker which starts the next track, one crossfade before the end of the track
+   *
+   * @param player the player of the track
+   */
+  private static void markNext(MediaPlayer player) {
+    var length = player.getMedia().getDuration();
+    var at = length.subtract(crossfade);
+    player.getMedia().getMarkers().put(NEXT_MARKER, at.lessThan(Duration.ZERO) ? Duration.ZERO : at);
+  }
+
+  /**
+   * Move from one track to another, crossfading if a crossfade is set
+   *
+   * @param from the track playing, or null
+   * @param to   the track to play
+   */
+  private static void transition(MediaPlayer from, MediaPlayer to) {
+    finishFade();
+    if (from == null || from == to || crossfade.lessThanOrEqualTo(Duration.ZERO)) {
+      if (from != null) {
+        from.stop();
+      }
+      to.stop();
+      to.setVolume(volume);
+      to.play();
+      return;
+    }
+
+    to.stop();
+    to.setVolume(0);
+    to.play();
+    fadingOut = from;
+    fade = new Timeline(
+        new KeyFrame(Duration.ZERO, new KeyValue(from.volumeProperty(), from.getVolume()),
+            new KeyValue(to.volumeProperty(), 0)),
+        new KeyFrame(crossfade, new KeyValue(from.volumeProperty(), 0),
+            new KeyValue(to.volumeProperty(), volume)));
+    fade.setOnFinished((event) -> finishFade());
+    fade.play();
+  }
+
+  /**
+   * End the crossfade running, stopping the track fading out
+   */
+  private static void finishFade() {
+    if (fade != null) {
+      fade.stop();
+      fade = null;
+    }
+    if (fadingOut != null) {
+      fadingOut.stop();
+      fadingOut = null;
+      if (current != null) {
+        current.setVolume(volume);
+      }
+    }
+  }
+
+  /**
+   * Stop the music
+   */
+  public static void stop() {
+    finishFade();
+    if (current != null) {
+      current.stop();
+      current = null;
+    }
+  }
+
+  /**
+   * Set the music volume
+   *
+   * @param value the volume, from 0 to 1
+   */
+  public static void setVolume(double value) {
+    volume = value;
+    if (current != null && fade == null) {
+      current.setVolume(volume);
+    }
+  }
+
+  /**
+   * Set how long one track fades into the next
+   *
+   * @param length the length of the crossfade, zero to cut straight over
+   */
+  public static void setCrossfade(Duration length) {
+    crossfade = length;
+  }
+}
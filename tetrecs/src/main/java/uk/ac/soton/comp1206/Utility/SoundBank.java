@@ -0,0 +1,230 @@
+package uk.ac.soton.comp1206.Utility;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import javafx.scene.media.AudioClip;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The SoundBank holds every sound effect decoded into memory as an AudioClip, so an effect starts
+ * playing straight away without building a new media player each time.
+ * <p>
+ * A clip can play as several voices at once. Each effect has a cooldown, so the same sound fired
+ * twice in quick succession only plays once, and there is a hard cap on the number of voices
+ * playing together. Voices are tracked by the length of their sound, read from the WAV header.
+ */
+public class SoundBank {
+
+  /**
+   * Logger for outputting info
+   */
+  private static final Logger logger = LogManager.getLogger(SoundBank.class);
+
+  /**
+   * The effects loaded when the bank is preloaded
+   */
+  private static final String[] EFFECTS = {
+      "sounds/place.wav", "sounds/rotate.wav", "sounds/clear.wav", "sounds/fail.wav",
+      "sounds/level.wav", "sounds/lifelose.wav", "sounds/lifegain.wav", "sounds/message.wav",
+      "sounds/pling.wav", "sounds/menu_choice.wav", "sounds/transition.wav", "sounds/explode.wav"
+  };
+
+  /**
+   * The length assumed for a sound whose length cannot be read, in nanoseconds
+   */
+  private static final long DEFAULT_LENGTH = 1_000_000_000L;
+
+  /**
+   * The decoded clips, by file
+   */
+  private static final ConcurrentHashMap<String, Sound> sounds = new ConcurrentHashMap<>();
+
+  /**
+   * The time each voice finishes playing, in nanoseconds
+   */
+  private static long[] voices = new long[8];
+
+  /**
+   * The shortest time between two plays of the same effect, in milliseconds
+   */
+  private static long cooldown = 40;
+
+  /**
+   * A decoded effect and when it was last played
+   */
+  private static class Sound {
+
+    /**
+     * The decoded clip
+     */
+    final AudioClip clip;
+
+    /**
+     * How long the clip plays for, in nanoseconds
+     */
+    final long length;
+
+    /**
+     * When the clip was last played, in nanoseconds
+     */
+    long lastPlayed = Long.MIN_VALUE / 2;
+
+    /**
+     * Create a new sound
+     *
+     * @param clip   the clip
+     * @param length how long it plays for
+     */
+    Sound(AudioClip clip, long length) {
+      this.clip = clip;
+      this.length = length;
+    }
+  }
+
+  /**
+   * Decode every effect in a background thread, so the first play of each is not delayed
+   */
+  public static void preload() {
+    var thread = new Thread(() -> {
+      for (var file : EFFECTS) {
+        load(file);
+      }
+      logger.info("Preloaded {} sound effects", sounds.size());
+    }, "SoundBank");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Get the decoded clip of an effect, decoding it if it has not been already
+   *
+   * @param file the effect file
+   * @return the sound
+   */
+  private static Sound load(String file) {
+    return sounds.computeIfAbsent(file, (key) -> {
+      var resource = SoundBank.class.getResource("/" + file);
+      if (resource == null) {
+        throw new IllegalArgumentException("No such sound: " + file);
+      }
+      var clip = new AudioClip(resource.toExternalForm());
+      var length = DEFAULT_LENGTH;
+      if (file.endsWith(".wav")) {
+        try (var stream = SoundBank.class.getResourceAsStream("/" + file)) {
+          length = wavLength(stream);
+        } catch (IOException e) {
+          logger.error("Unable to read the length of {}", file);
+        }
+      }
+      return new Sound(clip, length);
+    });
+  }
+
+  /**
+   * Play an effect at a volume, unless it is cooling down or every voice is in use
+   *
+   * @param file   the effect file
+   * @param volume the volume, from 0 to 1
+   * @return true if the effect was played
+   */
+  public static synchronized boolean play(String file, double volume) {
+    var sound = load(file);
+    var now = System.nanoTime();
+    if (now - sound.lastPlayed < cooldown * 1_000_000L) {
+      return false;
+    }
+
+    //Find a voice which has finished
+    var voice = -1;
+    for (var i = 0; i < voices.length; i++) {
+      if (voices[i] - now <= 0) {
+        voice = i;
+        break;
+      }
+    }
+    if (voice == -1) {
+      logger.info("Dropped {}, all {} voices are playing", file, voices.length);
+      return false;
+    }
+
+    voices[voice] = now + sound.length;
+    sound.lastPlayed = now;
+    sound.clip.play(volume);
+    return true;
+  }
+
+  /**
+   * Stop every voice
+   */
+  public static synchronized void stopAll() {
+    for (var sound : sounds.values()) {
+      sound.clip.stop();
+    }
+    voices = new long[voices.length];
+  }
+
+  /**
+   * Set the most voices which may play at once
+   *
+   * @param maxVoices the number of voices, at least 1
+   */
+  public static synchronized void setMaxVoices(int maxVoices) {
+    if (maxVoices < 1) {
+      throw new IllegalArgumentException("There must be at least one voice");
+    }
+    voices = new long[maxVoices];
+  }
+
+  /**
+   * Set the shortest time between two plays of the same effect
+   *
+   * @param millis the cooldown in milliseconds
+   */
+  public static synchronized void setCooldown(long millis) {
+    cooldown = millis;
+  }
+
+  /**
+   * Read the length of a WAV file from its header
+   *
+   * @param stream the file
+   * @return the length in nanoseconds
+   * @throws IOException if the file could not be read or is not a WAV file
+   */
+  private static long wavLength(InputStream stream) throws IOException {
+    var in = new DataInputStream(stream);
+    var header = new byte[12];
+    in.readFully(header);
+    if (header[0] != 'R' || header[1] != 'I' || header[2] != 'F' || header[3] != 'F'
+        || header[8] != 'W' || header[9] != 'A' || header[10] != 'V' || header[11] != 'E') {
+      throw new IOException("Not a WAV file");
+    }
+
+    //Walk the chunks until the format and the data have both been found
+    long byteRate = 0;
+    var id = new byte[4];
+    while (true) {
+      in.readFully(id);
+      var size = Integer.reverseBytes(in.readInt()) & 0xffffffffL;
+      var name = new String(id, StandardCharsets.US_ASCII);
+      if (name.equals("fmt ")) {
+        //Format, channels and sample rate come before the byte rate
+        in.skipNBytes(8);
+        byteRate = Integer.reverseBytes(in.readInt()) & 0xffffffffL;
+        in.skipNBytes(size - 12 + (size & 1));
+      } else if (name.equals("data")) {
+        if (byteRate == 0) {
+          throw new IOException("Data before format");
+        }
+        return size * 1_000_000_000L / byteRate;
+      } else {
+        //Chunks are padded to an even length
+        in.skipNBytes(size + (size & 1));
+      }
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package uk.ac.soton.comp1206.component;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+
+/**
+ * The state of a single block on a GameBoard: its value, whether it is hovered and how far through
+ * a fade out it is.
+ * <p>
+ * A BlockCell is a plain object rather than a node, so a board drawn into one Canvas holds no node
+ * for each block. Painting asks the board to draw the cell, either into its Canvas on the next
+ * frame or into the GameBlock node shown for it.
+ */
+public class BlockCell {
+
+  /**
+   * How long a fade out lasts, in nanoseconds
+   */
+  private static final long FADE_TIME = 330_000_000L;
+
+  /**
+   * The board this cell belongs to
+   */
+  private final GameBoard gameBoard;
+
+  /**
+   * The column of this cell
+   */
+  private final int x;
+
+  /**
+   * The row of this cell
+   */
+  private final int y;
+
+  /**
+   * The width of the cell
+   */
+  private final double width;
+
+  /**
+   * The height of the cell
+   */
+  private final double height;
+
+  /**
+   * The value of this cell (0 = empty, otherwise specifies the colour to render as)
+   */
+  private int value;
+
+  /**
+   * Whether the cell is highlighted, by the mouse, the keyboard or a hint
+   */
+  private boolean hover;
+
+  /**
+   * The pre-rendered styles this cell is painted from
+   */
+  private BlockSprites sprites;
+
+  /**
+   * The fade out running on this cell, or null
+   */
+  private Fade fade;
+
+  /**
+   * The opacity of the white covering the cell while it fades out
+   */
+  private double fadeOpacity;
+
+  /**
+   * Create a new cell
+   *
+   * @param gameBoard the board this cell belongs to
+   * @param x         the column of the cell
+   * @param y         the row of the cell
+   * @param width     the width of the cell
+   * @param height    the height of the cell
+   */
+  BlockCell(GameBoard gameBoard, int x, int y, double width, double height) {
+    this.gameBoard = gameBoard;
+    this.x = x;
+    this.y = y;
+    this.width = width;
+    this.height = height;
+  }
+
+  /**
+   * Ask the board to draw this cell again
+   */
+  public void paint() {
+    gameBoard.paintCell(this);
+  }
+
+  /**
+   * Paint this cell into a graphics context, copying its style from the block sprites
+   *
+   * @param gc the graphics context
+   * @param px the x position to paint at
+   * @param py the y position to paint at
+   */
+  void paintTo(GraphicsContext gc, double px, double py) {
+    if (sprites == null || !sprites.isValid()) {
+      sprites = BlockSprites.get(width, height);
+    }
+    int style;
+    if (hover && value == 0) {
+      //Paint when hovered over
+      style = BlockSprites.HOVER;
+    } else if (value == 0) {
+      //If the block is empty, paint as empty
+      style = BlockSprites.EMPTY;
+    } else if (gameBoard instanceof PieceBoard && ((PieceBoard) gameBoard).getName()
+        .equalsIgnoreCase("Current") && x == 1 && y == 1) {
+      style = BlockSprites.colourStyle(value, true);
+    } else {
+      //If the block is not empty, paint with the colour represented by the value
+      style = BlockSprites.colourStyle(value, false);
+    }
+    gc.clearRect(px, py, width, height);
+    sprites.draw(gc, style, px, py, width, height);
+    if (fadeOpacity > 0) {
+      //Fading out, cover with white at the current opacity
+      gc.setFill(Color.color(1, 1, 1, fadeOpacity));
+      gc.fillRect(px, py, width, height);
+    }
+  }
+
+  /**
+   * Get the column of this cell
+   *
+   * @return column number
+   */
+  public int getX() {
+    return x;
+  }
+
+  /**
+   * Get the row of this cell
+   *
+   * @return row number
+   */
+  public int getY() {
+    return y;
+  }
+
+  /**
+   * Get the current value held by this cell, representing it's colour
+   *
+   * @return value
+   */
+  public int getValue() {
+    return value;
+  }
+
+  /**
+   * Set the value of this cell from the grid, repainting it if it changed
+   *
+   * @param value the new value
+   */
+  void setValue(int value) {
+    if (this.value != value) {
+      this.value = value;
+      paint();
+    }
+  }
+
+  /**
+   * Get whether this cell is highlighted
+   *
+   * @return true if hovered
+   */
+  public boolean isHover() {
+    return hover;
+  }
+
+  /**
+   * Sets hover status
+   * @param bool status true or false
+   */
+  public void hover(boolean bool) {
+    this.hover = bool;
+    paint();
+  }
+
+  /**
+   * Fades the cell out by covering it in white, which clears over FADE_TIME
+   */
+  private class Fade implements BoardAnimator.Effect {
+
+    /**
+     * The time of the first frame of the fade, or -1 before it has started
+     */
+    private long start = -1;
+
+    @Override
+    public boolean advance(long now) {
+      if (fade != this) {
+        //Replaced by a newer fade
+        return false;
+      }
+      if (start < 0) {
+        start = now;
+      }
+      //Decreases opacity of the block
+      fadeOpacity = 1 - (double) (now - start) / FADE_TIME;
+      if (fadeOpacity <= 0) {
+        fadeOpacity = 0;
+        fade = null;
+      }
+      paint();
+      return fade == this;
+    }
+  }
+
+  /**
+   * Starts the fade out animation, on the animator of the board
+   */
+  public void fade() {
+    fade = new Fade();
+    fadeOpacity = 1;
+    gameBoard.getAnimator().add(fade);
+  }
+
+  @Override
+  public String toString() {
+    return "BlockCell(" + x + "," + y + "=" + value + ")";
+  }
+}
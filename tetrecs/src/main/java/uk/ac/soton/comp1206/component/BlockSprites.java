@@ -0,0 +1,265 @@
+package uk.ac.soton.comp1206.component;
+
+import java.util.HashMap;
+import java.util.Map;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.effect.Glow;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * BlockSprites holds every style a block can be drawn in, pre-rendered for one block size into a
+ * single image. Painting a block is then one image copy, rather than redrawing its fill, glow and
+ * bevel each time.
+ * <p>
+ * The styles are empty, hovered, and each colour with and without the centre dot. Sprites are
+ * rendered at the scale the GamePane is drawn at, so they stay sharp when the window is resized.
+ * The cache is cleared when the scale or the resolution changes, the GamePane only changes the
+ * scale once a resize has settled. Must only be used on the FX thread.
+ */
+public class BlockSprites {
+
+  private static final Logger logger = LogManager.getLogger(BlockSprites.class);
+
+  /**
+   * The style of an empty block
+   */
+  public static final int EMPTY = 0;
+
+  /**
+   * The style of an empty block under the mouse
+   */
+  public static final int HOVER = 1;
+
+  /**
+   * The number of colours a block can be, not counting empty
+   */
+  private static final int COLOURS = GameBlock.COLOURS.length - 1;
+
+  /**
+   * The number of styles in each image
+   */
+  private static final int STYLES = 2 + COLOURS * 2;
+
+  /**
+   * The number of styles on each row of the image
+   */
+  private static final int PER_ROW = 8;
+
+  /**
+   * The pixels left between sprites, so the glow of one never reaches the next
+   */
+  private static final int GAP = 2;
+
+  /**
+   * The sprites for each block size
+   */
+  private static final Map<String, BlockSprites> cache = new HashMap<>();
+
+  /**
+   * The scale the GamePane is drawn at
+   */
+  private static double scale = 1;
+
+  /**
+   * Incremented whenever the cache is cleared, so blocks know to fetch new sprites
+   */
+  private static int generation;
+
+  /**
+   * The image holding every style
+   */
+  private final WritableImage image;
+
+  /**
+   * The width of a sprite in pixels
+   */
+  private final int pixelWidth;
+
+  /**
+   * The height of a sprite in pixels
+   */
+  private final int pixelHeight;
+
+  /**
+   * The generation of the cache these sprites were created in
+   */
+  private final int created = generation;
+
+  /**
+   * Render every style for a block size
+   *
+   * @param width  the width of a block
+   * @param height the height of a block
+   */
+  private BlockSprites(double width, double height) {
+    //A minimised window has a scale of 0, but a sprite needs at least a pixel
+    pixelWidth = Math.max(1, (int) Math.ceil(width * scale));
+    pixelHeight = Math.max(1, (int) Math.ceil(height * scale));
+
+    var rows = (STYLES + PER_ROW - 1) / PER_ROW;
+    var canvas = new Canvas(PER_ROW * (pixelWidth + GAP), rows * (pixelHeight + GAP));
+    var gc = canvas.getGraphicsContext2D();
+    //Draw in block units, each sprite starting on a whole pixel
+    var xScale = pixelWidth / width;
+    var yScale = pixelHeight / height;
+    gc.scale(xScale, yScale);
+    for (var style = 0; style < STYLES; style++) {
+      var px = (style % PER_ROW) * (pixelWidth + GAP) / xScale;
+      var py = (style / PER_ROW) * (pixelHeight + GAP) / yScale;
+      if (style == EMPTY) {
+        paintEmpty(gc, px, py, width, height);
+      } else if (style == HOVER) {
+        paintHover(gc, px, py, width, height);
+      } else {
+        var colour = (style - 2) % COLOURS + 1;
+        paintColor(gc, px, py, width, height, GameBlock.COLOURS[colour], style - 2 >= COLOURS);
+      }
+    }
+
+    var parameters = new SnapshotParameters();
+    parameters.setFill(Color.TRANSPARENT);
+    image = canvas.snapshot(parameters, null);
+    logger.info("Rendered block sprites at {}x{} pixels", pixelWidth, pixelHeight);
+  }
+
+  /**
+   * Get the sprites for a block size, rendering them if needed
+   *
+   * @param width  the width of a block
+   * @param height the height of a block
+   * @return the sprites
+   */
+  public static BlockSprites get(double width, double height) {
+    return cache.computeIfAbsent(width + "x" + height, (key) -> new BlockSprites(width, height));
+  }
+
+  /**
+   * Get the style of a coloured block
+   *
+   * @param value  the value of the block, from 1 to 15
+   * @param center whether the block shows the centre dot
+   * @return the style
+   */
+  public static int colourStyle(int value, boolean center) {
+    return 1 + value + (center ? COLOURS : 0);
+  }
+
+  /**
+   * Check whether these sprites are still current, as the cache may have been cleared since they
+   * were rendered
+   *
+   * @return true if they can still be drawn
+   */
+  public boolean isValid() {
+    return created == generation;
+  }
+
+  /**
+   * Draw a style into a graphics context, stretched to the block size
+   *
+   * @param gc     the graphics context
+   * @param style  the style to draw
+   * @param px     the x position to draw at
+   * @param py     the y position to draw at
+   * @param width  the width of the block
+   * @param height the height of the block
+   */
+  public void draw(GraphicsContext gc, int style, double px, double py, double width,
+      double height) {
+    var sx = (style % PER_ROW) * (pixelWidth + GAP);
+    var sy = (style / PER_ROW) * (pixelHeight + GAP);
+    gc.drawImage(image, sx, sy, pixelWidth, pixelHeight, px, py, width, height);
+  }
+
+  /**
+   * Set the scale the GamePane is drawn at, clearing the cache if it has changed
+   *
+   * @param scale the scale
+   * @return true if the scale changed, so blocks on screen should be repainted
+   */
+  public static boolean setScale(double scale) {
+    if (scale == BlockSprites.scale) {
+      return false;
+    }
+    BlockSprites.scale = scale;
+    clear();
+    return true;
+  }
+
+  /**
+   * Remove every cached sprite, so they are rendered again when next needed
+   */
+  public static void clear() {
+    cache.clear();
+    generation++;
+  }
+
+  /**
+   * Paint an empty block
+   */
+  private static void paintEmpty(GraphicsContext gc, double px, double py, double width,
+      double height) {
+    //Border
+    gc.setStroke(Color.GRAY);
+    gc.strokeRoundRect(px, py, width, height, 5, 5);
+  }
+
+  /**
+   * Paint a block with the given colour
+   *
+   * @param colour the colour to paint
+   * @param center whether to paint the centre dot
+   */
+  private static void paintColor(GraphicsContext gc, double px, double py, double width,
+      double height, Color colour, boolean center) {
+    gc.setEffect(new Glow(0.8));
+
+    //Colour fill
+    gc.setFill(colour);
+    gc.fillRoundRect(px, py, width, height, 5, 5);
+    gc.setLineWidth(1.5);
+
+    gc.setEffect(null);
+
+    gc.setStroke(Color.BLACK);
+    gc.strokeRect(px + width * .2, py + height * .2, width * .6, height * .6);
+
+    //Border
+    gc.setStroke(Color.DARKGRAY.darker());
+    gc.strokeRoundRect(px, py, width, height, 2, 2);
+
+    gc.beginPath();
+    gc.setStroke(Color.BLACK);
+    gc.moveTo(px, py);
+    gc.lineTo(px + width * .2, py + height * .2);
+    gc.moveTo(px, py + height);
+    gc.lineTo(px + width * .2, py + height * .8);
+    gc.moveTo(px + width, py + height);
+    gc.lineTo(px + width * .8, py + height * .8);
+    gc.moveTo(px + width, py);
+    gc.lineTo(px + width * .8, py + height * .2);
+    gc.stroke();
+    gc.closePath();
+    gc.setLineWidth(1);
+
+    if (center) {
+      gc.setFill(Color.WHITE.deriveColor(1, 1, 1, 0.7));
+      gc.fillOval(px + width / 3, py + height / 3, width / 3, height / 3);
+    }
+  }
+
+  /**
+   * Paint a hovered block
+   */
+  private static void paintHover(GraphicsContext gc, double px, double py, double width,
+      double height) {
+    //Apply low opacity colour
+    gc.setFill(Color.WHITESMOKE.deriveColor(1, 1, 1, 0.5));
+    gc.fillRoundRect(px, py, width, height, 5, 5);
+  }
+}
@@ -0,0 +1,171 @@
+package uk.ac.soton.comp1206.component;
+
+import java.util.ArrayDeque;
+import javafx.animation.AnimationTimer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The BoardAnimator runs every animation on a board from a single frame callback, instead of each
+ * block starting its own timer.
+ * <p>
+ * Each frame advances the running effects, up to a budget, then calls the frame handler of the
+ * board so it can repaint what changed. Effects over the budget wait for the next frame, taking
+ * turns so none is starved. Effects work from the frame time rather than counting frames, so a
+ * delayed effect catches up. The animator stops itself when there is nothing left to do.
+ */
+public class BoardAnimator {
+
+  private static final Logger logger = LogManager.getLogger(BoardAnimator.class);
+
+  /**
+   * An animation run by the BoardAnimator
+   */
+  public interface Effect {
+
+    /**
+     * Advance the effect to the given time
+     *
+     * @param now the time of this frame in nanoseconds
+     * @return true if the effect is still running
+     */
+    boolean advance(long now);
+  }
+
+  /**
+   * The effects still running, in the order they take their turn
+   */
+  private final ArrayDeque<Effect> effects = new ArrayDeque<>();
+
+  /**
+   * Called at the end of every frame
+   */
+  private final Runnable frameHandler;
+
+  /**
+   * The most effects advanced in one frame
+   */
+  private int budget = 64;
+
+  /**
+   * Whether the timer is running
+   */
+  private boolean running;
+
+  /**
+   * Whether a frame is being run, so the frame handler is about to be called
+   */
+  private boolean inFrame;
+
+  /**
+   * Calls the animator every frame while it is running
+   */
+  private final AnimationTimer timer = new AnimationTimer() {
+    @Override
+    public void handle(long now) {
+      frame(now);
+    }
+  };
+
+  /**
+   * Create a new animator
+   *
+   * @param frameHandler called at the end of every frame, after the effects have advanced
+   */
+  public BoardAnimator(Runnable frameHandler) {
+    this.frameHandler = frameHandler;
+  }
+
+  /**
+   * Start running an effect from the next frame
+   *
+   * @param effect the effect
+   */
+  public void add(Effect effect) {
+    effects.add(effect);
+    start();
+  }
+
+  /**
+   * Start the timer if it is not running
+   */
+  private void start() {
+    if (!running) {
+      running = true;
+      timer.start();
+    }
+  }
+
+  /**
+   * Advance the effects whose turn it is, then call the frame handler
+   *
+   * @param now the time of this frame in nanoseconds
+   */
+  private void frame(long now) {
+    inFrame = true;
+    var turns = Math.min(budget, effects.size());
+    for (var i = 0; i < turns; i++) {
+      var effect = effects.poll();
+      if (effect.advance(now)) {
+        //Still running, so take another turn later
+        effects.add(effect);
+      }
+    }
+    frameHandler.run();
+    inFrame = false;
+
+    if (effects.isEmpty()) {
+      running = false;
+      timer.stop();
+    }
+  }
+
+  /**
+   * Stop every effect where it is
+   */
+  public void clear() {
+    effects.clear();
+    running = false;
+    timer.stop();
+  }
+
+  /**
+   * Get whether a frame is being run, in which case the frame handler is called before it ends
+   *
+   * @return true while advancing the effects
+   */
+  public boolean isInFrame() {
+    return inFrame;
+  }
+
+  /**
+   * Get the number of effects running
+   *
+   * @return the number of effects
+   */
+  public int getActive() {
+    return effects.size();
+  }
+
+  /**
+   * Get the most effects advanced in one frame
+   *
+   * @return the budget
+   */
+  public int getBudget() {
+    return budget;
+  }
+
+  /**
+   * Set the most effects advanced in one frame
+   *
+   * @param budget the budget, at least 1
+   */
+  public void setBudget(int budget) {
+    if (budget < 1) {
+      throw new IllegalArgumentException("Budget must be at least 1");
+    }
+    logger.info("Animation budget set to {} effects per frame", budget);
+    this.budget = budget;
+  }
+}
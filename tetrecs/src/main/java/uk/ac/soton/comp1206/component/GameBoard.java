@@ -1,6 +1,7 @@
 package uk.ac.soton.comp1206.component;
 
 import java.util.HashSet;
+import javafx.scene.canvas.Canvas;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.GridPane;
@@ -8,17 +9,25 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.event.BlockClickedListener;
 import uk.ac.soton.comp1206.event.RightClickedListener;
+import uk.ac.soton.comp1206.game.GameBlockCoordinate;
 import uk.ac.soton.comp1206.game.Grid;
+import uk.ac.soton.comp1206.ui.PulseScheduler;
 
 /**
  * A GameBoard is a visual component to represent the visual GameBoard. It extends a GridPane to
- * hold a grid of GameBlocks.
+ * hold a grid of blocks, each a BlockCell holding its state.
  * <p>
  * The GameBoard can hold an internal grid of it's own, for example, for displaying an upcoming
  * block. It also be linked to an external grid, for the main game board.
  * <p>
  * The GameBoard is only a visual representation and should not contain game logic or model logic in
  * it, which should take place in the Grid.
+ * <p>
+ * In the NODES render mode every cell is shown by its own GameBlock node. In the CANVAS render mode
+ * the whole board is drawn into one Canvas and no node is created for a cell. Cells only mark
+ * themselves dirty when they change, and the dirty cells are repainted together by the
+ * PulseScheduler, in the same pulse as the grid and the scores they changed with, or at the end of
+ * an animation frame. The board works out which cell the mouse is over itself.
  */
 public class GameBoard extends GridPane {
 
@@ -44,15 +53,55 @@ public class GameBoard extends GridPane {
    */
   private final double height;
 
+  /**
+   * How the blocks are drawn
+   */
+  private final RenderMode renderMode;
+
+  /**
+   * The canvas the whole board is drawn into, in the CANVAS render mode
+   */
+  private Canvas canvas;
+
+  /**
+   * Which blocks need repainting, indexed by (y * cols + x)
+   */
+  private boolean[] dirty;
+
+  /**
+   * Whether any block needs repainting
+   */
+  private boolean anyDirty;
+
+  /**
+   * The cell the mouse is over, in the CANVAS render mode
+   */
+  private BlockCell mouseBlock;
+
+  /**
+   * Runs the animations of this board, and repaints the dirty blocks at the end of each frame
+   */
+  private final BoardAnimator animator = new BoardAnimator(this::paintDirty);
+
   /**
    * The grid this GameBoard represents
    */
   final Grid grid;
 
   /**
-   * The blocks inside the grid
+   * The observable view of the grid which the blocks are bound to
+   */
+  private final ObservableGrid observableGrid;
+
+  /**
+   * The cells inside the grid
+   */
+  BlockCell[][] blocks;
+
+  /**
+   * The node showing each cell, in the NODES render mode only
    */
-  GameBlock[][] blocks;
+  private GameBlock[][] nodes;
 
   /**
    * The listener to call when a specific block is clicked
@@ -78,11 +127,26 @@ public class GameBoard extends GridPane {
    * @param height the visual height
    */
   public GameBoard(Grid grid, double width, double height) {
+    this(grid, width, height, RenderMode.NODES);
+  }
+
+  /**
+   * Create a new GameBoard, based off a given grid, with a visual width and height, drawn in the
+   * given render mode.
+   *
+   * @param grid       linked grid
+   * @param width      the visual width
+   * @param height     the visual height
+   * @param renderMode how the blocks are drawn
+   */
+  public GameBoard(Grid grid, double width, double height, RenderMode renderMode) {
     this.cols = grid.getCols();
     this.rows = grid.getRows();
     this.width = width;
     this.height = height;
+    this.renderMode = renderMode;
     this.grid = grid;
+    this.observableGrid = new ObservableGrid(grid);
 
     //Build the GameBoard
     build();
@@ -98,11 +162,27 @@ public class GameBoard extends GridPane {
    * @param height the visual height
    */
   public GameBoard(int cols, int rows, double width, double height) {
+    this(cols, rows, width, height, RenderMode.NODES);
+  }
+
+  /**
+   * Create a new GameBoard with it's own internal grid, specifying the number of columns and rows,
+   * along with the visual width and height and the render mode.
+   *
+   * @param cols       number of columns for internal grid
+   * @param rows       number of rows for internal grid
+   * @param width      the visual width
+   * @param height     the visual height
+   * @param renderMode how the blocks are drawn
+   */
+  public GameBoard(int cols, int rows, double width, double height, RenderMode renderMode) {
     this.cols = cols;
     this.rows = rows;
     this.width = width;
     this.height = height;
+    this.renderMode = renderMode;
     this.grid = new Grid(cols, rows);
+    this.observableGrid = new ObservableGrid(grid);
 
     //Build the GameBoard
     build();
@@ -113,9 +193,9 @@ public class GameBoard extends GridPane {
    *
    * @param x column
    * @param y row
-   * @return game block at the given column and row
+   * @return the cell at the given column and row
    */
-  public GameBlock getBlock(int x, int y) {
+  public BlockCell getBlock(int x, int y) {
     return blocks[x][y];
   }
 
@@ -128,9 +208,29 @@ public class GameBoard extends GridPane {
     setMaxWidth(width);
     setMaxHeight(height);
 
-    setGridLinesVisible(true);
+    blocks = new BlockCell[cols][rows];
 
-    blocks = new GameBlock[cols][rows];
+    if (renderMode == RenderMode.CANVAS) {
+      canvas = new Canvas(width, height);
+      dirty = new boolean[cols * rows];
+      add(canvas, 0, 0);
+
+      //Find the block under the mouse for clicks and hovering
+      canvas.setOnMouseClicked((e) -> {
+        var block = blockAt(e.getX(), e.getY());
+        if (block != null) {
+          blockClicked(e, block);
+          rightClicked(e, this);
+        }
+      });
+      if (!(this instanceof PieceBoard)) {
+        canvas.setOnMouseMoved((e) -> mouseOver(blockAt(e.getX(), e.getY())));
+        canvas.setOnMouseExited((e) -> mouseOver(null));
+      }
+    } else {
+      nodes = new GameBlock[cols][rows];
+      setGridLinesVisible(true);
+    }
 
     for (var y = 0; y < rows; y++) {
       for (var x = 0; x < cols; x++) {
@@ -145,34 +245,156 @@ public class GameBoard extends GridPane {
    * @param x column
    * @param y row
    */
-  protected GameBlock createBlock(int x, int y) {
+  protected BlockCell createBlock(int x, int y) {
       var blockWidth = width / cols;
       var blockHeight = height / rows;
 
-      //Create a new GameBlock UI component
-      GameBlock block = new GameBlock(this, x, y, blockWidth, blockHeight);
+      //Create the cell and add it to our block directory
+      BlockCell cell = new BlockCell(this, x, y, blockWidth, blockHeight);
+      blocks[x][y] = cell;
 
-      //Add to the GridPane
-      add(block, x, y);
+      //Link the cell to the corresponding value in the Grid
+      var property = observableGrid.getGridProperty(x, y);
+      cell.setValue(property.get());
+      property.addListener((observable, oldValue, newValue) -> cell.setValue(newValue.intValue()));
 
-      //Add to our block directory
-      blocks[x][y] = block;
+      if (renderMode == RenderMode.CANVAS) {
+        //The board draws the cell and handles the mouse for it
+        markDirty(x, y);
+        return cell;
+      }
 
-      //Link the GameBlock component to the corresponding value in the Grid
-      block.bind(grid.getGridProperty(x, y));
+      //Create a new GameBlock UI component and add it to the GridPane
+      GameBlock block = new GameBlock(cell, blockWidth, blockHeight);
+      add(block, x, y);
+      nodes[x][y] = block;
 
       //Add a mouse click handler to the block to trigger GameBoard blockClicked method and rightClicked method
       block.setOnMouseClicked((e) -> {
-        blockClicked(e, block);
+        blockClicked(e, cell);
         rightClicked(e, this);
       });
 
       if(!(this instanceof PieceBoard)) {
-        block.setOnMouseEntered((event -> block.hover(true)));
-        block.setOnMouseExited((event -> block.hover(false)));
+        block.setOnMouseEntered((event -> cell.hover(true)));
+        block.setOnMouseExited((event -> cell.hover(false)));
+      }
+
+      return cell;
+  }
+
+  /**
+   * Find the block at a position on the canvas
+   *
+   * @param px x position
+   * @param py y position
+   * @return the cell, or null if the position is outside the board
+   */
+  private BlockCell blockAt(double px, double py) {
+    var x = (int) Math.floor(px / (width / cols));
+    var y = (int) Math.floor(py / (height / rows));
+    if (x < 0 || y < 0 || x >= cols || y >= rows) {
+      return null;
+    }
+    return blocks[x][y];
+  }
+
+  /**
+   * Move the hover to the block under the mouse
+   *
+   * @param block the cell, or null if the mouse has left the board
+   */
+  private void mouseOver(BlockCell block) {
+    if (block == mouseBlock) {
+      return;
+    }
+    if (mouseBlock != null) {
+      mouseBlock.hover(false);
+    }
+    mouseBlock = block;
+    if (block != null) {
+      block.hover(true);
+    }
+  }
+
+  /**
+   * Draw a cell again, into the canvas on the next frame or into the node showing it
+   *
+   * @param cell the cell
+   */
+  void paintCell(BlockCell cell) {
+    if (renderMode == RenderMode.CANVAS) {
+      markDirty(cell.getX(), cell.getY());
+    } else if (nodes[cell.getX()][cell.getY()] != null) {
+      nodes[cell.getX()][cell.getY()].paint();
+    }
+  }
+
+  /**
+   * Mark a block as needing to be repainted on the next frame
+   *
+   * @param x column
+   * @param y row
+   */
+  private void markDirty(int x, int y) {
+    dirty[y * cols + x] = true;
+    if (!anyDirty) {
+      anyDirty = true;
+      //An animation frame repaints as it ends, otherwise repaint in this pulse's flush
+      if (!animator.isInFrame()) {
+        PulseScheduler.schedule(this::paintDirty);
+      }
+    }
+  }
+
+  /**
+   * Repaint every block, after the sprites they are drawn from have been rendered again
+   */
+  public void repaint() {
+    for (var column : blocks) {
+      for (var block : column) {
+        block.paint();
+      }
+    }
+  }
+
+  /**
+   * Repaint every dirty block into the canvas
+   */
+  private void paintDirty() {
+    if (!anyDirty) {
+      return;
+    }
+    anyDirty = false;
+    var gc = canvas.getGraphicsContext2D();
+    var blockWidth = width / cols;
+    var blockHeight = height / rows;
+    for (var i = 0; i < dirty.length; i++) {
+      if (dirty[i]) {
+        dirty[i] = false;
+        var x = i % cols;
+        var y = i / cols;
+        blocks[x][y].paintTo(gc, x * blockWidth, y * blockHeight);
       }
+    }
+  }
+
+  /**
+   * Get the animator which runs the animations of this board
+   *
+   * @return the animator
+   */
+  public BoardAnimator getAnimator() {
+    return animator;
+  }
 
-      return block;
+  /**
+   * Get how the blocks of this board are drawn
+   *
+   * @return the render mode
+   */
+  public RenderMode getRenderMode() {
+    return renderMode;
   }
 
   /**
@@ -199,7 +421,7 @@ public class GameBoard extends GridPane {
    * @param event mouse event
    * @param block block clicked on
    */
-  private void blockClicked(MouseEvent event, GameBlock block) {
+  private void blockClicked(MouseEvent event, BlockCell block) {
     if (event.getButton() == MouseButton.PRIMARY) {
       logger.info("Block clicked: {}", block);
 
@@ -240,7 +462,7 @@ public class GameBoard extends GridPane {
    * Gets blocks
    * @return blocks
    */
-  public GameBlock[][] getBlocks() {
+  public BlockCell[][] getBlocks() {
     return blocks;
   }
 
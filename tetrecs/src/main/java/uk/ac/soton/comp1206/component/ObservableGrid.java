@@ -0,0 +1,111 @@
+package uk.ac.soton.comp1206.component;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.SimpleIntegerProperty;
+import uk.ac.soton.comp1206.game.Grid;
+import uk.ac.soton.comp1206.ui.PulseScheduler;
+
+/**
+ * An ObservableGrid is an adapter which exposes every block of a Grid model as an IntegerProperty,
+ * so that it can be bound to by a GameBoard.
+ * <p>
+ * The Grid itself holds no JavaFX state. The properties here are kept up to date by listening to
+ * changes in the Grid, so they should only be used on the JavaFX thread. A change only marks its
+ * block dirty, and the properties of every dirty block are updated together on the next pulse, so
+ * a placement and the lines it clears are drawn in one pass. The grid may be changed from any
+ * thread, the dirty marks are atomic and the properties are only ever set on the JavaFX thread.
+ */
+public class ObservableGrid {
+
+  /**
+   * The grid this adapter represents
+   */
+  private final Grid grid;
+
+  /**
+   * A 2D array with rows and columns of SimpleIntegerProperties mirroring the grid
+   */
+  private final SimpleIntegerProperty[][] properties;
+
+  /**
+   * Which blocks have changed since the last flush, 1 if changed, indexed by (y * cols + x)
+   */
+  private final AtomicIntegerArray dirty;
+
+  /**
+   * Whether a flush has been scheduled
+   */
+  private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+  /**
+   * Create a new ObservableGrid for the given grid
+   *
+   * @param grid the grid to observe
+   */
+  public ObservableGrid(Grid grid) {
+    this.grid = grid;
+
+    //Create the properties with the current values of the grid
+    properties = new SimpleIntegerProperty[grid.getCols()][grid.getRows()];
+    for (var y = 0; y < grid.getRows(); y++) {
+      for (var x = 0; x < grid.getCols(); x++) {
+        properties[x][y] = new SimpleIntegerProperty(grid.get(x, y));
+      }
+    }
+
+    //Keep the properties in line with the grid
+    dirty = new AtomicIntegerArray(grid.getCols() * grid.getRows());
+    grid.addListener((x, y, value) -> markDirty(x, y));
+  }
+
+  /**
+   * Mark a block as changed, scheduling a flush if there is not one already
+   *
+   * @param x column
+   * @param y row
+   */
+  private void markDirty(int x, int y) {
+    dirty.set(y * grid.getCols() + x, 1);
+    if (flushScheduled.compareAndSet(false, true)) {
+      PulseScheduler.schedule(this::flush);
+    }
+  }
+
+  /**
+   * Update the property of every changed block from the grid
+   */
+  public void flush() {
+    //Cleared first, so a block marked during the flush is either seen here or flushed again
+    flushScheduled.set(false);
+    var cols = grid.getCols();
+    for (var i = 0; i < dirty.length(); i++) {
+      if (dirty.getAndSet(i, 0) == 1) {
+        properties[i % cols][i / cols].set(grid.get(i % cols, i / cols));
+      }
+    }
+  }
+
+  /**
+   * Get the Integer property for the block at a given row and column index. Can be used for
+   * binding.
+   *
+   * @param x column
+   * @param y row
+   * @return the IntegerProperty at the given x and y
+   */
+  public ReadOnlyIntegerProperty getGridProperty(int x, int y) {
+    return properties[x][y];
+  }
+
+  /**
+   * Get the grid this adapter represents
+   *
+   * @return the grid
+   */
+  public Grid getGrid() {
+    return grid;
+  }
+
+}
@@ -20,19 +20,25 @@ public class PieceBoard extends GameBoard{
   private String name;
 
   public PieceBoard(int cols, int rows, double width, double height, String name) {
-    super(cols, rows, width, height);
+    super(cols, rows, width, height, RenderMode.CANVAS);
     this.cols = cols;
     this.rows = rows;
     this.name = name;
   }
 
+  /**
+   * Show a piece, replacing the one shown before
+   * @param gamePiece the piece, or null to show an empty board
+   */
   public void setPiece(GamePiece gamePiece){
     for(int i = 0; i < cols; i++){
       for(int j = 0; j < rows; j++){
         grid.set(i, j, 0);
       }
     }
-    grid.playPiece(gamePiece, 1,1);
+    if (gamePiece != null) {
+      grid.playPiece(gamePiece, 1,1);
+    }
   }
 
   /**
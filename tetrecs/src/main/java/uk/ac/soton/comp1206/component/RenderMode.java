@@ -0,0 +1,19 @@
+package uk.ac.soton.comp1206.component;
+
+/**
+ * How a GameBoard draws its blocks
+ */
+public enum RenderMode {
+
+  /**
+   * Every block is its own Canvas node in the board, handling its own mouse events
+   */
+  NODES,
+
+  /**
+   * The whole board is drawn into a single Canvas, repainting only the blocks that changed. No node
+   * is created for a block, each is only a BlockCell.
+   */
+  CANVAS
+
+}
@@ -1,10 +1,10 @@
 package uk.ac.soton.comp1206.event;
 
-import uk.ac.soton.comp1206.component.GameBlock;
+import uk.ac.soton.comp1206.component.BlockCell;
 
 /**
  * The Block Clicked listener is used to handle the event when a block in a GameBoard is clicked. It passes the
- * GameBlock that was clicked in the message
+ * BlockCell that was clicked in the message
  */
 public interface BlockClickedListener {
 
@@ -12,5 +12,5 @@ public interface BlockClickedListener {
      * Handle a block clicked event
      * @param block the block that was clicked
      */
-    void blockClicked(GameBlock block);
+    void blockClicked(BlockCell block);
 }
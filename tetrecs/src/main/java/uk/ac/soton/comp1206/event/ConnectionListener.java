@@ -0,0 +1,17 @@
+package uk.ac.soton.comp1206.event;
+
+import uk.ac.soton.comp1206.network.ConnectionState;
+
+/**
+ * The Connection Listener is used for listening to changes in the state of the connection to the
+ * server.
+ */
+public interface ConnectionListener {
+
+    /**
+     * Handle the connection changing state. Called on the thread of the Communicator, not the FX
+     * thread.
+     * @param state the new state
+     */
+    void connectionChanged(ConnectionState state);
+}
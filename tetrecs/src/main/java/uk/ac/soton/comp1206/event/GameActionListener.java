@@ -0,0 +1,40 @@
+package uk.ac.soton.comp1206.event;
+
+import uk.ac.soton.comp1206.game.GamePiece;
+
+/**
+ * Listener for every action that changes the course of a game: the pieces dealt, the player's
+ * inputs and the timer running out. Together they are enough to play the game again exactly.
+ */
+public interface GameActionListener {
+
+  /**
+   * Handle a new piece being dealt
+   * @param gamePiece the piece, in the rotation it was dealt in
+   */
+  void pieceSpawned(GamePiece gamePiece);
+
+  /**
+   * Handle the player trying to play the current piece
+   * @param x column
+   * @param y row
+   */
+  void placeRequested(int x, int y);
+
+  /**
+   * Handle the player rotating the current piece
+   * @param clockwise true if rotated clockwise
+   */
+  void rotateRequested(boolean clockwise);
+
+  /**
+   * Handle the player swapping the current and following pieces
+   */
+  void swapRequested();
+
+  /**
+   * Handle the player running out of time for the current piece
+   */
+  void timerExpired();
+
+}
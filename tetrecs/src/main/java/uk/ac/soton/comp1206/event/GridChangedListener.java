@@ -0,0 +1,18 @@
+package uk.ac.soton.comp1206.event;
+
+/**
+ * The Grid Changed listener is used to observe changes to the cells of a Grid model, for example to
+ * update a view of the grid.
+ */
+public interface GridChangedListener {
+
+  /**
+   * Handle a cell of the grid changing value
+   *
+   * @param x     column
+   * @param y     row
+   * @param value the new value
+   */
+  void gridChanged(int x, int y, int value);
+
+}
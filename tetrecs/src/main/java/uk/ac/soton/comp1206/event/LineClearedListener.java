@@ -1,7 +1,7 @@
 package uk.ac.soton.comp1206.event;
 
 import java.util.HashSet;
-import uk.ac.soton.comp1206.component.GameBlockCoordinate;
+import uk.ac.soton.comp1206.game.GameBlockCoordinate;
 
 public interface LineClearedListener {
 
@@ -0,0 +1,16 @@
+package uk.ac.soton.comp1206.event;
+
+import uk.ac.soton.comp1206.network.Message;
+
+/**
+ * The Message Listener is used for listening to one kind of parsed message received by the communicator.
+ * @param <T> the kind of message
+ */
+public interface MessageListener<T extends Message> {
+
+    /**
+     * Handle an incoming message received by the Communicator
+     * @param message the parsed message
+     */
+    void receiveMessage(T message);
+}
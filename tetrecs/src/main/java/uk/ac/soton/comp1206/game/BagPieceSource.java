@@ -0,0 +1,71 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * Deals every piece exactly once in a shuffled order, then shuffles them again. No piece can be
+ * missing for long, and none can come up more than twice in a row.
+ */
+public class BagPieceSource implements PieceSource {
+
+  /**
+   * The generator the bag is shuffled with
+   */
+  private final PieceGenerator generator;
+
+  /**
+   * The state of the generator when the source was created
+   */
+  private final long seed;
+
+  /**
+   * The pieces in the bag, in the order they are dealt
+   */
+  private final int[] bag = new int[GamePiece.PIECES];
+
+  /**
+   * The number of pieces dealt from the bag
+   */
+  private int dealt = GamePiece.PIECES;
+
+  /**
+   * Create a new bag source
+   *
+   * @param generator the generator to shuffle the bag with
+   */
+  public BagPieceSource(PieceGenerator generator) {
+    this.generator = generator;
+    this.seed = generator.getState();
+    for (var i = 0; i < bag.length; i++) {
+      bag[i] = i;
+    }
+  }
+
+  /**
+   * Get the next piece from the bag, refilling it when empty
+   *
+   * @return the new piece
+   */
+  @Override
+  public GamePiece next() {
+    if (dealt == bag.length) {
+      //Fisher-Yates shuffle
+      for (var i = bag.length - 1; i > 0; i--) {
+        var j = generator.nextInt(i + 1);
+        var temp = bag[i];
+        bag[i] = bag[j];
+        bag[j] = temp;
+      }
+      dealt = 0;
+    }
+    return GamePiece.createPiece(bag[dealt++]);
+  }
+
+  /**
+   * Get the seed the pieces were generated from
+   *
+   * @return the state of the generator when the source was created
+   */
+  @Override
+  public long getSeed() {
+    return seed;
+  }
+}
@@ -2,56 +2,34 @@ package uk.ac.soton.comp1206.game;
 
 import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Random;
-import java.util.Timer;
-import java.util.TimerTask;
 import javafx.application.Platform;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.util.Pair;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.Utility.Multimedia;
-import uk.ac.soton.comp1206.component.GameBlock;
-import uk.ac.soton.comp1206.component.GameBlockCoordinate;
+import uk.ac.soton.comp1206.component.BlockCell;
 import uk.ac.soton.comp1206.event.GameEndListener;
 import uk.ac.soton.comp1206.event.GameLoopListener;
 import uk.ac.soton.comp1206.event.LineClearedListener;
 import uk.ac.soton.comp1206.event.NextPieceListener;
+import uk.ac.soton.comp1206.replay.ReplayRecorder;
+import uk.ac.soton.comp1206.ui.PulseScheduler;
 
 /**
  * The Game class handles the main logic, state and properties of the TetrECS game. Methods to
  * manipulate the game state and to handle actions made by the player should take place inside this
  * class.
+ * <p>
+ * The rules themselves are in the GameEngine. The Game adapts the engine for the JavaFX scenes,
+ * exposing its state as properties, running the game loop on a timer, playing audio and calling
+ * the attached listeners. The properties are updated together once per pulse, however many times
+ * the state changes in between.
  */
-public class Game {
+public class Game extends GameEngine {
 
   private static final Logger logger = LogManager.getLogger(Game.class);
 
-  /**
-   * Number of rows
-   */
-  protected final int rows;
-
-  /**
-   * Number of columns
-   */
-  protected final int cols;
-
-  /**
-   * The grid model linked to the game
-   */
-  protected final Grid grid;
-
-  /**
-   * Current piece to be played
-   */
-  protected GamePiece currentPiece;
-
-  /**
-   * The upcoming piece to be played
-   */
-  protected GamePiece followingPiece;
-
   /**
    * The score, initial value is 0
    */
@@ -73,9 +51,9 @@ public class Game {
   protected SimpleIntegerProperty multiplier = new SimpleIntegerProperty(1);
 
   /**
-   * The bound of the level to level up
+   * Whether the properties are waiting to be updated on the next pulse
    */
-  private int levelUp = 1000;
+  private boolean hudDirty;
 
   /**
    * Listens for next piece
@@ -93,14 +71,10 @@ public class Game {
   protected LineClearedListener lineClearedListener;
 
   /**
-   * the main timer of the game
+   * The deadline for the current piece, runs the game loop on the FX thread when it expires
    */
-  protected Timer gameTimer;
-
-  /**
-   * The task of the main game timer
-   */
-  protected TimerTask gameTimerTask;
+  protected final GameScheduler.Deadline gameDeadline =
+      GameScheduler.createDeadline(() -> Platform.runLater(this::tick));
 
   /**
    * The game loop listener
@@ -123,14 +97,9 @@ public class Game {
   private boolean sfxOn;
 
   /**
-   * Delay loop music
+   * Records the game to a replay file
    */
-  private Timer startTimer;
-
-  /**
-   * Hard mode
-   */
-  private boolean hard = false;
+  private ReplayRecorder recorder;
 
   /**
    * Create a new game with the specified rows and columns. Creates a corresponding grid model.
@@ -139,60 +108,45 @@ public class Game {
    * @param rows number of rows
    */
   public Game(int cols, int rows, boolean music, boolean sfx) {
-    this.cols = cols;
-    this.rows = rows;
+    this(cols, rows, music, sfx, PieceSource.random(PieceGenerator.randomSeed()));
+  }
+
+  /**
+   * Create a new game with the specified rows and columns, dealt pieces from the given source.
+   * Creates a corresponding grid model.
+   *
+   * @param cols        number of columns
+   * @param rows        number of rows
+   * @param pieceSource where new pieces come from
+   */
+  public Game(int cols, int rows, boolean music, boolean sfx, PieceSource pieceSource) {
+    super(cols, rows, GameClock.SYSTEM, pieceSource);
     this.musicOn = music;
     this.sfxOn = sfx;
-    //Create a new grid model to represent the game state
-    this.grid = new Grid(cols, rows);
   }
 
   /**
    * Start the game
    */
+  @Override
   public void start() {
     logger.info("Starting game");
+    recorder = ReplayRecorder.record(this);
     initialiseGame();
   }
 
   /**
    * Initialise a new game and set up anything that needs to be done at the start
    */
+  @Override
   public void initialiseGame() {
     logger.info("Initialising game");
-    //Create new GamePiece
-    currentPiece = spawnPiece();
-    this.nextPiece(currentPiece, 1);
-    //Create another second GamePiece
-    followingPiece = spawnPiece();
-    this.nextPiece(followingPiece, 2);
+    super.initialiseGame();
     gameOn = true;
-    //Pass to listener
     if(musicOn) {
-      startTimer = new Timer();
-      Multimedia.playMusic("music/game_start.wav");
-      TimerTask startLoop = new TimerTask() {
-        @Override
-        public void run() {
-            //Play loop music
-            Multimedia.playLoopedMusic("music/game.wav");
-        }
-      };
-
-      startTimer.schedule(startLoop, 46000);
+      //Play the start music, then loop the game music once it ends
+      Multimedia.playMusicThenLoop("music/game_start.wav", "music/game.wav");
     }
-    gameTimer = new Timer();
-    gameTimerTask = new TimerTask() {
-      @Override
-      public void run() {
-        Platform.runLater(() -> {
-            gameLoop();
-        });
-      }
-    };
-
-    gameTimer.schedule(gameTimerTask, getTimerDelay());
-    gameLoopListener.setOnGameLoop(getTimerDelay());
   }
 
 
@@ -201,150 +155,58 @@ public class Game {
    *
    * @param gameBlock the block that was clicked
    */
-  public void blockClicked(GameBlock gameBlock) {
-    //Get the position of this block
-    int x = gameBlock.getX();
-    int y = gameBlock.getY();
-
-    //Attempt to play the piece if it's playable, otherwise inform
-    if (grid.canPlayPiece(currentPiece, x, y)) {
-      grid.playPiece(currentPiece, x, y);
-      gameLooped();
-      if(sfxOn) {
-        Multimedia.playAudioEffect("sounds/place.wav");
-      }
-      logger.info("Piece {} has been placed", currentPiece);
-      afterPiece();
-      //Reset timer
-      resetTimer();
-    } else {
-      logger.info("Piece cannot be placed");
-    }
+  public void blockClicked(BlockCell gameBlock) {
+    //Attempt to play the piece at the position of this block
+    place(gameBlock.getX(), gameBlock.getY());
   }
 
   /**
-   * Get the grid model inside this game representing the game state of the board
+   * Play the place sound once a piece has been played
    *
-   * @return game grid model
+   * @param x column
+   * @param y row
    */
-  public Grid getGrid() {
-    return grid;
-  }
-
-  /**
-   * Get the number of columns in this game
-   *
-   * @return number of columns
-   */
-  public int getCols() {
-    return cols;
-  }
-
-  /**
-   * Get the number of rows in this game
-   *
-   * @return number of rows
-   */
-  public int getRows() {
-    return rows;
+  @Override
+  protected void piecePlaced(int x, int y) {
+    if(sfxOn) {
+      Multimedia.playAudioEffect("sounds/place.wav");
+    }
+    logger.info("Piece {} has been placed", currentPiece);
   }
 
   /**
-   * A method that randomly creates a GamePiece
+   * Inform the player a piece could not be placed
    *
-   * @return
-   */
-  protected GamePiece spawnPiece() {
-    Random random = new Random();
-    //Generate a random integer from 0 to 14
-    int piece = random.nextInt(15);
-    return GamePiece.createPiece(piece);
-  }
-
-  /**
-   * Creates a new piece and replaces the current one with it
+   * @param x column
+   * @param y row
    */
-  protected void nextPiece() {
-    currentPiece = followingPiece; //Substitute with next piece
-    //Pass to listener
-    this.nextPiece(currentPiece, 1);
-    followingPiece = spawnPiece(); //Get a new following piece
-    //Pass to listener
-    this.nextPiece(followingPiece, 2);
+  @Override
+  protected void placementFailed(int x, int y) {
+    if(sfxOn) {
+      Multimedia.playAudioEffect("sounds/fail.wav");
+    }
+    logger.info("Piece cannot be placed");
   }
 
   /**
-   * This method clears any full vertical/horizontal lines that have been created
+   * Schedule the properties to be updated on the next pulse, if they are not already
    */
-  public void afterPiece() {
-    int blocks = 0;
-    boolean full;
-    ArrayList<Integer> fullCol = new ArrayList<Integer>();
-    ArrayList<Integer> fullRow = new ArrayList<Integer>();
-    HashSet coordinates = new HashSet();
-    //Check full columns
-    for (var x = 0; x < cols; x++) {
-      full = true;
-      for (var y = 0; y < rows; y++) {
-        if (grid.getGridProperty(x, y).get() == 0) {
-          full = false;
-        }
-      }
-      if (full == true) {
-        fullCol.add(x);
-      }
-    }
-    //Check full rows
-    for (var y = 0; y < rows; y++) {
-      full = true;
-      for (var x = 0; x < cols; x++) {
-        if (grid.getGridProperty(x, y).get() == 0) {
-          full = false;
-        }
-      }
-      if (full == true) {
-        fullRow.add(y);
-      }
+  private void markHudDirty() {
+    if (!hudDirty) {
+      hudDirty = true;
+      PulseScheduler.schedule(this::flushHud);
     }
-    //Remove the full columns
-    for (var x = 0; x < fullCol.size(); x++) {
-      for (var y = 0; y < rows; y++) {
-        if (grid.get(fullCol.get(x), y) != 0) {
-          coordinates.add(new GameBlockCoordinate(fullCol.get(x), y));
-          grid.set(fullCol.get(x), y, 0);
-          blocks++;
-        }
-      }
-    }
-    //Remove the full rows
-    for (var y = 0; y < fullRow.size(); y++) {
-      for (var x = 0; x < cols; x++) {
-        if (grid.get(x, fullRow.get(y)) != 0) {
-          coordinates.add(new GameBlockCoordinate(x, fullRow.get(y)));
-          grid.set(x, fullRow.get(y), 0);
-          blocks++;
-        }
-      }
-    }
-    //Set lines removed in total
-    int lines = fullCol.size() + fullRow.size();
-    //Play clear sound
-    if (lines != 0) {
-      if(sfxOn) {
-        Multimedia.playAudioEffect("sounds/clear.wav");
-      }
-    }
-    score(lines, blocks);
-    lineCleared(coordinates);
   }
 
   /**
-   * Gets the score
-   *
-   * @return the score
+   * Update the score, level, lives and multiplier properties from the game
    */
-  public int getScore() {
-    return score.get();
+  private void flushHud() {
+    hudDirty = false;
+    score.set(getScore());
+    level.set(getLevel());
+    lives.set(getLives());
+    multiplier.set(getMultiplier());
   }
 
   /**
@@ -361,17 +223,10 @@ public class Game {
    *
    * @param score the score
    */
+  @Override
   public void setScore(int score) {
-    this.score.set(score);
-  }
-
-  /**
-   * Gets the level
-   *
-   * @return the level
-   */
-  public int getLevel() {
-    return level.get();
+    super.setScore(score);
+    markHudDirty();
   }
 
   /**
@@ -388,17 +243,10 @@ public class Game {
    *
    * @param level the level
    */
+  @Override
   public void setLevel(int level) {
-    this.level.set(level);
-  }
-
-  /**
-   * Gets the lives available
-   *
-   * @return the lives
-   */
-  public int getLives() {
-    return lives.get();
+    super.setLevel(level);
+    markHudDirty();
   }
 
   /**
@@ -415,17 +263,10 @@ public class Game {
    *
    * @param lives
    */
+  @Override
   public void setLives(int lives) {
-    this.lives.set(lives);
-  }
-
-  /**
-   * Gets the multiplier
-   *
-   * @return multiplier
-   */
-  public int getMultiplier() {
-    return multiplier.get();
+    super.setLives(lives);
+    markHudDirty();
   }
 
   /**
@@ -442,15 +283,18 @@ public class Game {
    *
    * @param multiplier multiplier
    */
+  @Override
   public void setMultiplier(int multiplier) {
-    this.multiplier.set(multiplier);
+    super.setMultiplier(multiplier);
+    markHudDirty();
   }
 
   /**
    * Resets the multiplier back to 1
    */
+  @Override
   public void resetMultiplier() {
-    this.multiplier.set(1);
+    super.resetMultiplier();
     logger.info("Multiplier has reset back to {}x", getMultiplier());
   }
 
@@ -460,31 +304,24 @@ public class Game {
    * @param lines         cleared lines
    * @param blocksCleared cleared blocks
    */
+  @Override
   protected void score(int lines, int blocksCleared) {
-    //Checks if lines are cleared or not
+    super.score(lines, blocksCleared);
     if (lines != 0 && blocksCleared != 0) {
-      //Calculates to add to new score. Current score + linesCleared*blocksCleared*10*multiplier
-      setScore(getScore() + (lines * blocksCleared * 10 * getMultiplier()));
       logger.info("{} lines cleared. {} blocks cleared", lines, blocksCleared);
       logger.info("New score is {}", getScore());
-      //Increments multiplier
-      setMultiplier(getMultiplier() + 1);
       logger.info("Multiplier: {}x", getMultiplier());
-      updateLevel();
-    } else {
-      resetMultiplier();
     }
   }
 
   /**
    * Check if level can increase
    */
+  @Override
   protected void updateLevel() {
-    if (getScore() >= levelUp) {
-      //Level up +1
-      setLevel(getLevel() + 1);
-      //Increases bound for next level
-      levelUp += 1000;
+    int previous = getLevel();
+    super.updateLevel();
+    if (getLevel() > previous) {
       logger.info("Level up! Current level: {}", getLevel());
       if(sfxOn) {
         Multimedia.playAudioEffect("sounds/level.wav");
@@ -506,6 +343,7 @@ public class Game {
    *
    * @param gamePiece
    */
+  @Override
   public void nextPiece(GamePiece gamePiece, int i) {
     if (nextPieceListener != null) {
       nextPieceListener.nextPiece(gamePiece, i);
@@ -517,42 +355,41 @@ public class Game {
    */
   public void switchOff() {
     gameOn = false;
-    if(startTimer != null){
-      startTimer.cancel();
-      startTimer.purge();
+    running = false;
+    gameDeadline.cancel();
+    closeReplay();
+  }
+
+  /**
+   * Finish writing the replay of this game, if it is being recorded
+   */
+  private void closeReplay() {
+    if (recorder != null) {
+      recorder.close();
+      recorder = null;
     }
-    gameTimer.cancel();
-    gameTimer.purge();
   }
 
   /**
    * Rotate the current piece
    */
+  @Override
   public void rotateCurrentPiece(boolean clockwise) {
-    if (clockwise) {
-      currentPiece.rotate();
-    } else {
-      currentPiece.rotateInv();
-    }
     if(sfxOn) {
       Multimedia.playAudioEffect("sounds/rotate.wav");
     }
-    nextPiece(currentPiece, 3);
+    super.rotateCurrentPiece(clockwise);
   }
 
   /**
    * Method to swap the pieces
    */
+  @Override
   public void swapCurrentPiece() {
     if(sfxOn) {
       Multimedia.playAudioEffect("sounds/rotate.wav");
     }
-    var temp = currentPiece;
-    currentPiece = followingPiece;
-    followingPiece = temp;
-    //Pass to listener
-    nextPiece(currentPiece, 4);
-    nextPiece(followingPiece, 5);
+    super.swapCurrentPiece();
   }
 
   /**
@@ -569,49 +406,33 @@ public class Game {
    *
    * @param coordinates the coordinates of the cleared blocks
    */
+  @Override
   public void lineCleared(HashSet<GameBlockCoordinate> coordinates) {
+    //Play clear sound
+    if (!coordinates.isEmpty() && sfxOn) {
+      Multimedia.playAudioEffect("sounds/clear.wav");
+    }
     if (lineClearedListener != null) {
       lineClearedListener.lineCleared(coordinates);
     }
   }
 
   /**
-   * Get the time for the game loop
-   *
-   * @return
+   * Inform the player that no piece fits
    */
-  protected int getTimerDelay() {
-    int defaultTime = 12000;
-    if(hard){
-      defaultTime = 4500;
-    }
-    //Check if it is lower than 2500 milliseconds
-    if (defaultTime - (500 * getLevel()) <= 2500) {
-      return 2500;
-    } else {
-      return defaultTime - (500 * getLevel());
-    }
+  @Override
+  protected void noLegalMove() {
+    logger.info("No legal moves left, losing a life");
   }
 
   /**
-   * The loop that executes when the player does not place a block in the time left
+   * Inform the player a life has been lost
    */
-  protected void gameLoop() {
-    //Subtract one life
-    if (getLives() > 0) {
-      setLives(getLives() - 1);
-      logger.info("Lost a life!");
-      if(sfxOn) {
-        Multimedia.playAudioEffect("sounds/lifelose.wav");
-      }
-      //Create new GamePiece
-      currentPiece = spawnPiece();
-      this.nextPiece(currentPiece, 1);
-      resetMultiplier();
-      gameLooped();
-      resetTimer();
-    } else {
-      endGame();
+  @Override
+  protected void lifeLost() {
+    logger.info("Lost a life!");
+    if(sfxOn) {
+      Multimedia.playAudioEffect("sounds/lifelose.wav");
     }
   }
 
@@ -644,43 +465,40 @@ public class Game {
   /**
    * Ends the game
    */
+  @Override
   public void endGame(){
-    gameTimer.cancel();
-    gameTimer.purge();
+    super.endGame();
+    gameDeadline.cancel();
+    closeReplay();
     if (gameEndListener != null) {
       gameEndListener.gameEnded(this);
     }
   }
 
   /**
-   * Resets the timer
+   * Resets the timer, running the game loop on the FX thread once the time runs out
    */
+  @Override
   protected void resetTimer(){
-    nextPiece();
-    gameTimer.cancel();
-    gameTimer.purge();
-    gameTimer = new Timer();
-    gameTimerTask = new TimerTask() {
-      @Override
-      public void run() {
-        Platform.runLater(() -> gameLoop());
-      }
-    };
-    gameTimer.schedule(gameTimerTask, getTimerDelay());
+    super.resetTimer();
+    gameDeadline.schedule(getDeadline());
+    gameLooped();
   }
 
   /**
-   * Returns null is this is just a local game
-   * @return null
+   * Get the fraction of time left to play the current piece
+   *
+   * @return 1 when the piece has just been given, falling to 0 when out of time
    */
-  public ArrayList<Pair<String, Integer>> getScoresList() {
-    return null;
+  public double getTimerProgress() {
+    return gameDeadline.getProgress();
   }
 
   /**
-   * Makes the game "slightly" harder
+   * Returns null is this is just a local game
+   * @return null
    */
-  public void setHard(){
-    hard = true;
+  public ArrayList<Pair<String, Integer>> getScoresList() {
+    return null;
   }
 }
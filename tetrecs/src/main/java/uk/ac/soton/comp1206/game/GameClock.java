@@ -0,0 +1,21 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * A source of time for the game engine. Allows the game loop to run from a simulated clock instead
+ * of real time, for example when simulating games.
+ */
+public interface GameClock {
+
+  /**
+   * The clock backed by the system timer
+   */
+  GameClock SYSTEM = System::nanoTime;
+
+  /**
+   * Get the current time of this clock
+   *
+   * @return the time in nanoseconds, relative to an arbitrary origin
+   */
+  long nanoTime();
+
+}
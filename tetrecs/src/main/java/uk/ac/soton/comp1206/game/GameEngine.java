@@ -0,0 +1,757 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.HashSet;
+import uk.ac.soton.comp1206.event.GameActionListener;
+
+/**
+ * The GameEngine holds the rules and state of a TetrECS game without any dependency on JavaFX,
+ * audio or timers. It can be run in a plain JVM, for example to simulate many games at once.
+ * <p>
+ * Time is read from a GameClock. The engine does not schedule anything itself, instead the owner
+ * calls tick() (or gameLoop() when it knows the deadline has passed) to let the engine lose a life
+ * when the player runs out of time.
+ * <p>
+ * Subclasses can react to what happens in the game by overriding the protected hook methods, which
+ * do nothing here.
+ */
+public class GameEngine {
+
+  /**
+   * Number of rows
+   */
+  protected final int rows;
+
+  /**
+   * Number of columns
+   */
+  protected final int cols;
+
+  /**
+   * The grid model linked to the game
+   */
+  protected final Grid grid;
+
+  /**
+   * The clock the game loop deadline is measured against
+   */
+  protected final GameClock clock;
+
+  /**
+   * Where new pieces come from
+   */
+  protected PieceSource pieceSource;
+
+  /**
+   * Current piece to be played
+   */
+  protected GamePiece currentPiece;
+
+  /**
+   * The upcoming piece to be played
+   */
+  protected GamePiece followingPiece;
+
+  /**
+   * Whether the game has started and not yet ended
+   */
+  protected boolean running;
+
+  /**
+   * Told about every action in the game, for example to record a replay
+   */
+  private GameActionListener actionListener;
+
+  /**
+   * The score, initial value is 0
+   */
+  private int score = 0;
+
+  /**
+   * The level, initial value is 0
+   */
+  private int level = 0;
+
+  /**
+   * The lives, initial value 3
+   */
+  private int lives = 3;
+
+  /**
+   * The point multiplier, starts at 1
+   */
+  private int multiplier = 1;
+
+  /**
+   * The bound of the level to level up
+   */
+  private int levelUp = 1000;
+
+  /**
+   * Hard mode
+   */
+  private boolean hard = false;
+
+  /**
+   * The clock time at which the current piece runs out of time
+   */
+  private long deadline;
+
+  /**
+   * Create a new game engine with the specified rows and columns, timed by the given clock
+   *
+   * @param cols  number of columns
+   * @param rows  number of rows
+   * @param clock the clock to time the game loop with
+   */
+  public GameEngine(int cols, int rows, GameClock clock) {
+    this(cols, rows, clock, PieceSource.random(PieceGenerator.randomSeed()));
+  }
+
+  /**
+   * Create a new game engine with the specified rows and columns, timed by the given clock and
+   * dealt pieces from the given source
+   *
+   * @param cols        number of columns
+   * @param rows        number of rows
+   * @param clock       the clock to time the game loop with
+   * @param pieceSource where new pieces come from
+   */
+  public GameEngine(int cols, int rows, GameClock clock, PieceSource pieceSource) {
+    this.cols = cols;
+    this.rows = rows;
+    this.clock = clock;
+    this.pieceSource = pieceSource;
+    //Create a new grid model to represent the game state
+    this.grid = new Grid(cols, rows);
+  }
+
+  /**
+   * Start the game
+   */
+  public void start() {
+    initialiseGame();
+  }
+
+  /**
+   * Initialise a new game, creating the first two pieces and starting the game loop
+   */
+  public void initialiseGame() {
+    currentPiece = spawnPiece();
+    nextPiece(currentPiece, 1);
+    followingPiece = spawnPiece();
+    nextPiece(followingPiece, 2);
+    running = true;
+    resetTimer();
+  }
+
+  /**
+   * Attempt to play the current piece centred on the given x and y
+   *
+   * @param x column
+   * @param y row
+   * @return true if the piece was played
+   */
+  public boolean place(int x, int y) {
+    if (!running || currentPiece == null) {
+      return false;
+    }
+    if (actionListener != null) {
+      actionListener.placeRequested(x, y);
+    }
+    if (!grid.canPlayPiece(currentPiece, x, y)) {
+      placementFailed(x, y);
+      return false;
+    }
+    grid.playPiece(currentPiece, x, y);
+    piecePlaced(x, y);
+    afterPiece(x, y);
+    nextPiece();
+    resetTimer();
+    checkLegalMove();
+    return true;
+  }
+
+  /**
+   * Rotate the current piece
+   *
+   * @param clockwise true to rotate clockwise, false for counter-clockwise
+   */
+  public void rotateCurrentPiece(boolean clockwise) {
+    if (currentPiece == null) {
+      return;
+    }
+    if (actionListener != null) {
+      actionListener.rotateRequested(clockwise);
+    }
+    if (clockwise) {
+      currentPiece.rotate();
+    } else {
+      currentPiece.rotateInv();
+    }
+    nextPiece(currentPiece, 3);
+  }
+
+  /**
+   * Swap the current and following pieces, unless the game is not running
+   */
+  public void swapCurrentPiece() {
+    if (!running || currentPiece == null || followingPiece == null) {
+      return;
+    }
+    if (actionListener != null) {
+      actionListener.swapRequested();
+    }
+    var temp = currentPiece;
+    currentPiece = followingPiece;
+    followingPiece = temp;
+    nextPiece(currentPiece, 4);
+    nextPiece(followingPiece, 5);
+  }
+
+  /**
+   * Check the clock, and run the game loop if the current piece has run out of time
+   *
+   * @return true if the game loop ran
+   */
+  public boolean tick() {
+    if (!running || clock.nanoTime() - deadline < 0) {
+      return false;
+    }
+    gameLoop();
+    return true;
+  }
+
+  /**
+   * The loop that executes when the player does not place a block in the time left. Loses a life,
+   * or ends the game when there are none left.
+   */
+  protected void gameLoop() {
+    if (actionListener != null) {
+      actionListener.timerExpired();
+    }
+    loseLife();
+  }
+
+  /**
+   * Lose a life and deal a new piece, or end the game when there are no lives left
+   */
+  private void loseLife() {
+    if (getLives() > 0) {
+      setLives(getLives() - 1);
+      resetMultiplier();
+      nextPiece();
+      resetTimer();
+      lifeLost();
+      checkLegalMove();
+    } else {
+      endGame();
+    }
+  }
+
+  /**
+   * Lose a life straight away if neither the current nor the following piece fits anywhere, as
+   * the player could only wait for the timer. Not an action of the player, so it is not recorded:
+   * playing the recorded actions back reaches the same position again.
+   */
+  protected void checkLegalMove() {
+    if (!running || currentPiece == null || followingPiece == null || hasLegalMove()) {
+      return;
+    }
+    noLegalMove();
+    loseLife();
+  }
+
+  /**
+   * End the game
+   */
+  public void endGame() {
+    running = false;
+  }
+
+  /**
+   * Get a new piece from the piece source
+   *
+   * @return the new piece
+   */
+  protected GamePiece spawnPiece() {
+    var gamePiece = pieceSource.next();
+    if (actionListener != null) {
+      actionListener.pieceSpawned(gamePiece);
+    }
+    return gamePiece;
+  }
+
+  /**
+   * Replaces the current piece with the following piece, and spawns a new following piece
+   */
+  protected void nextPiece() {
+    currentPiece = followingPiece;
+    nextPiece(currentPiece, 1);
+    followingPiece = spawnPiece();
+    nextPiece(followingPiece, 2);
+  }
+
+  /**
+   * Clears any full vertical/horizontal lines created by the piece just played, and scores them
+   *
+   * @param x x coordinate the piece was played at
+   * @param y y coordinate the piece was played at
+   */
+  protected void afterPiece(int x, int y) {
+    var coordinates = new HashSet<GameBlockCoordinate>();
+    int lines = grid.clearLines(currentPiece, x, y, coordinates);
+    score(lines, coordinates.size());
+    lineCleared(coordinates);
+  }
+
+  /**
+   * Adds to the score if lines are cleared, otherwise resets the multiplier
+   *
+   * @param lines         cleared lines
+   * @param blocksCleared cleared blocks
+   */
+  protected void score(int lines, int blocksCleared) {
+    if (lines != 0 && blocksCleared != 0) {
+      //Current score + linesCleared*blocksCleared*10*multiplier
+      setScore(getScore() + (lines * blocksCleared * 10 * getMultiplier()));
+      setMultiplier(getMultiplier() + 1);
+      updateLevel();
+    } else {
+      resetMultiplier();
+    }
+  }
+
+  /**
+   * Check if level can increase
+   */
+  protected void updateLevel() {
+    if (getScore() >= levelUp) {
+      setLevel(getLevel() + 1);
+      //Increases bound for next level
+      levelUp += 1000;
+    }
+  }
+
+  /**
+   * Restart the time the current piece has to be played in
+   */
+  protected void resetTimer() {
+    deadline = clock.nanoTime() + getTimerDelay() * 1_000_000L;
+  }
+
+  /**
+   * Get the time for the game loop
+   *
+   * @return the time in milliseconds
+   */
+  protected int getTimerDelay() {
+    int defaultTime = 12000;
+    if (hard) {
+      defaultTime = 4500;
+    }
+    //Never lower than 2500 milliseconds
+    return Math.max(2500, defaultTime - (500 * getLevel()));
+  }
+
+  /**
+   * Get the clock time at which the current piece runs out of time
+   *
+   * @return the deadline in clock nanoseconds
+   */
+  public long getDeadline() {
+    return deadline;
+  }
+
+  /**
+   * Get the time left to play the current piece
+   *
+   * @return the remaining time in nanoseconds, never negative
+   */
+  public long getTimeRemaining() {
+    return Math.max(0, deadline - clock.nanoTime());
+  }
+
+  /**
+   * Take a copy of the state of the game, which can be restored later
+   *
+   * @return the snapshot
+   */
+  public Snapshot snapshot() {
+    return new Snapshot(this);
+  }
+
+  /**
+   * Put the game back into the state of a snapshot. The current and following pieces are replaced
+   * with new pieces, so the piece hooks are called for both.
+   *
+   * @param snapshot the snapshot, taken from a game of the same size
+   */
+  public void restore(Snapshot snapshot) {
+    grid.restoreValues(snapshot.values);
+    currentPiece = snapshot.current < 0 ? null
+        : GamePiece.createPiece(snapshot.current / GamePiece.ROTATIONS,
+            snapshot.current % GamePiece.ROTATIONS);
+    followingPiece = snapshot.following < 0 ? null
+        : GamePiece.createPiece(snapshot.following / GamePiece.ROTATIONS,
+            snapshot.following % GamePiece.ROTATIONS);
+    if (currentPiece != null) {
+      nextPiece(currentPiece, 1);
+    }
+    if (followingPiece != null) {
+      nextPiece(followingPiece, 2);
+    }
+    setScore(snapshot.score);
+    setLevel(snapshot.level);
+    setLives(snapshot.lives);
+    setMultiplier(snapshot.multiplier);
+    levelUp = snapshot.levelUp;
+    hard = snapshot.hard;
+    running = snapshot.running;
+    deadline = snapshot.deadline;
+  }
+
+  /**
+   * Called when a piece becomes the current or following piece, is rotated or swapped
+   *
+   * @param gamePiece the piece
+   * @param i         the identifier of the action, as passed to a NextPieceListener
+   */
+  protected void nextPiece(GamePiece gamePiece, int i) {
+  }
+
+  /**
+   * Called after the current piece has been played, before any lines are cleared
+   *
+   * @param x column
+   * @param y row
+   */
+  protected void piecePlaced(int x, int y) {
+  }
+
+  /**
+   * Called when the current piece could not be played at a position
+   *
+   * @param x column
+   * @param y row
+   */
+  protected void placementFailed(int x, int y) {
+  }
+
+  /**
+   * Called after lines have been checked for clearing, with the blocks that were cleared
+   *
+   * @param coordinates the cleared blocks, empty if no lines were cleared
+   */
+  protected void lineCleared(HashSet<GameBlockCoordinate> coordinates) {
+  }
+
+  /**
+   * Called after a life has been lost
+   */
+  protected void lifeLost() {
+  }
+
+  /**
+   * Called when neither the current nor the following piece can be played, just before a life is
+   * lost for it
+   */
+  protected void noLegalMove() {
+  }
+
+  /**
+   * Get the grid model inside this game representing the game state of the board
+   *
+   * @return game grid model
+   */
+  public Grid getGrid() {
+    return grid;
+  }
+
+  /**
+   * Get the number of columns in this game
+   *
+   * @return number of columns
+   */
+  public int getCols() {
+    return cols;
+  }
+
+  /**
+   * Get the number of rows in this game
+   *
+   * @return number of rows
+   */
+  public int getRows() {
+    return rows;
+  }
+
+  /**
+   * Get the piece to be played
+   *
+   * @return the current piece
+   */
+  public GamePiece getCurrentPiece() {
+    return currentPiece;
+  }
+
+  /**
+   * Get the piece to be played after the current one
+   *
+   * @return the following piece
+   */
+  public GamePiece getFollowingPiece() {
+    return followingPiece;
+  }
+
+  /**
+   * Set the listener told about every action in the game
+   *
+   * @param listener the listener
+   */
+  public void setActionListener(GameActionListener listener) {
+    this.actionListener = listener;
+  }
+
+  /**
+   * Get the clock the game loop deadline is measured against
+   *
+   * @return the clock
+   */
+  public GameClock getClock() {
+    return clock;
+  }
+
+  /**
+   * Get where new pieces come from
+   *
+   * @return the piece source
+   */
+  public PieceSource getPieceSource() {
+    return pieceSource;
+  }
+
+  /**
+   * Set where new pieces come from, before the game starts
+   *
+   * @param pieceSource the piece source
+   */
+  public void setPieceSource(PieceSource pieceSource) {
+    this.pieceSource = pieceSource;
+  }
+
+  /**
+   * Check whether the current or following piece can be played anywhere on the grid
+   *
+   * @return true if the player has at least one legal move
+   */
+  public boolean hasLegalMove() {
+    return (currentPiece != null && grid.hasLegalMove(currentPiece))
+        || (followingPiece != null && grid.hasLegalMove(followingPiece));
+  }
+
+  /**
+   * Check whether the game has started and not ended
+   *
+   * @return true while the game is running
+   */
+  public boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * Gets the score
+   *
+   * @return the score
+   */
+  public int getScore() {
+    return score;
+  }
+
+  /**
+   * Sets the score
+   *
+   * @param score the score
+   */
+  public void setScore(int score) {
+    this.score = score;
+  }
+
+  /**
+   * Gets the level
+   *
+   * @return the level
+   */
+  public int getLevel() {
+    return level;
+  }
+
+  /**
+   * Sets the level
+   *
+   * @param level the level
+   */
+  public void setLevel(int level) {
+    this.level = level;
+  }
+
+  /**
+   * Gets the lives available
+   *
+   * @return the lives
+   */
+  public int getLives() {
+    return lives;
+  }
+
+  /**
+   * Sets the lives
+   *
+   * @param lives the lives
+   */
+  public void setLives(int lives) {
+    this.lives = lives;
+  }
+
+  /**
+   * Gets the multiplier
+   *
+   * @return multiplier
+   */
+  public int getMultiplier() {
+    return multiplier;
+  }
+
+  /**
+   * Sets the multiplier
+   *
+   * @param multiplier multiplier
+   */
+  public void setMultiplier(int multiplier) {
+    this.multiplier = multiplier;
+  }
+
+  /**
+   * Resets the multiplier back to 1
+   */
+  public void resetMultiplier() {
+    setMultiplier(1);
+  }
+
+  /**
+   * Makes the game "slightly" harder
+   */
+  public void setHard() {
+    hard = true;
+  }
+
+  /**
+   * Check whether the game is in hard mode
+   *
+   * @return true if hard
+   */
+  public boolean isHard() {
+    return hard;
+  }
+
+  /**
+   * An immutable copy of the state of a game
+   */
+  public static final class Snapshot {
+
+    /**
+     * The value of every block
+     */
+    private final byte[] values;
+
+    /**
+     * The current piece as (piece * 4 + rotation), or -1
+     */
+    private final int current;
+
+    /**
+     * The following piece as (piece * 4 + rotation), or -1
+     */
+    private final int following;
+
+    /**
+     * The score
+     */
+    private final int score;
+
+    /**
+     * The level
+     */
+    private final int level;
+
+    /**
+     * The lives
+     */
+    private final int lives;
+
+    /**
+     * The multiplier
+     */
+    private final int multiplier;
+
+    /**
+     * The score needed for the next level
+     */
+    private final int levelUp;
+
+    /**
+     * Hard mode
+     */
+    private final boolean hard;
+
+    /**
+     * Whether the game was running
+     */
+    private final boolean running;
+
+    /**
+     * The deadline of the current piece
+     */
+    private final long deadline;
+
+    /**
+     * Copy the state of a game
+     *
+     * @param engine the game
+     */
+    private Snapshot(GameEngine engine) {
+      values = engine.grid.copyValues();
+      current = encode(engine.currentPiece);
+      following = encode(engine.followingPiece);
+      score = engine.getScore();
+      level = engine.getLevel();
+      lives = engine.getLives();
+      multiplier = engine.getMultiplier();
+      levelUp = engine.levelUp;
+      hard = engine.hard;
+      running = engine.running;
+      deadline = engine.deadline;
+    }
+
+    /**
+     * Encode a piece and its rotation as a single number
+     *
+     * @param gamePiece the piece
+     * @return (piece * 4 + rotation), or -1 if there is no piece
+     */
+    private static int encode(GamePiece gamePiece) {
+      if (gamePiece == null) {
+        return -1;
+      }
+      return gamePiece.getPiece() * GamePiece.ROTATIONS + gamePiece.getRotation();
+    }
+
+    /**
+     * Get the score of the game
+     *
+     * @return the score
+     */
+    public int getScore() {
+      return score;
+    }
+  }
+}
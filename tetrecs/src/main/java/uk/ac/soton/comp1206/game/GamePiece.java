@@ -5,6 +5,9 @@ package uk.ac.soton.comp1206.game;
  *
  * The GamePiece class also contains a factory for producing a GamePiece of a particular shape, as specified by it's
  * number.
+ *
+ * Every shape in every rotation is precomputed once as an immutable Orientation, so rotating a piece only switches
+ * which Orientation it refers to.
  */
 public class GamePiece {
 
@@ -14,120 +17,71 @@ public class GamePiece {
     public static final int PIECES = 15;
 
     /**
-     * The 2D grid representation of the shape of this piece
+     * The number of distinct rotations of a piece
      */
-    private int[][] blocks;
+    public static final int ROTATIONS = 4;
 
     /**
-     * The value of this piece
+     * The names of each piece, by piece number
      */
-    private final int value;
+    private static final String[] NAMES = {
+        "Line", "C", "Plus", "Dot", "Square", "L", "J", "S", "Z", "T", "X", "Corner", "Inverse Corner", "Diagonal",
+        "Double"
+    };
 
     /**
-     * The name of this piece
+     * The unrotated 3x3 block makeup of each piece, by piece number
      */
-    private final String name;
+    private static final int[][][] SHAPES = {
+        {{0, 0, 0}, {1, 1, 1}, {0, 0, 0}},
+        {{0, 0, 0}, {1, 1, 1}, {1, 0, 1}},
+        {{0, 1, 0}, {1, 1, 1}, {0, 1, 0}},
+        {{0, 0, 0}, {0, 1, 0}, {0, 0, 0}},
+        {{1, 1, 0}, {1, 1, 0}, {0, 0, 0}},
+        {{0, 0, 0}, {1, 1, 1}, {0, 0, 1}},
+        {{0, 0, 1}, {1, 1, 1}, {0, 0, 0}},
+        {{0, 0, 0}, {0, 1, 1}, {1, 1, 0}},
+        {{1, 1, 0}, {0, 1, 1}, {0, 0, 0}},
+        {{1, 0, 0}, {1, 1, 0}, {1, 0, 0}},
+        {{1, 0, 1}, {0, 1, 0}, {1, 0, 1}},
+        {{0, 0, 0}, {1, 1, 0}, {1, 0, 0}},
+        {{1, 0, 0}, {1, 1, 0}, {0, 0, 0}},
+        {{1, 0, 0}, {0, 1, 0}, {0, 0, 1}},
+        {{0, 1, 0}, {0, 1, 0}, {0, 0, 0}}
+    };
 
     /**
-     * Create a new GamePiece of the specified piece number
-     * @param piece piece number
-     * @return the created GamePiece
+     * Every orientation of every piece, indexed by piece number and then rotation
      */
-    public static GamePiece createPiece(int piece) {
-        switch (piece) {
-            //Line
-            case 0 -> {
-                int[][] blocks = {{0, 0, 0}, {1, 1, 1}, {0, 0, 0}};
-                return new GamePiece("Line", blocks, 1);
-            }
-
-            //C
-            case 1 -> {
-                int[][] blocks = {{0, 0, 0}, {1, 1, 1}, {1, 0, 1}};
-                return new GamePiece("C", blocks, 2);
-            }
-
-            //Plus
-            case 2 -> {
-                int[][] blocks = {{0, 1, 0}, {1, 1, 1}, {0, 1, 0}};
-                return new GamePiece("Plus", blocks, 3);
-            }
-
-            //Dot
-            case 3 -> {
-                int[][] blocks = {{0, 0, 0}, {0, 1, 0}, {0, 0, 0}};
-                return new GamePiece("Dot", blocks, 4);
-            }
-
-            //Square
-            case 4 -> {
-                int[][] blocks = {{1, 1, 0}, {1, 1, 0}, {0, 0, 0}};
-                return new GamePiece("Square", blocks, 5);
-            }
-
-            //L
-            case 5 -> {
-                int[][] blocks = {{0, 0, 0}, {1, 1, 1}, {0, 0, 1}};
-                return new GamePiece("L", blocks, 6);
-            }
-
-            //J
-            case 6 -> {
-                int[][] blocks = {{0, 0, 1}, {1, 1, 1}, {0, 0, 0}};
-                return new GamePiece("J", blocks, 7);
-            }
-
-            //S
-            case 7 -> {
-                int[][] blocks = {{0, 0, 0}, {0, 1, 1}, {1, 1, 0}};
-                return new GamePiece("S", blocks, 8);
-            }
-
-            //Z
-            case 8 -> {
-                int[][] blocks = {{1, 1, 0}, {0, 1, 1}, {0, 0, 0}};
-                return new GamePiece("Z", blocks, 9);
-            }
-
-            //T
-            case 9 -> {
-                int[][] blocks = {{1, 0, 0}, {1, 1, 0}, {1, 0, 0}};
-                return new GamePiece("T", blocks, 10);
-            }
-
-            //X
-            case 10 -> {
-                int[][] blocks = {{1, 0, 1}, {0, 1, 0}, {1, 0, 1}};
-                return new GamePiece("X", blocks, 11);
-            }
-
-            //Corner
-            case 11 -> {
-                int[][] blocks = {{0, 0, 0}, {1, 1, 0}, {1, 0, 0}};
-                return new GamePiece("Corner", blocks, 12);
-            }
-
-            //Inverse Corner
-            case 12 -> {
-                int[][] blocks = {{1, 0, 0}, {1, 1, 0}, {0, 0, 0}};
-                return new GamePiece("Inverse Corner", blocks, 13);
+    private static final Orientation[][] ORIENTATIONS = new Orientation[PIECES][ROTATIONS];
+
+    static {
+        for (int piece = 0; piece < PIECES; piece++) {
+            var blocks = SHAPES[piece];
+            for (int rotation = 0; rotation < ROTATIONS; rotation++) {
+                ORIENTATIONS[piece][rotation] = new Orientation(piece, rotation, blocks);
+                blocks = rotateClockwise(blocks);
             }
+        }
+    }
 
-            //Diagonal
-            case 13 -> {
-                int[][] blocks = {{1, 0, 0}, {0, 1, 0}, {0, 0, 1}};
-                return new GamePiece("Diagonal", blocks, 14);
-            }
+    /**
+     * The number of this piece
+     */
+    private final int piece;
 
-            //Double
-            case 14 -> {
-                int[][] blocks = {{0, 1, 0}, {0, 1, 0}, {0, 0, 0}};
-                return new GamePiece("Double", blocks, 15);
-            }
-        }
+    /**
+     * The current orientation of this piece
+     */
+    private Orientation orientation;
 
-        //Not a valid piece number
-        throw new IndexOutOfBoundsException("No such piece: " + piece);
+    /**
+     * Create a new GamePiece of the specified piece number
+     * @param piece piece number
+     * @return the created GamePiece
+     */
+    public static GamePiece createPiece(int piece) {
+        return createPiece(piece, 0);
     }
 
     /**
@@ -137,31 +91,32 @@ public class GamePiece {
      * @return the created GamePiece
      */
     public static GamePiece createPiece(int piece, int rotation) {
-        var newPiece = createPiece(piece);
+        if (piece < 0 || piece >= PIECES) {
+            //Not a valid piece number
+            throw new IndexOutOfBoundsException("No such piece: " + piece);
+        }
+        return new GamePiece(piece, rotation);
+    }
 
-        newPiece.rotate(rotation);
-        return newPiece;
+    /**
+     * Get the precomputed orientation of a piece without creating a GamePiece
+     * @param piece piece number
+     * @param rotation number of clockwise rotations
+     * @return the orientation
+     */
+    public static Orientation getOrientation(int piece, int rotation) {
+        return ORIENTATIONS[piece][rotation & (ROTATIONS - 1)];
     }
 
     /**
-     * Create a new GamePiece with the given name, block makeup and value. Should not be called directly, only via the
+     * Create a new GamePiece with the given piece number and rotation. Should not be called directly, only via the
      * factory.
-     * @param name name of the piece
-     * @param blocks block makeup of the piece
-     * @param value the value of this piece
-     */
-    private GamePiece(String name, int[][] blocks, int value) {
-        this.name = name;
-        this.blocks = blocks;
-        this.value = value;
-
-        //Use the shape of the block to create a grid with either 0 (empty) or the value of this shape for each block.
-        for(int x = 0; x < blocks.length; x++) {
-            for (int y = 0; y < blocks[x].length; y++) {
-                if(blocks[x][y] == 0) continue;
-                blocks[x][y] = value;
-            }
-        }
+     * @param piece piece number
+     * @param rotation number of clockwise rotations
+     */
+    private GamePiece(int piece, int rotation) {
+        this.piece = piece;
+        this.orientation = getOrientation(piece, rotation);
     }
 
     /**
@@ -169,15 +124,39 @@ public class GamePiece {
      * @return piece value
      */
     public int getValue() {
-        return value;
+        return piece + 1;
+    }
+
+    /**
+     * Get the number of this piece, as used by the factory
+     * @return piece number
+     */
+    public int getPiece() {
+        return piece;
+    }
+
+    /**
+     * Get the number of clockwise rotations this piece has been turned by
+     * @return rotation between 0 and 3
+     */
+    public int getRotation() {
+        return orientation.getRotation();
+    }
+
+    /**
+     * Get the current orientation of this piece
+     * @return the orientation
+     */
+    public Orientation getOrientation() {
+        return orientation;
     }
 
     /**
-     * Get the block makeup of this piece
+     * Get the block makeup of this piece. The array is shared and must not be modified.
      * @return 2D grid of the blocks representing the piece shape
      */
     public int[][] getBlocks() {
-        return blocks;
+        return orientation.getBlocks();
     }
 
     /**
@@ -185,49 +164,21 @@ public class GamePiece {
      * @param rotations number of rotations
      */
     public void rotate(int rotations) {
-        for(int rotated = 0; rotated < rotations; rotated ++) {
-            rotate();
-        }
+        orientation = getOrientation(piece, orientation.getRotation() + rotations);
     }
 
     /**
-     * Rotate this piece exactly once by rotating its 3x3 grid clockwise
+     * Rotate this piece exactly once clockwise
      */
     public void rotate() {
-        int[][] rotated = new int[blocks.length][blocks[0].length];
-        rotated[2][0] = blocks[0][0];
-        rotated[1][0] = blocks[0][1];
-        rotated[0][0] = blocks[0][2];
-
-        rotated[2][1] = blocks[1][0];
-        rotated[1][1] = blocks[1][1];
-        rotated[0][1] = blocks[1][2];
-
-        rotated[2][2] = blocks[2][0];
-        rotated[1][2] = blocks[2][1];
-        rotated[0][2] = blocks[2][2];
-
-        blocks = rotated;
+        rotate(1);
     }
 
     /**
-     * Rotate this piece exactly once by rotating its 3x3 grid counter-clockwise
+     * Rotate this piece exactly once counter-clockwise
      */
     public void rotateInv() {
-        int[][] rotated = new int[blocks.length][blocks[0].length];
-        rotated[2][0] = blocks[2][2];
-        rotated[1][0] = blocks[2][1];
-        rotated[0][0] = blocks[2][0];
-
-        rotated[2][1] = blocks[1][2];
-        rotated[1][1] = blocks[1][1];
-        rotated[0][1] = blocks[1][0];
-
-        rotated[2][2] = blocks[0][2];
-        rotated[1][2] = blocks[0][1];
-        rotated[0][2] = blocks[0][0];
-
-        blocks = rotated;
+        rotate(ROTATIONS - 1);
     }
 
     /**
@@ -235,9 +186,174 @@ public class GamePiece {
      * @return the name of this piece
      */
     public String toString() {
-        return this.name;
+        return NAMES[piece];
     }
 
+    /**
+     * Rotate a 3x3 grid clockwise
+     * @param blocks the grid to rotate
+     * @return a new rotated grid
+     */
+    private static int[][] rotateClockwise(int[][] blocks) {
+        int[][] rotated = new int[3][3];
+        for (int x = 0; x < 3; x++) {
+            for (int y = 0; y < 3; y++) {
+                rotated[2 - y][x] = blocks[x][y];
+            }
+        }
+        return rotated;
+    }
 
+    /**
+     * An Orientation is one rotation of one piece. Orientations are precomputed and shared, and never change.
+     *
+     * Alongside the 3x3 block makeup it holds a bitmask of the filled blocks, where bit (y * 3 + x) is set when the
+     * block at x and y is filled, and the bounding box of the filled blocks.
+     */
+    public static final class Orientation {
+
+        /**
+         * The piece number
+         */
+        private final int piece;
+
+        /**
+         * The number of clockwise rotations from the base shape
+         */
+        private final int rotation;
+
+        /**
+         * The 3x3 grid of blocks, holding the value of the piece where filled
+         */
+        private final int[][] blocks;
+
+        /**
+         * Bitmask of the filled blocks
+         */
+        private final int mask;
+
+        /**
+         * The number of filled blocks
+         */
+        private final int size;
+
+        /**
+         * Bounding box of the filled blocks, inclusive
+         */
+        private final int minX, minY, maxX, maxY;
+
+        /**
+         * Create a new orientation from its 3x3 shape
+         * @param piece piece number
+         * @param rotation number of clockwise rotations
+         * @param shape the shape, with non-zero values for filled blocks
+         */
+        private Orientation(int piece, int rotation, int[][] shape) {
+            this.piece = piece;
+            this.rotation = rotation;
+            this.blocks = new int[3][3];
+
+            int mask = 0;
+            int minX = 3, minY = 3, maxX = -1, maxY = -1;
+            for (int x = 0; x < 3; x++) {
+                for (int y = 0; y < 3; y++) {
+                    if (shape[x][y] == 0) continue;
+                    blocks[x][y] = piece + 1;
+                    mask |= 1 << (y * 3 + x);
+                    minX = Math.min(minX, x);
+                    minY = Math.min(minY, y);
+                    maxX = Math.max(maxX, x);
+                    maxY = Math.max(maxY, y);
+                }
+            }
+            this.mask = mask;
+            this.size = Integer.bitCount(mask);
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+        }
+
+        /**
+         * Get the piece number
+         * @return piece number
+         */
+        public int getPiece() {
+            return piece;
+        }
+
+        /**
+         * Get the number of clockwise rotations from the base shape
+         * @return rotation between 0 and 3
+         */
+        public int getRotation() {
+            return rotation;
+        }
+
+        /**
+         * Get the 3x3 block makeup. The array is shared and must not be modified.
+         * @return 2D grid of the blocks
+         */
+        public int[][] getBlocks() {
+            return blocks;
+        }
+
+        /**
+         * Get the bitmask of filled blocks, bit (y * 3 + x) is set when the block at x and y is filled
+         * @return the mask
+         */
+        public int getMask() {
+            return mask;
+        }
+
+        /**
+         * Get the number of filled blocks
+         * @return block count
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * Get the lowest column holding a block
+         * @return column within the 3x3 grid
+         */
+        public int getMinX() {
+            return minX;
+        }
+
+        /**
+         * Get the lowest row holding a block
+         * @return row within the 3x3 grid
+         */
+        public int getMinY() {
+            return minY;
+        }
+
+        /**
+         * Get the highest column holding a block
+         * @return column within the 3x3 grid
+         */
+        public int getMaxX() {
+            return maxX;
+        }
+
+        /**
+         * Get the highest row holding a block
+         * @return row within the 3x3 grid
+         */
+        public int getMaxY() {
+            return maxY;
+        }
+
+        /**
+         * Get the orientation reached by rotating this one
+         * @param rotations number of clockwise rotations
+         * @return the rotated orientation
+         */
+        public Orientation rotate(int rotations) {
+            return getOrientation(piece, rotation + rotations);
+        }
+    }
 
 }
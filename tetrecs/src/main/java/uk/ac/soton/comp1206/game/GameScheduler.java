@@ -0,0 +1,156 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The GameScheduler runs every delayed game task on one shared background thread, instead of a
+ * new Timer thread per task.
+ * <p>
+ * Tasks run on the scheduler thread, so anything touching the UI should hand over to the FX thread
+ * with Platform.runLater.
+ */
+public class GameScheduler {
+
+  private static final Logger logger = LogManager.getLogger(GameScheduler.class);
+
+  /**
+   * The single thread all game tasks are run on
+   */
+  private static final ScheduledThreadPoolExecutor executor = createExecutor();
+
+  /**
+   * Create the executor, with a daemon thread so it never keeps the application alive
+   *
+   * @return the executor
+   */
+  private static ScheduledThreadPoolExecutor createExecutor() {
+    var executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+      var thread = new Thread(runnable, "GameScheduler");
+      thread.setDaemon(true);
+      return thread;
+    });
+    //Cancelled tasks are dropped straight away rather than waiting in the queue
+    executor.setRemoveOnCancelPolicy(true);
+    return executor;
+  }
+
+  /**
+   * Run a task once after a delay
+   *
+   * @param task   the task to run
+   * @param millis the delay in milliseconds
+   * @return a future which can be used to cancel the task
+   */
+  public static ScheduledFuture<?> schedule(Runnable task, long millis) {
+    return executor.schedule(() -> run(task), millis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Create a new deadline which runs the given task when it expires. The deadline does nothing
+   * until it is scheduled.
+   *
+   * @param task the task to run
+   * @return the deadline
+   */
+  public static Deadline createDeadline(Runnable task) {
+    return new Deadline(task);
+  }
+
+  /**
+   * Run a task, logging anything it throws so the scheduler thread carries on
+   *
+   * @param task the task
+   */
+  private static void run(Runnable task) {
+    try {
+      task.run();
+    } catch (Exception e) {
+      logger.error("Scheduled task failed: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * A Deadline is a single point in time, measured with System.nanoTime, at which a task should
+   * run. It can be moved any number of times, only the latest time is ever run.
+   */
+  public static class Deadline {
+
+    /**
+     * The task to run when the deadline expires
+     */
+    private final Runnable task;
+
+    /**
+     * The pending run of the task, if any
+     */
+    private ScheduledFuture<?> future;
+
+    /**
+     * When the deadline was last scheduled, in nanoseconds
+     */
+    private volatile long start;
+
+    /**
+     * When the deadline expires, in nanoseconds
+     */
+    private volatile long deadline;
+
+    /**
+     * Create a new deadline
+     *
+     * @param task the task to run when it expires
+     */
+    private Deadline(Runnable task) {
+      this.task = task;
+    }
+
+    /**
+     * Schedule the deadline to expire at the given time, replacing any previous time
+     *
+     * @param deadline the time to expire at, as given by System.nanoTime
+     */
+    public synchronized void schedule(long deadline) {
+      cancel();
+      this.start = System.nanoTime();
+      this.deadline = deadline;
+      future = executor.schedule(() -> run(task), deadline - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Cancel the deadline so the task does not run
+     */
+    public synchronized void cancel() {
+      if (future != null) {
+        future.cancel(false);
+        future = null;
+      }
+      deadline = start;
+    }
+
+    /**
+     * Get the time left until the deadline expires
+     *
+     * @return the remaining time in nanoseconds, never negative
+     */
+    public long getRemaining() {
+      return Math.max(0, deadline - System.nanoTime());
+    }
+
+    /**
+     * Get the fraction of time left until the deadline expires
+     *
+     * @return 1 when just scheduled, falling to 0 when expired or cancelled
+     */
+    public double getProgress() {
+      var duration = deadline - start;
+      if (duration <= 0) {
+        return 0;
+      }
+      return Math.min(1, (double) getRemaining() / duration);
+    }
+  }
+}
@@ -1,20 +1,23 @@
 package uk.ac.soton.comp1206.game;
 
-import javafx.beans.property.IntegerProperty;
-import javafx.beans.property.SimpleIntegerProperty;
-import uk.ac.soton.comp1206.Utility.Multimedia;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import uk.ac.soton.comp1206.event.GridChangedListener;
 
 /**
  * The Grid is a model which holds the state of a game board. It is made up of a set of Integer
  * values arranged in a 2D array, with rows and columns.
  * <p>
- * Each value inside the Grid is an IntegerProperty can be bound to enable modification and display
- * of the contents of the grid.
+ * Occupancy is stored as a bitmask of longs, one bit per block in row-major order, alongside a
+ * compact array holding the colour value of each block. A running count of filled blocks is kept
+ * for every row and column, so full lines can be found without scanning the grid. The Grid does
+ * not depend on JavaFX and can be used off the FX thread, for example for simulations.
  * <p>
  * The Grid contains functions related to modifying the model, for example, placing a piece inside
  * the grid.
  * <p>
- * The Grid should be linked to a GameBoard for its display.
+ * The Grid should be linked to a GameBoard for its display, through an ObservableGrid.
  */
 public class Grid {
 
@@ -29,9 +32,29 @@ public class Grid {
   private final int rows;
 
   /**
-   * The grid is a 2D array with rows and columns of SimpleIntegerProperties.
+   * The occupied blocks of the grid, bit (y * cols + x) is set when the block at x and y is filled
    */
-  private final SimpleIntegerProperty[][] grid;
+  private final long[] occupancy;
+
+  /**
+   * The value of every block in the grid, indexed by (y * cols + x)
+   */
+  private final byte[] values;
+
+  /**
+   * The number of filled blocks in each row
+   */
+  private final int[] rowFill;
+
+  /**
+   * The number of filled blocks in each column
+   */
+  private final int[] colFill;
+
+  /**
+   * Listeners to call when a value in the grid changes
+   */
+  private final List<GridChangedListener> listeners = new ArrayList<>();
 
   /**
    * Create a new Grid with the specified number of columns and rows and initialise them
@@ -43,27 +66,29 @@ public class Grid {
     this.cols = cols;
     this.rows = rows;
 
-    //Create the grid itself
-    grid = new SimpleIntegerProperty[cols][rows];
+    //Create the grid itself, every block starts empty
+    occupancy = new long[(cols * rows + 63) >>> 6];
+    values = new byte[cols * rows];
+    rowFill = new int[rows];
+    colFill = new int[cols];
+  }
 
-    //Add a SimpleIntegerProperty to every block in the grid
-    for (var y = 0; y < rows; y++) {
-      for (var x = 0; x < cols; x++) {
-        grid[x][y] = new SimpleIntegerProperty(0);
-      }
-    }
+  /**
+   * Add a listener to be called when a value in the grid changes
+   *
+   * @param listener the listener to add
+   */
+  public void addListener(GridChangedListener listener) {
+    listeners.add(listener);
   }
 
   /**
-   * Get the Integer property contained inside the grid at a given row and column index. Can be used
-   * for binding.
+   * Remove a previously added listener
    *
-   * @param x column
-   * @param y row
-   * @return the IntegerProperty at the given x and y in this grid
+   * @param listener the listener to remove
    */
-  public IntegerProperty getGridProperty(int x, int y) {
-    return grid[x][y];
+  public void removeListener(GridChangedListener listener) {
+    listeners.remove(listener);
   }
 
   /**
@@ -74,7 +99,25 @@ public class Grid {
    * @param value the new value
    */
   public void set(int x, int y, int value) {
-    grid[x][y].set(value);
+    var index = y * cols + x;
+    var previous = values[index];
+    if (previous == value) {
+      return;
+    }
+    values[index] = (byte) value;
+    if (value == 0) {
+      occupancy[index >>> 6] &= ~(1L << index);
+      rowFill[y]--;
+      colFill[x]--;
+    } else if (previous == 0) {
+      occupancy[index >>> 6] |= 1L << index;
+      rowFill[y]++;
+      colFill[x]++;
+    }
+
+    for (GridChangedListener listener : listeners) {
+      listener.gridChanged(x, y, value);
+    }
   }
 
   /**
@@ -82,16 +125,83 @@ public class Grid {
    *
    * @param x column
    * @param y row
-   * @return the value
+   * @return the value, or -1 if there is no such block
    */
   public int get(int x, int y) {
-    try {
-      //Get the value held in the property at the x and y index provided
-      return grid[x][y].get();
-    } catch (ArrayIndexOutOfBoundsException e) {
+    if (x < 0 || y < 0 || x >= cols || y >= rows) {
       //No such index
       return -1;
     }
+    return values[y * cols + x];
+  }
+
+  /**
+   * Check whether the block at the given x and y index is filled. Blocks outside the grid count as
+   * filled.
+   *
+   * @param x column
+   * @param y row
+   * @return true if the block is filled or does not exist
+   */
+  public boolean isFilled(int x, int y) {
+    if (x < 0 || y < 0 || x >= cols || y >= rows) {
+      return true;
+    }
+    var index = y * cols + x;
+    return (occupancy[index >>> 6] & (1L << index)) != 0;
+  }
+
+  /**
+   * Get the occupancy bitmask of this grid. Bit (y * cols + x) is set when the block at x and y is
+   * filled. The returned array is the live state of the grid and must not be modified.
+   *
+   * @return the occupancy words
+   */
+  public long[] getOccupancy() {
+    return occupancy;
+  }
+
+  /**
+   * Copy the value of every block in the grid, indexed by (y * cols + x)
+   *
+   * @return the values
+   */
+  public byte[] copyValues() {
+    return values.clone();
+  }
+
+  /**
+   * Set the value of every block in the grid from a copy. Listeners are only called for the blocks
+   * that change.
+   *
+   * @param copy the values, indexed by (y * cols + x)
+   */
+  public void restoreValues(byte[] copy) {
+    for (var y = 0; y < rows; y++) {
+      for (var x = 0; x < cols; x++) {
+        set(x, y, copy[y * cols + x]);
+      }
+    }
+  }
+
+  /**
+   * Check whether every block in a row is filled
+   *
+   * @param y row
+   * @return true if the row is full
+   */
+  public boolean isRowFull(int y) {
+    return rowFill[y] == cols;
+  }
+
+  /**
+   * Check whether every block in a column is filled
+   *
+   * @param x column
+   * @return true if the column is full
+   */
+  public boolean isColFull(int x) {
+    return colFill[x] == rows;
   }
 
   /**
@@ -121,20 +231,116 @@ public class Grid {
    * @param y         y coordinate
    * @return a boolean declaring whether the GamePiece can be played or not
    */
-  public Boolean canPlayPiece(GamePiece gamePiece, int x, int y) {
-    var blocks = gamePiece.getBlocks();
-    //loops through all the block coordinates of the gamePiece
-    for (int row = 0; row < blocks.length; row++) {
-      for (int col = 0; col < blocks[0].length; col++) {
-        if (gamePiece.getBlocks()[col][row] != 0 && get((x + col - 1), (y + row - 1)) != 0) {
-          Multimedia.playAudioEffect("sounds/fail.wav");
-          return false;
-        }
+  public boolean canPlayPiece(GamePiece gamePiece, int x, int y) {
+    return canPlayPiece(gamePiece.getOrientation(), x, y);
+  }
+
+  /**
+   * Check whether a piece in the given orientation could be played at a given x and y of the grid
+   *
+   * @param orientation the orientation of the piece
+   * @param x           x coordinate
+   * @param y           y coordinate
+   * @return true if every block the piece covers is empty and inside the grid
+   */
+  public boolean canPlayPiece(GamePiece.Orientation orientation, int x, int y) {
+    //loops through the filled blocks of the piece
+    var mask = orientation.getMask();
+    while (mask != 0) {
+      var bit = Integer.numberOfTrailingZeros(mask);
+      mask &= mask - 1;
+      if (isFilled(x + bit % 3 - 1, y + bit / 3 - 1)) {
+        return false;
       }
     }
     return true;
   }
 
+  /**
+   * Find every position a piece could be played at, in each of its rotations. Has no side
+   * effects.
+   * <p>
+   * The result holds one bitmask per rotation, laid out like the occupancy of the grid. The words
+   * for rotation r start at index r * getOccupancy().length, and bit (y * cols + x) is set when the
+   * piece can be played centred on x and y.
+   *
+   * @param gamePiece the piece to check
+   * @return the legal positions for rotations 0 to 3
+   */
+  public long[] legalMoves(GamePiece gamePiece) {
+    var words = occupancy.length;
+    var moves = new long[GamePiece.ROTATIONS * words];
+    for (var rotation = 0; rotation < GamePiece.ROTATIONS; rotation++) {
+      var orientation = GamePiece.getOrientation(gamePiece.getPiece(), rotation);
+      //Only centres where the piece lies inside the grid need checking
+      var minX = Math.max(0, 1 - orientation.getMinX());
+      var maxX = Math.min(cols, cols + 1 - orientation.getMaxX());
+      var minY = Math.max(0, 1 - orientation.getMinY());
+      var maxY = Math.min(rows, rows + 1 - orientation.getMaxY());
+      for (var y = minY; y < maxY; y++) {
+        for (var x = minX; x < maxX; x++) {
+          var fits = words == 1
+              ? (placementMask(orientation, x, y) & occupancy[0]) == 0
+              : canPlayPiece(orientation, x, y);
+          if (fits) {
+            var index = y * cols + x;
+            moves[rotation * words + (index >>> 6)] |= 1L << index;
+          }
+        }
+      }
+    }
+    return moves;
+  }
+
+  /**
+   * Check whether a position is set in the result of legalMoves
+   *
+   * @param moves    the legal moves
+   * @param rotation the rotation of the piece
+   * @param x        x coordinate
+   * @param y        y coordinate
+   * @return true if the piece can be played centred on x and y in that rotation
+   */
+  public boolean isLegalMove(long[] moves, int rotation, int x, int y) {
+    var index = y * cols + x;
+    return (moves[rotation * occupancy.length + (index >>> 6)] & (1L << index)) != 0;
+  }
+
+  /**
+   * Check whether a piece can be played anywhere on the grid, in any rotation
+   *
+   * @param gamePiece the piece to check
+   * @return true if there is at least one legal move
+   */
+  public boolean hasLegalMove(GamePiece gamePiece) {
+    for (var word : legalMoves(gamePiece)) {
+      if (word != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Get the blocks a piece would cover as a bitmask of this grid, for grids of up to 64 blocks. The
+   * piece must lie inside the grid.
+   *
+   * @param orientation the orientation of the piece
+   * @param x           x coordinate of the centre
+   * @param y           y coordinate of the centre
+   * @return the covered blocks, laid out like the occupancy
+   */
+  public long placementMask(GamePiece.Orientation orientation, int x, int y) {
+    var mask = orientation.getMask();
+    long placed = 0;
+    for (var row = orientation.getMinY(); row <= orientation.getMaxY(); row++) {
+      long bits = (mask >>> (row * 3)) & 7;
+      var shift = (y + row - 1) * cols + x - 1;
+      placed |= shift >= 0 ? bits << shift : bits >>> -shift;
+    }
+    return placed;
+  }
+
   /**
    * After checking if a piece can be played, it is then placed in the grid
    *
@@ -143,14 +349,62 @@ public class Grid {
    * @param y         y coordinate of the centre
    */
   public void playPiece(GamePiece gamePiece, int x, int y) {
-      var blocks = gamePiece.getBlocks();
-      for (int row = 0; row < blocks.length; row++) {
-        for (int col = 0; col < blocks[0].length; col++) {
-          if(gamePiece.getBlocks()[col][row] != 0) {
-            this.set((x + col - 1), (y + row - 1), gamePiece.getValue());
-          }
+    var mask = gamePiece.getOrientation().getMask();
+    while (mask != 0) {
+      var bit = Integer.numberOfTrailingZeros(mask);
+      mask &= mask - 1;
+      this.set(x + bit % 3 - 1, y + bit / 3 - 1, gamePiece.getValue());
+    }
+  }
+
+  /**
+   * Clear any full rows and columns after a piece has been played. Only the rows and columns the
+   * piece covers are checked, as no other line can have become full.
+   *
+   * @param gamePiece   the GamePiece that was played
+   * @param x           x coordinate of the centre
+   * @param y           y coordinate of the centre
+   * @param coordinates collection to add the coordinates of every cleared block to
+   * @return the number of lines cleared
+   */
+  public int clearLines(GamePiece gamePiece, int x, int y,
+      Collection<GameBlockCoordinate> coordinates) {
+    var orientation = gamePiece.getOrientation();
+    //Find the full lines first, bit i is set for the line at offset i from the piece
+    int fullCols = 0;
+    for (var col = orientation.getMinX(); col <= orientation.getMaxX(); col++) {
+      if (isColFull(x + col - 1)) {
+        fullCols |= 1 << col;
+      }
+    }
+    int fullRows = 0;
+    for (var row = orientation.getMinY(); row <= orientation.getMaxY(); row++) {
+      if (isRowFull(y + row - 1)) {
+        fullRows |= 1 << row;
+      }
+    }
+
+    //Remove the full columns
+    for (var lines = fullCols; lines != 0; lines &= lines - 1) {
+      var col = x + Integer.numberOfTrailingZeros(lines) - 1;
+      for (var row = 0; row < rows; row++) {
+        if (isFilled(col, row)) {
+          coordinates.add(new GameBlockCoordinate(col, row));
+          set(col, row, 0);
         }
       }
+    }
+    //Remove the full rows
+    for (var lines = fullRows; lines != 0; lines &= lines - 1) {
+      var row = y + Integer.numberOfTrailingZeros(lines) - 1;
+      for (var col = 0; col < cols; col++) {
+        if (isFilled(col, row)) {
+          coordinates.add(new GameBlockCoordinate(col, row));
+          set(col, row, 0);
+        }
+      }
+    }
+    return Integer.bitCount(fullCols) + Integer.bitCount(fullRows);
   }
 
 }
@@ -0,0 +1,41 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * A GameClock which only moves when told to, so a game can be simulated or replayed faster than
+ * real time.
+ */
+public class ManualClock implements GameClock {
+
+  /**
+   * The current time, in nanoseconds
+   */
+  private long time;
+
+  /**
+   * Get the current time of this clock
+   *
+   * @return the time in nanoseconds
+   */
+  @Override
+  public long nanoTime() {
+    return time;
+  }
+
+  /**
+   * Set the current time
+   *
+   * @param time the time in nanoseconds
+   */
+  public void setTime(long time) {
+    this.time = time;
+  }
+
+  /**
+   * Move the clock forward
+   *
+   * @param nanos the time to move by, in nanoseconds
+   */
+  public void advance(long nanos) {
+    time += nanos;
+  }
+}
@@ -0,0 +1,764 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The MoveSolver searches for the best move for a grid and the current and following pieces. It is
+ * used for hints, bots and for tuning the difficulty of the game.
+ * <p>
+ * Every placement of the current piece in every rotation is tried, as is swapping to the following
+ * piece first. Each candidate is followed by the best placement of the other known piece, and
+ * deeper searches then average over every piece that could be spawned next. Positions at the end
+ * of the search are scored with a heuristic built from the lines cleared, the holes left and the
+ * open space on the board.
+ * <p>
+ * The root moves are split across cores with fork/join. The search deepens one piece at a time
+ * until the maximum depth or the time budget is reached, the two known pieces are always searched
+ * in full. Boards are handled as a single occupancy word, so grids of up to 64 blocks are
+ * supported.
+ */
+public class MoveSolver {
+
+  private static final Logger logger = LogManager.getLogger(MoveSolver.class);
+
+  /**
+   * The default time budget of a search, in milliseconds
+   */
+  public static final long DEFAULT_BUDGET = 200;
+
+  /**
+   * The default number of pieces to look ahead
+   */
+  public static final int DEFAULT_DEPTH = 3;
+
+  /**
+   * The default size of the transposition table, in megabytes
+   */
+  public static final int DEFAULT_TABLE_SIZE = 16;
+
+  /**
+   * Weight of every line cleared, multiplied by the blocks cleared as in the game score
+   */
+  private static final double LINE_WEIGHT = 10;
+
+  /**
+   * Weight of every empty block left on the board
+   */
+  private static final double OPEN_WEIGHT = 4;
+
+  /**
+   * Weight of every empty block closed in on all four sides
+   */
+  private static final double HOLE_WEIGHT = 12;
+
+  /**
+   * Penalty for a piece that cannot be played anywhere, as a life would be lost
+   */
+  private static final double STUCK_PENALTY = 1000;
+
+  /**
+   * Number of columns
+   */
+  private final int cols;
+
+  /**
+   * Number of rows
+   */
+  private final int rows;
+
+  /**
+   * Every block of the grid
+   */
+  private final long full;
+
+  /**
+   * Every row of the grid followed by every column
+   */
+  private final long[] lines;
+
+  /**
+   * The first column of the grid
+   */
+  private final long firstCol;
+
+  /**
+   * The last column of the grid
+   */
+  private final long lastCol;
+
+  /**
+   * The first row of the grid
+   */
+  private final long firstRow;
+
+  /**
+   * The last row of the grid
+   */
+  private final long lastRow;
+
+  /**
+   * For every piece, the distinct sets of blocks it can cover on an empty grid
+   */
+  private final long[][] placements;
+
+  /**
+   * For every piece, the move that covers each placement, as (rotation << 16 | y << 8 | x)
+   */
+  private final int[][] placementMoves;
+
+  /**
+   * The pool the root moves are searched on
+   */
+  private final ForkJoinPool pool;
+
+  /**
+   * Caches the value of positions across searches, or null to search without one
+   */
+  private volatile TranspositionTable table;
+
+  /**
+   * The maximum number of pieces to look ahead
+   */
+  private volatile int depth = DEFAULT_DEPTH;
+
+  /**
+   * The time budget of a search, in milliseconds
+   */
+  private volatile long budget = DEFAULT_BUDGET;
+
+  /**
+   * Create a new solver for grids of the given size, searching on the common fork/join pool
+   *
+   * @param cols number of columns
+   * @param rows number of rows
+   */
+  public MoveSolver(int cols, int rows) {
+    this(cols, rows, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Create a new solver for grids of the given size
+   *
+   * @param cols number of columns
+   * @param rows number of rows
+   * @param pool the pool to search on
+   */
+  public MoveSolver(int cols, int rows, ForkJoinPool pool) {
+    if (cols * rows > 64) {
+      throw new IllegalArgumentException("Grid of " + cols + "x" + rows + " is too large to solve");
+    }
+    this.cols = cols;
+    this.rows = rows;
+    this.pool = pool;
+    this.table = new TranspositionTable(cols, rows, DEFAULT_TABLE_SIZE);
+
+    full = cols * rows == 64 ? -1L : (1L << (cols * rows)) - 1;
+    lines = new long[rows + cols];
+    for (var y = 0; y < rows; y++) {
+      for (var x = 0; x < cols; x++) {
+        var bit = 1L << (y * cols + x);
+        lines[y] |= bit;
+        lines[rows + x] |= bit;
+      }
+    }
+    firstRow = lines[0];
+    lastRow = lines[rows - 1];
+    firstCol = lines[rows];
+    lastCol = lines[rows + cols - 1];
+
+    //Find every placement on an empty grid, symmetric pieces cover the same blocks more than once
+    var grid = new Grid(cols, rows);
+    placements = new long[GamePiece.PIECES][];
+    placementMoves = new int[GamePiece.PIECES][];
+    for (var piece = 0; piece < GamePiece.PIECES; piece++) {
+      var masks = new ArrayList<Long>();
+      var moves = new ArrayList<Integer>();
+      var legal = grid.legalMoves(GamePiece.createPiece(piece));
+      for (var rotation = 0; rotation < GamePiece.ROTATIONS; rotation++) {
+        var orientation = GamePiece.getOrientation(piece, rotation);
+        for (var y = 0; y < rows; y++) {
+          for (var x = 0; x < cols; x++) {
+            if (grid.isLegalMove(legal, rotation, x, y)) {
+              var mask = grid.placementMask(orientation, x, y);
+              if (!masks.contains(mask)) {
+                masks.add(mask);
+                moves.add(rotation << 16 | y << 8 | x);
+              }
+            }
+          }
+        }
+      }
+      placements[piece] = masks.stream().mapToLong(Long::longValue).toArray();
+      placementMoves[piece] = moves.stream().mapToInt(Integer::intValue).toArray();
+    }
+  }
+
+  /**
+   * Set the maximum number of pieces to look ahead. The two known pieces are always searched.
+   *
+   * @param depth the depth, at least 2
+   */
+  public void setDepth(int depth) {
+    this.depth = Math.max(2, depth);
+  }
+
+  /**
+   * Set the time budget of a search
+   *
+   * @param millis the budget in milliseconds
+   */
+  public void setTimeBudget(long millis) {
+    this.budget = millis;
+  }
+
+  /**
+   * Set the transposition table positions are cached in
+   *
+   * @param table the table, for grids of the same size, or null to search without one
+   */
+  public void setTranspositionTable(TranspositionTable table) {
+    this.table = table;
+  }
+
+  /**
+   * Get the transposition table positions are cached in
+   *
+   * @return the table, or null if there is none
+   */
+  public TranspositionTable getTranspositionTable() {
+    return table;
+  }
+
+  /**
+   * Find the best move for the current state of a game
+   *
+   * @param engine the game
+   * @return the best move, or null if neither piece can be played
+   */
+  public Move solve(GameEngine engine) {
+    return solve(engine.getGrid(), engine.getCurrentPiece(), engine.getFollowingPiece());
+  }
+
+  /**
+   * Find the best move for a grid and the current and following pieces
+   *
+   * @param grid      the grid
+   * @param current   the current piece
+   * @param following the following piece
+   * @return the best move, or null if neither piece can be played
+   */
+  public Move solve(Grid grid, GamePiece current, GamePiece following) {
+    return search(snapshot(grid), current.getPiece(), following.getPiece());
+  }
+
+  /**
+   * Find the best move on the solver's pool, without blocking the calling thread. The grid is read
+   * straight away, so it may change once this returns.
+   *
+   * @param grid      the grid
+   * @param current   the current piece
+   * @param following the following piece
+   * @return the best move, completed with null if neither piece can be played
+   */
+  public CompletableFuture<Move> solveAsync(Grid grid, GamePiece current, GamePiece following) {
+    var occupancy = snapshot(grid);
+    var currentPiece = current.getPiece();
+    var followingPiece = following.getPiece();
+    return CompletableFuture.supplyAsync(
+        () -> search(occupancy, currentPiece, followingPiece), pool);
+  }
+
+  /**
+   * Read the occupancy of a grid this solver can handle
+   *
+   * @param grid the grid
+   * @return the occupancy word
+   */
+  private long snapshot(Grid grid) {
+    if (grid.getCols() != cols || grid.getRows() != rows) {
+      throw new IllegalArgumentException("Solver is for " + cols + "x" + rows + " grids");
+    }
+    return grid.getOccupancy()[0];
+  }
+
+  /**
+   * Search deeper one piece at a time, keeping the best move of the deepest completed search
+   *
+   * @param occupancy the occupied blocks
+   * @param current   the current piece
+   * @param following the following piece
+   * @return the best move, or null if neither piece can be played
+   */
+  private Move search(long occupancy, int current, int following) {
+    var started = System.nanoTime();
+    var deadline = started + budget * 1_000_000L;
+
+    //Every root move, playing the current piece or swapping to the following one
+    var roots = new ArrayList<Move>();
+    addRoots(roots, occupancy, current, false);
+    addRoots(roots, occupancy, following, true);
+    if (roots.isEmpty()) {
+      return null;
+    }
+
+    var table = this.table;
+    if (table != null) {
+      table.newSearch();
+    }
+
+    Move best = null;
+    for (var searchDepth = 2; searchDepth <= depth; searchDepth++) {
+      //The known pieces are always searched, anything deeper stops at the deadline
+      var search = new Search(table, searchDepth, searchDepth > 2 ? deadline : Long.MAX_VALUE);
+      var values = new double[roots.size()];
+      pool.invoke(new RootTask(search, roots, occupancy, current, following, values, 0,
+          roots.size()));
+      if (search.expired) {
+        break;
+      }
+      var bestIndex = 0;
+      for (var i = 1; i < values.length; i++) {
+        if (values[i] > values[bestIndex]) {
+          bestIndex = i;
+        }
+      }
+      best = roots.get(bestIndex).withValue(values[bestIndex], searchDepth);
+    }
+    //Bots and hints solve in tight loops, so this is only worth seeing when tuning the solver
+    logger.trace("Best move {} found in {}ms", best, (System.nanoTime() - started) / 1_000_000);
+    if (table != null) {
+      logger.trace("Transposition table: {}", table);
+    }
+    return best;
+  }
+
+  /**
+   * Add a root move for every placement of a piece
+   *
+   * @param roots     the list to add to
+   * @param occupancy the occupied blocks
+   * @param piece     the piece to play
+   * @param swap      whether the pieces are swapped first
+   */
+  private void addRoots(ArrayList<Move> roots, long occupancy, int piece, boolean swap) {
+    var masks = placements[piece];
+    for (var i = 0; i < masks.length; i++) {
+      if ((masks[i] & occupancy) == 0) {
+        var move = placementMoves[piece][i];
+        roots.add(new Move(swap, piece, move >>> 16, move & 0xff, (move >>> 8) & 0xff, masks[i],
+            0, 0));
+      }
+    }
+  }
+
+  /**
+   * Search the value of playing a piece, or of any piece when it is not known
+   *
+   * @param search    the search being run
+   * @param occupancy the occupied blocks
+   * @param piece     the piece to play, or -1 to average over every piece
+   * @param remaining the number of pieces left to play
+   * @return the value of the position
+   */
+  private double value(Search search, long occupancy, int piece, int remaining) {
+    if (remaining == 0) {
+      return evaluate(occupancy);
+    }
+    var table = search.table;
+    if (table != null) {
+      var cached = table.lookup(occupancy, piece, TranspositionTable.ANY_ROTATION, remaining);
+      if (!Double.isNaN(cached)) {
+        return cached;
+      }
+    }
+
+    double value;
+    if (piece < 0) {
+      if (search.isExpired()) {
+        return 0;
+      }
+      double total = 0;
+      for (var next = 0; next < GamePiece.PIECES; next++) {
+        total += value(search, occupancy, next, remaining);
+      }
+      value = total / GamePiece.PIECES;
+    } else {
+      var best = Double.NEGATIVE_INFINITY;
+      for (var mask : placements[piece]) {
+        if ((mask & occupancy) == 0) {
+          best = Math.max(best, play(search, occupancy | mask, -1, remaining - 1));
+        }
+      }
+      //A piece with nowhere to go would time out and be replaced
+      value = best == Double.NEGATIVE_INFINITY ? evaluate(occupancy) - STUCK_PENALTY : best;
+    }
+
+    //Values cut short by the deadline are not worth keeping
+    if (table != null && !search.isExpired()) {
+      table.store(occupancy, piece, TranspositionTable.ANY_ROTATION, remaining, value);
+    }
+    return value;
+  }
+
+  /**
+   * Clear the full lines after a piece has been played, then search the rest of the game
+   *
+   * @param search    the search being run
+   * @param occupancy the occupied blocks, including the piece just played
+   * @param next      the next piece, or -1 when it is not known
+   * @param remaining the number of pieces left to play
+   * @return the score for the lines cleared, plus the value of the position left
+   */
+  private double play(Search search, long occupancy, int next, int remaining) {
+    long cleared = 0;
+    var count = 0;
+    for (var line : lines) {
+      if ((occupancy & line) == line) {
+        cleared |= line;
+        count++;
+      }
+    }
+    var reward = count * Long.bitCount(cleared) * LINE_WEIGHT;
+    return reward + value(search, occupancy & ~cleared, next, remaining);
+  }
+
+  /**
+   * Score a position by the space left to play in
+   *
+   * @param occupancy the occupied blocks
+   * @return the heuristic value, higher is better
+   */
+  double evaluate(long occupancy) {
+    var empty = ~occupancy & full;
+    //A block is closed in when every side is filled or the edge of the grid
+    var left = (occupancy << 1) & ~firstCol | firstCol;
+    var right = (occupancy >>> 1) & ~lastCol | lastCol;
+    var up = (occupancy << cols) | firstRow;
+    var down = (occupancy >>> cols) | lastRow;
+    var holes = empty & left & right & up & down;
+    return Long.bitCount(empty) * OPEN_WEIGHT - Long.bitCount(holes) * HOLE_WEIGHT;
+  }
+
+  /**
+   * The state shared by every task of one search
+   */
+  private static class Search {
+
+    /**
+     * The table to cache positions in, or null
+     */
+    private final TranspositionTable table;
+
+    /**
+     * The number of pieces to play
+     */
+    private final int depth;
+
+    /**
+     * The time at which to give up, from System.nanoTime
+     */
+    private final long deadline;
+
+    /**
+     * Whether the deadline has passed
+     */
+    private volatile boolean expired;
+
+    /**
+     * Create a new search
+     *
+     * @param table    the table to cache positions in, or null
+     * @param depth    the number of pieces to play
+     * @param deadline the time at which to give up
+     */
+    private Search(TranspositionTable table, int depth, long deadline) {
+      this.table = table;
+      this.depth = depth;
+      this.deadline = deadline;
+    }
+
+    /**
+     * Check whether the search has run out of time
+     *
+     * @return true once the deadline has passed
+     */
+    private boolean isExpired() {
+      if (!expired && System.nanoTime() - deadline > 0) {
+        expired = true;
+      }
+      return expired;
+    }
+  }
+
+  /**
+   * Searches a range of root moves, splitting it in half until a single move is left
+   */
+  private class RootTask extends RecursiveAction {
+
+    /**
+     * Tasks are never serialised, but RecursiveAction is Serializable
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The search being run
+     */
+    private final Search search;
+
+    /**
+     * Every root move
+     */
+    private final ArrayList<Move> roots;
+
+    /**
+     * The occupied blocks before the root move
+     */
+    private final long occupancy;
+
+    /**
+     * The current piece
+     */
+    private final int current;
+
+    /**
+     * The following piece
+     */
+    private final int following;
+
+    /**
+     * The value found for each root move
+     */
+    private final double[] values;
+
+    /**
+     * The first root move to search
+     */
+    private final int from;
+
+    /**
+     * The index after the last root move to search
+     */
+    private final int to;
+
+    /**
+     * Create a task for the root moves from index from up to to
+     *
+     * @param search    the search being run
+     * @param roots     every root move
+     * @param occupancy the occupied blocks
+     * @param current   the current piece
+     * @param following the following piece
+     * @param values    the values to fill in
+     * @param from      the first root move
+     * @param to        the index after the last root move
+     */
+    private RootTask(Search search, ArrayList<Move> roots, long occupancy, int current,
+        int following, double[] values, int from, int to) {
+      this.search = search;
+      this.roots = roots;
+      this.occupancy = occupancy;
+      this.current = current;
+      this.following = following;
+      this.values = values;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > 1) {
+        var middle = (from + to) >>> 1;
+        invokeAll(new RootTask(search, roots, occupancy, current, following, values, from, middle),
+            new RootTask(search, roots, occupancy, current, following, values, middle, to));
+        return;
+      }
+      var root = roots.get(from);
+      //After a swap the current piece becomes the following one
+      var next = root.isSwap() ? current : following;
+      values[from] = play(search, occupancy | root.getMask(), next, search.depth - 1);
+    }
+  }
+
+  /**
+   * A move found by the solver: optionally swap the pieces, rotate the current piece, then play it
+   * centred on x and y
+   */
+  public static final class Move {
+
+    /**
+     * Whether to swap the pieces first
+     */
+    private final boolean swap;
+
+    /**
+     * The piece to play
+     */
+    private final int piece;
+
+    /**
+     * The rotation to play the piece in
+     */
+    private final int rotation;
+
+    /**
+     * The column of the centre of the piece
+     */
+    private final int x;
+
+    /**
+     * The row of the centre of the piece
+     */
+    private final int y;
+
+    /**
+     * The blocks the piece covers
+     */
+    private final long mask;
+
+    /**
+     * The value the search gave the move
+     */
+    private final double value;
+
+    /**
+     * The number of pieces searched
+     */
+    private final int depth;
+
+    /**
+     * Create a new move
+     */
+    private Move(boolean swap, int piece, int rotation, int x, int y, long mask, double value,
+        int depth) {
+      this.swap = swap;
+      this.piece = piece;
+      this.rotation = rotation;
+      this.x = x;
+      this.y = y;
+      this.mask = mask;
+      this.value = value;
+      this.depth = depth;
+    }
+
+    /**
+     * Copy this move with the value of a search
+     *
+     * @param value the value
+     * @param depth the number of pieces searched
+     * @return the new move
+     */
+    private Move withValue(double value, int depth) {
+      return new Move(swap, piece, rotation, x, y, mask, value, depth);
+    }
+
+    /**
+     * Whether the current and following pieces should be swapped before playing
+     *
+     * @return true to swap
+     */
+    public boolean isSwap() {
+      return swap;
+    }
+
+    /**
+     * Get the piece to play
+     *
+     * @return the piece number
+     */
+    public int getPiece() {
+      return piece;
+    }
+
+    /**
+     * Get the rotation to play the piece in
+     *
+     * @return the rotation, from 0 to 3
+     */
+    public int getRotation() {
+      return rotation;
+    }
+
+    /**
+     * Get the orientation to play the piece in
+     *
+     * @return the orientation
+     */
+    public GamePiece.Orientation getOrientation() {
+      return GamePiece.getOrientation(piece, rotation);
+    }
+
+    /**
+     * Get the column to play the centre of the piece at
+     *
+     * @return column
+     */
+    public int getX() {
+      return x;
+    }
+
+    /**
+     * Get the row to play the centre of the piece at
+     *
+     * @return row
+     */
+    public int getY() {
+      return y;
+    }
+
+    /**
+     * Get the blocks the piece covers, laid out like the occupancy of the grid
+     *
+     * @return the covered blocks
+     */
+    public long getMask() {
+      return mask;
+    }
+
+    /**
+     * Get the value the search gave this move
+     *
+     * @return the value, higher is better
+     */
+    public double getValue() {
+      return value;
+    }
+
+    /**
+     * Get the number of pieces the search looked ahead
+     *
+     * @return the depth
+     */
+    public int getDepth() {
+      return depth;
+    }
+
+    /**
+     * Play this move in a game, swapping and rotating the current piece as needed
+     *
+     * @param engine the game
+     * @return true if the piece was played
+     */
+    public boolean apply(GameEngine engine) {
+      if (swap) {
+        engine.swapCurrentPiece();
+      }
+      var turns = Math.floorMod(rotation - engine.getCurrentPiece().getRotation(),
+          GamePiece.ROTATIONS);
+      for (var i = 0; i < turns; i++) {
+        engine.rotateCurrentPiece(true);
+      }
+      return engine.place(x, y);
+    }
+
+    @Override
+    public String toString() {
+      return (swap ? "swap, " : "") + "piece " + piece + " rotation " + rotation + " at " + x + ","
+          + y + " (" + String.format("%.1f", value) + ", depth " + depth + ")";
+    }
+  }
+}
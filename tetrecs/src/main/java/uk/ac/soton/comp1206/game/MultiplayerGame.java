@@ -2,18 +2,17 @@ package uk.ac.soton.comp1206.game;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Random;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.HashMap;
 import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
 import javafx.util.Pair;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.Utility.Multimedia;
-import uk.ac.soton.comp1206.component.GameBlock;
-import uk.ac.soton.comp1206.component.GameBlockCoordinate;
+import uk.ac.soton.comp1206.network.BoardSync;
 import uk.ac.soton.comp1206.network.Communicator;
+import uk.ac.soton.comp1206.network.Message;
 import uk.ac.soton.comp1206.ui.GameWindow;
 
 public class MultiplayerGame extends Game {
@@ -21,9 +20,74 @@ public class MultiplayerGame extends Game {
   private static final Logger logger = LogManager.getLogger(MultiplayerGame.class);
   private final Communicator communicator;
   private boolean ready = false;
-  private ArrayDeque<GamePiece> pieces = new ArrayDeque();
+  private final ServerPieceSource pieces;
   private ArrayList<Pair<String, Integer>> scores = new ArrayList();
 
+  /**
+   * Encodes this player's board as updates to send, once the server supports them
+   */
+  private final BoardSync boardSync = new BoardSync();
+
+  /**
+   * Whether the server supports compact board updates, otherwise the whole board is sent each move
+   */
+  private boolean compactBoards = false;
+
+  /**
+   * The boards of the other players, kept up to date from the server
+   */
+  private final HashMap<String, BoardSync> boards = new HashMap<>();
+
+  /**
+   * The fewest pieces kept received or asked for, enough for the current and following piece
+   */
+  private static final int MIN_DEPTH = 2;
+
+  /**
+   * The most pieces kept received or asked for, however slow the server is
+   */
+  private static final int MAX_DEPTH = 12;
+
+  /**
+   * How much each new measurement moves the averages, between 0 and 1
+   */
+  private static final double SMOOTHING = 0.2;
+
+  /**
+   * When each PIECE request not yet answered was sent, oldest first, in nanoseconds
+   */
+  private final ArrayDeque<Long> requested = new ArrayDeque<>();
+
+  /**
+   * The average time for the server to answer a PIECE request, in milliseconds
+   */
+  private double roundTrip = 200;
+
+  /**
+   * The average time between pieces being dealt, in milliseconds
+   */
+  private double placeInterval = 2000;
+
+  /**
+   * When the last piece was dealt, in nanoseconds, or 0 before the first
+   */
+  private long lastSpawn = 0;
+
+  /**
+   * The number of pieces to keep received or asked for
+   */
+  private int targetDepth = 6;
+
+  /**
+   * The number of times a piece was needed before the server had sent it
+   */
+  private int stalls = 0;
+
+  /**
+   * Whether the game is paused until the server sends the next piece
+   */
+  private final SimpleBooleanProperty waiting = new SimpleBooleanProperty(true);
+
   /**
    * Create a new game with the specified rows and columns. Creates a corresponding grid model.
    *
@@ -31,8 +95,22 @@ public class MultiplayerGame extends Game {
    * @param rows number of rows
    */
   public MultiplayerGame(int cols, int rows, GameWindow gameWindow) {
-    super(cols, rows, true, true);
+    this(cols, rows, gameWindow,
+        new ServerPieceSource(new PieceGenerator(PieceGenerator.randomSeed())));
+  }
+
+  /**
+   * Create a new game dealt the pieces sent by the server
+   *
+   * @param cols   number of columns
+   * @param rows   number of rows
+   * @param gameWindow the game window
+   * @param pieces the source the server's pieces are added to
+   */
+  private MultiplayerGame(int cols, int rows, GameWindow gameWindow, ServerPieceSource pieces) {
+    super(cols, rows, true, true, pieces);
     this.communicator = gameWindow.getCommunicator();
+    this.pieces = pieces;
   }
 
   /**
@@ -41,171 +119,279 @@ public class MultiplayerGame extends Game {
   @Override
   public void initialiseGame() {
     logger.info("Initialising multiplayer game");
-    communicator.addListener(e -> Platform.runLater(() -> receive(e.trim())));
+    communicator.subscribe(Message.Piece.class, Platform::runLater, this::receivePiece);
+    communicator.subscribe(Message.Scores.class, Platform::runLater, this::receiveScores);
+    communicator.subscribe(Message.Caps.class, Platform::runLater, this::receiveCaps);
+    communicator.subscribe(Message.Resync.class, Platform::runLater, m -> boardSync.requestFull());
+    communicator.subscribe(Message.Board.class, Platform::runLater, this::receiveBoard);
+    communicator.subscribe(Message.BoardUpdate.class, Platform::runLater, this::receiveBoardUpdate);
+    //Ask for compact board updates, servers without them answer with an error and the classic board is sent
+    communicator.send("CAPS " + BoardSync.CAPABILITY);
     //Create new GamePiece
     gameOn = true;
     //Pass to listener
-    Multimedia.playMusic("music/game_start.wav");
-    TimerTask startLoop = new TimerTask() {
-      @Override
-      public void run() {
-        if (gameOn) {
-          //Play loop music
-          Multimedia.playLoopedMusic("music/game.wav");
-        }
-      }
-    };
-    //Starts the looped music
-    var startTimer = new Timer();
-    startTimer.schedule(startLoop, 46000);
-
-    gameTimerTask = new TimerTask() {
-      @Override
-      public void run() {
-        Platform.runLater(() -> {
-          if(gameOn){
-            gameLoop();
-          }
-        });
-      }
-    };
+    //Play the start music, then loop the game music once it ends
+    Multimedia.playMusicThenLoop("music/game_start.wav", "music/game.wav");
+
     //Runs the game loop
-    gameTimer = new Timer();
-    gameTimer.schedule(gameTimerTask, getTimerDelay());
-    gameLoopListener.setOnGameLoop(getTimerDelay());
-    //Request 6 initial pieces
-    for(int i = 0; i < 6; i ++) {
+    running = true;
+    resetTimer();
+    //Request enough pieces to start, more follow as the round trip is measured
+    topUp();
+  }
+
+  /**
+   * Sets the number of pieces to keep from the measured round trip and rate of play: the pieces
+   * dealt while one request is answered, with room to spare
+   */
+  private void adaptDepth() {
+    var depth = (int) Math.ceil(roundTrip * 2 / placeInterval) + MIN_DEPTH;
+    depth = Math.max(MIN_DEPTH, Math.min(MAX_DEPTH, depth));
+    if (depth != targetDepth) {
+      logger.info("Piece buffer depth now {} (round trip {} ms, placing every {} ms)", depth,
+          Math.round(roundTrip), Math.round(placeInterval));
+      targetDepth = depth;
+    }
+  }
+
+  /**
+   * Asks the server for pieces until enough are received or on their way
+   */
+  private void topUp() {
+    while (pieces.size() + requested.size() < targetDepth) {
+      requested.add(System.nanoTime());
       communicator.send("PIECE");
     }
   }
 
   /**
-   * Receives messages from the server
+   * Receives a piece from the server
    *
-   * @param message message from communicator
-   */
-  public void receive(String message) {
-    logger.info("Received message: {}", message);
-    var msg = message.split(" ", 2);
-    if (msg[0].equals("PIECE") && msg.length > 1) {
-      //WHEN IT RECEIVES A PIECE
-      //To give a random rotation
-      var random = new Random();
-      var newPiece = GamePiece.createPiece(Integer.parseInt(msg[1]), random.nextInt(0, 4));
-      logger.info("Received piece from server: {}", newPiece);
-      pieces.add(newPiece);
-      if (!ready && pieces.size() > 2) {
-        ready = true;
+   * @param message the piece message
+   */
+  private void receivePiece(Message.Piece message) {
+    var sentAt = requested.poll();
+    if (sentAt != null) {
+      var millis = (System.nanoTime() - sentAt) / 1e6;
+      roundTrip += (millis - roundTrip) * SMOOTHING;
+      adaptDepth();
+    }
+    var newPiece = pieces.add(message.piece());
+    logger.info("Received piece from server: {}", newPiece);
+    if (!ready && pieces.size() >= 2) {
+      followingPiece = spawnPiece();
+      super.nextPiece(); //The one from the parent class
+      ready = true;
+      resume();
+    } else if (ready && isWaiting()) {
+      currentPiece = spawnPiece();
+      nextPiece(currentPiece, 1);
+      if (!pieces.isEmpty()) {
         followingPiece = spawnPiece();
-        nextPiece(); //The one from the parent class
+        nextPiece(followingPiece, 2);
       }
-    } else if (msg[0].equals("SCORES") && msg.length > 1) {
-      //WHEN IT RECEIVES A SET OF SCORES
-      logger.info("Received scores: {}", msg[1]);
-      this.scores.clear();
-      String[] scoreList = msg[1].split("\n");
-
-      for (String score : scoreList) {
-        String[] split = score.split(":");
-        logger.info("Received score: {} = {}", split[0], Integer.parseInt(split[1]));
-        this.scores.add(new Pair(split[0], Integer.parseInt(split[1])));
+      resume();
+    } else if (ready && followingPiece == null) {
+      //The following piece was promoted while the server was behind, deal the one just arrived
+      followingPiece = spawnPiece();
+      nextPiece(followingPiece, 2);
+      checkLegalMove();
+    }
+    topUp();
+  }
+
+  /**
+   * Carries on playing once the piece waited for has arrived, with the full time for it
+   */
+  private void resume() {
+    waiting.set(false);
+    if (running) {
+      resetTimer();
+      checkLegalMove();
+    }
+  }
+
+  /**
+   * Receives the scores of every player from the server
+   *
+   * @param message the scores message
+   */
+  private void receiveScores(Message.Scores message) {
+    this.scores.clear();
+    for (var score : message.scores()) {
+      logger.info("Received score: {} = {}", score.name(), score.score());
+      this.scores.add(new Pair<>(score.name(), score.score()));
+    }
+    //Sort the scores
+    this.scores.sort((a, b) -> b.getValue().compareTo(a.getValue()));
+  }
+
+  /**
+   * Starts sending compact board updates if the server supports them
+   *
+   * @param message the capabilities message
+   */
+  private void receiveCaps(Message.Caps message) {
+    compactBoards = message.capabilities().contains(BoardSync.CAPABILITY);
+    logger.info("Compact board updates {}", compactBoards ? "supported" : "not supported");
+  }
+
+  /**
+   * Keeps the whole board sent by another player
+   *
+   * @param message the board message
+   */
+  private void receiveBoard(Message.Board message) {
+    var values = message.cells().strip().split(" ");
+    var builder = new StringBuilder("0 F ").append(getCols()).append('x').append(getRows()).append(' ');
+    try {
+      for (var value : values) {
+        builder.append(Character.forDigit(Integer.parseInt(value), Character.MAX_RADIX));
       }
-      //Sort the scores
-      this.scores.sort((a, b) -> b.getValue().compareTo(a.getValue()));
+    } catch (NumberFormatException e) {
+      logger.error("Unable to read the board of {}", message.player());
+      return;
+    }
+    boards.computeIfAbsent(message.player(), (player) -> new BoardSync()).apply(builder.toString());
+  }
+
+  /**
+   * Applies an update to the board of another player
+   *
+   * @param message the board update
+   */
+  private void receiveBoardUpdate(Message.BoardUpdate message) {
+    var board = boards.computeIfAbsent(message.player(), (player) -> new BoardSync());
+    if (!board.apply(message.update())) {
+      logger.info("Missed a board update from {}, waiting for the next snapshot", message.player());
     }
   }
 
   /**
-   * Spawns a game piece
+   * Get the board of another player
+   *
+   * @param player the player
+   * @return the values of the cells column by column, or null if not known
+   */
+  public int[] getBoard(String player) {
+    var board = boards.get(player);
+    return board == null ? null : board.getCells();
+  }
+
+  /**
+   * Spawns a game piece, and asks the server for another
    * @return the first piece in the queue
    */
   @Override
   protected GamePiece spawnPiece() {
-    communicator.send("PIECE");
-    return pieces.pop();
+    var now = System.nanoTime();
+    //Only time pieces dealt in play, not the first two dealt together
+    if (ready && lastSpawn != 0) {
+      var millis = (now - lastSpawn) / 1e6;
+      placeInterval += (millis - placeInterval) * SMOOTHING;
+      adaptDepth();
+    }
+    lastSpawn = now;
+    var piece = super.spawnPiece();
+    topUp();
+    return piece;
   }
 
   /**
-   * Block Click handler
-   * @param gameBlock the block that was clicked
+   * Replaces the current piece with the following piece. If the server has not sent the next
+   * piece yet, the following piece is still played, and the game only waits once there is no
+   * piece left at all.
    */
   @Override
-  public void blockClicked(GameBlock gameBlock) {
-    //Use a string builder to append continuously instead of creating a new string
-    var builder = new StringBuilder();
-    for(int x = 0; x < getCols(); x++){
-      for(int y = 0; y < getRows(); y++){
-        //Add the value of the block to the string
-        builder.append(getGrid().get(x, y) + " ");
-      }
+  protected void nextPiece() {
+    if (!pieces.isEmpty()) {
+      super.nextPiece();
+      return;
+    }
+    currentPiece = followingPiece;
+    followingPiece = null;
+    nextPiece(currentPiece, 1);
+    nextPiece(null, 2);
+    if (currentPiece == null) {
+      stalls++;
+      logger.info("Waiting for a piece from the server ({} stalls)", stalls);
+      waiting.set(true);
+      //The player cannot be blamed for a piece which has not arrived
+      gameDeadline.cancel();
     }
-    //Send the string for cheating purposes
-    communicator.send("BOARD" + builder.toString().trim());
-    super.blockClicked(gameBlock);
   }
 
   /**
-   * After piece is placed actions
+   * Restarts the time for the current piece, unless waiting for the server, when the time is
+   * paused until the piece arrives
    */
   @Override
-  public void afterPiece() {
-    int blocks = 0;
-    boolean full;
-    ArrayList<Integer> fullCol = new ArrayList<Integer>();
-    ArrayList<Integer> fullRow = new ArrayList<Integer>();
-    HashSet coordinates = new HashSet();
-    //Check full columns
-    for (var x = 0; x < cols; x++) {
-      full = true;
-      for (var y = 0; y < rows; y++) {
-        if (grid.getGridProperty(x, y).get() == 0) {
-          full = false;
-        }
-      }
-      if (full == true) {
-        fullCol.add(x);
-      }
+  protected void resetTimer() {
+    if (isWaiting()) {
+      gameDeadline.cancel();
+      return;
     }
-    //Check full rows
-    for (var y = 0; y < rows; y++) {
-      full = true;
-      for (var x = 0; x < cols; x++) {
-        if (grid.getGridProperty(x, y).get() == 0) {
-          full = false;
-        }
-      }
-      if (full == true) {
-        fullRow.add(y);
-      }
+    super.resetTimer();
+  }
+
+  /**
+   * Loses a life when the time runs out, unless waiting for the server
+   */
+  @Override
+  protected void gameLoop() {
+    //The deadline may have expired just before it was paused
+    if (isWaiting()) {
+      return;
     }
-    //Remove the full columns
-    for (var x = 0; x < fullCol.size(); x++) {
-      for (var y = 0; y < rows; y++) {
-        if (grid.get(fullCol.get(x), y) != 0) {
-          coordinates.add(new GameBlockCoordinate(fullCol.get(x), y));
-          grid.set(fullCol.get(x), y, 0);
-          blocks++;
-        }
-      }
+    super.gameLoop();
+  }
+
+  /**
+   * Rotates the current piece, unless waiting for the server
+   *
+   * @param clockwise true to rotate clockwise, false for counter-clockwise
+   */
+  @Override
+  public void rotateCurrentPiece(boolean clockwise) {
+    if (isWaiting()) {
+      return;
+    }
+    super.rotateCurrentPiece(clockwise);
+  }
+
+  /**
+   * Swaps the current and following piece, unless waiting for the server for either
+   */
+  @Override
+  public void swapCurrentPiece() {
+    if (isWaiting() || followingPiece == null) {
+      return;
     }
-    //Remove the full rows
-    for (var y = 0; y < fullRow.size(); y++) {
-      for (var x = 0; x < cols; x++) {
-        if (grid.get(x, fullRow.get(y)) != 0) {
-          coordinates.add(new GameBlockCoordinate(x, fullRow.get(y)));
-          grid.set(x, fullRow.get(y), 0);
-          blocks++;
-        }
+    super.swapCurrentPiece();
+  }
+
+  /**
+   * Clears lines, then sends the board as it is after the move
+   * @param x x coordinate the piece was played at
+   * @param y y coordinate the piece was played at
+   */
+  @Override
+  protected void afterPiece(int x, int y) {
+    super.afterPiece(x, y);
+    var cells = new int[getCols() * getRows()];
+    for (int col = 0; col < getCols(); col++) {
+      for (int row = 0; row < getRows(); row++) {
+        cells[col * getRows() + row] = getGrid().get(col, row);
       }
     }
-    //Set lines removed in total
-    int lines = fullCol.size() + fullRow.size();
-    //Play clear sound
-    if (lines != 0) {
-      Multimedia.playAudioEffect("sounds/clear.wav");
+    if (compactBoards) {
+      var update = boardSync.encode(getCols(), getRows(), cells);
+      if (update != null) {
+        communicator.send(update);
+      }
+    } else {
+      communicator.send(BoardSync.classic(cells));
     }
-    score(lines, blocks);
-    lineCleared(coordinates);
   }
 
   /**
@@ -215,45 +401,92 @@ public class MultiplayerGame extends Game {
    */
   @Override
   protected void score(int lines, int blocksCleared) {
-    //Checks if lines are cleared or not
+    super.score(lines, blocksCleared);
     if (lines != 0 && blocksCleared != 0) {
-      //Calculates to add to new score. Current score + linesCleared*blocksCleared*10*multiplier
-      setScore(getScore() + (lines * blocksCleared * 10 * getMultiplier()));
-      logger.info("{} lines cleared. {} blocks cleared", lines, blocksCleared);
-      logger.info("New score is {}", getScore());
-      //Increments multiplier
-      setMultiplier(getMultiplier() + 1);
-      logger.info("Multiplier: {}x", getMultiplier());
-      updateLevel();
       //Send it to the server
       communicator.send("SCORE " + getScore());
-    } else {
-      resetMultiplier();
     }
   }
 
   /**
-   * The game loop
+   * Tell the server a life has been lost
    */
   @Override
-  protected void gameLoop() {
-    //Subtract one life
-    if (getLives() > 0) {
-      setLives(getLives() - 1);
-      logger.info("Lost a life!");
-      Multimedia.playAudioEffect("sounds/lifelose.wav");
-      //Create new GamePiece
-      currentPiece = spawnPiece();
-      this.nextPiece(currentPiece, 1);
-      resetMultiplier();
-      gameLooped();
-      resetTimer();
-      communicator.send("LIVES " + getLives());
-    } else {
-      //end the game if out of lives
-      communicator.send("DIE");
-      endGame();
-    }
+  protected void lifeLost() {
+    super.lifeLost();
+    communicator.send("LIVES " + getLives());
+  }
+
+  /**
+   * Tell the server the game is over when out of lives
+   */
+  @Override
+  public void endGame() {
+    communicator.send("DIE");
+    super.endGame();
+  }
+
+  /**
+   * Get whether the game is paused until the server sends the next piece
+   *
+   * @return true while waiting
+   */
+  public boolean isWaiting() {
+    return waiting.get();
+  }
+
+  /**
+   * Get the property of whether the game is paused until the server sends the next piece
+   *
+   * @return the waiting property
+   */
+  public ReadOnlyBooleanProperty waitingProperty() {
+    return waiting;
+  }
+
+  /**
+   * Get the number of pieces received and not yet dealt
+   *
+   * @return the buffer depth
+   */
+  public int getBufferDepth() {
+    return pieces.size();
+  }
+
+  /**
+   * Get the number of PIECE requests the server has not answered yet
+   *
+   * @return the requests outstanding
+   */
+  public int getOutstanding() {
+    return requested.size();
+  }
+
+  /**
+   * Get the number of pieces kept received or asked for
+   *
+   * @return the target depth
+   */
+  public int getTargetDepth() {
+    return targetDepth;
+  }
+
+  /**
+   * Get the number of times a piece was needed before the server had sent it
+   *
+   * @return the stalls
+   */
+  public int getStalls() {
+    return stalls;
+  }
+
+  /**
+   * Get the average time for the server to answer a PIECE request
+   *
+   * @return the round trip in milliseconds
+   */
+  public double getRoundTrip() {
+    return roundTrip;
   }
 
   /**
@@ -0,0 +1,108 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The PieceGenerator is a small seeded random number generator (SplitMix64) used to choose pieces
+ * and rotations. The same seed always gives the same numbers, on any thread and any JVM, so a game
+ * can be repeated exactly from its seed.
+ * <p>
+ * The whole state is a single long, which can be read and restored to snapshot a game. A generator
+ * can be split into an independent one, so simulations on many threads can each have their own
+ * repeatable stream.
+ */
+public class PieceGenerator {
+
+  /**
+   * The step the state advances by for every number
+   */
+  private static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+  /**
+   * Seeds handed out by randomSeed, so generators created at the same time still differ
+   */
+  private static final AtomicLong seeds = new AtomicLong(System.nanoTime());
+
+  /**
+   * The state of the generator
+   */
+  private long state;
+
+  /**
+   * Create a new generator from a seed
+   *
+   * @param seed the seed
+   */
+  public PieceGenerator(long seed) {
+    this.state = seed;
+  }
+
+  /**
+   * Create a seed for a game that does not need to be repeated
+   *
+   * @return a new seed
+   */
+  public static long randomSeed() {
+    return mix(seeds.addAndGet(GAMMA) ^ System.nanoTime());
+  }
+
+  /**
+   * Get the next random number
+   *
+   * @return a random long
+   */
+  public long nextLong() {
+    state += GAMMA;
+    return mix(state);
+  }
+
+  /**
+   * Get a random number from 0 up to bound
+   *
+   * @param bound the upper bound, exclusive
+   * @return a random number from 0 to bound - 1
+   */
+  public int nextInt(int bound) {
+    //Scale the top 32 bits into the range, the bias is too small to matter for a handful of pieces
+    return (int) (((nextLong() >>> 32) * bound) >>> 32);
+  }
+
+  /**
+   * Create a new generator whose numbers are independent of this one. Advances this generator.
+   *
+   * @return the new generator
+   */
+  public PieceGenerator split() {
+    return new PieceGenerator(nextLong());
+  }
+
+  /**
+   * Get the state of the generator, to restore it later
+   *
+   * @return the state
+   */
+  public long getState() {
+    return state;
+  }
+
+  /**
+   * Restore the generator to a state from getState
+   *
+   * @param state the state
+   */
+  public void setState(long state) {
+    this.state = state;
+  }
+
+  /**
+   * Scramble the bits of a number
+   *
+   * @param z the number
+   * @return the scrambled number
+   */
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
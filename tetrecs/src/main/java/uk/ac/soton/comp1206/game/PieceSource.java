@@ -0,0 +1,56 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * A PieceSource decides which pieces a game is given, and in which order. The GameEngine asks its
+ * source for a new piece every time one is spawned.
+ */
+public interface PieceSource {
+
+  /**
+   * Get the next piece to play
+   *
+   * @return the new piece
+   */
+  GamePiece next();
+
+  /**
+   * Get the seed the pieces were generated from, so a game can be recorded and dealt again
+   *
+   * @return the seed, or 0 if the pieces do not come from a seed
+   */
+  default long getSeed() {
+    return 0;
+  }
+
+  /**
+   * Create a source which picks each piece uniformly at random
+   *
+   * @param seed the seed, the same seed always gives the same pieces
+   * @return the source
+   */
+  static PieceSource random(long seed) {
+    return new RandomPieceSource(new PieceGenerator(seed));
+  }
+
+  /**
+   * Create a source which deals every piece once, in a shuffled order, before dealing them again
+   *
+   * @param seed the seed, the same seed always gives the same pieces
+   * @return the source
+   */
+  static PieceSource bag(long seed) {
+    return new BagPieceSource(new PieceGenerator(seed));
+  }
+
+  /**
+   * Create a source which deals a fixed list of pieces, starting again from the first after the
+   * last
+   *
+   * @param pieces the piece numbers to deal
+   * @return the source
+   */
+  static PieceSource sequence(int... pieces) {
+    return new SequencePieceSource(pieces, new int[pieces.length]);
+  }
+
+}
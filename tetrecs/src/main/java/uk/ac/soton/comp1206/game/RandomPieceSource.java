@@ -0,0 +1,57 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * Deals pieces chosen uniformly at random from a seeded generator
+ */
+public class RandomPieceSource implements PieceSource {
+
+  /**
+   * The generator pieces are chosen with
+   */
+  private final PieceGenerator generator;
+
+  /**
+   * The state of the generator when the source was created
+   */
+  private final long seed;
+
+  /**
+   * Create a new random source
+   *
+   * @param generator the generator to choose pieces with
+   */
+  public RandomPieceSource(PieceGenerator generator) {
+    this.generator = generator;
+    this.seed = generator.getState();
+  }
+
+  /**
+   * Get a random piece
+   *
+   * @return the new piece
+   */
+  @Override
+  public GamePiece next() {
+    //Generate a random integer from 0 to 14
+    return GamePiece.createPiece(generator.nextInt(GamePiece.PIECES));
+  }
+
+  /**
+   * Get the generator pieces are chosen with
+   *
+   * @return the generator
+   */
+  public PieceGenerator getGenerator() {
+    return generator;
+  }
+
+  /**
+   * Get the seed the pieces were generated from
+   *
+   * @return the state of the generator when the source was created
+   */
+  @Override
+  public long getSeed() {
+    return seed;
+  }
+}
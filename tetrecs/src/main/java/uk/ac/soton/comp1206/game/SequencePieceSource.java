@@ -0,0 +1,56 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * Deals a fixed list of pieces in order, going back to the start after the last one. Used to
+ * replay a known game, or to set up a particular situation.
+ */
+public class SequencePieceSource implements PieceSource {
+
+  /**
+   * The piece numbers to deal
+   */
+  private final int[] pieces;
+
+  /**
+   * The rotation of each piece
+   */
+  private final int[] rotations;
+
+  /**
+   * The index of the next piece to deal
+   */
+  private int position = 0;
+
+  /**
+   * Create a new sequence source
+   *
+   * @param pieces    the piece numbers to deal
+   * @param rotations the rotation of each piece
+   */
+  public SequencePieceSource(int[] pieces, int[] rotations) {
+    if (pieces.length == 0 || pieces.length != rotations.length) {
+      throw new IllegalArgumentException("A sequence needs a rotation for each of its pieces");
+    }
+    this.pieces = pieces.clone();
+    this.rotations = rotations.clone();
+  }
+
+  /**
+   * Get the next piece in the sequence
+   *
+   * @return the new piece
+   */
+  @Override
+  public GamePiece next() {
+    var piece = GamePiece.createPiece(pieces[position], rotations[position]);
+    position = (position + 1) % pieces.length;
+    return piece;
+  }
+
+  /**
+   * Go back to the start of the sequence
+   */
+  public void reset() {
+    position = 0;
+  }
+}
@@ -0,0 +1,71 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.ArrayDeque;
+
+/**
+ * Deals the pieces sent by the server in a multiplayer game, in the order they arrive. The server
+ * only sends the piece number, so each piece is given a rotation from a seeded generator.
+ */
+public class ServerPieceSource implements PieceSource {
+
+  /**
+   * The generator rotations are chosen with
+   */
+  private final PieceGenerator generator;
+
+  /**
+   * The pieces received and not yet dealt
+   */
+  private final ArrayDeque<GamePiece> pieces = new ArrayDeque<>();
+
+  /**
+   * Create a new server source
+   *
+   * @param generator the generator to choose rotations with
+   */
+  public ServerPieceSource(PieceGenerator generator) {
+    this.generator = generator;
+  }
+
+  /**
+   * Add a piece received from the server
+   *
+   * @param piece the piece number
+   * @return the new piece
+   */
+  public GamePiece add(int piece) {
+    //To give a random rotation
+    var gamePiece = GamePiece.createPiece(piece, generator.nextInt(GamePiece.ROTATIONS));
+    pieces.add(gamePiece);
+    return gamePiece;
+  }
+
+  /**
+   * Get the number of pieces received and not yet dealt
+   *
+   * @return the number of pieces waiting
+   */
+  public int size() {
+    return pieces.size();
+  }
+
+  /**
+   * Get whether every piece received has been dealt
+   *
+   * @return true if no piece is waiting
+   */
+  public boolean isEmpty() {
+    return pieces.isEmpty();
+  }
+
+  /**
+   * Get the first piece received from the server. Callers should check {@link #isEmpty()} first,
+   * as the server may not have sent the next piece yet.
+   *
+   * @return the piece, or null if none is waiting
+   */
+  @Override
+  public GamePiece next() {
+    return pieces.poll();
+  }
+}
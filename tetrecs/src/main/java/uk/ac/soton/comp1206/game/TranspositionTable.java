@@ -0,0 +1,398 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The TranspositionTable caches the value of searched positions, so a lookahead search does not
+ * evaluate the same board twice. Positions are keyed by the occupied blocks, the piece and its
+ * rotation, and the number of pieces searched.
+ * <p>
+ * Keys are made canonical over the symmetries of the grid, the 8 rotations and reflections of a
+ * square grid or the 4 flips of any other, with the piece transformed alongside the board. A board
+ * and its mirror image share one entry.
+ * <p>
+ * The table has a fixed size set in megabytes, held in two primitive arrays and probed in buckets
+ * of four. When a bucket is full the entry from the oldest search is evicted, then the shallowest.
+ * It is safe for lookups and stores from many threads without locking: each key is stored XORed
+ * with its data, so an entry torn by a concurrent write no longer matches its key and reads as a
+ * miss.
+ */
+public class TranspositionTable {
+
+  /**
+   * The number of entries probed for a key
+   */
+  private static final int BUCKET = 4;
+
+  /**
+   * The piece value used when any piece could be played
+   */
+  public static final int ANY_PIECE = -1;
+
+  /**
+   * The rotation value used when the piece can be played in any rotation
+   */
+  public static final int ANY_ROTATION = -1;
+
+  /**
+   * The number of columns of the grids stored
+   */
+  private final int cols;
+
+  /**
+   * The number of rows of the grids stored
+   */
+  private final int rows;
+
+  /**
+   * The number of symmetries of the grid
+   */
+  private final int symmetries;
+
+  /**
+   * The number of bytes a board is split into
+   */
+  private final int chunks;
+
+  /**
+   * For each symmetry, the transformed blocks of each byte of a board, indexed by (chunk * 256 +
+   * byte)
+   */
+  private final long[][] boardTransforms;
+
+  /**
+   * For each symmetry, the transformed 9-bit mask of a piece orientation
+   */
+  private final int[][] pieceTransforms;
+
+  /**
+   * The stored keys, each XORed with its data
+   */
+  private final long[] keys;
+
+  /**
+   * The stored data: the value as float bits, the depth and the search generation
+   */
+  private final long[] data;
+
+  /**
+   * The mask of an index into the table
+   */
+  private final int indexMask;
+
+  /**
+   * The generation of the current search, entries from older searches are evicted first
+   */
+  private volatile int generation = 1;
+
+  /**
+   * Number of lookups which found an entry
+   */
+  private final LongAdder hits = new LongAdder();
+
+  /**
+   * Number of lookups which found nothing
+   */
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * Number of entries stored
+   */
+  private final LongAdder stores = new LongAdder();
+
+  /**
+   * Number of stores which replaced an entry for another position
+   */
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * Create a new table for grids of the given size
+   *
+   * @param cols      number of columns
+   * @param rows      number of rows
+   * @param megabytes the most memory the table may use
+   */
+  public TranspositionTable(int cols, int rows, int megabytes) {
+    if (cols * rows > 64) {
+      throw new IllegalArgumentException("Grid of " + cols + "x" + rows + " is too large to cache");
+    }
+    this.cols = cols;
+    this.rows = rows;
+    //Swapping rows and columns only maps the grid onto itself when it is square
+    this.symmetries = cols == rows ? 8 : 4;
+
+    //Each entry is a key and a data word, the size is rounded down to a power of two
+    var entries = Math.max(BUCKET, Long.highestOneBit((megabytes * 1024L * 1024L) / 16));
+    entries = Math.min(entries, 1 << 30);
+    keys = new long[(int) entries];
+    data = new long[(int) entries];
+    indexMask = (int) entries - 1;
+
+    chunks = (cols * rows + 7) / 8;
+    boardTransforms = new long[symmetries][chunks * 256];
+    pieceTransforms = new int[symmetries][512];
+    for (var symmetry = 0; symmetry < symmetries; symmetry++) {
+      for (var chunk = 0; chunk < chunks; chunk++) {
+        for (var bits = 0; bits < 256; bits++) {
+          long transformed = 0;
+          for (var bit = 0; bit < 8; bit++) {
+            var index = chunk * 8 + bit;
+            if ((bits & (1 << bit)) != 0 && index < cols * rows) {
+              transformed |= 1L << transform(symmetry, index % cols, index / cols, cols, rows);
+            }
+          }
+          boardTransforms[symmetry][chunk * 256 + bits] = transformed;
+        }
+      }
+      for (var mask = 0; mask < 512; mask++) {
+        var transformed = 0;
+        for (var bit = 0; bit < 9; bit++) {
+          if ((mask & (1 << bit)) != 0) {
+            transformed |= 1 << transform(symmetry, bit % 3, bit / 3, 3, 3);
+          }
+        }
+        pieceTransforms[symmetry][mask] = transformed;
+      }
+    }
+  }
+
+  /**
+   * Find where a block moves to under a symmetry of the grid
+   *
+   * @param symmetry the symmetry, bit 0 flips columns, bit 1 flips rows and bit 2 swaps them
+   * @param x        column
+   * @param y        row
+   * @param cols     number of columns
+   * @param rows     number of rows
+   * @return the index of the block it moves to
+   */
+  private static int transform(int symmetry, int x, int y, int cols, int rows) {
+    if ((symmetry & 1) != 0) {
+      x = cols - 1 - x;
+    }
+    if ((symmetry & 2) != 0) {
+      y = rows - 1 - y;
+    }
+    if ((symmetry & 4) != 0) {
+      //Only used for square grids
+      return x * cols + y;
+    }
+    return y * cols + x;
+  }
+
+  /**
+   * Start a new search, so entries from earlier searches are replaced first
+   */
+  public void newSearch() {
+    //Stays within 1 to 255, so a stored entry is never all zeros
+    generation = generation % 255 + 1;
+  }
+
+  /**
+   * Find the value stored for a position
+   *
+   * @param board    the occupied blocks
+   * @param piece    the piece, or ANY_PIECE
+   * @param rotation the rotation of the piece, or ANY_ROTATION
+   * @param depth    the number of pieces searched
+   * @return the stored value, or NaN if there is none
+   */
+  public double lookup(long board, int piece, int rotation, int depth) {
+    var key = key(board, piece, rotation, depth);
+    var index = index(key);
+    for (var i = 0; i < BUCKET; i++) {
+      var slot = (index + i) & indexMask;
+      var entry = data[slot];
+      if ((keys[slot] ^ entry) == key && entry != 0) {
+        hits.increment();
+        return Float.intBitsToFloat((int) (entry >>> 32));
+      }
+    }
+    misses.increment();
+    return Double.NaN;
+  }
+
+  /**
+   * Store the value of a position
+   *
+   * @param board    the occupied blocks
+   * @param piece    the piece, or ANY_PIECE
+   * @param rotation the rotation of the piece, or ANY_ROTATION
+   * @param depth    the number of pieces searched
+   * @param value    the value
+   */
+  public void store(long board, int piece, int rotation, int depth, double value) {
+    var key = key(board, piece, rotation, depth);
+    var index = index(key);
+    var generation = this.generation;
+    var entry = (long) Float.floatToIntBits((float) value) << 32 | (depth & 0xff) << 8
+        | generation;
+
+    //Reuse the entry for this key or an empty one, otherwise evict the oldest and shallowest
+    var replace = index;
+    var replaceScore = Integer.MAX_VALUE;
+    for (var i = 0; i < BUCKET; i++) {
+      var slot = (index + i) & indexMask;
+      var existing = data[slot];
+      if (existing == 0 || (keys[slot] ^ existing) == key) {
+        replace = slot;
+        replaceScore = -1;
+        break;
+      }
+      var age = (generation - (int) (existing & 0xff)) & 0xff;
+      var score = ((int) (existing >>> 8) & 0xff) - age * 256;
+      if (score < replaceScore) {
+        replace = slot;
+        replaceScore = score;
+      }
+    }
+    if (replaceScore != -1) {
+      evictions.increment();
+    }
+    keys[replace] = key ^ entry;
+    data[replace] = entry;
+    stores.increment();
+  }
+
+  /**
+   * Create the canonical key of a position, the smallest over every symmetry of the grid
+   *
+   * @param board    the occupied blocks
+   * @param piece    the piece, or ANY_PIECE
+   * @param rotation the rotation of the piece, or ANY_ROTATION
+   * @param depth    the number of pieces searched
+   * @return a 64-bit hash of the canonical position
+   */
+  private long key(long board, int piece, int rotation, int depth) {
+    long bestBoard = 0;
+    var bestPiece = 0;
+    for (var symmetry = 0; symmetry < symmetries; symmetry++) {
+      var transforms = boardTransforms[symmetry];
+      long transformed = 0;
+      for (var chunk = 0; chunk < chunks; chunk++) {
+        transformed |= transforms[chunk * 256 + (int) ((board >>> (chunk * 8)) & 0xff)];
+      }
+      var pieceMask = pieceMask(symmetry, piece, rotation);
+      var compare = Long.compareUnsigned(transformed, bestBoard);
+      if (symmetry == 0 || compare < 0 || (compare == 0 && pieceMask < bestPiece)) {
+        bestBoard = transformed;
+        bestPiece = pieceMask;
+      }
+    }
+    //A piece mask is 9 bits, with bit 9 set for any rotation and 0 for any piece
+    return mix(bestBoard * 0x9E3779B97F4A7C15L ^ ((long) bestPiece << 8 | depth));
+  }
+
+  /**
+   * Transform the blocks of a piece under a symmetry. A piece in any rotation is represented by its
+   * smallest transformed orientation, as the rotations of a piece are carried onto the rotations of
+   * its mirror image.
+   *
+   * @param symmetry the symmetry
+   * @param piece    the piece, or ANY_PIECE
+   * @param rotation the rotation, or ANY_ROTATION
+   * @return the transformed mask
+   */
+  private int pieceMask(int symmetry, int piece, int rotation) {
+    if (piece == ANY_PIECE) {
+      return 0;
+    }
+    if (rotation != ANY_ROTATION) {
+      return pieceTransforms[symmetry][GamePiece.getOrientation(piece, rotation).getMask()];
+    }
+    var smallest = Integer.MAX_VALUE;
+    for (var i = 0; i < GamePiece.ROTATIONS; i++) {
+      smallest = Math.min(smallest,
+          pieceTransforms[symmetry][GamePiece.getOrientation(piece, i).getMask()]);
+    }
+    return smallest | 1 << 9;
+  }
+
+  /**
+   * Spread the bits of a key, so neighbouring boards land in different buckets
+   *
+   * @param key the key
+   * @return the mixed key
+   */
+  private static long mix(long key) {
+    key = (key ^ (key >>> 30)) * 0xBF58476D1CE4E5B9L;
+    key = (key ^ (key >>> 27)) * 0x94D049BB133111EBL;
+    return key ^ (key >>> 31);
+  }
+
+  /**
+   * Find the first slot of the bucket for a key
+   *
+   * @param key the key
+   * @return the index of the first slot
+   */
+  private int index(long key) {
+    return (int) (key >>> 32) & indexMask;
+  }
+
+  /**
+   * Remove every entry and reset the counters
+   */
+  public void clear() {
+    Arrays.fill(keys, 0);
+    Arrays.fill(data, 0);
+    hits.reset();
+    misses.reset();
+    stores.reset();
+    evictions.reset();
+  }
+
+  /**
+   * Get the number of entries the table can hold
+   *
+   * @return the capacity
+   */
+  public int getCapacity() {
+    return keys.length;
+  }
+
+  /**
+   * Get the number of lookups which found an entry
+   *
+   * @return hits
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * Get the number of lookups which found nothing
+   *
+   * @return misses
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * Get the number of stores which replaced an entry for another position
+   *
+   * @return evictions
+   */
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  /**
+   * Get the fraction of lookups which found an entry
+   *
+   * @return the hit rate, from 0 to 1
+   */
+  public double getHitRate() {
+    var hits = getHits();
+    var total = hits + getMisses();
+    return total == 0 ? 0 : (double) hits / total;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d entries, %.1f%% hits, %d stores, %d evictions", getCapacity(),
+        getHitRate() * 100, stores.sum(), getEvictions());
+  }
+}
@@ -0,0 +1,277 @@
+package uk.ac.soton.comp1206.network;
+
+import java.util.Arrays;
+
+/**
+ * A BoardSync keeps one board in step between a player and everyone watching it, sending only what changed.
+ *
+ * The player encodes their board after each move. Most updates are deltas: the cells which changed, with whole rows
+ * or columns which were cleared sent as one token. Every so often, or when asked, a full snapshot is sent instead.
+ * Each update carries a sequence number, so a receiver applying them can tell when one was missed and ignore the
+ * deltas until the next snapshot.
+ *
+ * Cells are numbered column by column, as in the classic BOARD message: cell x * rows + y. The two forms are:
+ * <pre>
+ * BOARDSYNC seq F colsxrows cells    one character for each cell, the value in base 36
+ * BOARDSYNC seq D tokens             i=v sets cell i to v, Ry clears row y, Cx clears column x
+ * </pre>
+ * Used only when the server answers CAPS BOARDSYNC, otherwise the classic BOARD message is sent.
+ */
+public class BoardSync {
+
+    /**
+     * The name of the capability, and the command of the messages
+     */
+    public static final String CAPABILITY = "BOARDSYNC";
+
+    /**
+     * The number of deltas sent between full snapshots
+     */
+    private static final int FULL_EVERY = 20;
+
+    /**
+     * The least number of cells which must have changed for a cleared line to be sent as one token
+     */
+    private static final int LINE_TOKEN_MIN = 3;
+
+    /**
+     * The number of columns
+     */
+    private int cols;
+
+    /**
+     * The number of rows
+     */
+    private int rows;
+
+    /**
+     * The board as last sent or applied, or null before the first snapshot
+     */
+    private int[] cells;
+
+    /**
+     * The sequence number of the last update sent or applied
+     */
+    private int sequence = -1;
+
+    /**
+     * The number of deltas sent since the last snapshot
+     */
+    private int sinceFull;
+
+    /**
+     * Whether the next update sent must be a snapshot
+     */
+    private boolean fullNeeded = true;
+
+    /**
+     * Encode a board as the classic BOARD message
+     * @param cells the values, column by column
+     * @return the message
+     */
+    public static String classic(int[] cells) {
+        var builder = new StringBuilder(6 + cells.length * 2).append("BOARD");
+        for (var cell : cells) {
+            builder.append(' ').append(cell);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Encode the board after a move, as a snapshot or as the changes since the last update
+     * @param cols the number of columns
+     * @param rows the number of rows
+     * @param board the values, column by column
+     * @return the message to send, or null if nothing changed
+     */
+    public String encode(int cols, int rows, int[] board) {
+        if (cells == null || this.cols != cols || this.rows != rows || sinceFull >= FULL_EVERY) {
+            fullNeeded = true;
+        }
+        String message = null;
+        if (!fullNeeded) {
+            var delta = delta(board);
+            if (delta.isEmpty()) {
+                return null;
+            }
+            //A delta touching most of the board is no smaller than a snapshot
+            if (delta.length() < cols * rows) {
+                message = CAPABILITY + " " + (sequence + 1) + " D" + delta;
+                sinceFull++;
+            }
+        }
+        if (message == null) {
+            message = CAPABILITY + " " + (sequence + 1) + " F " + cols + "x" + rows + " " + snapshot(board);
+            sinceFull = 0;
+            fullNeeded = false;
+        }
+        sequence++;
+        this.cols = cols;
+        this.rows = rows;
+        cells = board.clone();
+        return message;
+    }
+
+    /**
+     * Encode every cell of a board, one character each
+     * @param board the values
+     * @return the cells
+     */
+    private static String snapshot(int[] board) {
+        var chars = new char[board.length];
+        for (int i = 0; i < board.length; i++) {
+            chars[i] = Character.forDigit(board[i], Character.MAX_RADIX);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Encode the changes from the last board sent to a new one
+     * @param board the new values
+     * @return the tokens, each after a space, or an empty string if nothing changed
+     */
+    private String delta(int[] board) {
+        var builder = new StringBuilder();
+        var covered = new boolean[board.length];
+        for (int y = 0; y < rows; y++) {
+            line(builder, board, covered, 'R', y, y, rows, cols);
+        }
+        for (int x = 0; x < cols; x++) {
+            line(builder, board, covered, 'C', x, x * rows, 1, rows);
+        }
+        for (int i = 0; i < board.length; i++) {
+            if (!covered[i] && board[i] != cells[i]) {
+                builder.append(' ').append(i).append('=').append(board[i]);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Add a token clearing a line, if the line is now empty and enough of it changed to be worth one
+     * @param builder the tokens
+     * @param board the new values
+     * @param covered the cells already covered by a token
+     * @param kind R for a row, C for a column
+     * @param line the number of the line
+     * @param start the first cell of the line
+     * @param step the distance between the cells of the line
+     * @param length the number of cells in the line
+     */
+    private void line(StringBuilder builder, int[] board, boolean[] covered, char kind, int line, int start,
+        int step, int length) {
+        var changed = 0;
+        for (int i = 0, cell = start; i < length; i++, cell += step) {
+            if (board[cell] != 0) {
+                return;
+            }
+            if (cells[cell] != 0) {
+                changed++;
+            }
+        }
+        if (changed < LINE_TOKEN_MIN) {
+            return;
+        }
+        builder.append(' ').append(kind).append(line);
+        for (int i = 0, cell = start; i < length; i++, cell += step) {
+            covered[cell] = true;
+        }
+    }
+
+    /**
+     * Make the next update sent a full snapshot, for example when a receiver has missed one
+     */
+    public void requestFull() {
+        fullNeeded = true;
+    }
+
+    /**
+     * Apply an update received, the part of the message after the command
+     * @param update the sequence number, the form and its contents
+     * @return false if an update was missed, or it could not be read, so a snapshot is needed
+     */
+    public boolean apply(String update) {
+        var parts = update.strip().split(" ", 3);
+        try {
+            var next = Integer.parseInt(parts[0]);
+            if (parts[1].equals("F")) {
+                var contents = parts[2].split(" ", 2);
+                var size = contents[0].indexOf('x');
+                var newCols = Integer.parseInt(contents[0].substring(0, size));
+                var newRows = Integer.parseInt(contents[0].substring(size + 1));
+                var values = contents[1];
+                if (values.length() != newCols * newRows) {
+                    return false;
+                }
+                var board = new int[values.length()];
+                for (int i = 0; i < board.length; i++) {
+                    board[i] = Character.digit(values.charAt(i), Character.MAX_RADIX);
+                }
+                cols = newCols;
+                rows = newRows;
+                cells = board;
+                sequence = next;
+                return true;
+            }
+            if (!parts[1].equals("D") || cells == null || next != sequence + 1) {
+                //Missed an update, wait for the next snapshot
+                cells = null;
+                return false;
+            }
+            var board = cells.clone();
+            var tokens = parts.length > 2 ? parts[2].split(" ") : new String[0];
+            for (var token : tokens) {
+                if (token.startsWith("R")) {
+                    var y = Integer.parseInt(token.substring(1));
+                    for (int x = 0; x < cols; x++) {
+                        board[x * rows + y] = 0;
+                    }
+                } else if (token.startsWith("C")) {
+                    var x = Integer.parseInt(token.substring(1));
+                    Arrays.fill(board, x * rows, x * rows + rows, 0);
+                } else if (!token.isEmpty()) {
+                    var equals = token.indexOf('=');
+                    board[Integer.parseInt(token.substring(0, equals))] = Integer.parseInt(token.substring(equals + 1));
+                }
+            }
+            cells = board;
+            sequence = next;
+            return true;
+        } catch (RuntimeException e) {
+            cells = null;
+            return false;
+        }
+    }
+
+    /**
+     * Get the board as last sent or applied
+     * @return a copy of the values, column by column, or null if no snapshot has been received since the last gap
+     */
+    public int[] getCells() {
+        return cells == null ? null : cells.clone();
+    }
+
+    /**
+     * Get the number of columns
+     * @return the columns
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Get the number of rows
+     * @return the rows
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Get the sequence number of the last update sent or applied
+     * @return the sequence number, or -1 before the first
+     */
+    public int getSequence() {
+        return sequence;
+    }
+}
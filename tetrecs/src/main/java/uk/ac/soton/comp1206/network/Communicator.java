@@ -1,95 +1,482 @@
 package uk.ac.soton.comp1206.network;
 
 import com.neovisionaries.ws.client.*;
-import javafx.scene.control.Alert;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.event.CommunicationsListener;
+import uk.ac.soton.comp1206.event.ConnectionListener;
+import uk.ac.soton.comp1206.event.MessageListener;
 
-import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Uses web sockets to talk to a web socket server and relays communication to attached listeners
  *
- * YOU DO NOT NEED TO WORRY ABOUT THIS CLASS! Leave it be :-)
+ * Connecting happens in the background, so the game starts without waiting for the server and keeps working
+ * without it. If the connection fails or is lost, the Communicator tries again after a delay which doubles each
+ * time, up to a limit. Messages sent while not connected are queued, up to a limit, and sent in order once the
+ * connection is made. Once a connection has been lost, only requests which mean the same to any session are queued:
+ * the scores, boards and pieces of a game belong to the session which was lost, and are dropped. Connection listeners
+ * are told whenever the state of the connection changes, never while the Communicator is locked.
+ *
+ * Each message is parsed once into a typed Message, then given only to the listeners subscribed to that kind of
+ * message. A listener can be subscribed with an executor, such as Platform::runLater, to be run on that thread
+ * rather than the thread reading the socket.
+ *
+ * The traffic, the time to answer each request, the round trip of pings and the time each listener takes, on the
+ * thread it runs on, are kept in the CommunicatorMetrics.
  */
 public class Communicator {
 
     private static final Logger logger = LogManager.getLogger(Communicator.class);
 
+    /**
+     * The most messages held while not connected, the oldest are dropped beyond this
+     */
+    private static final int QUEUE_LIMIT = 256;
+
+    /**
+     * The delay before the first reconnect, in milliseconds
+     */
+    private static final long MIN_BACKOFF = 500;
+
+    /**
+     * The longest delay between reconnects, in milliseconds
+     */
+    private static final long MAX_BACKOFF = 30000;
+
+    /**
+     * How long to wait for the server to accept a connection, in milliseconds
+     */
+    private static final int CONNECT_TIMEOUT = 5000;
+
+    /**
+     * How often the server is pinged to measure the round trip, in milliseconds
+     */
+    private static final long PING_INTERVAL = 5000;
+
+    /**
+     * Commands which mean the same on any connection to the server, and can be sent after reconnecting
+     */
+    private static final Set<String> SESSION_SAFE = Set.of("HISCORES", "HISCORE", "LIST");
+
     /**
      * Attached communication listeners listening to messages on this Communicator. Each will be sent any messages.
      */
-    private final List<CommunicationsListener> handlers = new ArrayList<>();
+    private final List<CommunicationsListener> handlers = new CopyOnWriteArrayList<>();
+
+    /**
+     * A listener subscribed to a kind of parsed message
+     * @param listener the listener
+     * @param executor runs the listener, or null to run it on the thread reading the socket
+     */
+    private record Subscription(MessageListener<?> listener, Executor executor) {}
+
+    /**
+     * Listeners subscribed to each kind of parsed message
+     */
+    private final ConcurrentHashMap<Class<? extends Message>, List<Subscription>> subscribers =
+        new ConcurrentHashMap<>();
+
+    /**
+     * Sends repeated requests for the scenes
+     */
+    private final Poller poller = new Poller(this);
+
+    /**
+     * Measures the traffic through this communicator
+     */
+    private final CommunicatorMetrics metrics = new CommunicatorMetrics();
+
+    /**
+     * Attached connection listeners, told when the state of the connection changes
+     */
+    private final List<ConnectionListener> connectionListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Messages waiting to be sent once connected
+     */
+    private final ArrayDeque<String> outbound = new ArrayDeque<>();
+
+    /**
+     * State changes made while locked, waiting to be given to the connection listeners
+     */
+    private final ArrayDeque<ConnectionState> stateChanges = new ArrayDeque<>();
+
+    /**
+     * Held while telling the connection listeners, so every listener sees the changes in order
+     */
+    private final Object notifying = new Object();
+
+    /**
+     * Connects and reconnects in the background
+     */
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+        var thread = new Thread(runnable, "Communicator");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Creates the web sockets
+     */
+    private final WebSocketFactory socketFactory = new WebSocketFactory().setConnectionTimeout(CONNECT_TIMEOUT);
+
+    /**
+     * The server to connect to
+     */
+    private final String server;
 
+    /**
+     * The connected socket, or null
+     */
     private WebSocket ws = null;
 
     /**
-     * Create a new communicator to the given web socket server
+     * The state of the connection
+     */
+    private volatile ConnectionState state = ConnectionState.OFFLINE;
+
+    /**
+     * The delay before the next reconnect, in milliseconds
+     */
+    private long backoff = MIN_BACKOFF;
+
+    /**
+     * The scheduled reconnect, or null
+     */
+    private ScheduledFuture<?> retry;
+
+    /**
+     * Whether a connection was made and then lost, so messages tied to that session can no longer be delivered
+     */
+    private boolean sessionLost;
+
+    /**
+     * Create a new communicator to the given web socket server, and start connecting in the background
      *
      * @param server server to connect to
      */
     public Communicator(String server) {
+        this(server, true);
+    }
 
+    /**
+     * Create a new communicator to the given web socket server
+     *
+     * @param server server to connect to
+     * @param connect whether to start connecting, or start offline
+     */
+    public Communicator(String server, boolean connect) {
+        this.server = server;
+        if (connect) {
+            connect();
+        }
+    }
+
+    /**
+     * Start connecting in the background, if not connected or connecting already
+     */
+    public void connect() {
+        synchronized (this) {
+            if (state != ConnectionState.OFFLINE && state != ConnectionState.RECONNECTING) {
+                return;
+            }
+            if (retry != null) {
+                retry.cancel(false);
+            }
+            backoff = MIN_BACKOFF;
+            setState(ConnectionState.CONNECTING);
+            executor.execute(this::attempt);
+        }
+        notifyStateChanges();
+    }
+
+    /**
+     * Go offline, closing the connection and not reconnecting until connect is called. Messages sent while offline
+     * are queued, apart from those tied to the session which was closed.
+     */
+    public void disconnect() {
+        WebSocket socket;
+        synchronized (this) {
+            if (state == ConnectionState.CLOSED) {
+                return;
+            }
+            if (retry != null) {
+                retry.cancel(false);
+            }
+            socket = ws;
+            ws = null;
+            if (socket != null) {
+                endSession();
+            }
+            setState(ConnectionState.OFFLINE);
+        }
+        notifyStateChanges();
+        if (socket != null) {
+            socket.disconnect();
+            metrics.disconnected();
+        }
+    }
+
+    /**
+     * Close the connection for good, stopping the background thread
+     */
+    public void close() {
+        poller.clear();
+        disconnect();
+        synchronized (this) {
+            setState(ConnectionState.CLOSED);
+            outbound.clear();
+        }
+        notifyStateChanges();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Make one attempt to connect, scheduling another if it fails
+     */
+    private void attempt() {
+        synchronized (this) {
+            if (state != ConnectionState.CONNECTING) {
+                //Went offline while waiting
+                return;
+            }
+        }
+        logger.info("Connecting to " + server);
+        WebSocket socket;
         try {
-            var socketFactory = new WebSocketFactory();
-
-            //Connect to the server
-            ws = socketFactory.createSocket(server);
-            ws.connect();
-            logger.info("Connected to " + server);
-
-            //When a message is received, call the receive method
-            ws.addListener(new WebSocketAdapter() {
-                @Override
-                public void onTextMessage(WebSocket websocket, String message) throws Exception {
-                    Communicator.this.receive(websocket, message);
+            socket = socketFactory.createSocket(server);
+            socket.addListener(listener);
+            socket.setPingPayloadGenerator(metrics::pingPayload);
+            socket.setPingInterval(PING_INTERVAL);
+            socket.connect();
+            //Send each message at once rather than holding small ones back to batch them
+            socket.getSocket().setTcpNoDelay(true);
+        } catch (Exception e) {
+            logger.error("Unable to connect to " + server + ": " + e.getMessage());
+            scheduleReconnect();
+            return;
+        }
+
+        boolean open;
+        synchronized (this) {
+            if (state != ConnectionState.CONNECTING) {
+                //Went offline while connecting
+                socket.disconnect();
+                return;
+            }
+            //Closed as soon as it opened, onDisconnected came before the socket was ours and did nothing
+            open = socket.isOpen();
+            if (!open) {
+                logger.error("Connection to " + server + " closed as soon as it opened");
+            } else {
+                ws = socket;
+                backoff = MIN_BACKOFF;
+                setState(ConnectionState.CONNECTED);
+                logger.info("Connected to " + server);
+
+                //Send everything queued while disconnected
+                if (!outbound.isEmpty()) {
+                    logger.info("Sending " + outbound.size() + " queued messages");
                 }
-                @Override
-                public void onPingFrame(WebSocket webSocket, WebSocketFrame webSocketFrame) throws Exception {
-                    logger.info("Ping? Pong!");
+                while (!outbound.isEmpty()) {
+                    ws.sendText(outbound.poll());
                 }
-            });
-
-            //Error handling
-            ws.addListener(new WebSocketAdapter() {
-                @Override
-                public void onTextMessage(WebSocket websocket, String message) throws Exception {
-                    if(message.startsWith("ERROR")) {
-                        logger.error(message);
+            }
+        }
+        if (!open) {
+            scheduleReconnect();
+            return;
+        }
+        notifyStateChanges();
+    }
+
+    /**
+     * Mark the session with the server as lost, dropping every queued message which belonged to it. Must be called
+     * while locked.
+     */
+    private void endSession() {
+        sessionLost = true;
+        var queued = outbound.size();
+        outbound.removeIf((message) -> !isSessionSafe(message));
+        if (outbound.size() < queued) {
+            logger.info("Dropped " + (queued - outbound.size()) + " queued messages for the lost session");
+        }
+    }
+
+    /**
+     * Check whether a message means the same to any session with the server
+     * @param message the message
+     * @return true if it can be sent after reconnecting
+     */
+    private static boolean isSessionSafe(String message) {
+        var space = message.indexOf(' ');
+        return SESSION_SAFE.contains(space < 0 ? message : message.substring(0, space));
+    }
+
+    /**
+     * Wait before trying to connect again, doubling the wait each time
+     */
+    private void scheduleReconnect() {
+        synchronized (this) {
+            if (state != ConnectionState.CONNECTING && state != ConnectionState.CONNECTED) {
+                return;
+            }
+            //Spread out the reconnects of many clients after the server goes down
+            var delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+            backoff = Math.min(backoff * 2, MAX_BACKOFF);
+            setState(ConnectionState.RECONNECTING);
+            logger.info("Reconnecting in " + delay + "ms");
+            retry = executor.schedule(() -> {
+                synchronized (this) {
+                    if (state != ConnectionState.RECONNECTING) {
+                        return;
                     }
+                    setState(ConnectionState.CONNECTING);
                 }
-                @Override
-                public void handleCallbackError(WebSocket webSocket, Throwable throwable) throws Exception {
-                    logger.error("Callback Error:" + throwable.getMessage());
-                    throwable.printStackTrace();
-                }
-                @Override
-                public void onError(WebSocket webSocket, WebSocketException e) throws Exception {
-                    logger.error("Error:" + e.getMessage());
-                    e.printStackTrace();
+                notifyStateChanges();
+                attempt();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        notifyStateChanges();
+    }
+
+    /**
+     * Listens to the socket for messages, errors and the connection closing
+     */
+    private final WebSocketAdapter listener = new WebSocketAdapter() {
+        @Override
+        public void onTextMessage(WebSocket websocket, String message) throws Exception {
+            if(message.startsWith("ERROR")) {
+                logger.error(message);
+            }
+            Communicator.this.receive(websocket, message);
+        }
+        @Override
+        public void onFrameSent(WebSocket websocket, WebSocketFrame frame) throws Exception {
+            //Counted once written, so requests are timed from when they left rather than when they were queued
+            if (frame.isTextFrame()) {
+                metrics.sent(frame.getPayloadText());
+            }
+        }
+        @Override
+        public void onPingFrame(WebSocket webSocket, WebSocketFrame webSocketFrame) throws Exception {
+            logger.trace("Ping? Pong!");
+            metrics.serverPing();
+        }
+        @Override
+        public void onPongFrame(WebSocket webSocket, WebSocketFrame webSocketFrame) throws Exception {
+            metrics.pong(webSocketFrame.getPayload());
+        }
+        @Override
+        public void onDisconnected(WebSocket websocket, WebSocketFrame serverCloseFrame,
+            WebSocketFrame clientCloseFrame, boolean closedByServer) throws Exception {
+            synchronized (Communicator.this) {
+                if (websocket != ws) {
+                    //An old socket, or closed on purpose
+                    return;
                 }
-            });
+                ws = null;
+                endSession();
+            }
+            logger.error("Disconnected from " + server);
+            metrics.disconnected();
+            scheduleReconnect();
+        }
+        @Override
+        public void handleCallbackError(WebSocket webSocket, Throwable throwable) throws Exception {
+            logger.error("Callback Error:" + throwable.getMessage());
+            throwable.printStackTrace();
+        }
+        @Override
+        public void onError(WebSocket webSocket, WebSocketException e) throws Exception {
+            logger.error("Error:" + e.getMessage());
+        }
+    };
 
-        } catch (Exception e){
-            logger.error("Socket error: " + e.getMessage());
-            e.printStackTrace();
+    /**
+     * Change the state of the connection. Must be called while locked, the connection listeners are told by
+     * notifyStateChanges once the lock is released.
+     * @param state the new state
+     */
+    private void setState(ConnectionState state) {
+        if (this.state == state) {
+            return;
+        }
+        this.state = state;
+        stateChanges.add(state);
+    }
 
-            Alert error = new Alert(Alert.AlertType.ERROR,"Unable to communicate with the TetrECS server\n\n" + e.getMessage() + "\n\nPlease ensure you are connected to the VPN");
-            error.showAndWait();
-            System.exit(1);
+    /**
+     * Tell the connection listeners of every state change made so far. Must be called without the Communicator
+     * locked, so a listener can use the Communicator.
+     */
+    private void notifyStateChanges() {
+        synchronized (notifying) {
+            while (true) {
+                ConnectionState change;
+                synchronized (this) {
+                    change = stateChanges.poll();
+                }
+                if (change == null) {
+                    return;
+                }
+                for (ConnectionListener connectionListener : connectionListeners) {
+                    connectionListener.connectionChanged(change);
+                }
+            }
         }
     }
 
-    /** Send a message to the server
+    /** Send a message to the server, or queue it if not connected
      *
      * @param message Message to send
      */
-    public void send(String message) {
-        logger.info("Sending message: " + message);
+    public synchronized void send(String message) {
+        if (ws != null && state == ConnectionState.CONNECTED) {
+            logger.trace("Sending message: " + message);
+            ws.sendText(message);
+            return;
+        }
+        if (state == ConnectionState.CLOSED) {
+            return;
+        }
+        if (sessionLost && !isSessionSafe(message)) {
+            logger.debug("Not connected, dropping message for the lost session: " + message);
+            return;
+        }
+        if (outbound.size() >= QUEUE_LIMIT) {
+            logger.error("Outbound queue full, dropping: " + outbound.poll());
+        }
+        logger.debug("Queueing message: " + message);
+        outbound.add(message);
+    }
+
+    /**
+     * Get the state of the connection
+     * @return the state
+     */
+    public ConnectionState getState() {
+        return state;
+    }
 
-        ws.sendText(message);
+    /**
+     * Get the number of messages waiting to be sent
+     * @return the number of queued messages
+     */
+    public synchronized int getQueued() {
+        return outbound.size();
     }
 
     /**
@@ -101,10 +488,71 @@ public class Communicator {
     }
 
     /**
-     * Clear all current listeners
+     * Subscribe a listener to one kind of parsed message, run on the thread reading the socket
+     * @param type the kind of message
+     * @param listener the listener to add
+     * @param <T> the kind of message
+     */
+    public <T extends Message> void subscribe(Class<T> type, MessageListener<? super T> listener) {
+        subscribe(type, null, listener);
+    }
+
+    /**
+     * Subscribe a listener to one kind of parsed message, run by an executor such as Platform::runLater
+     * @param type the kind of message
+     * @param executor runs the listener, or null to run it on the thread reading the socket
+     * @param listener the listener to add
+     * @param <T> the kind of message
+     */
+    public <T extends Message> void subscribe(Class<T> type, Executor executor, MessageListener<? super T> listener) {
+        var subscription = new Subscription(listener, executor);
+        subscribers.computeIfAbsent(type, (key) -> new CopyOnWriteArrayList<>()).add(subscription);
+    }
+
+    /**
+     * Unsubscribe a listener from one kind of parsed message
+     * @param type the kind of message
+     * @param listener the listener to remove, as it was subscribed
+     */
+    public void unsubscribe(Class<? extends Message> type, MessageListener<?> listener) {
+        var listeners = subscribers.get(type);
+        if (listeners != null) {
+            listeners.removeIf((subscription) -> subscription.listener() == listener);
+        }
+    }
+
+    /**
+     * Add a new listener to be told when the state of the connection changes
+     * @param listener the listener to add
+     */
+    public void addConnectionListener(ConnectionListener listener) {
+        this.connectionListeners.add(listener);
+    }
+
+    /**
+     * Get the measurements of the traffic through this communicator
+     * @return the metrics
+     */
+    public CommunicatorMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get the poller which sends repeated requests through this communicator
+     * @return the poller
+     */
+    public Poller getPoller() {
+        return poller;
+    }
+
+    /**
+     * Clear all current listeners, stopping every poll
      */
     public void clearListeners() {
+        this.poller.clear();
         this.handlers.clear();
+        this.subscribers.clear();
+        this.connectionListeners.clear();
     }
 
     /** Receive a message from the server. Relay to any attached listeners
@@ -113,11 +561,51 @@ public class Communicator {
      * @param message the message that was received
      */
     private void receive(WebSocket websocket, String message) {
-        logger.info("Received: " + message);
+        logger.trace("Received: " + message);
+        metrics.received(message);
 
         for(CommunicationsListener handler : handlers) {
+            var start = System.nanoTime();
             handler.receiveCommunication(message);
+            metrics.dispatched("*", handler, System.nanoTime() - start);
         }
+
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        var parsed = MessageDecoder.decode(message);
+        var listeners = subscribers.get(parsed.getClass());
+        if (listeners != null) {
+            var type = parsed.getClass().getSimpleName();
+            for (var subscription : listeners) {
+                var listener = subscription.listener();
+                if (subscription.executor() == null) {
+                    var start = System.nanoTime();
+                    dispatch(listener, parsed);
+                    metrics.dispatched(type, listener, System.nanoTime() - start);
+                    continue;
+                }
+                //Time the listener on the thread it runs on, not the handing over
+                var queued = System.nanoTime();
+                subscription.executor().execute(() -> {
+                    var start = System.nanoTime();
+                    metrics.handedOver(start - queued);
+                    dispatch(listener, parsed);
+                    metrics.dispatched(type, listener, System.nanoTime() - start);
+                });
+            }
+        }
+    }
+
+    /**
+     * Give a message to a listener subscribed to its kind
+     * @param listener the listener
+     * @param message the message
+     * @param <T> the kind of message
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends Message> void dispatch(MessageListener<T> listener, Message message) {
+        listener.receiveMessage((T) message);
     }
 
 }
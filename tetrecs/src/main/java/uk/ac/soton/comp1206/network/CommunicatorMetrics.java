@@ -0,0 +1,392 @@
+package uk.ac.soton.comp1206.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CommunicatorMetrics measures the traffic of a Communicator, so network lag can be told apart from the game
+ * stalling on its own.
+ *
+ * It counts the messages and characters sent and received of each type, and times each request which has a response,
+ * such as PIECE to PIECE or LIST to CHANNELS, from the request being written to the socket to its response arriving.
+ * The Communicator pings the server with the time as the payload, so each pong gives the round trip of the socket
+ * alone. The time each listener takes to handle a message is kept by listener, measured on the thread it runs on,
+ * along with how long messages wait to be handed to listeners run on another thread such as the FX thread. The overlay
+ * records the time between frames, so a slow listener or a busy FX thread shows up next to the network times.
+ *
+ * Every method can be called from any thread.
+ */
+public class CommunicatorMetrics {
+
+    /**
+     * The response to each request which has one, by the command of the request
+     */
+    private static final Map<String, String> RESPONSES = Map.of(
+        "PIECE", "PIECE",
+        "SCORES", "SCORES",
+        "LIST", "CHANNELS",
+        "USERS", "USERS",
+        "HISCORES", "HISCORES",
+        "HISCORE", "NEWSCORE");
+
+    /**
+     * The most requests waiting for a response of one type, the oldest are forgotten beyond this
+     */
+    private static final int PENDING_LIMIT = 256;
+
+    /**
+     * How long a request waits for its response before it is taken as unanswered, in nanoseconds
+     */
+    private static final long PENDING_TIMEOUT = 30_000_000_000L;
+
+    /**
+     * The messages and characters sent and received of one type
+     */
+    private static class Traffic {
+
+        /**
+         * The number of messages sent
+         */
+        final AtomicLong sent = new AtomicLong();
+
+        /**
+         * The number of characters sent
+         */
+        final AtomicLong sentBytes = new AtomicLong();
+
+        /**
+         * The number of messages received
+         */
+        final AtomicLong received = new AtomicLong();
+
+        /**
+         * The number of characters received
+         */
+        final AtomicLong receivedBytes = new AtomicLong();
+    }
+
+    /**
+     * The traffic of each type of message, by command
+     */
+    private final ConcurrentHashMap<String, Traffic> traffic = new ConcurrentHashMap<>();
+
+    /**
+     * When each request waiting for a response was sent, oldest first, by the command of the response
+     */
+    private final ConcurrentHashMap<String, ConcurrentLinkedQueue<Long>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * The time from each kind of request to its response, by the command of the request
+     */
+    private final ConcurrentHashMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * The time each listener takes to handle a message, by message type and listener
+     */
+    private final ConcurrentHashMap<String, LatencyHistogram> dispatch = new ConcurrentHashMap<>();
+
+    /**
+     * The time from each message being received to its listener starting on the thread it runs on
+     */
+    private final LatencyHistogram handover = new LatencyHistogram();
+
+    /**
+     * The round trip of each ping sent to the server
+     */
+    private final LatencyHistogram ping = new LatencyHistogram();
+
+    /**
+     * The time between frames while the overlay is shown
+     */
+    private final LatencyHistogram frames = new LatencyHistogram();
+
+    /**
+     * The number of pings sent to the server
+     */
+    private final AtomicLong pingsSent = new AtomicLong();
+
+    /**
+     * The number of pings the server sent
+     */
+    private final AtomicLong serverPings = new AtomicLong();
+
+    /**
+     * The number of requests forgotten without a response
+     */
+    private final AtomicLong unanswered = new AtomicLong();
+
+    /**
+     * When counting started, in milliseconds
+     */
+    private volatile long since = System.currentTimeMillis();
+
+    /**
+     * Gives the name of the class of each listener, without the suffix of a lambda
+     */
+    private static final ClassValue<String> LISTENER_NAMES = new ClassValue<>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+            var name = type.getName();
+            var lambda = name.indexOf("$$");
+            if (lambda >= 0) {
+                name = name.substring(0, lambda);
+            }
+            return name.substring(name.lastIndexOf('.') + 1);
+        }
+    };
+
+    /**
+     * Get the command of a message, the capital letters it starts with
+     * @param message the message
+     * @return the command, or an empty string if there is none
+     */
+    static String command(String message) {
+        var end = 0;
+        while (end < message.length() && Character.isUpperCase(message.charAt(end))) {
+            end++;
+        }
+        return message.substring(0, end);
+    }
+
+    /**
+     * Get the traffic of one type of message
+     * @param command the command
+     * @return the traffic
+     */
+    private Traffic traffic(String command) {
+        return traffic.computeIfAbsent(command, (key) -> new Traffic());
+    }
+
+    /**
+     * Count a message written to the socket, and start timing it if it is a request
+     * @param message the message
+     */
+    void sent(String message) {
+        var command = command(message);
+        var counts = traffic(command);
+        counts.sent.incrementAndGet();
+        counts.sentBytes.addAndGet(message.length());
+
+        var response = RESPONSES.get(command);
+        if (response == null) {
+            return;
+        }
+        var waiting = pending.computeIfAbsent(response, (key) -> new ConcurrentLinkedQueue<>());
+        waiting.add(System.nanoTime());
+        //A server which never answers should not fill memory
+        while (waiting.size() > PENDING_LIMIT && waiting.poll() != null) {
+            unanswered.incrementAndGet();
+        }
+    }
+
+    /**
+     * Count a message received, and record the time of the request it answers
+     * @param message the message
+     */
+    void received(String message) {
+        var command = command(message);
+        var counts = traffic(command);
+        counts.received.incrementAndGet();
+        counts.receivedBytes.addAndGet(message.length());
+
+        var waiting = pending.get(command);
+        if (waiting == null) {
+            return;
+        }
+        var now = System.nanoTime();
+        Long sentAt;
+        while ((sentAt = waiting.poll()) != null) {
+            if (now - sentAt < PENDING_TIMEOUT) {
+                latency(request(command)).record(now - sentAt);
+                return;
+            }
+            unanswered.incrementAndGet();
+        }
+    }
+
+    /**
+     * Get the request a response answers
+     * @param response the command of the response
+     * @return the command of the request
+     */
+    private static String request(String response) {
+        for (var entry : RESPONSES.entrySet()) {
+            if (entry.getValue().equals(response)) {
+                return entry.getKey();
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Forget the requests waiting for a response, as the connection they were sent on is gone
+     */
+    void disconnected() {
+        for (var waiting : pending.values()) {
+            while (waiting.poll() != null) {
+                unanswered.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Make the payload of a ping to the server, the time it is sent
+     * @return the payload
+     */
+    byte[] pingPayload() {
+        pingsSent.incrementAndGet();
+        return ByteBuffer.allocate(Long.BYTES).putLong(System.nanoTime()).array();
+    }
+
+    /**
+     * Record the round trip of a ping from the pong which answers it
+     * @param payload the payload of the pong
+     */
+    void pong(byte[] payload) {
+        if (payload == null || payload.length != Long.BYTES) {
+            //Not one of ours
+            return;
+        }
+        ping.record(System.nanoTime() - ByteBuffer.wrap(payload).getLong());
+    }
+
+    /**
+     * Count a ping sent by the server
+     */
+    void serverPing() {
+        serverPings.incrementAndGet();
+    }
+
+    /**
+     * Record the time a listener took to handle a message
+     * @param type the type of message
+     * @param listener the listener
+     * @param nanos the time taken in nanoseconds
+     */
+    void dispatched(String type, Object listener, long nanos) {
+        var key = type + " " + LISTENER_NAMES.get(listener.getClass());
+        dispatch.computeIfAbsent(key, (name) -> new LatencyHistogram()).record(nanos);
+    }
+
+    /**
+     * Record the time a message waited to be handed to a listener run on another thread
+     * @param nanos the time waited in nanoseconds
+     */
+    void handedOver(long nanos) {
+        handover.record(nanos);
+    }
+
+    /**
+     * Record the time between two frames drawn
+     * @param nanos the time in nanoseconds
+     */
+    public void recordFrame(long nanos) {
+        frames.record(nanos);
+    }
+
+    /**
+     * Get the times from one kind of request to its response
+     * @param request the command of the request
+     * @return the histogram
+     */
+    public LatencyHistogram latency(String request) {
+        return latencies.computeIfAbsent(request, (key) -> new LatencyHistogram());
+    }
+
+    /**
+     * Get the round trips of the pings sent to the server
+     * @return the histogram
+     */
+    public LatencyHistogram getPing() {
+        return ping;
+    }
+
+    /**
+     * Get the times between frames while the overlay is shown
+     * @return the histogram
+     */
+    public LatencyHistogram getFrames() {
+        return frames;
+    }
+
+    /**
+     * Get the number of requests forgotten without a response
+     * @return the number unanswered
+     */
+    public long getUnanswered() {
+        return unanswered.get();
+    }
+
+    /**
+     * Start counting again from nothing
+     */
+    public void reset() {
+        traffic.clear();
+        latencies.clear();
+        dispatch.clear();
+        handover.reset();
+        ping.reset();
+        frames.reset();
+        pingsSent.set(0);
+        serverPings.set(0);
+        unanswered.set(0);
+        since = System.currentTimeMillis();
+    }
+
+    /**
+     * Describe everything measured since counting started
+     * @return the report, one line for each type of message, request and listener
+     */
+    public String report() {
+        var seconds = Math.max(1, System.currentTimeMillis() - since) / 1000.0;
+        var builder = new StringBuilder();
+        builder.append(String.format("Over %.1fs%n", seconds));
+
+        builder.append(String.format("%-10s %8s %9s %8s %9s%n", "Type", "sent", "sent B/s", "recv", "recv B/s"));
+        for (var entry : new TreeMap<>(traffic).entrySet()) {
+            var counts = entry.getValue();
+            builder.append(String.format("%-10s %8d %9.0f %8d %9.0f%n",
+                entry.getKey().isEmpty() ? "?" : entry.getKey(), counts.sent.get(),
+                counts.sentBytes.get() / seconds, counts.received.get(), counts.receivedBytes.get() / seconds));
+        }
+
+        builder.append("Requests (").append(unanswered.get()).append(" unanswered)").append(System.lineSeparator());
+        for (var entry : new TreeMap<>(latencies).entrySet()) {
+            builder.append(String.format("  %-8s -> %-8s %s%n", entry.getKey(), RESPONSES.get(entry.getKey()),
+                entry.getValue()));
+        }
+
+        var sent = pingsSent.get();
+        builder.append(String.format("Ping %s lost=%d server=%d%n", ping, Math.max(0, sent - ping.getCount()),
+            serverPings.get()));
+
+        builder.append(String.format("Dispatch, handed over %s%n", handover));
+        for (var entry : new TreeMap<>(dispatch).entrySet()) {
+            builder.append(String.format("  %-30s %s%n", entry.getKey(), entry.getValue()));
+        }
+
+        builder.append(String.format("Frames %s%n", frames));
+        return builder.toString();
+    }
+
+    /**
+     * Write the report to a file
+     * @param file the file
+     * @throws IOException if the file cannot be written
+     */
+    public void dump(Path file) throws IOException {
+        var parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.writeString(file, "TetrECS metrics at " + new Date() + System.lineSeparator() + report());
+    }
+}
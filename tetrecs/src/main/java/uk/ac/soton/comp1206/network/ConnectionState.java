@@ -0,0 +1,32 @@
+package uk.ac.soton.comp1206.network;
+
+/**
+ * The state of the connection between the Communicator and the server
+ */
+public enum ConnectionState {
+
+    /**
+     * Trying to connect
+     */
+    CONNECTING,
+
+    /**
+     * Connected, messages are sent straight away
+     */
+    CONNECTED,
+
+    /**
+     * The connection was lost or could not be made, waiting before trying again
+     */
+    RECONNECTING,
+
+    /**
+     * Not trying to connect, messages are queued until the Communicator goes online
+     */
+    OFFLINE,
+
+    /**
+     * Closed for good
+     */
+    CLOSED
+}
@@ -0,0 +1,168 @@
+package uk.ac.soton.comp1206.network;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A LatencyHistogram counts how long something took, such as the time from a request to its response, so the
+ * percentiles can be read later.
+ *
+ * Times are kept in microseconds in buckets which double in width every sixteen buckets, so any time up to hours is
+ * held in under a thousand counters to within about six percent. Recording never locks, so many threads can record
+ * into one histogram at once.
+ */
+public class LatencyHistogram {
+
+    /**
+     * The number of buckets for each doubling of the time, as a power of two
+     */
+    private static final int SUB_BITS = 4;
+
+    /**
+     * The number of buckets for each doubling of the time
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /**
+     * The count in each bucket
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray((64 - SUB_BITS + 1) * SUB_BUCKETS);
+
+    /**
+     * The number of times recorded
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * The total of the times recorded, in microseconds
+     */
+    private final AtomicLong total = new AtomicLong();
+
+    /**
+     * The longest time recorded, in microseconds
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a time
+     * @param nanos the time in nanoseconds
+     */
+    public void record(long nanos) {
+        var micros = Math.max(0, nanos / 1000);
+        buckets.incrementAndGet(bucket(micros));
+        count.incrementAndGet();
+        total.addAndGet(micros);
+        max.accumulateAndGet(micros, Math::max);
+    }
+
+    /**
+     * Find the bucket a time is counted in
+     * @param micros the time in microseconds
+     * @return the bucket
+     */
+    private static int bucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        var shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((micros >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * Find the longest time counted in a bucket
+     * @param bucket the bucket
+     * @return the time in microseconds
+     */
+    private static long highest(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        var shift = bucket / SUB_BUCKETS - 1;
+        var sub = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1L) << shift) - 1;
+    }
+
+    /**
+     * Get the time which the given share of the recorded times are at or below
+     * @param percentile the share, from 0 to 100
+     * @return the time in microseconds, or 0 if nothing has been recorded
+     */
+    public long getPercentile(double percentile) {
+        var recorded = count.get();
+        if (recorded == 0) {
+            return 0;
+        }
+        var wanted = Math.max(1, (long) Math.ceil(recorded * percentile / 100));
+        var seen = 0L;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= wanted) {
+                return Math.min(highest(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Get the number of times recorded
+     * @return the count
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Get the average time recorded
+     * @return the mean in microseconds, or 0 if nothing has been recorded
+     */
+    public double getMean() {
+        var recorded = count.get();
+        return recorded == 0 ? 0 : (double) total.get() / recorded;
+    }
+
+    /**
+     * Get the longest time recorded
+     * @return the time in microseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Add every time recorded in another histogram to this one
+     * @param other the other histogram
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < buckets.length(); i++) {
+            var counted = other.buckets.get(i);
+            if (counted != 0) {
+                buckets.addAndGet(i, counted);
+            }
+        }
+        count.addAndGet(other.count.get());
+        total.addAndGet(other.total.get());
+        max.accumulateAndGet(other.max.get(), Math::max);
+    }
+
+    /**
+     * Forget every time recorded
+     */
+    public void reset() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Describe the recorded times
+     * @return the count, the median, the 99th percentile and the longest, in milliseconds
+     */
+    @Override
+    public String toString() {
+        return String.format("n=%d p50=%.2fms p99=%.2fms max=%.2fms", getCount(), getPercentile(50) / 1000.0,
+            getPercentile(99) / 1000.0, getMax() / 1000.0);
+    }
+}
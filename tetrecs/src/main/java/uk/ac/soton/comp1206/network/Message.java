@@ -0,0 +1,128 @@
+package uk.ac.soton.comp1206.network;
+
+import java.util.List;
+
+/**
+ * A message received from the server, parsed from its text by the MessageDecoder.
+ *
+ * Each kind of message the server sends is a record holding its parsed fields. Listeners subscribe to the kinds of
+ * message they handle through the Communicator.
+ */
+public interface Message {
+
+    /**
+     * A score in a list of scores
+     * @param name the player
+     * @param score the score
+     * @param lives the lives left, or DEAD, or null if not given
+     */
+    record Score(String name, int score, String lives) {}
+
+    /**
+     * CHANNELS: the channels which can be joined
+     * @param channels the channel names, empty if there are none
+     */
+    record Channels(List<String> channels) implements Message {}
+
+    /**
+     * JOIN: this player joined a channel
+     * @param channel the channel name
+     */
+    record Join(String channel) implements Message {}
+
+    /**
+     * PARTED: this player left their channel
+     */
+    record Parted() implements Message {}
+
+    /**
+     * HOST: this player is the host of their channel
+     */
+    record Host() implements Message {}
+
+    /**
+     * NICK: the nickname of this player
+     * @param name the nickname
+     */
+    record Nick(String name) implements Message {}
+
+    /**
+     * USERS: the players in the channel
+     * @param users the player names
+     */
+    record Users(List<String> users) implements Message {}
+
+    /**
+     * MSG: a chat message
+     * @param player who sent it
+     * @param text what they said
+     */
+    record Msg(String player, String text) implements Message {}
+
+    /**
+     * START: the game in the channel is starting
+     */
+    record Start() implements Message {}
+
+    /**
+     * PIECE: the next piece to play
+     * @param piece the piece number
+     */
+    record Piece(int piece) implements Message {}
+
+    /**
+     * SCORES: the scores and lives of every player in the game
+     * @param scores the scores
+     */
+    record Scores(List<Score> scores) implements Message {}
+
+    /**
+     * HISCORES: the online high score table
+     * @param scores the scores
+     */
+    record HiScores(List<Score> scores) implements Message {}
+
+    /**
+     * NEWSCORE: a score added to the online high score table
+     * @param score the score
+     */
+    record NewScore(Score score) implements Message {}
+
+    /**
+     * CAPS: the optional features the server supports, out of those asked for
+     * @param capabilities the features
+     */
+    record Caps(List<String> capabilities) implements Message {}
+
+    /**
+     * BOARD: the whole board of another player
+     * @param player the player
+     * @param cells the values of the cells, column by column, separated by spaces
+     */
+    record Board(String player, String cells) implements Message {}
+
+    /**
+     * BOARDSYNC: an update to the board of another player, to be applied with a BoardSync
+     * @param player the player
+     * @param update the sequence number, the form and its contents
+     */
+    record BoardUpdate(String player, String update) implements Message {}
+
+    /**
+     * RESYNC: the server missed an update to this player's board, so the next must be a full snapshot
+     */
+    record Resync() implements Message {}
+
+    /**
+     * ERROR: a request failed
+     * @param error the reason
+     */
+    record Error(String error) implements Message {}
+
+    /**
+     * Any message the decoder does not know, or could not parse
+     * @param type the first word of the message
+     * @param body the rest of the message, or an empty string
+     */
+    record Unknown(String type, String body) implements Message {}
+}
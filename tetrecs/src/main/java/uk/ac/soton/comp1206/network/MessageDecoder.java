@@ -0,0 +1,146 @@
+package uk.ac.soton.comp1206.network;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The MessageDecoder parses the text of a message from the server into a typed Message.
+ *
+ * Each message is parsed once, when it arrives, by walking the text with indexOf rather than splitting it with
+ * regular expressions. A message which cannot be parsed is returned as Unknown rather than throwing.
+ */
+public class MessageDecoder {
+
+    private static final Logger logger = LogManager.getLogger(MessageDecoder.class);
+
+    /**
+     * Parse a message from the server
+     * @param frame the text of the message
+     * @return the parsed message
+     */
+    public static Message decode(String frame) {
+        var text = frame.strip();
+        var space = text.indexOf(' ');
+        var type = space < 0 ? text : text.substring(0, space);
+        var body = space < 0 ? "" : text.substring(space + 1);
+        try {
+            switch (type) {
+                case "CHANNELS":
+                    return new Message.Channels(lines(body));
+                case "JOIN":
+                    return new Message.Join(body);
+                case "PARTED":
+                    return new Message.Parted();
+                case "HOST":
+                    return new Message.Host();
+                case "NICK":
+                    return new Message.Nick(body);
+                case "USERS":
+                    return new Message.Users(lines(body));
+                case "MSG": {
+                    var colon = body.indexOf(':');
+                    if (colon < 0) {
+                        return new Message.Msg(body, "");
+                    }
+                    return new Message.Msg(body.substring(0, colon), body.substring(colon + 1));
+                }
+                case "START":
+                    return new Message.Start();
+                case "PIECE":
+                    return new Message.Piece(Integer.parseInt(body));
+                case "SCORES":
+                    return new Message.Scores(scores(body));
+                case "HISCORES":
+                    return new Message.HiScores(scores(body));
+                case "NEWSCORE":
+                    return new Message.NewScore(score(body, 0, body.length()));
+                case "CAPS":
+                    return new Message.Caps(body.isBlank() ? List.of() : List.of(body.strip().split("\\s+")));
+                case "BOARD": {
+                    var colon = body.indexOf(':');
+                    return new Message.Board(body.substring(0, colon), body.substring(colon + 1));
+                }
+                case BoardSync.CAPABILITY: {
+                    var colon = body.indexOf(':');
+                    return new Message.BoardUpdate(body.substring(0, colon), body.substring(colon + 1));
+                }
+                case "RESYNC":
+                    return new Message.Resync();
+                case "ERROR":
+                    return new Message.Error(body);
+                default:
+                    return new Message.Unknown(type, body);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Unable to parse " + type + " message: " + e.getMessage());
+            return new Message.Unknown(type, body);
+        }
+    }
+
+    /**
+     * Split a body into its lines
+     * @param body the body
+     * @return the non-empty lines
+     */
+    private static List<String> lines(String body) {
+        var lines = new ArrayList<String>();
+        var start = 0;
+        while (start < body.length()) {
+            var end = body.indexOf('\n', start);
+            if (end < 0) {
+                end = body.length();
+            }
+            var line = body.substring(start, end).strip();
+            if (!line.isEmpty()) {
+                lines.add(line);
+            }
+            start = end + 1;
+        }
+        return lines;
+    }
+
+    /**
+     * Parse a list of scores, one on each line
+     * @param body the body
+     * @return the scores
+     */
+    private static List<Message.Score> scores(String body) {
+        var scores = new ArrayList<Message.Score>();
+        var start = 0;
+        while (start < body.length()) {
+            var end = body.indexOf('\n', start);
+            if (end < 0) {
+                end = body.length();
+            }
+            if (end > start) {
+                scores.add(score(body, start, end));
+            }
+            start = end + 1;
+        }
+        return scores;
+    }
+
+    /**
+     * Parse a score of the form name:score or name:score:lives
+     * @param text the text holding the score
+     * @param start where the score starts
+     * @param end where the score ends
+     * @return the score
+     */
+    private static Message.Score score(String text, int start, int end) {
+        var first = text.indexOf(':', start);
+        if (first < 0 || first >= end) {
+            throw new IllegalArgumentException("Missing score in " + text.substring(start, end));
+        }
+        var second = text.indexOf(':', first + 1);
+        if (second >= end) {
+            second = -1;
+        }
+        var name = text.substring(start, first).strip();
+        var score = Integer.parseInt(text.substring(first + 1, second < 0 ? end : second).strip());
+        var lives = second < 0 ? null : text.substring(second + 1, end).strip();
+        return new Message.Score(name, score, lives);
+    }
+}
@@ -0,0 +1,244 @@
+package uk.ac.soton.comp1206.network;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.event.MessageListener;
+
+/**
+ * The Poller repeatedly sends requests to the server on behalf of every scene, such as asking for the channel list.
+ *
+ * Scenes asking for the same request share one poll. A request is not sent again while an earlier one is still
+ * waiting for its response. When a response is the same as the last one, the poll slows down, up to a limit, and
+ * it returns to its normal rate as soon as something changes. Polling pauses while the window is hidden or the
+ * Communicator is not connected. Every poll is stopped when the listeners of the Communicator are cleared.
+ */
+public class Poller {
+
+    private static final Logger logger = LogManager.getLogger(Poller.class);
+
+    /**
+     * How many times slower than normal a poll may become while nothing changes
+     */
+    private static final int MAX_SLOWDOWN = 8;
+
+    /**
+     * How long to wait for a response before sending the request again, in milliseconds
+     */
+    private static final long RESPONSE_TIMEOUT = 5000;
+
+    /**
+     * The communicator to send the requests through
+     */
+    private final Communicator communicator;
+
+    /**
+     * Sends the requests when they are due
+     */
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+        var thread = new Thread(runnable, "Poller");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The running polls, by request
+     */
+    private final ConcurrentHashMap<String, Poll> polls = new ConcurrentHashMap<>();
+
+    /**
+     * Whether polling is paused
+     */
+    private volatile boolean paused;
+
+    /**
+     * A request sent repeatedly
+     */
+    public class Poll {
+
+        /**
+         * The request to send
+         */
+        private final String request;
+
+        /**
+         * The kind of message the server responds with
+         */
+        private final Class<? extends Message> response;
+
+        /**
+         * The listener subscribed to the responses, kept so it can be unsubscribed
+         */
+        private final MessageListener<Message> listener = this::received;
+
+        /**
+         * The normal time between requests, in milliseconds
+         */
+        private final long baseInterval;
+
+        /**
+         * The time between requests now, in milliseconds
+         */
+        private long interval;
+
+        /**
+         * The number of scenes sharing this poll
+         */
+        private int users = 1;
+
+        /**
+         * When the request waiting for a response was sent, or 0 if none is waiting
+         */
+        private long sentAt;
+
+        /**
+         * The last response received
+         */
+        private Message last;
+
+        /**
+         * The next send, or null once cancelled
+         */
+        private ScheduledFuture<?> next;
+
+        /**
+         * Create a new poll
+         * @param request the request to send
+         * @param response the kind of message the server responds with
+         * @param interval the time between requests, in milliseconds
+         */
+        private Poll(String request, Class<? extends Message> response, long interval) {
+            this.request = request;
+            this.response = response;
+            this.baseInterval = interval;
+            this.interval = interval;
+        }
+
+        /**
+         * Send the request if it is due, then schedule the next
+         */
+        private synchronized void tick() {
+            if (next == null) {
+                return;
+            }
+            var now = System.currentTimeMillis();
+            var waiting = sentAt != 0 && now - sentAt < RESPONSE_TIMEOUT;
+            if (!paused && !waiting && communicator.getState() == ConnectionState.CONNECTED) {
+                sentAt = now;
+                communicator.send(request);
+            }
+            next = executor.schedule(this::tick, interval, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Handle a response, slowing down if it has not changed
+         * @param response the response
+         */
+        private synchronized void received(Message response) {
+            sentAt = 0;
+            if (response.equals(last)) {
+                interval = Math.min(interval * 3 / 2, baseInterval * MAX_SLOWDOWN);
+            } else {
+                interval = baseInterval;
+                last = response;
+            }
+        }
+
+        /**
+         * Stop sending the request for this scene, stopping the poll once no scene is using it
+         */
+        public void cancel() {
+            synchronized (Poller.this) {
+                synchronized (this) {
+                    if (users == 0) {
+                        //Already cancelled
+                        return;
+                    }
+                    users--;
+                    if (users > 0) {
+                        return;
+                    }
+                    stop();
+                }
+                polls.remove(request, this);
+            }
+        }
+
+        /**
+         * Stop sending the request, and stop listening for its responses
+         */
+        private synchronized void stop() {
+            if (next != null) {
+                next.cancel(false);
+                next = null;
+            }
+            communicator.unsubscribe(response, listener);
+        }
+
+        /**
+         * Get the time between requests now
+         * @return the interval in milliseconds
+         */
+        public synchronized long getInterval() {
+            return interval;
+        }
+    }
+
+    /**
+     * Create a new poller
+     * @param communicator the communicator to send the requests through
+     */
+    public Poller(Communicator communicator) {
+        this.communicator = communicator;
+    }
+
+    /**
+     * Start sending a request repeatedly, or join the poll already sending it
+     * @param request the request to send
+     * @param response the kind of message the server responds with
+     * @param interval the normal time between requests, in milliseconds
+     * @return the poll, which should be cancelled once no longer needed
+     */
+    public synchronized Poll poll(String request, Class<? extends Message> response, long interval) {
+        var existing = polls.get(request);
+        if (existing != null) {
+            synchronized (existing) {
+                existing.users++;
+            }
+            return existing;
+        }
+        logger.info("Polling " + request + " every " + interval + "ms");
+        var poll = new Poll(request, response, interval);
+        polls.put(request, poll);
+        communicator.subscribe(response, poll.listener);
+        synchronized (poll) {
+            poll.next = executor.schedule(poll::tick, 0, TimeUnit.MILLISECONDS);
+        }
+        return poll;
+    }
+
+    /**
+     * Pause or resume every poll
+     * @param paused true to pause
+     */
+    public void setPaused(boolean paused) {
+        if (this.paused != paused) {
+            logger.info(paused ? "Polling paused" : "Polling resumed");
+        }
+        this.paused = paused;
+    }
+
+    /**
+     * Stop every poll
+     */
+    public synchronized void clear() {
+        for (var poll : polls.values()) {
+            poll.stop();
+        }
+        polls.clear();
+    }
+}
@@ -0,0 +1,322 @@
+package uk.ac.soton.comp1206.replay;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * A Replay is a recorded game loaded from a replay file, as the header and a list of events.
+ * <p>
+ * Event times are converted to nanoseconds since the start of the recording. A replay cut short,
+ * for example by the game crashing, loads up to its last complete event.
+ */
+public class Replay {
+
+  /**
+   * The number of columns
+   */
+  private int cols;
+
+  /**
+   * The number of rows
+   */
+  private int rows;
+
+  /**
+   * The lives the game started with
+   */
+  private int lives;
+
+  /**
+   * Whether the game was in hard mode
+   */
+  private boolean hard;
+
+  /**
+   * When the game was recorded, in milliseconds since the epoch
+   */
+  private long startTime;
+
+  /**
+   * The seed of the piece source
+   */
+  private long seed;
+
+  /**
+   * The final score, or -1 if the recording was cut short before the end
+   */
+  private int score = -1;
+
+  /**
+   * The type of each event
+   */
+  private byte[] types = new byte[256];
+
+  /**
+   * The time of each event, in nanoseconds since the start
+   */
+  private long[] times = new long[256];
+
+  /**
+   * The first argument of each event
+   */
+  private int[] firsts = new int[256];
+
+  /**
+   * The second argument of each event
+   */
+  private int[] seconds = new int[256];
+
+  /**
+   * The number of events
+   */
+  private int count;
+
+  /**
+   * Load a replay from a file
+   *
+   * @param file the replay file
+   * @return the replay
+   * @throws IOException if the file cannot be read or is not a replay
+   */
+  public static Replay load(File file) throws IOException {
+    try (var in = new BufferedInputStream(new FileInputStream(file))) {
+      return read(in);
+    }
+  }
+
+  /**
+   * Read a replay from a stream
+   *
+   * @param in the stream
+   * @return the replay
+   * @throws IOException if the stream cannot be read or is not a replay
+   */
+  public static Replay read(InputStream in) throws IOException {
+    var replay = new Replay();
+    for (var b : ReplayFormat.MAGIC) {
+      if (in.read() != b) {
+        throw new IOException("Not a replay");
+      }
+    }
+    var version = (int) readVarint(in);
+    if (version != ReplayFormat.VERSION) {
+      throw new IOException("Unsupported replay version " + version);
+    }
+    replay.cols = (int) readVarint(in);
+    replay.rows = (int) readVarint(in);
+    replay.lives = (int) readVarint(in);
+    replay.hard = readVarint(in) != 0;
+    replay.startTime = readVarint(in);
+    for (var i = 0; i < 8; i++) {
+      replay.seed = replay.seed << 8 | readByte(in);
+    }
+
+    long time = 0;
+    try {
+      while (true) {
+        var type = in.read();
+        if (type < 0) {
+          break;
+        }
+        time += readVarint(in);
+        int first = 0;
+        int second = 0;
+        switch (type) {
+          case ReplayFormat.PIECE, ReplayFormat.ROTATE -> first = (int) readVarint(in);
+          case ReplayFormat.PLACE -> {
+            first = (int) readVarint(in);
+            second = (int) readVarint(in);
+          }
+          case ReplayFormat.END -> replay.score = (int) readVarint(in);
+          case ReplayFormat.SWAP, ReplayFormat.EXPIRE -> {
+          }
+          default -> throw new IOException("Unknown replay event " + type);
+        }
+        replay.add(type, time, first, second);
+        if (type == ReplayFormat.END) {
+          break;
+        }
+      }
+    } catch (EOFException e) {
+      //The recording was cut short, keep every complete event
+    }
+    return replay;
+  }
+
+  /**
+   * Read a varint
+   *
+   * @param in the stream
+   * @return the value
+   * @throws IOException if the stream ends first
+   */
+  private static long readVarint(InputStream in) throws IOException {
+    long value = 0;
+    for (var shift = 0; shift < 64; shift += 7) {
+      var b = readByte(in);
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint");
+  }
+
+  /**
+   * Read a single byte
+   *
+   * @param in the stream
+   * @return the byte, from 0 to 255
+   * @throws IOException if the stream ends
+   */
+  private static int readByte(InputStream in) throws IOException {
+    var b = in.read();
+    if (b < 0) {
+      throw new EOFException();
+    }
+    return b;
+  }
+
+  /**
+   * Add an event, growing the arrays when full
+   */
+  private void add(int type, long time, int first, int second) {
+    if (count == types.length) {
+      types = Arrays.copyOf(types, count * 2);
+      times = Arrays.copyOf(times, count * 2);
+      firsts = Arrays.copyOf(firsts, count * 2);
+      seconds = Arrays.copyOf(seconds, count * 2);
+    }
+    types[count] = (byte) type;
+    times[count] = time;
+    firsts[count] = first;
+    seconds[count] = second;
+    count++;
+  }
+
+  /**
+   * Get the number of events
+   *
+   * @return the number of events
+   */
+  public int getEventCount() {
+    return count;
+  }
+
+  /**
+   * Get the type of an event, one of the event constants in ReplayFormat
+   *
+   * @param event the index of the event
+   * @return the type
+   */
+  public int getType(int event) {
+    return types[event];
+  }
+
+  /**
+   * Get the time of an event
+   *
+   * @param event the index of the event
+   * @return nanoseconds since the start of the recording
+   */
+  public long getTime(int event) {
+    return times[event];
+  }
+
+  /**
+   * Get the first argument of an event
+   *
+   * @param event the index of the event
+   * @return the argument, or 0 if the event has none
+   */
+  public int getFirst(int event) {
+    return firsts[event];
+  }
+
+  /**
+   * Get the second argument of an event
+   *
+   * @param event the index of the event
+   * @return the argument, or 0 if the event has none
+   */
+  public int getSecond(int event) {
+    return seconds[event];
+  }
+
+  /**
+   * Get the length of the recording
+   *
+   * @return nanoseconds from the start to the last event
+   */
+  public long getDuration() {
+    return count == 0 ? 0 : times[count - 1];
+  }
+
+  /**
+   * Get the number of columns
+   *
+   * @return number of columns
+   */
+  public int getCols() {
+    return cols;
+  }
+
+  /**
+   * Get the number of rows
+   *
+   * @return number of rows
+   */
+  public int getRows() {
+    return rows;
+  }
+
+  /**
+   * Get the lives the game started with
+   *
+   * @return the lives
+   */
+  public int getLives() {
+    return lives;
+  }
+
+  /**
+   * Check whether the game was in hard mode
+   *
+   * @return true if hard
+   */
+  public boolean isHard() {
+    return hard;
+  }
+
+  /**
+   * Get when the game was recorded
+   *
+   * @return milliseconds since the epoch
+   */
+  public long getStartTime() {
+    return startTime;
+  }
+
+  /**
+   * Get the seed of the piece source
+   *
+   * @return the seed
+   */
+  public long getSeed() {
+    return seed;
+  }
+
+  /**
+   * Get the final score recorded at the end of the game
+   *
+   * @return the score, or -1 if the recording was cut short before the end
+   */
+  public int getScore() {
+    return score;
+  }
+}
@@ -0,0 +1,68 @@
+package uk.ac.soton.comp1206.replay;
+
+/**
+ * The layout of a replay file.
+ * <p>
+ * A replay starts with the magic bytes "TREC" and a header of varints: the format version, the
+ * columns, rows and lives the game started with, 1 if the game was in hard mode, the start time in
+ * milliseconds since the epoch, then the seed of the piece source as 8 big-endian bytes.
+ * <p>
+ * Every event after that is a type byte, the nanoseconds since the previous event as a varint, then
+ * the arguments of the event as varints. Varints are unsigned LEB128: 7 bits per byte, lowest bits
+ * first, with the top bit set on every byte but the last.
+ */
+public final class ReplayFormat {
+
+  /**
+   * The bytes every replay starts with
+   */
+  public static final byte[] MAGIC = {'T', 'R', 'E', 'C'};
+
+  /**
+   * The version of the format
+   */
+  public static final int VERSION = 1;
+
+  /**
+   * The file extension of replays
+   */
+  public static final String EXTENSION = ".trec";
+
+  /**
+   * The directory replays are saved in
+   */
+  public static final String DIRECTORY = "replays";
+
+  /**
+   * A piece was dealt, followed by (piece * 4 + rotation)
+   */
+  public static final int PIECE = 1;
+
+  /**
+   * The player tried to play the current piece, followed by x and y
+   */
+  public static final int PLACE = 2;
+
+  /**
+   * The player rotated the current piece, followed by 1 for clockwise or 0 for anticlockwise
+   */
+  public static final int ROTATE = 3;
+
+  /**
+   * The player swapped the current and following pieces
+   */
+  public static final int SWAP = 4;
+
+  /**
+   * The time for the current piece ran out
+   */
+  public static final int EXPIRE = 5;
+
+  /**
+   * The game ended, followed by the final score. The last event in a complete replay.
+   */
+  public static final int END = 6;
+
+  private ReplayFormat() {
+  }
+}
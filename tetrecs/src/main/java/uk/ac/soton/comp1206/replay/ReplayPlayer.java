@@ -0,0 +1,366 @@
+package uk.ac.soton.comp1206.replay;
+
+import java.util.ArrayList;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.game.GameEngine;
+import uk.ac.soton.comp1206.game.GamePiece;
+import uk.ac.soton.comp1206.game.ManualClock;
+import uk.ac.soton.comp1206.game.PieceSource;
+
+/**
+ * The ReplayPlayer plays a Replay back through a GameEngine timed by a ManualClock, so it runs as
+ * fast as it is stepped and never touches audio or the UI.
+ * <p>
+ * The whole replay is played through once when the player is created, taking a snapshot of the
+ * game every KEYFRAME_INTERVAL moves. Seeking restores the nearest keyframe at or before the move
+ * and plays forward from there, so it takes the same short time wherever it jumps to.
+ * <p>
+ * The player also checks the replay is consistent: that the timer only ran out after the
+ * deadline, the recorded pieces were not used up, and the final score matches the one recorded.
+ */
+public class ReplayPlayer {
+
+  private static final Logger logger = LogManager.getLogger(ReplayPlayer.class);
+
+  /**
+   * The number of moves between keyframes
+   */
+  public static final int KEYFRAME_INTERVAL = 16;
+
+  /**
+   * The replay being played
+   */
+  private final Replay replay;
+
+  /**
+   * The clock the game is timed with
+   */
+  private final ManualClock clock = new ManualClock();
+
+  /**
+   * The game the replay is played through
+   */
+  private final GameEngine engine;
+
+  /**
+   * Every piece dealt in the replay, as (piece * 4 + rotation)
+   */
+  private final int[] pieces;
+
+  /**
+   * The state of the game before it started
+   */
+  private final GameEngine.Snapshot initial;
+
+  /**
+   * The keyframes, keyframe k is taken just before move (k * KEYFRAME_INTERVAL)
+   */
+  private final ArrayList<Keyframe> keyframes = new ArrayList<>();
+
+  /**
+   * The number of moves in the replay
+   */
+  private int moveCount;
+
+  /**
+   * The index of the next event to play
+   */
+  private int position;
+
+  /**
+   * The number of moves played
+   */
+  private int move;
+
+  /**
+   * The number of pieces dealt
+   */
+  private int dealt;
+
+  /**
+   * The number of inconsistencies found in the replay
+   */
+  private int mismatches;
+
+  /**
+   * Whether the replay is being played through for the first time, checking it as it goes
+   */
+  private boolean indexing = true;
+
+  /**
+   * Create a new player and index the replay
+   *
+   * @param replay the replay to play
+   */
+  public ReplayPlayer(Replay replay) {
+    this.replay = replay;
+
+    var dealtPieces = new ArrayList<Integer>();
+    for (var i = 0; i < replay.getEventCount(); i++) {
+      if (replay.getType(i) == ReplayFormat.PIECE) {
+        dealtPieces.add(replay.getFirst(i));
+      }
+    }
+    pieces = dealtPieces.stream().mapToInt(Integer::intValue).toArray();
+
+    engine = new GameEngine(replay.getCols(), replay.getRows(), clock, this::deal);
+    engine.setLives(replay.getLives());
+    if (replay.isHard()) {
+      engine.setHard();
+    }
+    initial = engine.snapshot();
+
+    //Play the whole replay once to find the keyframes and check it
+    reset();
+    while (position < replay.getEventCount()) {
+      if (replay.getType(position) == ReplayFormat.PLACE && move % KEYFRAME_INTERVAL == 0) {
+        keyframes.add(new Keyframe(this));
+      }
+      step();
+    }
+    moveCount = move;
+    if (replay.getScore() >= 0 && replay.getScore() != engine.getScore()) {
+      logger.error("Replay score {} does not match recorded score {}", engine.getScore(),
+          replay.getScore());
+      mismatches++;
+    }
+    logger.info("Indexed replay of {} moves, {} keyframes, {} mismatches", moveCount,
+        keyframes.size(), mismatches);
+    indexing = false;
+    reset();
+  }
+
+  /**
+   * Go back to the start of the game
+   */
+  public void reset() {
+    clock.setTime(0);
+    position = 0;
+    move = 0;
+    dealt = 0;
+    engine.restore(initial);
+    engine.start();
+  }
+
+  /**
+   * Deal the next recorded piece to the game
+   *
+   * @return the piece
+   */
+  private GamePiece deal() {
+    if (dealt >= pieces.length) {
+      //The recording has no more pieces, so the game has gone differently
+      if (indexing) {
+        mismatches++;
+      }
+      return GamePiece.createPiece(0);
+    }
+    var code = pieces[dealt++];
+    return GamePiece.createPiece(code / GamePiece.ROTATIONS, code % GamePiece.ROTATIONS);
+  }
+
+  /**
+   * Play the next event
+   *
+   * @return false if there are no more events
+   */
+  public boolean step() {
+    if (position >= replay.getEventCount()) {
+      return false;
+    }
+    var event = position++;
+    var time = replay.getTime(event);
+    clock.setTime(time);
+    switch (replay.getType(event)) {
+      case ReplayFormat.PLACE -> {
+        engine.place(replay.getFirst(event), replay.getSecond(event));
+        move++;
+      }
+      case ReplayFormat.ROTATE -> engine.rotateCurrentPiece(replay.getFirst(event) != 0);
+      case ReplayFormat.SWAP -> engine.swapCurrentPiece();
+      case ReplayFormat.EXPIRE -> {
+        if (time - engine.getDeadline() < 0) {
+          //The timer ran out early, play it as recorded anyway
+          if (indexing) {
+            mismatches++;
+          }
+          clock.setTime(engine.getDeadline());
+        }
+        engine.tick();
+      }
+      case ReplayFormat.END -> {
+        if (engine.isRunning()) {
+          engine.endGame();
+        }
+      }
+      default -> {
+        //Pieces are dealt from the list when the game asks for them
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Play every event up to a time
+   *
+   * @param time nanoseconds since the start of the recording
+   */
+  public void playUntil(long time) {
+    while (position < replay.getEventCount() && replay.getTime(position) <= time) {
+      step();
+    }
+  }
+
+  /**
+   * Play every remaining event
+   */
+  public void playToEnd() {
+    while (step()) {
+    }
+  }
+
+  /**
+   * Jump to just before a move, from the nearest keyframe
+   *
+   * @param target the number of moves to have played, up to getMoveCount() for the end
+   */
+  public void seek(int target) {
+    if (keyframes.isEmpty()) {
+      return;
+    }
+    target = Math.max(0, Math.min(target, moveCount));
+    var keyframe = Math.min(target / KEYFRAME_INTERVAL, keyframes.size() - 1);
+    //Only go back to a keyframe when it is behind the target and ahead of where we are
+    if (target < move || move < keyframe * KEYFRAME_INTERVAL) {
+      keyframes.get(keyframe).restore(this);
+    }
+    if (target == moveCount) {
+      playToEnd();
+      return;
+    }
+    while (move < target || replay.getType(position) != ReplayFormat.PLACE) {
+      step();
+    }
+  }
+
+  /**
+   * Get the game the replay is played through
+   *
+   * @return the game
+   */
+  public GameEngine getEngine() {
+    return engine;
+  }
+
+  /**
+   * Get the replay being played
+   *
+   * @return the replay
+   */
+  public Replay getReplay() {
+    return replay;
+  }
+
+  /**
+   * Get the number of moves played
+   *
+   * @return the move
+   */
+  public int getMove() {
+    return move;
+  }
+
+  /**
+   * Get the number of moves in the replay
+   *
+   * @return the number of moves
+   */
+  public int getMoveCount() {
+    return moveCount;
+  }
+
+  /**
+   * Get the time of the last event played
+   *
+   * @return nanoseconds since the start of the recording
+   */
+  public long getTime() {
+    return clock.nanoTime();
+  }
+
+  /**
+   * Check whether every event has been played
+   *
+   * @return true at the end of the replay
+   */
+  public boolean isFinished() {
+    return position >= replay.getEventCount();
+  }
+
+  /**
+   * Get the number of inconsistencies found in the replay
+   *
+   * @return 0 if the replay played back exactly as recorded
+   */
+  public int getMismatches() {
+    return mismatches;
+  }
+
+  /**
+   * The state of the player and its game just before a move
+   */
+  private static class Keyframe {
+
+    /**
+     * The state of the game
+     */
+    private final GameEngine.Snapshot snapshot;
+
+    /**
+     * The index of the next event
+     */
+    private final int position;
+
+    /**
+     * The number of moves played
+     */
+    private final int move;
+
+    /**
+     * The number of pieces dealt
+     */
+    private final int dealt;
+
+    /**
+     * The time of the clock
+     */
+    private final long time;
+
+    /**
+     * Take a keyframe of a player
+     *
+     * @param player the player
+     */
+    private Keyframe(ReplayPlayer player) {
+      snapshot = player.engine.snapshot();
+      position = player.position;
+      move = player.move;
+      dealt = player.dealt;
+      time = player.clock.nanoTime();
+    }
+
+    /**
+     * Put a player back into the state of this keyframe
+     *
+     * @param player the player
+     */
+    private void restore(ReplayPlayer player) {
+      player.clock.setTime(time);
+      player.engine.restore(snapshot);
+      player.position = position;
+      player.move = move;
+      player.dealt = dealt;
+    }
+  }
+}
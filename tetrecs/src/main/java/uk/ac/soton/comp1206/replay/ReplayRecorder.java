@@ -0,0 +1,259 @@
+package uk.ac.soton.comp1206.replay;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.event.GameActionListener;
+import uk.ac.soton.comp1206.game.GameClock;
+import uk.ac.soton.comp1206.game.GameEngine;
+import uk.ac.soton.comp1206.game.GamePiece;
+
+/**
+ * The ReplayRecorder writes every action of a game to a compact binary replay, laid out as
+ * described in ReplayFormat.
+ * <p>
+ * Events are encoded into a small buffer on the thread the game runs on, which never waits for the
+ * disk. Full buffers are handed to a single background thread shared by every recorder, which
+ * writes them to the file.
+ */
+public class ReplayRecorder implements GameActionListener {
+
+  private static final Logger logger = LogManager.getLogger(ReplayRecorder.class);
+
+  /**
+   * The size of the buffer handed to the writer
+   */
+  private static final int BUFFER_SIZE = 4096;
+
+  /**
+   * The thread every replay is written on
+   */
+  private static final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+    var thread = new Thread(runnable, "ReplayWriter");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  /**
+   * The game being recorded
+   */
+  private final GameEngine engine;
+
+  /**
+   * The clock event times are read from
+   */
+  private final GameClock clock;
+
+  /**
+   * The file being written
+   */
+  private final File file;
+
+  /**
+   * The stream to the file, only used on the writer thread
+   */
+  private OutputStream out;
+
+  /**
+   * Events not yet handed to the writer
+   */
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+
+  /**
+   * The number of bytes in the buffer
+   */
+  private int count;
+
+  /**
+   * The clock time of the previous event
+   */
+  private long lastTime;
+
+  /**
+   * Whether the replay has been closed
+   */
+  private boolean closed;
+
+  /**
+   * Create a new recorder for a game and write the header. The game should not have started.
+   *
+   * @param engine the game to record
+   * @param file   the file to write to
+   */
+  public ReplayRecorder(GameEngine engine, File file) {
+    this.engine = engine;
+    this.clock = engine.getClock();
+    this.file = file;
+    this.lastTime = clock.nanoTime();
+
+    writer.execute(() -> {
+      try {
+        file.getParentFile().mkdirs();
+        out = new BufferedOutputStream(new FileOutputStream(file));
+      } catch (IOException e) {
+        logger.error("Unable to create replay " + file + ": " + e.getMessage());
+      }
+    });
+
+    for (var b : ReplayFormat.MAGIC) {
+      writeByte(b);
+    }
+    writeVarint(ReplayFormat.VERSION);
+    writeVarint(engine.getCols());
+    writeVarint(engine.getRows());
+    writeVarint(engine.getLives());
+    writeVarint(engine.isHard() ? 1 : 0);
+    writeVarint(System.currentTimeMillis());
+    var seed = engine.getPieceSource().getSeed();
+    for (var shift = 56; shift >= 0; shift -= 8) {
+      writeByte((int) (seed >>> shift));
+    }
+  }
+
+  /**
+   * Start recording a game to a new file in the replays directory
+   *
+   * @param engine the game to record, before it has started
+   * @return the recorder, already listening to the game
+   */
+  public static ReplayRecorder record(GameEngine engine) {
+    var name = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + "-"
+        + Long.toHexString(engine.getPieceSource().getSeed()) + ReplayFormat.EXTENSION;
+    var recorder = new ReplayRecorder(engine, new File(ReplayFormat.DIRECTORY, name));
+    engine.setActionListener(recorder);
+    logger.info("Recording replay to {}", recorder.getFile());
+    return recorder;
+  }
+
+  /**
+   * Get the file being written
+   *
+   * @return the file
+   */
+  public File getFile() {
+    return file;
+  }
+
+  @Override
+  public void pieceSpawned(GamePiece gamePiece) {
+    event(ReplayFormat.PIECE);
+    writeVarint(gamePiece.getPiece() * GamePiece.ROTATIONS + gamePiece.getRotation());
+  }
+
+  @Override
+  public void placeRequested(int x, int y) {
+    event(ReplayFormat.PLACE);
+    writeVarint(x);
+    writeVarint(y);
+  }
+
+  @Override
+  public void rotateRequested(boolean clockwise) {
+    event(ReplayFormat.ROTATE);
+    writeVarint(clockwise ? 1 : 0);
+  }
+
+  @Override
+  public void swapRequested() {
+    event(ReplayFormat.SWAP);
+  }
+
+  @Override
+  public void timerExpired() {
+    event(ReplayFormat.EXPIRE);
+  }
+
+  /**
+   * Mark the end of the game and finish writing the replay. Later events are ignored.
+   */
+  public void close() {
+    if (closed) {
+      return;
+    }
+    event(ReplayFormat.END);
+    writeVarint(engine.getScore());
+    flush();
+    closed = true;
+    writer.execute(() -> {
+      if (out == null) {
+        return;
+      }
+      try {
+        out.close();
+        logger.info("Saved replay {} ({} bytes)", file, file.length());
+      } catch (IOException e) {
+        logger.error("Unable to save replay " + file + ": " + e.getMessage());
+      }
+    });
+  }
+
+  /**
+   * Start an event, writing its type and the time since the previous event
+   *
+   * @param type the event type
+   */
+  private void event(int type) {
+    var now = clock.nanoTime();
+    writeByte(type);
+    writeVarint(Math.max(0, now - lastTime));
+    lastTime = now;
+  }
+
+  /**
+   * Add a varint to the buffer
+   *
+   * @param value the value, treated as unsigned
+   */
+  private void writeVarint(long value) {
+    while ((value & ~0x7FL) != 0) {
+      writeByte((int) (value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    writeByte((int) value);
+  }
+
+  /**
+   * Add a byte to the buffer, handing the buffer to the writer when it is full
+   *
+   * @param b the byte
+   */
+  private void writeByte(int b) {
+    if (closed) {
+      return;
+    }
+    buffer[count++] = (byte) b;
+    if (count == buffer.length) {
+      flush();
+    }
+  }
+
+  /**
+   * Hand the buffered events to the writer thread
+   */
+  private void flush() {
+    if (count == 0) {
+      return;
+    }
+    var chunk = Arrays.copyOf(buffer, count);
+    count = 0;
+    writer.execute(() -> {
+      if (out == null) {
+        return;
+      }
+      try {
+        out.write(chunk);
+      } catch (IOException e) {
+        logger.error("Unable to write replay " + file + ": " + e.getMessage());
+      }
+    });
+  }
+}
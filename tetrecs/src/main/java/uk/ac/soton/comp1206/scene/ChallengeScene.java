@@ -1,12 +1,14 @@
 package uk.ac.soton.comp1206.scene;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import javafx.animation.AnimationTimer;
 import javafx.animation.FadeTransition;
-import javafx.animation.KeyFrame;
-import javafx.animation.KeyValue;
 import javafx.animation.ParallelTransition;
 import javafx.animation.ScaleTransition;
 import javafx.animation.Timeline;
+import javafx.application.Platform;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -21,12 +23,14 @@ import javafx.util.Duration;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.Utility.Multimedia;
-import uk.ac.soton.comp1206.component.GameBlock;
-import uk.ac.soton.comp1206.component.GameBlockCoordinate;
+import uk.ac.soton.comp1206.component.BlockCell;
 import uk.ac.soton.comp1206.component.GameBoard;
 import uk.ac.soton.comp1206.component.PieceBoard;
+import uk.ac.soton.comp1206.component.RenderMode;
 import uk.ac.soton.comp1206.game.Game;
+import uk.ac.soton.comp1206.game.GameBlockCoordinate;
 import uk.ac.soton.comp1206.game.GamePiece;
+import uk.ac.soton.comp1206.game.MoveSolver;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
 
@@ -93,6 +97,41 @@ public class ChallengeScene extends BaseScene {
    */
   private StackPane botStack;
 
+  /**
+   * Redraws the progress bar every frame from the time left in the game loop
+   */
+  private final AnimationTimer timeBarAnimation = new AnimationTimer() {
+    @Override
+    public void handle(long now) {
+      paintTimeBar(barTime, botStack.getWidth(), game.getTimerProgress());
+    }
+  };
+
+  /**
+   * Finds the suggested move when the player asks for a hint
+   */
+  private MoveSolver solver;
+
+  /**
+   * The blocks highlighted by the last hint
+   */
+  private final ArrayList<BlockCell> hintBlocks = new ArrayList<>();
+
+  /**
+   * Counts the hints asked for, so only the answer to the latest is shown
+   */
+  private int hintRequest = 0;
+
+  /**
+   * Whether the last hint shown says to swap the pieces before playing
+   */
+  private boolean hintSwap = false;
+
+  /**
+   * Tells the player to swap the pieces before playing the hint
+   */
+  private Label swapHintLbl;
+
   /**
    * The high score
    */
@@ -186,7 +225,8 @@ public class ChallengeScene extends BaseScene {
     var mainPane = new BorderPane();
     challengePane.getChildren().add(mainPane);
     mainPane.setPadding(new Insets(20));
-    board = new GameBoard(game.getGrid(), gameWindow.getWidth() / 2, gameWindow.getWidth() / 2);
+    board = new GameBoard(game.getGrid(), gameWindow.getWidth() / 2, gameWindow.getWidth() / 2,
+        RenderMode.CANVAS);
 
     //Coordinates for hovering
     boardXmax = board.getGrid().getCols() - 1;
@@ -327,8 +367,12 @@ public class ChallengeScene extends BaseScene {
     //Create a new board to display following piece
     followingPieceBoard = new PieceBoard(3, 3, gameWindow.getWidth() / 8,
         gameWindow.getWidth() / 8, "Following");
+    //Shown when the hint plays the following piece
+    swapHintLbl = new Label("Swap first");
+    swapHintLbl.getStyleClass().add("hint");
+    swapHintLbl.setVisible(false);
     //Add them to the vbox
-    vbox.getChildren().addAll(currentPieceBoard, followingPieceBoard);
+    vbox.getChildren().addAll(currentPieceBoard, swapHintLbl, followingPieceBoard);
 
   }
 
@@ -337,7 +381,7 @@ public class ChallengeScene extends BaseScene {
    *
    * @param gameBlock the Game Block that was clocked
    */
-  private void blockClicked(GameBlock gameBlock) {
+  private void blockClicked(BlockCell gameBlock) {
     int temp = game.getScore();
     int mult = game.getMultiplier();
     game.blockClicked(gameBlock);
@@ -392,8 +436,8 @@ public class ChallengeScene extends BaseScene {
     logger.info("Initialising Challenge");
     game.start();
     scene.setOnKeyPressed((event -> {
-        for (GameBlock[] blockRow : board.getBlocks()) {
-          for (GameBlock blockTile : blockRow) {
+        for (BlockCell[] blockRow : board.getBlocks()) {
+          for (BlockCell blockTile : blockRow) {
             if (blockTile.isHover() && blockTile.getY() != hoverY && blockTile.getX() != hoverX) {
               blockTile.hover(false);
               blockTile.paint();
@@ -406,6 +450,7 @@ public class ChallengeScene extends BaseScene {
       if (event.getCode() == KeyCode.ESCAPE) {
         //Go back to menu
         Multimedia.stopM();
+        timeBarAnimation.stop();
         game.switchOff();
         logger.info("Back to previous screen");
         gameWindow.startMenu();
@@ -470,10 +515,65 @@ public class ChallengeScene extends BaseScene {
       } else if (event.getCode() == KeyCode.ENTER || event.getCode() == KeyCode.X){
         //Use blockClicked to treat event like a block was clicked
         game.blockClicked(board.getBlock(hoverX, hoverY));
+      } else if (event.getCode() == KeyCode.H){
+        showHint(); //Highlight the suggested move
       }
     }));
   }
 
+  /**
+   * Search for the best move in the background, then highlight the blocks it would cover. The
+   * answer is dropped if the pieces or the board have changed while searching.
+   */
+  private void showHint(){
+    if(solver == null){
+      solver = new MoveSolver(game.getCols(), game.getRows());
+    }
+    clearHint();
+    var request = ++hintRequest;
+    var current = game.getCurrentPiece();
+    var following = game.getFollowingPiece();
+    var occupancy = game.getGrid().getOccupancy().clone();
+    solver.solveAsync(game.getGrid(), current, following)
+        .thenAccept(move -> Platform.runLater(() -> {
+          if(request != hintRequest || current != game.getCurrentPiece()
+              || following != game.getFollowingPiece()
+              || !Arrays.equals(occupancy, game.getGrid().getOccupancy())){
+            logger.info("Dropping hint for a position which has changed");
+            return;
+          }
+          if(move == null){
+            logger.info("No move can be played");
+            return;
+          }
+          logger.info("Hint: {}", move);
+          hintSwap = move.isSwap();
+          swapHintLbl.setVisible(hintSwap);
+          var mask = move.getMask();
+          for(var y = 0; y < game.getRows(); y++){
+            for(var x = 0; x < game.getCols(); x++){
+              var block = board.getBlock(x, y);
+              if((mask & (1L << (y * game.getCols() + x))) != 0 && block.getValue() == 0){
+                block.hover(true);
+                hintBlocks.add(block);
+              }
+            }
+          }
+        }));
+  }
+
+  /**
+   * Remove the highlight of the last hint
+   */
+  private void clearHint(){
+    for(BlockCell block : hintBlocks){
+      block.hover(false);
+    }
+    hintBlocks.clear();
+    hintSwap = false;
+    swapHintLbl.setVisible(false);
+  }
+
 
   /**
    * Method to change the piece according to the integer
@@ -483,6 +583,7 @@ public class ChallengeScene extends BaseScene {
   private void changePiece(GamePiece gp, int i){
     if(i == 1){
       logger.info("New piece created!");
+      clearHint();
       currentPieceBoard.setPiece(gp);
     } else if (i == 2) {
       followingPieceBoard.setPiece(gp);
@@ -497,6 +598,15 @@ public class ChallengeScene extends BaseScene {
     if(i == 4 || i == 5){
       logger.info("Pieces swapped!");
     }
+    if(i == 4){
+      if(hintSwap){
+        //The player followed the hint, which now places the current piece
+        hintSwap = false;
+        swapHintLbl.setVisible(false);
+      } else {
+        clearHint();
+      }
+    }
   }
 
   /**
@@ -512,15 +622,25 @@ public class ChallengeScene extends BaseScene {
    * @param millis the time in milliseconds for a loop
    */
   private void resetGameLoop(int millis){
-    //keyframes used to animate the rectangle
-    var timeProgress = new Timeline(new KeyFrame(Duration.ZERO, new KeyValue(barTime.fillProperty(), Color.GREEN)),
-        new KeyFrame(Duration.ZERO, new KeyValue(barTime.widthProperty(), botStack.getWidth()*0.9)),
-        new KeyFrame(new Duration( millis * 0.5), new KeyValue(barTime.fillProperty(),
-            Color.YELLOW)), new KeyFrame(new Duration( millis * 0.75),
-        new KeyValue(barTime.fillProperty(), Color.RED)),
-        new KeyFrame(new Duration(millis), new KeyValue(barTime.widthProperty(), 0)));
-    timeProgress.play();
+    //The bar reads its progress from the game, so only needs to be running
+    timeBarAnimation.start();
+  }
 
+  /**
+   * Size and colour a timer bar by the time left, turning from green to yellow by half time and
+   * to red by three quarters
+   * @param bar the bar to paint
+   * @param width the width of the pane holding the bar
+   * @param progress the fraction of time left, from 1 to 0
+   */
+  protected static void paintTimeBar(Rectangle bar, double width, double progress) {
+    bar.setWidth(width * 0.9 * progress);
+    var elapsed = 1 - progress;
+    if (elapsed < 0.5) {
+      bar.setFill(Color.GREEN.interpolate(Color.YELLOW, elapsed / 0.5));
+    } else {
+      bar.setFill(Color.YELLOW.interpolate(Color.RED, Math.min(1, (elapsed - 0.5) / 0.25)));
+    }
   }
 
   /**
@@ -528,6 +648,7 @@ public class ChallengeScene extends BaseScene {
    * @param game
    */
   protected void endChallenge(Game game){
+    timeBarAnimation.stop();
     Multimedia.stopM();
     Multimedia.stopLM();
     game.switchOff();
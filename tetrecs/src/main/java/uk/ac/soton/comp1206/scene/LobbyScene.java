@@ -8,8 +8,6 @@ import java.time.format.FormatStyle;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashSet;
-import java.util.Timer;
-import java.util.TimerTask;
 import javafx.application.Platform;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleStringProperty;
@@ -39,6 +37,9 @@ import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.Utility.Multimedia;
 import uk.ac.soton.comp1206.game.Grid;
 import uk.ac.soton.comp1206.network.Communicator;
+import uk.ac.soton.comp1206.network.ConnectionState;
+import uk.ac.soton.comp1206.network.Message;
+import uk.ac.soton.comp1206.network.Poller;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
 
@@ -52,14 +53,9 @@ public class LobbyScene extends BaseScene {
   private final Communicator communicator;
 
   /**
-   * The timer for loading the channels
+   * The poll keeping the channel list up to date
    */
-  private final Timer loadTimer = new Timer();
-
-  /**
-   * The task that is assigned later to be done by the timer
-   */
-  private TimerTask load;
+  private Poller.Poll channelsPoll;
 
   /**
    * A VBox to hold all the channels
@@ -117,15 +113,20 @@ public class LobbyScene extends BaseScene {
   private SimpleBooleanProperty host = new SimpleBooleanProperty(false);
 
   /**
-   * The timer for th users list
+   * The poll keeping the users list up to date, or null when not in a channel
    */
-  private Timer usersTimer;
+  private Poller.Poll usersPoll;
 
   /**
    * A text flow to hold all the users in game
    */
   private TextFlow userBox;
 
+  /**
+   * Shows the state of the connection to the server
+   */
+  private final Text connectionStatus = new Text();
+
   /**
    * Create a new scene, passing in the GameWindow the scene will be displayed in
    *
@@ -143,30 +144,45 @@ public class LobbyScene extends BaseScene {
   public void initialise() {
     Multimedia.stopLM();
     Multimedia.playMusic("music/menu.mp3");
-    load = new TimerTask() {
-      @Override
-      public void run() {
-        communicator.send("LIST");
-      }
-    };
-    //Schedule the timer
-    loadTimer.schedule(load, 0, 1000);
+    //Keep the channel list up to date
+    channelsPoll = communicator.getPoller().poll("LIST", Message.Channels.class, 1000);
     scene.setOnKeyPressed((event -> {
       if (event.getCode() == KeyCode.ESCAPE) {
         //Go back to menu
         Multimedia.stopM();
-        //Cancel every running timer
-        loadTimer.cancel();
-        loadTimer.purge();
-        if(usersTimer != null){
-          usersTimer.cancel();
-          usersTimer.purge();
-        }
+        //Stop every running poll
+        stopPolling();
         logger.info("Back to menu");
         gameWindow.startMenu();
       }
     }));
-    communicator.addListener(e -> Platform.runLater(() -> receive(e.trim())));
+    communicator.subscribe(Message.Channels.class, Platform::runLater, this::receiveChannels);
+    communicator.subscribe(Message.Join.class, Platform::runLater, this::receiveJoin);
+    communicator.subscribe(Message.Msg.class, Platform::runLater, this::receiveChat);
+    communicator.subscribe(Message.Nick.class, Platform::runLater, m -> nickname.set(m.name()));
+    communicator.subscribe(Message.Host.class, Platform::runLater, m -> receiveHost());
+    communicator.subscribe(Message.Users.class, Platform::runLater, this::receiveUsers);
+    communicator.subscribe(Message.Parted.class, Platform::runLater, m -> receiveParted());
+    communicator.subscribe(Message.Error.class, Platform::runLater, this::receiveError);
+    communicator.subscribe(Message.Start.class, Platform::runLater, m -> receiveStart());
+    //Show the connection, and try to connect if offline
+    communicator.addConnectionListener(state -> Platform.runLater(() -> showConnection(state)));
+    showConnection(communicator.getState());
+    communicator.connect();
+  }
+
+  /**
+   * Show the state of the connection to the server
+   *
+   * @param state the state of the connection
+   */
+  private void showConnection(ConnectionState state) {
+    switch (state) {
+      case CONNECTED -> connectionStatus.setText("Connected");
+      case CONNECTING -> connectionStatus.setText("Connecting...");
+      case RECONNECTING -> connectionStatus.setText("Connection lost, reconnecting...");
+      default -> connectionStatus.setText("Offline");
+    }
   }
 
   /**
@@ -192,7 +208,8 @@ public class LobbyScene extends BaseScene {
     var title = new Text("Multiplayer");
     title.getStyleClass().add("title");
     title.setTextAlignment(TextAlignment.CENTER);
-    var titleBox = new HBox(title);
+    connectionStatus.getStyleClass().add("connection");
+    var titleBox = new VBox(title, connectionStatus);
     titleBox.setAlignment(Pos.CENTER);
     borderPane.setTop(titleBox);
 
@@ -261,115 +278,69 @@ public class LobbyScene extends BaseScene {
   }
 
   /**
-   * A method to handle all incoming messages from the communicator
+   * Shows the channels which can be joined
    *
-   * @param message the message from the communicator
-   */
-  private void receive(String message) {
-    //Print out the message
-    logger.info("Received: " + message);
-    if (message.startsWith("CHANNELS")) {
-      logger.info("Received Channels");
-      //Clears all children
-      listing.getChildren().clear();
-      channelNames.clear();
-      //formats the message
-      if (message.split(" ").length == 2) {
-        var channels = message.split(" ", 2)[1].split("\n");
-        //Add all the channels to the ArrayList
-        for (String channel : channels) {
-          channelNames.add(channel);
-        }
-        //Sort the String array list in natural order (ascending A-Z)
-        channelNames.sort(Comparator.naturalOrder());
-        logger.info("Channels sorted");
-        for (String text : channelNames) {
-          //Add the channels to nodes and UI
-          var channelNode = new Text(text);
-          //Click a channel to join
-          channelNode.setOnMouseClicked(e -> joinChannel(channelNode.getText()));
-          channelNode.getStyleClass().add("channelItem");
-          listing.getChildren().add(channelNode);
-        }
-      } else {
-        //If there are no channels
-        listing.getChildren().clear();
-        var standard = new Text("No channels found");
-        standard.getStyleClass().add("channelItem");
-        listing.getChildren().add(standard);
-      }
-    } else if (message.startsWith("JOIN")) {
-      //JOIN A CHANNEL
-      joinedChannel.set(message.split(" ")[1]);
-      borderPane.setCenter(textChannel());
-      joined = true;
-    } else if (message.startsWith("MSG")) {
-      //Received a chat message
-      if (!joined) {
-        return;
-      }
-      //Create a time stamp
-      var now = LocalDateTime.now();
-      var timestamp = now.format(DateTimeFormatter.ofLocalizedTime(FormatStyle.SHORT));
-      // RECEIVE A MESSAGE
-      if (messages != null) {
-        String msg = message.split(" ", 2)[1];
-        if (msg.contains("/name")) {
-          //If it's a renaming command
-          var nickname = msg.split(":")[1].replace("/name", "").trim();
-          communicator.send("NICK " + nickname);
-        } else if (!msg.split(":")[1].equals("")) {
-          //If it's not a renaming command
-          messages.getChildren().add(new Text(" <" + timestamp + "> " + msg + "\n"));
-          Multimedia.playAudioEffect("sounds/pling.wav");
-        }
-      }
-    } else if (message.startsWith("NICK")) {
-      //CHANGE NICKNAME
-      nickname.set(message.split(" ")[1]);
-    } else if (message.startsWith("HOST")) {
-      //SET USER AS HOST
-      logger.info("You are the host");
-      host.set(true);
-    } else if (message.startsWith("USERS")) {
-      //Request users in the channel
-      var users = message.split(" ")[1].split("\n");
-      //Clear the array
-      players.clear();
-      logger.info("Adding Players");
-      for (String user : users) {
-        players.add(user);
-      }
-      //Clear the UI, replace with refreshed list
-      userBox.getChildren().removeAll(userBox.getChildren());
-      for (String user1 : players) {
-        var player = new Text(user1 + " ");
-        userBox.getChildren().add(player);
+   * @param message the channels message
+   */
+  private void receiveChannels(Message.Channels message) {
+    logger.info("Received Channels");
+    //Clears all children
+    listing.getChildren().clear();
+    channelNames.clear();
+    if (!message.channels().isEmpty()) {
+      //Add all the channels to the ArrayList
+      channelNames.addAll(message.channels());
+      //Sort the String array list in natural order (ascending A-Z)
+      channelNames.sort(Comparator.naturalOrder());
+      logger.info("Channels sorted");
+      for (String text : channelNames) {
+        //Add the channels to nodes and UI
+        var channelNode = new Text(text);
+        //Click a channel to join
+        channelNode.setOnMouseClicked(e -> joinChannel(channelNode.getText()));
+        channelNode.getStyleClass().add("channelItem");
+        listing.getChildren().add(channelNode);
       }
-    } else if (message.startsWith("PARTED")) {
-      //If the player has left the channel, remove chat UI in the center
-      joinedChannel.set(null);
-      logger.info("Left channel");
-      borderPane.setCenter(null);
-      host.set(false);
-      //Clear everything
-      players.clear();
-      userBox.getChildren().removeAll(userBox.getChildren());
-      joined = false;
-    } else if (message.startsWith("ERROR")) {
-      var error = message.split(" ", 2);
-      logger.error(error[1]);
-      var alert = new Alert(AlertType.ERROR, error[1]);
-      alert.showAndWait();
-    } else if (message.startsWith("START")) {
-      //Start the game
-      logger.info("Starting online game...");
-      //Cancel repeating timers
-      loadTimer.cancel();
-      loadTimer.purge();
-      usersTimer.cancel();
-      usersTimer.purge();
-      gameWindow.startMultiPlayer(nickname.get());
+    } else {
+      //If there are no channels
+      var standard = new Text("No channels found");
+      standard.getStyleClass().add("channelItem");
+      listing.getChildren().add(standard);
+    }
+  }
+
+  /**
+   * Opens the chat of a joined channel
+   *
+   * @param message the join message
+   */
+  private void receiveJoin(Message.Join message) {
+    joinedChannel.set(message.channel());
+    borderPane.setCenter(textChannel());
+    joined = true;
+  }
+
+  /**
+   * Shows a chat message, or handles a renaming command
+   *
+   * @param message the chat message
+   */
+  private void receiveChat(Message.Msg message) {
+    if (!joined || messages == null) {
+      return;
+    }
+    //Create a time stamp
+    var now = LocalDateTime.now();
+    var timestamp = now.format(DateTimeFormatter.ofLocalizedTime(FormatStyle.SHORT));
+    if (message.text().contains("/name")) {
+      //If it's a renaming command
+      var nickname = message.text().replace("/name", "").trim();
+      communicator.send("NICK " + nickname);
+    } else if (!message.text().isEmpty()) {
+      //If it's not a renaming command
+      messages.getChildren().add(
+          new Text(" <" + timestamp + "> " + message.player() + ":" + message.text() + "\n"));
+      Multimedia.playAudioEffect("sounds/pling.wav");
     }
     //To scroll the chat pane
     if (scroller.getVvalue() == 0.0f || scroller.getVvalue() > 0.9f) {
@@ -377,6 +348,87 @@ public class LobbyScene extends BaseScene {
     }
   }
 
+  /**
+   * Sets this player as the host
+   */
+  private void receiveHost() {
+    logger.info("You are the host");
+    host.set(true);
+  }
+
+  /**
+   * Shows the players in the channel
+   *
+   * @param message the users message
+   */
+  private void receiveUsers(Message.Users message) {
+    //Clear the array
+    players.clear();
+    logger.info("Adding Players");
+    players.addAll(message.users());
+    //Clear the UI, replace with refreshed list
+    userBox.getChildren().removeAll(userBox.getChildren());
+    for (String user1 : players) {
+      var player = new Text(user1 + " ");
+      userBox.getChildren().add(player);
+    }
+  }
+
+  /**
+   * Removes the chat once the player has left the channel
+   */
+  private void receiveParted() {
+    joinedChannel.set(null);
+    logger.info("Left channel");
+    //Also parted by the server, so stop asking for users here as well as in leave
+    stopUsersPoll();
+    borderPane.setCenter(null);
+    host.set(false);
+    //Clear everything
+    players.clear();
+    userBox.getChildren().removeAll(userBox.getChildren());
+    joined = false;
+  }
+
+  /**
+   * Shows an error from the server
+   *
+   * @param message the error message
+   */
+  private void receiveError(Message.Error message) {
+    logger.error(message.error());
+    var alert = new Alert(AlertType.ERROR, message.error());
+    alert.showAndWait();
+  }
+
+  /**
+   * Starts the game
+   */
+  private void receiveStart() {
+    logger.info("Starting online game...");
+    //Stop every running poll
+    stopPolling();
+    gameWindow.startMultiPlayer(nickname.get());
+  }
+
+  /**
+   * Stop polling the users in the channel
+   */
+  private void stopUsersPoll() {
+    if (usersPoll != null) {
+      usersPoll.cancel();
+      usersPoll = null;
+    }
+  }
+
+  /**
+   * Stop every poll this scene started
+   */
+  private void stopPolling() {
+    channelsPoll.cancel();
+    stopUsersPoll();
+  }
+
   /**
    * Creates a new channel by sending a message using the communicator
    *
@@ -413,25 +465,15 @@ public class LobbyScene extends BaseScene {
     main.setMaxWidth(gameWindow.getWidth() * 0.75);
     main.setMaxHeight(gameWindow.getHeight() * 0.75);
 
-    //Create a new timer for requesting users inside the channel
-    usersTimer = new Timer();
-
     //A text flow to hold the users inside the channel
     userBox = new TextFlow();
     userBox.setPadding(new Insets(3));
     userBox.getStyleClass().add("playerBox");
 
-    //The task of the timer
-    var usersTimerTask = new TimerTask() {
-      @Override
-      public void run() {
-        if (joined) {
-          communicator.send("USERS");
-        }
-      }
-    };
-    //Repeat every 1 second
-    usersTimer.schedule(usersTimerTask, 0, 1000);
+    //Keep the users inside the channel up to date
+    if (usersPoll == null) {
+      usersPoll = communicator.getPoller().poll("USERS", Message.Users.class, 1000);
+    }
 
     //A VBox to hold the UI elements at the top of the window
     var topBox = new VBox();
@@ -469,8 +511,7 @@ public class LobbyScene extends BaseScene {
     leave.getStyleClass().add("sendButton");
     leave.setOnAction(event -> {
       if (joined) {
-        usersTimer.cancel();
-        usersTimer.purge();
+        stopUsersPoll();
         communicator.send("PART");
       }
     });
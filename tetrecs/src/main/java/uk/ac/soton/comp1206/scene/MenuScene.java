@@ -105,12 +105,17 @@ public class MenuScene extends BaseScene {
     var buttonMulti = new Button("Multiplayer");
     buttonSingle.getStyleClass().add("button");
 
+    //Replay button
+    var buttonReplay = new Button("Replay");
+    buttonReplay.getStyleClass().add("button");
+
     //Exit button
     var exitButton = new Button("Exit");
     exitButton.getStyleClass().add("button");
 
     var menu = new VBox();
-    menu.getChildren().addAll(buttonSingle, buttonInst, buttonMulti, buttonSet, exitButton);
+    menu.getChildren().addAll(buttonSingle, buttonInst, buttonMulti, buttonSet, buttonReplay,
+        exitButton);
     menu.setSpacing(10);
     menu.setPadding(new Insets(25));
     menu.setAlignment(Pos.BOTTOM_CENTER);
@@ -132,6 +137,9 @@ public class MenuScene extends BaseScene {
       System.exit(0);
     }));
 
+    //Watch the last game again
+    buttonReplay.setOnAction((event -> gameWindow.startReplay()));
+
     //Create a new lobby for multiplayer
     buttonMulti.setOnAction((event -> gameWindow.startLobby()));
   }
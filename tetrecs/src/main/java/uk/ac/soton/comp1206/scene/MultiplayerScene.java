@@ -2,11 +2,8 @@ package uk.ac.soton.comp1206.scene;
 
 import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Timer;
-import java.util.TimerTask;
+import javafx.animation.AnimationTimer;
 import javafx.animation.FadeTransition;
-import javafx.animation.KeyFrame;
-import javafx.animation.KeyValue;
 import javafx.animation.ParallelTransition;
 import javafx.animation.ScaleTransition;
 import javafx.animation.Timeline;
@@ -35,15 +32,18 @@ import javafx.util.Pair;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.Utility.Multimedia;
-import uk.ac.soton.comp1206.component.GameBlock;
-import uk.ac.soton.comp1206.component.GameBlockCoordinate;
+import uk.ac.soton.comp1206.component.BlockCell;
 import uk.ac.soton.comp1206.component.GameBoard;
 import uk.ac.soton.comp1206.component.LeaderBoard;
 import uk.ac.soton.comp1206.component.PieceBoard;
+import uk.ac.soton.comp1206.component.RenderMode;
 import uk.ac.soton.comp1206.game.Game;
+import uk.ac.soton.comp1206.game.GameBlockCoordinate;
 import uk.ac.soton.comp1206.game.GamePiece;
 import uk.ac.soton.comp1206.game.MultiplayerGame;
 import uk.ac.soton.comp1206.network.Communicator;
+import uk.ac.soton.comp1206.network.Message;
+import uk.ac.soton.comp1206.network.Poller;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
 
@@ -103,6 +103,16 @@ public class MultiplayerScene extends ChallengeScene {
    */
   private BorderPane botPane;
 
+  /**
+   * Redraws the progress bar every frame from the time left in the game loop
+   */
+  private final AnimationTimer timeBarAnimation = new AnimationTimer() {
+    @Override
+    public void handle(long now) {
+      paintTimeBar(barTime, botPane.getWidth(), game.getTimerProgress());
+    }
+  };
+
   /**
    * The array list to hold all the scores
    */
@@ -143,9 +153,9 @@ public class MultiplayerScene extends ChallengeScene {
    */
   private LeaderBoard scoresList;
   /**
-   * Timer that loads scorers
+   * Poll that loads scorers
    */
-  private Timer loadTimer;
+  private Poller.Poll scoresPoll;
 
   /**
    * The score label
@@ -212,7 +222,8 @@ public class MultiplayerScene extends ChallengeScene {
     var mainPane = new BorderPane();
     challengePane.getChildren().add(mainPane);
     mainPane.setPadding(new Insets(10));
-    board = new GameBoard(game.getGrid(), gameWindow.getWidth() * 0.5, gameWindow.getWidth() * 0.5);
+    board = new GameBoard(game.getGrid(), gameWindow.getWidth() * 0.5, gameWindow.getWidth() * 0.5,
+        RenderMode.CANVAS);
 
     boardXmax = board.getGrid().getCols() - 1;
     boardYmax = board.getGrid().getRows() - 1;
@@ -371,8 +382,13 @@ public class MultiplayerScene extends ChallengeScene {
     //Create a new board to display following piece
     followingPieceBoard = new PieceBoard(3, 3, gameWindow.getWidth() / 9,
         gameWindow.getWidth() / 9, "Following");
+    //Shown only while the server has not sent the next piece
+    var waitingLbl = new Text("Waiting for piece...");
+    waitingLbl.getStyleClass().add("waiting");
+    waitingLbl.visibleProperty().bind(game.waitingProperty());
+    waitingLbl.managedProperty().bind(game.waitingProperty());
     //Add them to the vbox
-    vbox.getChildren().addAll(label5, currentPieceBoard, followingPieceBoard);
+    vbox.getChildren().addAll(label5, waitingLbl, currentPieceBoard, followingPieceBoard);
 
   }
 
@@ -381,7 +397,7 @@ public class MultiplayerScene extends ChallengeScene {
    *
    * @param gameBlock the Game Block that was clocked
    */
-  private void blockClicked(GameBlock gameBlock) {
+  private void blockClicked(BlockCell gameBlock) {
     int temp = game.getScore();
     int mult = game.getMultiplier();
     game.blockClicked(gameBlock);
@@ -416,17 +432,11 @@ public class MultiplayerScene extends ChallengeScene {
    */
   public void setupGame() {
     logger.info("Starting multiplayer");
-    loadTimer = new Timer("Loader");
-    var load = new TimerTask() {
-      @Override
-      public void run() {
-        communicator.send("SCORES");
-      }
-    };
-    //Schedule the timer
-    loadTimer.schedule(load, 0, 1000);
+    //Keep the scores of every player up to date
+    scoresPoll = communicator.getPoller().poll("SCORES", Message.Scores.class, 1000);
     //Start new game
     game = new MultiplayerGame(5, 5, gameWindow);
+    gameWindow.getMetricsOverlay().setGame(game);
   }
 
   /**
@@ -440,8 +450,8 @@ public class MultiplayerScene extends ChallengeScene {
     logger.info("Initialising Challenge");
     game.start();
     scene.setOnKeyPressed((event -> {
-      for (GameBlock[] blockRow : board.getBlocks()) {
-        for (GameBlock blockTile : blockRow) {
+      for (BlockCell[] blockRow : board.getBlocks()) {
+        for (BlockCell blockTile : blockRow) {
           if (blockTile.isHover() && blockTile.getY() != hoverY && blockTile.getX() != hoverX) {
             blockTile.hover(false);
             blockTile.paint();
@@ -455,8 +465,8 @@ public class MultiplayerScene extends ChallengeScene {
         //Go back to menu
         Multimedia.stopM();
         Multimedia.stopLM();
-        loadTimer.cancel();
-        loadTimer.purge();
+        scoresPoll.cancel();
+        timeBarAnimation.stop();
         game.switchOff();
         //Tell server that player is done/left
         communicator.send("DIE");
@@ -535,42 +545,44 @@ public class MultiplayerScene extends ChallengeScene {
         txtfield.setVisible(true);
       }
     }));
-    communicator.addListener(e -> Platform.runLater(() -> receive(e.trim())));
+    communicator.subscribe(Message.Msg.class, Platform::runLater, this::receiveChat);
+    communicator.subscribe(Message.Scores.class, Platform::runLater, this::receiveScores);
   }
 
   /**
-   * Receives the communicators messages
+   * Receives a chat message
    *
-   * @param message the message from the communicator
-   */
-  private void receive(String message) {
-    if (message.startsWith("MSG")) {
-      //Replace with new message
-      chat.setText(message.split(" ", 2)[1].replace(":", ": "));
-      Multimedia.playAudioEffect("sounds/message.wav");
-      if(texting){
-        texting = false;
-      }
-    } else if (message.startsWith("SCORES")) {
-      //Player scores
-      liveScores.clear();
-      var scores = message.split(" ", 2)[1].split("\n");
-      for (String info : scores) {
-        //Format the string
-        var newInfo = info.split(":");
-        var player = newInfo[0].replace("<", "").replace(">", "");
-        var score = newInfo[1].replace("<", "").replace(">", "");
-        var lives = newInfo[2].replace("<", "").replace(">", "");
-        if(lives.equals("DEAD")){
-          player = player + "DEAD100";
-        }
-        liveScores.add(new Pair<>(player, Integer.parseInt(score)));
+   * @param message the chat message
+   */
+  private void receiveChat(Message.Msg message) {
+    //Replace with new message
+    chat.setText(message.player() + ": " + message.text());
+    Multimedia.playAudioEffect("sounds/message.wav");
+    if(texting){
+      texting = false;
+    }
+  }
+
+  /**
+   * Receives the scores of every player
+   *
+   * @param message the scores message
+   */
+  private void receiveScores(Message.Scores message) {
+    //Player scores
+    liveScores.clear();
+    for (var info : message.scores()) {
+      //Format the string
+      var player = info.name().replace("<", "").replace(">", "");
+      if("DEAD".equals(info.lives())){
+        player = player + "DEAD100";
       }
-      //Sort the array
-      liveScores.sort((a, b) -> b.getValue().compareTo(a.getValue()));
-      scoresList.createScores();
-      scoresList.reveal();
+      liveScores.add(new Pair<>(player, info.score()));
     }
+    //Sort the array
+    liveScores.sort((a, b) -> b.getValue().compareTo(a.getValue()));
+    scoresList.createScores();
+    scoresList.reveal();
   }
 
   /**
@@ -613,17 +625,8 @@ public class MultiplayerScene extends ChallengeScene {
    * @param millis the time in milliseconds for a loop
    */
   private void resetGameLoop(int millis) {
-    //keyframes used to animate the rectangle
-    var timeProgress = new Timeline(new KeyFrame(
-        Duration.ZERO, new KeyValue(barTime.fillProperty(), Color.GREEN)),
-        new KeyFrame(Duration.ZERO,
-            new KeyValue(barTime.widthProperty(), botPane.getWidth() * 0.9)),
-        new KeyFrame(new Duration(millis * 0.5), new KeyValue(barTime.fillProperty(),
-            Color.YELLOW)), new KeyFrame(new Duration(millis * 0.75),
-        new KeyValue(barTime.fillProperty(), Color.RED)),
-        new KeyFrame(new Duration(millis), new KeyValue(barTime.widthProperty(), 0)));
-    timeProgress.play();
-
+    //The bar reads its progress from the game, so only needs to be running
+    timeBarAnimation.start();
   }
 
   /**
@@ -632,10 +635,10 @@ public class MultiplayerScene extends ChallengeScene {
    * @param game
    */
   public void endChallenge(Game game) {
+    timeBarAnimation.stop();
     Multimedia.stopM();
     Multimedia.stopLM();
-    loadTimer.cancel();
-    loadTimer.purge();
+    scoresPoll.cancel();
     game.switchOff();
     communicator.send("DIE");
     gameWindow.startScores(game, true, false);
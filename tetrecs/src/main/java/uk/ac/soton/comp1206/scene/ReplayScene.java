@@ -0,0 +1,288 @@
+package uk.ac.soton.comp1206.scene;
+
+import java.io.File;
+import java.io.IOException;
+import javafx.animation.AnimationTimer;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Label;
+import javafx.scene.input.KeyCode;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.StackPane;
+import javafx.scene.layout.VBox;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.component.GameBoard;
+import uk.ac.soton.comp1206.component.PieceBoard;
+import uk.ac.soton.comp1206.component.RenderMode;
+import uk.ac.soton.comp1206.game.GamePiece;
+import uk.ac.soton.comp1206.replay.Replay;
+import uk.ac.soton.comp1206.replay.ReplayFormat;
+import uk.ac.soton.comp1206.replay.ReplayPlayer;
+import uk.ac.soton.comp1206.ui.GamePane;
+import uk.ac.soton.comp1206.ui.GameWindow;
+
+/**
+ * The replay scene plays back the most recently recorded game on a GameBoard.
+ * <p>
+ * 1, 2 and 3 play at 1x, 2x and 8x speed, space pauses, the left and right arrows jump back and
+ * forward a move, and escape returns to the menu. No audio is played.
+ */
+public class ReplayScene extends BaseScene {
+
+  private static final Logger logger = LogManager.getLogger(ReplayScene.class);
+
+  /**
+   * The replay being shown
+   */
+  private final ReplayPlayer player;
+
+  /**
+   * The playback speed, 0 when paused
+   */
+  private double speed = 1;
+
+  /**
+   * The playback position, in nanoseconds since the start of the recording
+   */
+  private long playbackTime;
+
+  /**
+   * The board showing the current piece
+   */
+  private PieceBoard currentPieceBoard;
+
+  /**
+   * The board showing the following piece
+   */
+  private PieceBoard followingPieceBoard;
+
+  /**
+   * The current piece shown, as (piece * 4 + rotation)
+   */
+  private int shownCurrent = -1;
+
+  /**
+   * The following piece shown, as (piece * 4 + rotation)
+   */
+  private int shownFollowing = -1;
+
+  /**
+   * Shows the score
+   */
+  private Label scoreLbl;
+
+  /**
+   * Shows the lives
+   */
+  private Label livesLbl;
+
+  /**
+   * Shows the level
+   */
+  private Label levelLbl;
+
+  /**
+   * Shows the move and speed
+   */
+  private Label progressLbl;
+
+  /**
+   * Advances the replay every frame by the time passed, multiplied by the speed
+   */
+  private final AnimationTimer playback = new AnimationTimer() {
+    private long last;
+
+    @Override
+    public void start() {
+      last = 0;
+      super.start();
+    }
+
+    @Override
+    public void handle(long now) {
+      if (last != 0) {
+        playbackTime += (long) ((now - last) * speed);
+        player.playUntil(playbackTime);
+      }
+      last = now;
+      update();
+    }
+  };
+
+  /**
+   * Create a new replay scene
+   *
+   * @param gameWindow the game window
+   * @param player     the replay to show
+   */
+  public ReplayScene(GameWindow gameWindow, ReplayPlayer player) {
+    super(gameWindow);
+    logger.info("Creating Replay Scene");
+    this.player = player;
+  }
+
+  /**
+   * Find the most recently recorded replay
+   *
+   * @return the replay file, or null if there are none
+   */
+  public static File latestReplay() {
+    var files = new File(ReplayFormat.DIRECTORY).listFiles(
+        (dir, name) -> name.endsWith(ReplayFormat.EXTENSION));
+    File latest = null;
+    if (files != null) {
+      for (File file : files) {
+        if (latest == null || file.lastModified() > latest.lastModified()) {
+          latest = file;
+        }
+      }
+    }
+    return latest;
+  }
+
+  /**
+   * Load and index a replay, ready to show
+   *
+   * @param file the replay file
+   * @return the player, or null if the replay could not be read
+   */
+  public static ReplayPlayer load(File file) {
+    try {
+      return new ReplayPlayer(Replay.load(file));
+    } catch (IOException e) {
+      logger.error("Unable to load replay " + file + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  @Override
+  public void build() {
+    logger.info("Building " + this.getClass().getName());
+
+    root = new GamePane(gameWindow.getWidth(), gameWindow.getHeight());
+
+    var replayPane = new StackPane();
+    replayPane.setMaxWidth(gameWindow.getWidth());
+    replayPane.setMaxHeight(gameWindow.getHeight());
+    replayPane.getStyleClass().add("challenge-background");
+    root.getChildren().add(replayPane);
+
+    var mainPane = new BorderPane();
+    replayPane.getChildren().add(mainPane);
+    mainPane.setPadding(new Insets(20));
+
+    var engine = player.getEngine();
+    var board = new GameBoard(engine.getGrid(), gameWindow.getWidth() / 2,
+        gameWindow.getWidth() / 2, RenderMode.CANVAS);
+    mainPane.setCenter(board);
+
+    var title = new Label("Replay");
+    title.getStyleClass().add("heading");
+    progressLbl = new Label();
+    progressLbl.getStyleClass().add("level");
+    var topBox = new VBox(title, progressLbl);
+    topBox.setAlignment(Pos.CENTER);
+    mainPane.setTop(topBox);
+
+    //Score, lives and level
+    var label1 = new Label("Score");
+    label1.getStyleClass().add("score");
+    scoreLbl = new Label();
+    scoreLbl.getStyleClass().add("score");
+    var scoreBox = new VBox(label1, scoreLbl);
+    scoreBox.setSpacing(5);
+    scoreBox.setAlignment(Pos.TOP_CENTER);
+    scoreBox.setPadding(new Insets(0, 20, 20, 20));
+    mainPane.setLeft(scoreBox);
+
+    var label2 = new Label("Lives");
+    label2.getStyleClass().add("lives");
+    livesLbl = new Label();
+    livesLbl.getStyleClass().add("lives");
+    var label3 = new Label("Level");
+    label3.getStyleClass().add("level");
+    levelLbl = new Label();
+    levelLbl.getStyleClass().add("level");
+
+    currentPieceBoard = new PieceBoard(3, 3, gameWindow.getWidth() / 5,
+        gameWindow.getWidth() / 5, "Current");
+    followingPieceBoard = new PieceBoard(3, 3, gameWindow.getWidth() / 8,
+        gameWindow.getWidth() / 8, "Following");
+    var vbox = new VBox(label2, livesLbl, label3, levelLbl, currentPieceBoard,
+        followingPieceBoard);
+    vbox.setSpacing(10);
+    vbox.setAlignment(Pos.CENTER);
+    mainPane.setRight(vbox);
+  }
+
+  @Override
+  public void initialise() {
+    scene.setOnKeyPressed((event -> {
+      if (event.getCode() == KeyCode.ESCAPE) {
+        playback.stop();
+        logger.info("Back to previous screen");
+        gameWindow.startMenu();
+      } else if (event.getCode() == KeyCode.DIGIT1) {
+        speed = 1;
+      } else if (event.getCode() == KeyCode.DIGIT2) {
+        speed = 2;
+      } else if (event.getCode() == KeyCode.DIGIT3) {
+        speed = 8;
+      } else if (event.getCode() == KeyCode.SPACE) {
+        speed = speed == 0 ? 1 : 0; //Pause or resume
+      } else if (event.getCode() == KeyCode.LEFT) {
+        seek(player.getMove() - 1);
+      } else if (event.getCode() == KeyCode.RIGHT) {
+        seek(player.getMove() + 1);
+      }
+    }));
+    playback.start();
+  }
+
+  /**
+   * Jump to a move and carry on playing from there
+   *
+   * @param move the move
+   */
+  private void seek(int move) {
+    player.seek(move);
+    playbackTime = player.getTime();
+    update();
+  }
+
+  /**
+   * Show the state of the game being replayed
+   */
+  private void update() {
+    var engine = player.getEngine();
+    scoreLbl.setText(String.valueOf(engine.getScore()));
+    livesLbl.setText(String.valueOf(engine.getLives()));
+    levelLbl.setText(String.valueOf(engine.getLevel()));
+    progressLbl.setText("Move " + player.getMove() + "/" + player.getMoveCount() + "  "
+        + (speed == 0 ? "Paused" : (int) speed + "x"));
+
+    //Only redraw the piece boards when the pieces change
+    shownCurrent = showPiece(currentPieceBoard, engine.getCurrentPiece(), shownCurrent);
+    shownFollowing = showPiece(followingPieceBoard, engine.getFollowingPiece(), shownFollowing);
+  }
+
+  /**
+   * Show a piece on a piece board if it is not already shown
+   *
+   * @param board     the piece board
+   * @param gamePiece the piece
+   * @param shown     the piece shown, as (piece * 4 + rotation)
+   * @return the piece now shown
+   */
+  private int showPiece(PieceBoard board, GamePiece gamePiece, int shown) {
+    if (gamePiece == null) {
+      return shown;
+    }
+    var code = gamePiece.getPiece() * GamePiece.ROTATIONS + gamePiece.getRotation();
+    if (code != shown) {
+      board.setPiece(gamePiece);
+    }
+    return code;
+  }
+}
@@ -5,6 +5,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Scanner;
 import javafx.application.Platform;
 import javafx.beans.property.SimpleBooleanProperty;
@@ -38,6 +39,8 @@ import uk.ac.soton.comp1206.event.CommunicationsListener;
 import uk.ac.soton.comp1206.game.Game;
 import uk.ac.soton.comp1206.game.MultiplayerGame;
 import uk.ac.soton.comp1206.network.Communicator;
+import uk.ac.soton.comp1206.network.ConnectionState;
+import uk.ac.soton.comp1206.network.Message;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
 
@@ -89,6 +92,21 @@ public class ScoresScene extends BaseScene {
    */
   private ArrayList<Pair<String, Integer>> remoteScoreList = new ArrayList<>();
 
+  /**
+   * The number of places on the online leaderboard
+   */
+  private static final int ONLINE_PLACES = 10;
+
+  /**
+   * Whether the online scores have arrived, an empty list is only a real answer once they have
+   */
+  private boolean onlineLoaded;
+
+  /**
+   * Whether the score is waiting for the online scores before it can be written
+   */
+  private boolean writePending;
+
   /**
    * An observable list for the remote scores
    */
@@ -169,7 +187,8 @@ public class ScoresScene extends BaseScene {
   public void build() {
     logger.info("Building " + this.getClass().getName());
     //Communicator requests online scores
-    communicator.addListener(s -> Platform.runLater(() -> loadOnlineScores(s.trim())));
+    communicator.subscribe(Message.HiScores.class, Platform::runLater, this::loadOnlineScores);
+    communicator.subscribe(Message.NewScore.class, Platform::runLater, this::loadNewScore);
     communicator.send("HISCORES");
     //Set the observable lists
     observableScores = FXCollections.observableList(scoresList);
@@ -250,6 +269,9 @@ public class ScoresScene extends BaseScene {
 
     //A change listener so local and online UI display at the same time
     ready.addListener(((observable, oldValue, newValue) -> local.reveal()));
+    //Without a connection the online scores may never come, so don't keep the local ones waiting
+    communicator.addConnectionListener(state -> Platform.runLater(() -> showConnection(state)));
+    showConnection(communicator.getState());
 
     //Adds nodes to the grid
     scoreboard.add(localTitle, 0, 0);
@@ -413,32 +435,55 @@ public class ScoresScene extends BaseScene {
   }
 
   /**
-   * Loads remote high scores
+   * Reveal the local scores once the server can't be reached, the online scores show when they arrive
    *
-   * @param message
+   * @param state the state of the connection
    */
-  private void loadOnlineScores(String message) {
-
-    if (message.startsWith("NEWSCORE")) {
-      logger.info("New Score received");
-      var newscore = message.split(" ")[1].split(":");
-      //Adds new score to the online list
-      remoteScoreList.add(new Pair<>(newscore[0], Integer.parseInt(newscore[1])));
+  private void showConnection(ConnectionState state) {
+    if (state != ConnectionState.CONNECTED) {
+      logger.info("Not connected ({}), showing local scores", state);
       ready.set(true);
-    } else if (message.startsWith("HISCORES")){
-      logger.info("Data received " + message);
-      var data = message.split("\n");
-      data[0] = data[0].split(" ")[1];
-      for (int i = 0; i < data.length; i++) {
-        var str = data[i].trim().split(":");
-        //Replace empty names with Unknown
-        if (str[0].equals("")) {
-          str[0] = "Unknown";
-        }
-        logger.info("Check this out " + remoteScoreList.toArray().toString());
-        remoteScoreList.add(new Pair<>(str[0].trim(), Integer.parseInt(str[1])));
-      }
     }
+  }
+
+  /**
+   * Loads remote high scores
+   *
+   * @param message the high scores message
+   */
+  private void loadOnlineScores(Message.HiScores message) {
+    logger.info("Data received " + message);
+    for (var score : message.scores()) {
+      //Replace empty names with Unknown
+      var name = score.name().isEmpty() ? "Unknown" : score.name();
+      remoteScoreList.add(new Pair<>(name, score.score()));
+    }
+    onlineLoaded = true;
+    //The score was ready before the online scores were
+    if (writePending) {
+      writePending = false;
+      writeOnlineScore();
+    }
+    showOnlineScores();
+  }
+
+  /**
+   * Adds a new score to the remote high scores
+   *
+   * @param message the new score message
+   */
+  private void loadNewScore(Message.NewScore message) {
+    logger.info("New Score received");
+    //Adds new score to the online list
+    remoteScoreList.add(new Pair<>(message.score().name(), message.score().score()));
+    ready.set(true);
+    showOnlineScores();
+  }
+
+  /**
+   * Sorts and displays the remote high scores
+   */
+  private void showOnlineScores() {
     remoteScoreList.sort((a, b) -> b.getValue().compareTo(a.getValue()));
     //Calls method to set ready as TRUE if no new high score has been achieved
     checkOnlineHigh();
@@ -458,18 +503,17 @@ public class ScoresScene extends BaseScene {
       logger.info("Easy game detected, cannot write score");
       return;
     }
-    //To make sure the list isn't empty, so it can be accessed without throwing a null pointer exception
-    if (remoteScoreList.size() != 0) {
-      //To make sure that it gets the 10th or last element of the list if the size is smaller than 10
-      int limit = 9;
-      if (remoteScoreList.size() < 10) {
-        limit = remoteScoreList.size() - 1;
-      }
-      if (gameState.getScore() > remoteScoreList.get(limit).getValue()) {
-        //Sends a new high score
-        communicator.send("HISCORE " + playerName.get() + ":" + gameState.getScore());
-        logger.info("Sent {}:{}", playerName.get(), gameState.getScore());
-      }
+    //Wait for the online scores to know if this one makes the leaderboard
+    if (!onlineLoaded) {
+      writePending = true;
+      return;
+    }
+    if (isOnlineHigh(remoteScoreList, gameState.getScore())) {
+      //The server refuses an empty name, as in the local scores use Unknown
+      var name = playerName.get().isEmpty() ? "Unknown" : playerName.get();
+      //Sends a new high score
+      communicator.send("HISCORE " + name + ":" + gameState.getScore());
+      logger.info("Sent {}:{}", name, gameState.getScore());
     }
   }
 
@@ -490,9 +534,24 @@ public class ScoresScene extends BaseScene {
       return;
     }
     //Check for 10th high score on the leaderboard
-    if (!(gameState.getScore() > remoteScoreList.get(9).getValue())) {
+    if (!isOnlineHigh(remoteScoreList, gameState.getScore())) {
       ready.set(true);
     }
   }
 
+  /**
+   * Checks whether a score makes the online leaderboard. Any score does while it has fewer than ten
+   * places filled, as on a new server
+   *
+   * @param scores the online scores, highest first
+   * @param score  the score to check
+   * @return true if the score is a new online high score
+   */
+  static boolean isOnlineHigh(List<Pair<String, Integer>> scores, int score) {
+    if (scores.size() < ONLINE_PLACES) {
+      return true;
+    }
+    return score > scores.get(ONLINE_PLACES - 1).getValue();
+  }
+
 }
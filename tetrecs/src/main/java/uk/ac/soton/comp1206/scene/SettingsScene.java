@@ -22,6 +22,7 @@ import javafx.scene.text.Text;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.Utility.Multimedia;
+import uk.ac.soton.comp1206.component.BlockSprites;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
 
@@ -39,6 +40,11 @@ public class SettingsScene extends BaseScene{
    */
   private double music = 1;
 
+  /**
+   * How long one music track fades into the next, in seconds
+   */
+  private double crossfade = 0;
+
   /**
    * Width of the window
    */
@@ -107,6 +113,8 @@ public class SettingsScene extends BaseScene{
     lbl1.getStyleClass().add("heading");
     var lbl2 = new Text("Music:");
     lbl2.getStyleClass().add("heading");
+    var lbl3 = new Text("Crossfade:");
+    lbl3.getStyleClass().add("heading");
 
     //Volume slider for sfx
     var sfxSlider = new Slider(0, 1, sfx);
@@ -132,6 +140,17 @@ public class SettingsScene extends BaseScene{
       Multimedia.changeMusic(music);
       logger.info("Changed music from {} to {}", oldValue, newValue);
     }));
+    //Slider for the crossfade between music tracks, in seconds
+    var crossfadeSlider = new Slider(0, 3, crossfade);
+    //snapping to half seconds
+    crossfadeSlider.setMajorTickUnit(0.5);
+    crossfadeSlider.setMinorTickCount(0);
+    crossfadeSlider.setSnapToTicks(true);
+    crossfadeSlider.valueProperty().addListener(((observable, oldValue, newValue) -> {
+      crossfade = newValue.doubleValue();
+      Multimedia.changeCrossfade(crossfade);
+      logger.info("Changed crossfade from {} to {}", oldValue, newValue);
+    }));
     //An HBox to hold the first sfx slider
     var hbox1 = new HBox(lbl1, sfxSlider);
     hbox1.setSpacing(10);
@@ -140,7 +159,11 @@ public class SettingsScene extends BaseScene{
     var hbox2 = new HBox(lbl2, musicSlider);
     hbox2.setSpacing(10);
     hbox2.setAlignment(Pos.CENTER);
-    vbox.getChildren().addAll(hbox1, hbox2);
+    //A third HBox to hold the crossfade slider
+    var hbox3 = new HBox(lbl3, crossfadeSlider);
+    hbox3.setSpacing(10);
+    hbox3.setAlignment(Pos.CENTER);
+    vbox.getChildren().addAll(hbox1, hbox2, hbox3);
 
     //Create a menu button for the resolution
     var menu = new MenuButton("Resolution");
@@ -190,6 +213,8 @@ public class SettingsScene extends BaseScene{
         width = 1100;
         height = 800;
       }
+      //Block sizes follow the resolution, so render the sprites again
+      BlockSprites.clear();
       //Write all the files
       write("src/main/resources/settings.txt");
       //Go back to menu
@@ -242,6 +267,10 @@ public class SettingsScene extends BaseScene{
       music = Double.parseDouble(settings.get(1));
       width = Integer.parseInt(settings.get(2));
       height = Integer.parseInt(settings.get(3));
+      //Files saved before the crossfade setting keep the default
+      if(settings.size() > 4){
+        crossfade = Double.parseDouble(settings.get(4));
+      }
       reader.close();
       return true;
     } catch (Exception e) {
@@ -265,7 +294,8 @@ public class SettingsScene extends BaseScene{
         writer.write("sfx=" + sfx + "\n");
         writer.write("music=" + music + "\n");
         writer.write("width=" + width + "\n");
-        writer.write("height=" + height);
+        writer.write("height=" + height + "\n");
+        writer.write("crossfade=" + crossfade);
         writer.close();
       } catch (IOException e) {
         logger.error("Issue has occurred.");
@@ -284,7 +314,8 @@ public class SettingsScene extends BaseScene{
         writer.write("sfx=" + sfx + "\n");
         writer.write("music=" + music + "\n");
         writer.write("width=" + width + "\n");
-        writer.write("height=" + height);
+        writer.write("height=" + height + "\n");
+        writer.write("crossfade=" + crossfade);
         writer.close();
       } catch (IOException e) {
         e.printStackTrace();
@@ -308,6 +339,14 @@ public class SettingsScene extends BaseScene{
     return music;
   }
 
+  /**
+   * Get the crossfade
+   * @return seconds
+   */
+  public double getCrossfade() {
+    return crossfade;
+  }
+
   /**
    * Get the window width
    * @return width
@@ -38,6 +38,7 @@ public class StartScene extends BaseScene{
     //Set volume to match the settings
     Multimedia.changeSFX(temp.getSfx());
     Multimedia.changeMusic(temp.getMusic());
+    Multimedia.changeCrossfade(temp.getCrossfade());
   }
 
   @Override
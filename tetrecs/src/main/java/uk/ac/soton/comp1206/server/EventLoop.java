@@ -0,0 +1,207 @@
+package uk.ac.soton.comp1206.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * An EventLoop is a single thread which reads from and writes to many sockets using one Selector.
+ *
+ * Sockets are handed to the loop by the GameServer once accepted, and stay with it until they close. Work for a loop
+ * from another thread, such as flushing a message sent to one of its sockets, is queued and the selector woken up.
+ */
+class EventLoop implements Runnable {
+
+    private static final Logger logger = LogManager.getLogger(EventLoop.class);
+
+    /**
+     * The size of the buffer each read goes through
+     */
+    private static final int READ_BUFFER = 16 * 1024;
+
+    /**
+     * The selector waiting on every socket of this loop
+     */
+    private final Selector selector;
+
+    /**
+     * The lobby the connections of this loop talk to
+     */
+    private final Lobby lobby;
+
+    /**
+     * Work queued by other threads, run on this loop
+     */
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The buffer shared by every read on this loop
+     */
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER);
+
+    /**
+     * The thread running this loop
+     */
+    private final Thread thread;
+
+    /**
+     * Whether the loop should keep running
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Create a new event loop
+     * @param name the name of the thread
+     * @param lobby the lobby the connections talk to
+     * @throws IOException if the selector cannot be opened
+     */
+    EventLoop(String name, Lobby lobby) throws IOException {
+        this.selector = Selector.open();
+        this.lobby = lobby;
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Start the thread of this loop
+     */
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Stop this loop, closing every socket on it
+     */
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Hand a newly accepted socket to this loop
+     * @param socket the socket
+     */
+    void register(SocketChannel socket) {
+        execute(() -> {
+            try {
+                socket.configureBlocking(false);
+                socket.socket().setTcpNoDelay(true);
+                var key = socket.register(selector, SelectionKey.OP_READ);
+                key.attach(new WebSocketConnection(this, key, socket, lobby));
+            } catch (IOException e) {
+                logger.error("Unable to register socket: " + e.getMessage());
+                close(socket);
+            }
+        });
+    }
+
+    /**
+     * Run a task on this loop
+     * @param task the task
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        if (Thread.currentThread() != thread) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Wait for sockets to be ready and handle them, until stopped
+     */
+    @Override
+    public void run() {
+        logger.info("Event loop started");
+        while (running) {
+            try {
+                selector.select();
+                var selected = selector.selectedKeys();
+                for (var key : selected) {
+                    handle(key);
+                }
+                selected.clear();
+                //Includes work queued by the sockets just handled, which must not wait for the next select
+                runTasks();
+            } catch (ClosedSelectorException e) {
+                break;
+            } catch (IOException e) {
+                logger.error("Event loop error: " + e.getMessage());
+            }
+        }
+
+        //Close everything left on this loop
+        runTasks();
+        for (var key : selector.keys()) {
+            if (key.attachment() instanceof WebSocketConnection connection) {
+                connection.close();
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            logger.error("Unable to close selector: " + e.getMessage());
+        }
+        logger.info("Event loop stopped");
+    }
+
+    /**
+     * Run the queued tasks
+     */
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.error("Task failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Handle a socket which is ready
+     * @param key the key of the socket
+     */
+    private void handle(SelectionKey key) {
+        var connection = (WebSocketConnection) key.attachment();
+        if (!key.isValid() || connection == null) {
+            return;
+        }
+        try {
+            if (key.isReadable()) {
+                readBuffer.clear();
+                var read = ((SocketChannel) key.channel()).read(readBuffer);
+                if (read < 0) {
+                    connection.close();
+                    return;
+                }
+                readBuffer.flip();
+                connection.read(readBuffer);
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.flush();
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Connection error: " + e.getMessage());
+            connection.close();
+        }
+    }
+
+    /**
+     * Close a socket, ignoring any error
+     * @param socket the socket
+     */
+    private static void close(SocketChannel socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            //Already closed
+        }
+    }
+}
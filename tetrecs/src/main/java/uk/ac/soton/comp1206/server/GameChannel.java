@@ -0,0 +1,87 @@
+package uk.ac.soton.comp1206.server;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import uk.ac.soton.comp1206.game.GamePiece;
+
+/**
+ * A GameChannel is a group of players who chat and play a game together.
+ *
+ * The first player to join is the host, who starts the game. Every player in a game is dealt the same pieces in
+ * the same order, each at their own pace. Channels are only changed by the Lobby while holding the lock of the
+ * channel, so games in different channels run in parallel.
+ */
+class GameChannel {
+
+    /**
+     * The name of the channel
+     */
+    final String name;
+
+    /**
+     * The players in the channel, in the order they joined
+     */
+    final LinkedHashSet<Player> players = new LinkedHashSet<>();
+
+    /**
+     * The host of the channel, or null once empty
+     */
+    Player host;
+
+    /**
+     * Whether the game in this channel has started, read by the lobby without the channel lock
+     */
+    volatile boolean started;
+
+    /**
+     * The pieces dealt so far in the current game, shared by every player
+     */
+    private final ArrayList<Integer> pieces = new ArrayList<>();
+
+    /**
+     * Chooses the pieces
+     */
+    private final Random random = new Random();
+
+    /**
+     * Create a new channel
+     * @param name the name of the channel
+     */
+    GameChannel(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Start a new game, resetting every player
+     */
+    void start() {
+        started = true;
+        pieces.clear();
+        for (var player : players) {
+            player.reset();
+        }
+    }
+
+    /**
+     * Deal the next piece to a player
+     * @param player the player
+     * @return the piece number
+     */
+    int deal(Player player) {
+        while (pieces.size() <= player.pieces) {
+            pieces.add(random.nextInt(GamePiece.PIECES));
+        }
+        return pieces.get(player.pieces++);
+    }
+
+    /**
+     * Send a message to every player in the channel
+     * @param message the message
+     */
+    void broadcast(String message) {
+        for (var player : players) {
+            player.send(message);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package uk.ac.soton.comp1206.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Path;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The GameServer is a TetrECS server which can be run on a local network, or inside the game for playing and
+ * testing without the internet.
+ *
+ * It speaks the same WebSocket text protocol as the TetrECS server, so the Communicator connects to it unchanged.
+ * One thread accepts connections and hands each to one of a small pool of EventLoops, which use non-blocking sockets
+ * so a few threads can serve thousands of players.
+ *
+ * Run it on its own with: GameServer [port] [event loops] [high scores file]
+ */
+public class GameServer {
+
+    private static final Logger logger = LogManager.getLogger(GameServer.class);
+
+    /**
+     * The port the TetrECS server listens on
+     */
+    public static final int DEFAULT_PORT = 9700;
+
+    /**
+     * The first wait after failing to accept a connection, in milliseconds
+     */
+    private static final long MIN_ACCEPT_BACKOFF = 10;
+
+    /**
+     * The longest wait after failing to accept a connection, in milliseconds
+     */
+    private static final long MAX_ACCEPT_BACKOFF = 1000;
+
+    /**
+     * The port to listen on, or 0 for any free port
+     */
+    private final int port;
+
+    /**
+     * The event loops the connections are shared between
+     */
+    private final EventLoop[] loops;
+
+    /**
+     * The players, channels and high scores
+     */
+    private final Lobby lobby;
+
+    /**
+     * Accepts new connections
+     */
+    private ServerSocketChannel server;
+
+    /**
+     * The thread accepting new connections
+     */
+    private Thread acceptor;
+
+    /**
+     * Create a new server, keeping high scores in memory only
+     * @param port the port to listen on, or 0 for any free port
+     * @param loops the number of event loops
+     */
+    public GameServer(int port, int loops) {
+        this(port, loops, null);
+    }
+
+    /**
+     * Create a new server
+     * @param port the port to listen on, or 0 for any free port
+     * @param loops the number of event loops
+     * @param hiscores the file to load and save the high scores, or null to keep them in memory only
+     */
+    public GameServer(int port, int loops, Path hiscores) {
+        if (loops < 1) {
+            throw new IllegalArgumentException("At least one event loop is needed");
+        }
+        this.port = port;
+        this.loops = new EventLoop[loops];
+        this.lobby = new Lobby(hiscores);
+    }
+
+    /**
+     * Start listening and serving players in the background
+     * @throws IOException if the port cannot be listened on
+     */
+    public synchronized void start() throws IOException {
+        if (server != null) {
+            return;
+        }
+        var listening = ServerSocketChannel.open();
+        try {
+            listening.bind(new InetSocketAddress(port), 1024);
+        } catch (IOException e) {
+            listening.close();
+            throw e;
+        }
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop("GameServer-loop-" + i, lobby);
+            loops[i].start();
+        }
+        server = listening;
+        acceptor = new Thread(() -> accept(listening), "GameServer-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        logger.info("Game server listening on port " + getPort() + " with " + loops.length + " event loops");
+    }
+
+    /**
+     * Accept connections until stopped, handing them to the event loops in turn. A failure which lasts, such as
+     * running out of file descriptors, is waited out with a delay which doubles each time rather than retried at once.
+     * @param listening the socket accepting connections
+     */
+    private void accept(ServerSocketChannel listening) {
+        var next = 0;
+        var backoff = MIN_ACCEPT_BACKOFF;
+        while (true) {
+            try {
+                var socket = listening.accept();
+                loops[next].register(socket);
+                next = (next + 1) % loops.length;
+                backoff = MIN_ACCEPT_BACKOFF;
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                logger.error("Unable to accept connection, waiting " + backoff + "ms: " + e.getMessage());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+                backoff = Math.min(backoff * 2, MAX_ACCEPT_BACKOFF);
+            }
+        }
+    }
+
+    /**
+     * Stop the server, disconnecting every player
+     */
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        try {
+            server.close();
+        } catch (IOException e) {
+            logger.error("Unable to close server: " + e.getMessage());
+        }
+        server = null;
+        for (var loop : loops) {
+            loop.stop();
+        }
+        lobby.flushScores();
+        logger.info("Game server stopped");
+    }
+
+    /**
+     * Get the port the server is listening on
+     * @return the port, or the port asked for if not started
+     */
+    public synchronized int getPort() {
+        if (server == null) {
+            return port;
+        }
+        try {
+            return ((InetSocketAddress) server.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            return port;
+        }
+    }
+
+    /**
+     * Get the number of players connected
+     * @return the number of players
+     */
+    public int getPlayers() {
+        return lobby.getPlayers();
+    }
+
+    /**
+     * Run a server on its own until the process is stopped
+     * @param args the port, the number of event loops and the high scores file, all optional
+     * @throws IOException if the port cannot be listened on
+     * @throws InterruptedException if interrupted while running
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        var port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        var loops = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        var hiscores = args.length > 2 ? Path.of(args[2]) : Path.of("hiscores.txt");
+
+        var gameServer = new GameServer(port, loops, hiscores);
+        gameServer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(gameServer::stop));
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,668 @@
+package uk.ac.soton.comp1206.server;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.network.BoardSync;
+
+/**
+ * The Lobby holds every player, channel and high score on the GameServer, and handles the messages players send.
+ *
+ * It speaks the same text protocol as the TetrECS server: each message is a command in capitals followed by its
+ * argument. Messages arrive on several event loops at once, so state is guarded by three kinds of lock:
+ * <ul>
+ * <li>the lock of the lobby guards the players and channels, and is only taken to connect, disconnect, list,
+ * create, join or part</li>
+ * <li>the lock of each channel guards its players and their games, so games in different channels never wait for
+ * each other. It may be taken while holding the lobby lock, never the other way round, and never two at once</li>
+ * <li>the high scores have a lock of their own, and are saved to their file on a separate thread</li>
+ * </ul>
+ * A player only changes channel through their own messages, which one event loop handles in order, so the channel of
+ * a player is stable while their message is handled. Replies are only queued while holding a lock, the event loops
+ * write them.
+ */
+class Lobby {
+
+    private static final Logger logger = LogManager.getLogger(Lobby.class);
+
+    /**
+     * The number of high scores sent in answer to HISCORES
+     */
+    private static final int HISCORES_SENT = 10;
+
+    /**
+     * The most high scores kept
+     */
+    private static final int HISCORES_KEPT = 100;
+
+    /**
+     * The longest nickname or channel name accepted
+     */
+    private static final int MAX_NAME = 32;
+
+    /**
+     * Every connected player
+     */
+    private final LinkedHashSet<Player> players = new LinkedHashSet<>();
+
+    /**
+     * Every channel, by name, in name order
+     */
+    private final TreeMap<String, GameChannel> channels = new TreeMap<>();
+
+    /**
+     * The high scores, highest first. Guarded by its own lock.
+     */
+    private final ArrayList<Score> hiscores = new ArrayList<>();
+
+    /**
+     * Saves the high scores, so the file is never written while a lock is held
+     */
+    private static final ExecutorService saver = Executors.newSingleThreadExecutor((runnable) -> {
+        var thread = new Thread(runnable, "GameServer-hiscores");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Whether a save of the high scores is waiting to run. Guarded by the high scores lock.
+     */
+    private boolean saveQueued;
+
+    /**
+     * The file the high scores are kept in, or null to keep them in memory only
+     */
+    private final Path hiscoresFile;
+
+    /**
+     * The number given to the next guest nickname
+     */
+    private int guests = 1;
+
+    /**
+     * A high score
+     * @param name the player
+     * @param score the score
+     */
+    private record Score(String name, int score) {}
+
+    /**
+     * Create a new lobby
+     * @param hiscoresFile the file to load and save the high scores, or null to keep them in memory only
+     */
+    Lobby(Path hiscoresFile) {
+        this.hiscoresFile = hiscoresFile;
+        loadScores();
+    }
+
+    /**
+     * Add the player on a newly opened connection
+     * @param connection the connection
+     * @return the player
+     */
+    synchronized Player open(WebSocketConnection connection) {
+        var player = new Player(connection, "Guest" + guests++);
+        players.add(player);
+        logger.info(player.nickname + " connected, " + players.size() + " players online");
+        return player;
+    }
+
+    /**
+     * Remove the player on a closed connection
+     * @param player the player
+     */
+    synchronized void close(Player player) {
+        if (players.remove(player)) {
+            part(player);
+            logger.info(player.nickname + " disconnected, " + players.size() + " players online");
+        }
+    }
+
+    /**
+     * Get the number of connected players
+     * @return the number of players
+     */
+    synchronized int getPlayers() {
+        return players.size();
+    }
+
+    /**
+     * Handle a message from a player
+     * @param player the player
+     * @param message the message
+     */
+    void receive(Player player, String message) {
+        var text = message.strip();
+        //The command is the leading capitals, so a missing space before the argument is tolerated
+        var end = 0;
+        while (end < text.length() && text.charAt(end) >= 'A' && text.charAt(end) <= 'Z') {
+            end++;
+        }
+        var command = text.substring(0, end);
+        var argument = text.substring(end).strip();
+
+        switch (command) {
+            case "LIST" -> list(player);
+            case "CREATE" -> create(player, argument);
+            case "JOIN" -> join(player, argument);
+            case "PART" -> leave(player);
+            case "CAPS" -> caps(player, argument);
+            case "HISCORES" -> hiscores(player, argument.equals("UNIQUE"));
+            case "HISCORE" -> hiscore(player, argument);
+            case "QUIT" -> player.disconnect();
+            default -> {
+                var channel = player.channel;
+                if (channel == null) {
+                    play(player, command, argument);
+                } else {
+                    synchronized (channel) {
+                        play(player, command, argument);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Handle a message about the channel or game of a player, holding the lock of their channel if they are in one
+     * @param player the player
+     * @param command the command
+     * @param argument the argument of the command
+     */
+    private void play(Player player, String command, String argument) {
+        switch (command) {
+            case "NICK" -> nick(player, argument);
+            case "MSG" -> {
+                if (player.channel == null) {
+                    player.send("ERROR You are not in a channel");
+                } else {
+                    player.channel.broadcast("MSG " + player.nickname + ":" + argument);
+                }
+            }
+            case "USERS" -> users(player);
+            case "START" -> start(player);
+            case "PIECE" -> {
+                if (inGame(player)) {
+                    player.send("PIECE " + player.channel.deal(player));
+                }
+            }
+            case "SCORE" -> {
+                if (inGame(player)) {
+                    player.score = number(argument, player.score);
+                }
+            }
+            case "LIVES" -> {
+                if (inGame(player)) {
+                    player.lives = number(argument, player.lives);
+                }
+            }
+            case "BOARD" -> board(player, argument);
+            case BoardSync.CAPABILITY -> boardSync(player, argument);
+            case "DIE" -> die(player);
+            case "SCORES" -> scores(player);
+            default -> player.send("ERROR Unknown command " + command);
+        }
+    }
+
+    /**
+     * Send the channels which can be joined
+     * @param player the player asking
+     */
+    private synchronized void list(Player player) {
+        var builder = new StringBuilder("CHANNELS");
+        var separator = ' ';
+        for (var channel : channels.values()) {
+            if (!channel.started) {
+                builder.append(separator).append(channel.name);
+                separator = '\n';
+            }
+        }
+        player.send(builder.toString());
+    }
+
+    /**
+     * Create a channel and join it as its host
+     * @param player the player
+     * @param name the name of the channel
+     */
+    private synchronized void create(Player player, String name) {
+        if (!validName(player, name)) {
+            return;
+        }
+        if (channels.containsKey(name)) {
+            player.send("ERROR Channel " + name + " already exists");
+            return;
+        }
+        var channel = new GameChannel(name);
+        channels.put(name, channel);
+        logger.info(player.nickname + " created channel " + name);
+        enter(player, channel);
+    }
+
+    /**
+     * Join a channel
+     * @param player the player
+     * @param name the name of the channel
+     */
+    private synchronized void join(Player player, String name) {
+        var channel = channels.get(name);
+        if (channel == null) {
+            player.send("ERROR Channel " + name + " does not exist");
+            return;
+        }
+        if (channel.started) {
+            player.send("ERROR The game in " + name + " has already started");
+            return;
+        }
+        if (channel == player.channel) {
+            player.send("ERROR You are already in " + name);
+            return;
+        }
+        enter(player, channel);
+    }
+
+    /**
+     * Move a player into a channel, leaving their old one. Must be called holding the lobby lock.
+     * @param player the player
+     * @param channel the channel
+     */
+    private void enter(Player player, GameChannel channel) {
+        //Only one channel lock is held at a time, so the old channel is left first
+        part(player);
+        synchronized (channel) {
+            if (channel.started) {
+                //The host started the game since the player asked to join
+                player.send("ERROR The game in " + channel.name + " has already started");
+                return;
+            }
+            channel.players.add(player);
+            player.channel = channel;
+            player.send("JOIN " + channel.name);
+            player.send("NICK " + player.nickname);
+            if (channel.host == null) {
+                channel.host = player;
+                player.send("HOST");
+            }
+        }
+    }
+
+    /**
+     * Leave the channel a player is in, on their request
+     * @param player the player
+     */
+    private synchronized void leave(Player player) {
+        if (player.channel == null) {
+            player.send("ERROR You are not in a channel");
+        } else {
+            part(player);
+            player.send("PARTED");
+        }
+    }
+
+    /**
+     * Take a player out of their channel, handing the channel to a new host or removing it once empty. Must be
+     * called holding the lobby lock.
+     * @param player the player
+     */
+    private void part(Player player) {
+        var channel = player.channel;
+        if (channel == null) {
+            return;
+        }
+        synchronized (channel) {
+            player.channel = null;
+            channel.players.remove(player);
+            if (!channel.players.isEmpty()) {
+                if (channel.host == player) {
+                    channel.host = channel.players.iterator().next();
+                    channel.host.send("HOST");
+                }
+                if (channel.started) {
+                    endIfOver(channel);
+                }
+                return;
+            }
+        }
+        channels.remove(channel.name);
+        logger.info("Channel " + channel.name + " closed");
+    }
+
+    /**
+     * Change the nickname of a player. Must be called holding the lock of their channel, if they are in one.
+     * @param player the player
+     * @param name the new nickname
+     */
+    private void nick(Player player, String name) {
+        if (!validName(player, name)) {
+            return;
+        }
+        player.nickname = name;
+        player.send("NICK " + name);
+    }
+
+    /**
+     * Send the players in the channel
+     * @param player the player asking
+     */
+    private void users(Player player) {
+        if (player.channel == null) {
+            player.send("ERROR You are not in a channel");
+            return;
+        }
+        var builder = new StringBuilder("USERS");
+        var separator = ' ';
+        for (var other : player.channel.players) {
+            builder.append(separator).append(other.nickname);
+            separator = '\n';
+        }
+        player.send(builder.toString());
+    }
+
+    /**
+     * Start the game in the channel of the host
+     * @param player the player asking
+     */
+    private void start(Player player) {
+        var channel = player.channel;
+        if (channel == null || channel.host != player) {
+            player.send("ERROR Only the host can start the game");
+            return;
+        }
+        if (channel.started) {
+            player.send("ERROR The game has already started");
+            return;
+        }
+        logger.info("Starting game in " + channel.name + " with " + channel.players.size() + " players");
+        channel.start();
+        channel.broadcast("START");
+    }
+
+    /**
+     * Keep the board a player sent, and pass it on to the other players in the game
+     * @param player the player
+     * @param board the values of the board
+     */
+    private void board(Player player, String board) {
+        if (!inGame(player)) {
+            return;
+        }
+        player.board = board;
+        for (var other : player.channel.players) {
+            if (other != player) {
+                other.send("BOARD " + player.nickname + ":" + board);
+            }
+        }
+    }
+
+    /**
+     * Agree to the optional features a player asks for which this server supports
+     * @param player the player
+     * @param argument the features, separated by spaces
+     */
+    private void caps(Player player, String argument) {
+        var builder = new StringBuilder("CAPS");
+        for (var capability : argument.split(" ")) {
+            if (capability.equals(BoardSync.CAPABILITY)) {
+                player.compactBoards = true;
+                builder.append(' ').append(capability);
+            }
+        }
+        player.send(builder.toString());
+    }
+
+    /**
+     * Apply a compact update to the board of a player, and pass it on to the other players in the game. Players
+     * who did not ask for compact updates are sent the whole board.
+     * @param player the player
+     * @param update the update
+     */
+    private void boardSync(Player player, String update) {
+        if (!inGame(player)) {
+            return;
+        }
+        if (player.boardSync == null) {
+            player.boardSync = new BoardSync();
+        }
+        if (!player.boardSync.apply(update)) {
+            //Missed an update, ask for a snapshot
+            player.send("RESYNC");
+            return;
+        }
+        String classic = null;
+        for (var other : player.channel.players) {
+            if (other == player) {
+                continue;
+            }
+            if (other.compactBoards) {
+                other.send(BoardSync.CAPABILITY + " " + player.nickname + ":" + update);
+            } else {
+                if (classic == null) {
+                    classic = BoardSync.classic(player.boardSync.getCells()).substring("BOARD ".length());
+                    player.board = classic;
+                }
+                other.send("BOARD " + player.nickname + ":" + classic);
+            }
+        }
+    }
+
+    /**
+     * Mark a player as out of the game
+     * @param player the player
+     */
+    private void die(Player player) {
+        if (player.channel == null || !player.channel.started || player.dead) {
+            return;
+        }
+        player.dead = true;
+        logger.info(player.nickname + " is out of the game in " + player.channel.name);
+        endIfOver(player.channel);
+    }
+
+    /**
+     * End the game in a channel once every player is out, so it can be joined again
+     * @param channel the channel
+     */
+    private void endIfOver(GameChannel channel) {
+        for (var player : channel.players) {
+            if (!player.dead) {
+                return;
+            }
+        }
+        logger.info("Game in " + channel.name + " is over");
+        channel.started = false;
+    }
+
+    /**
+     * Send the scores and lives of every player in the game
+     * @param player the player asking
+     */
+    private void scores(Player player) {
+        if (player.channel == null) {
+            player.send("ERROR You are not in a channel");
+            return;
+        }
+        var builder = new StringBuilder("SCORES");
+        var separator = ' ';
+        for (var other : player.channel.players) {
+            builder.append(separator).append(other.nickname).append(':').append(other.score).append(':')
+                .append(other.dead ? "DEAD" : String.valueOf(other.lives));
+            separator = '\n';
+        }
+        player.send(builder.toString());
+    }
+
+    /**
+     * Send the high scores
+     * @param player the player asking
+     * @param unique whether to send only the best score of each name
+     */
+    private void hiscores(Player player, boolean unique) {
+        var builder = new StringBuilder("HISCORES");
+        var separator = ' ';
+        var seen = new HashSet<String>();
+        var sent = 0;
+        synchronized (hiscores) {
+            for (var score : hiscores) {
+                if (sent == HISCORES_SENT) {
+                    break;
+                }
+                if (unique && !seen.add(score.name())) {
+                    continue;
+                }
+                builder.append(separator).append(score.name()).append(':').append(score.score());
+                separator = '\n';
+                sent++;
+            }
+        }
+        player.send(builder.toString());
+    }
+
+    /**
+     * Add a high score, of the form name:score
+     * @param player the player sending it
+     * @param argument the score
+     */
+    private void hiscore(Player player, String argument) {
+        var colon = argument.lastIndexOf(':');
+        var score = colon < 0 ? -1 : number(argument.substring(colon + 1), -1);
+        var name = colon < 0 ? "" : argument.substring(0, colon).strip();
+        if (score < 0 || name.isEmpty() || name.contains("\n")) {
+            player.send("ERROR Invalid high score " + argument);
+            return;
+        }
+        synchronized (hiscores) {
+            add(new Score(name, score));
+            saveScores();
+        }
+        player.send("NEWSCORE " + name + ":" + score);
+    }
+
+    /**
+     * Add a high score in order, dropping the lowest beyond the limit. Must be called holding the high scores lock.
+     * @param score the score
+     */
+    private void add(Score score) {
+        var index = 0;
+        while (index < hiscores.size() && hiscores.get(index).score() >= score.score()) {
+            index++;
+        }
+        hiscores.add(index, score);
+        if (hiscores.size() > HISCORES_KEPT) {
+            hiscores.remove(hiscores.size() - 1);
+        }
+    }
+
+    /**
+     * Load the high scores from their file, if there is one
+     */
+    private void loadScores() {
+        if (hiscoresFile == null || !Files.exists(hiscoresFile)) {
+            return;
+        }
+        try {
+            for (var line : Files.readAllLines(hiscoresFile)) {
+                var colon = line.lastIndexOf(':');
+                var score = colon < 0 ? -1 : number(line.substring(colon + 1), -1);
+                if (score >= 0) {
+                    add(new Score(line.substring(0, colon), score));
+                }
+            }
+            logger.info("Loaded " + hiscores.size() + " high scores from " + hiscoresFile);
+        } catch (IOException e) {
+            logger.error("Unable to load high scores: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Save the high scores to their file in the background, if there is one. A burst of new scores is saved once.
+     * Must be called holding the high scores lock.
+     */
+    private void saveScores() {
+        if (hiscoresFile == null || saveQueued) {
+            return;
+        }
+        saveQueued = true;
+        saver.execute(this::writeScores);
+    }
+
+    /**
+     * Write the latest high scores to their file, on the saver thread
+     */
+    private void writeScores() {
+        var lines = new ArrayList<String>();
+        synchronized (hiscores) {
+            saveQueued = false;
+            for (var score : hiscores) {
+                lines.add(score.name() + ":" + score.score());
+            }
+        }
+        try {
+            Files.write(hiscoresFile, lines);
+        } catch (IOException e) {
+            logger.error("Unable to save high scores: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Wait for any high scores still being saved to reach their file
+     */
+    void flushScores() {
+        try {
+            saver.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.error("Unable to save high scores: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Check whether a player is in a game which has started, telling them if not
+     * @param player the player
+     * @return true if in a game
+     */
+    private static boolean inGame(Player player) {
+        if (player.channel == null || !player.channel.started) {
+            player.send("ERROR You are not in a game");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Check a nickname or channel name, telling the player if it cannot be used
+     * @param player the player
+     * @param name the name
+     * @return true if the name can be used
+     */
+    private static boolean validName(Player player, String name) {
+        if (name.isEmpty() || name.length() > MAX_NAME || name.contains(":") || name.contains("\n")) {
+            player.send("ERROR Invalid name " + name);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Parse a number sent by a player
+     * @param text the text
+     * @param fallback the value if it is not a number
+     * @return the number
+     */
+    private static int number(String text, int fallback) {
+        try {
+            return Integer.parseInt(text.strip());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
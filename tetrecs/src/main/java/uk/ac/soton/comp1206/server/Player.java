@@ -0,0 +1,103 @@
+package uk.ac.soton.comp1206.server;
+
+import uk.ac.soton.comp1206.network.BoardSync;
+
+/**
+ * A Player is someone connected to the GameServer, with their nickname, channel and the state of their game.
+ *
+ * Players are only changed by the Lobby, while holding the lock of their channel or of the lobby itself.
+ */
+class Player {
+
+    /**
+     * The lives each player starts a game with
+     */
+    static final int START_LIVES = 3;
+
+    /**
+     * The connection of this player
+     */
+    private final WebSocketConnection connection;
+
+    /**
+     * The nickname of this player
+     */
+    String nickname;
+
+    /**
+     * The channel this player is in, or null
+     */
+    GameChannel channel;
+
+    /**
+     * The score of this player in the current game
+     */
+    int score;
+
+    /**
+     * The lives this player has left in the current game
+     */
+    int lives = START_LIVES;
+
+    /**
+     * Whether this player is out of the current game
+     */
+    boolean dead;
+
+    /**
+     * How many pieces this player has been dealt in the current game
+     */
+    int pieces;
+
+    /**
+     * The last board this player sent, or an empty string
+     */
+    String board = "";
+
+    /**
+     * Whether this player asked for compact board updates, set outside any channel lock
+     */
+    volatile boolean compactBoards;
+
+    /**
+     * The board of this player, kept from their compact updates, or null
+     */
+    BoardSync boardSync;
+
+    /**
+     * Create a new player
+     * @param connection the connection of the player
+     * @param nickname the nickname to start with
+     */
+    Player(WebSocketConnection connection, String nickname) {
+        this.connection = connection;
+        this.nickname = nickname;
+    }
+
+    /**
+     * Send a message to this player
+     * @param message the message
+     */
+    void send(String message) {
+        connection.send(message);
+    }
+
+    /**
+     * Disconnect this player
+     */
+    void disconnect() {
+        connection.close();
+    }
+
+    /**
+     * Get ready for a new game
+     */
+    void reset() {
+        score = 0;
+        lives = START_LIVES;
+        dead = false;
+        pieces = 0;
+        board = "";
+        boardSync = null;
+    }
+}
@@ -0,0 +1,493 @@
+package uk.ac.soton.comp1206.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A WebSocketConnection is one client connected to the GameServer.
+ *
+ * It answers the opening HTTP handshake, then decodes the frames sent by the client into text messages for the
+ * Lobby, and encodes the messages sent back. Everything except sending runs on the EventLoop owning the socket.
+ * Messages may be sent from any thread, they are queued and written by the loop.
+ */
+class WebSocketConnection {
+
+    private static final Logger logger = LogManager.getLogger(WebSocketConnection.class);
+
+    /**
+     * The key the handshake is combined with to accept a connection, fixed by the WebSocket protocol
+     */
+    private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    /**
+     * The longest handshake accepted, in bytes
+     */
+    private static final int MAX_HANDSHAKE = 8 * 1024;
+
+    /**
+     * The longest message accepted, in bytes
+     */
+    private static final int MAX_MESSAGE = 64 * 1024;
+
+    /**
+     * The most bytes waiting to be written before the client is considered too slow and disconnected
+     */
+    private static final long MAX_BACKLOG = 1024 * 1024;
+
+    /**
+     * The size the input buffer starts at
+     */
+    private static final int INITIAL_BUFFER = 512;
+
+    private static final int OP_CONTINUATION = 0x0;
+    private static final int OP_TEXT = 0x1;
+    private static final int OP_BINARY = 0x2;
+    private static final int OP_CLOSE = 0x8;
+    private static final int OP_PING = 0x9;
+    private static final int OP_PONG = 0xA;
+
+    /**
+     * The loop owning the socket
+     */
+    private final EventLoop loop;
+
+    /**
+     * The key of the socket in the selector of the loop
+     */
+    private final SelectionKey key;
+
+    /**
+     * The socket
+     */
+    private final SocketChannel socket;
+
+    /**
+     * The lobby messages are passed to
+     */
+    private final Lobby lobby;
+
+    /**
+     * Bytes read and not yet handled, kept ready for writing into
+     */
+    private ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER);
+
+    /**
+     * Frames waiting to be written
+     */
+    private final ConcurrentLinkedQueue<ByteBuffer> out = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The number of bytes waiting to be written
+     */
+    private final AtomicLong backlog = new AtomicLong();
+
+    /**
+     * Whether a flush has been queued on the loop
+     */
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+
+    /**
+     * The parts of a message split across several frames, or null
+     */
+    private ByteArrayOutputStream fragments;
+
+    /**
+     * Whether the handshake has been completed
+     */
+    private boolean open;
+
+    /**
+     * Whether to close the socket once everything queued has been written
+     */
+    private boolean closeAfterFlush;
+
+    /**
+     * Whether the socket has been closed
+     */
+    private volatile boolean closed;
+
+    /**
+     * The player using this connection, once the handshake is complete
+     */
+    private Player player;
+
+    /**
+     * Create a new connection
+     * @param loop the loop owning the socket
+     * @param key the key of the socket
+     * @param socket the socket
+     * @param lobby the lobby to pass messages to
+     */
+    WebSocketConnection(EventLoop loop, SelectionKey key, SocketChannel socket, Lobby lobby) {
+        this.loop = loop;
+        this.key = key;
+        this.socket = socket;
+        this.lobby = lobby;
+    }
+
+    /**
+     * Handle bytes read from the socket
+     * @param data the bytes read
+     */
+    void read(ByteBuffer data) {
+        if (closeAfterFlush) {
+            //Closing, ignore anything else sent
+            return;
+        }
+        if (in.remaining() < data.remaining()) {
+            var grown = ByteBuffer.allocate(Math.max(in.capacity() * 2, in.position() + data.remaining()));
+            in.flip();
+            grown.put(in);
+            in = grown;
+        }
+        in.put(data);
+        in.flip();
+        if (!open) {
+            handshake();
+        }
+        if (open) {
+            frames();
+        }
+        if (closed) {
+            return;
+        }
+        if (in.hasRemaining()) {
+            in.compact();
+        } else {
+            //Shrink back once idle, so thousands of quiet sockets stay small
+            in = in.capacity() > INITIAL_BUFFER ? ByteBuffer.allocate(INITIAL_BUFFER) : in.clear();
+        }
+    }
+
+    /**
+     * Answer the opening handshake once all of it has been read
+     */
+    private void handshake() {
+        var end = headerEnd();
+        if (end < 0) {
+            if (in.remaining() > MAX_HANDSHAKE) {
+                reject("431 Request Header Fields Too Large");
+            }
+            return;
+        }
+        var bytes = new byte[end - in.position()];
+        in.get(bytes);
+        var request = new String(bytes, StandardCharsets.ISO_8859_1);
+
+        String webSocketKey = null;
+        var upgrade = false;
+        var lines = request.split("\r\n");
+        for (int i = 1; i < lines.length; i++) {
+            var colon = lines[i].indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            var name = lines[i].substring(0, colon).trim();
+            var value = lines[i].substring(colon + 1).trim();
+            if (name.equalsIgnoreCase("Upgrade")) {
+                upgrade = value.equalsIgnoreCase("websocket");
+            } else if (name.equalsIgnoreCase("Sec-WebSocket-Key")) {
+                webSocketKey = value;
+            }
+        }
+        if (!lines[0].startsWith("GET ") || !upgrade || webSocketKey == null) {
+            reject("400 Bad Request");
+            return;
+        }
+
+        var response = "HTTP/1.1 101 Switching Protocols\r\n"
+            + "Upgrade: websocket\r\n"
+            + "Connection: Upgrade\r\n"
+            + "Sec-WebSocket-Accept: " + accept(webSocketKey) + "\r\n\r\n";
+        enqueue(ByteBuffer.wrap(response.getBytes(StandardCharsets.ISO_8859_1)));
+        open = true;
+        player = lobby.open(this);
+    }
+
+    /**
+     * Find the end of the handshake in the input
+     * @return the position just after the blank line ending the handshake, or -1 if not all read yet
+     */
+    private int headerEnd() {
+        for (int i = in.position(); i + 3 < in.limit(); i++) {
+            if (in.get(i) == '\r' && in.get(i + 1) == '\n' && in.get(i + 2) == '\r' && in.get(i + 3) == '\n') {
+                return i + 4;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Work out the accept key answering the key sent by the client
+     * @param webSocketKey the key sent by the client
+     * @return the accept key
+     */
+    private static String accept(String webSocketKey) {
+        try {
+            var sha1 = MessageDigest.getInstance("SHA-1");
+            var digest = sha1.digest((webSocketKey + ACCEPT_GUID).getBytes(StandardCharsets.ISO_8859_1));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    /**
+     * Refuse a request which is not a WebSocket handshake
+     * @param status the HTTP status to answer with
+     */
+    private void reject(String status) {
+        logger.error("Rejected connection: " + status);
+        var response = "HTTP/1.1 " + status + "\r\nConnection: close\r\nContent-Length: 0\r\n\r\n";
+        enqueue(ByteBuffer.wrap(response.getBytes(StandardCharsets.ISO_8859_1)));
+        in.position(in.limit());
+        closeAfterFlush = true;
+        flush();
+    }
+
+    /**
+     * Decode and handle every complete frame in the input
+     */
+    private void frames() {
+        while (in.remaining() >= 2 && !closed && !closeAfterFlush) {
+            var start = in.position();
+            var first = in.get(start);
+            var second = in.get(start + 1);
+            var fin = (first & 0x80) != 0;
+            var opcode = first & 0x0F;
+            var masked = (second & 0x80) != 0;
+            long length = second & 0x7F;
+            var header = 2;
+            if (length == 126) {
+                if (in.remaining() < 4) {
+                    return;
+                }
+                length = in.getShort(start + 2) & 0xFFFF;
+                header = 4;
+            } else if (length == 127) {
+                if (in.remaining() < 10) {
+                    return;
+                }
+                length = in.getLong(start + 2);
+                header = 10;
+            }
+            if (!masked) {
+                //Every frame from a client must be masked
+                closeWith(1002);
+                return;
+            }
+            if (length < 0 || length > MAX_MESSAGE) {
+                closeWith(1009);
+                return;
+            }
+            header += 4;
+            if (in.remaining() < header + length) {
+                return;
+            }
+
+            var mask = start + header - 4;
+            var payload = new byte[(int) length];
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] = (byte) (in.get(start + header + i) ^ in.get(mask + (i & 3)));
+            }
+            in.position(start + header + (int) length);
+            frame(fin, opcode, payload);
+        }
+    }
+
+    /**
+     * Handle one decoded frame
+     * @param fin whether this is the last frame of its message
+     * @param opcode the kind of frame
+     * @param payload the unmasked payload
+     */
+    private void frame(boolean fin, int opcode, byte[] payload) {
+        switch (opcode) {
+            case OP_TEXT:
+                if (fragments != null) {
+                    closeWith(1002);
+                } else if (fin) {
+                    message(payload);
+                } else {
+                    fragments = new ByteArrayOutputStream();
+                    fragments.writeBytes(payload);
+                }
+                break;
+            case OP_CONTINUATION:
+                if (fragments == null) {
+                    closeWith(1002);
+                    return;
+                }
+                if (fragments.size() + payload.length > MAX_MESSAGE) {
+                    closeWith(1009);
+                    return;
+                }
+                fragments.writeBytes(payload);
+                if (fin) {
+                    var message = fragments.toByteArray();
+                    fragments = null;
+                    message(message);
+                }
+                break;
+            case OP_PING:
+                enqueue(encode(OP_PONG, payload));
+                break;
+            case OP_PONG:
+                break;
+            case OP_CLOSE:
+                //Echo the close back, then close the socket
+                enqueue(encode(OP_CLOSE, payload.length >= 2 ? new byte[] {payload[0], payload[1]} : payload));
+                closeAfterFlush = true;
+                flush();
+                break;
+            case OP_BINARY:
+                //The protocol is text only
+                closeWith(1003);
+                break;
+            default:
+                closeWith(1002);
+        }
+    }
+
+    /**
+     * Pass a complete text message to the lobby
+     * @param payload the UTF-8 text
+     */
+    private void message(byte[] payload) {
+        lobby.receive(player, new String(payload, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Send a close frame with the given status, then close the socket
+     * @param status the WebSocket close status
+     */
+    private void closeWith(int status) {
+        logger.error("Closing connection with status " + status);
+        enqueue(encode(OP_CLOSE, new byte[] {(byte) (status >> 8), (byte) status}));
+        in.position(in.limit());
+        closeAfterFlush = true;
+        flush();
+    }
+
+    /**
+     * Send a text message to the client. May be called from any thread.
+     * @param message the message
+     */
+    void send(String message) {
+        enqueue(encode(OP_TEXT, message.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Encode a frame sent by the server, which is never masked
+     * @param opcode the kind of frame
+     * @param payload the payload
+     * @return the frame, ready to be written
+     */
+    private static ByteBuffer encode(int opcode, byte[] payload) {
+        var header = payload.length < 126 ? 2 : payload.length <= 0xFFFF ? 4 : 10;
+        var frame = ByteBuffer.allocate(header + payload.length);
+        frame.put((byte) (0x80 | opcode));
+        if (header == 2) {
+            frame.put((byte) payload.length);
+        } else if (header == 4) {
+            frame.put((byte) 126);
+            frame.putShort((short) payload.length);
+        } else {
+            frame.put((byte) 127);
+            frame.putLong(payload.length);
+        }
+        frame.put(payload);
+        return frame.flip();
+    }
+
+    /**
+     * Queue bytes to be written, asking the loop to write them
+     * @param bytes the bytes
+     */
+    private void enqueue(ByteBuffer bytes) {
+        if (closed) {
+            return;
+        }
+        if (backlog.addAndGet(bytes.remaining()) > MAX_BACKLOG) {
+            logger.error("Client is not reading, disconnecting it");
+            loop.execute(this::close);
+            return;
+        }
+        out.add(bytes);
+        if (flushQueued.compareAndSet(false, true)) {
+            loop.execute(this::flush);
+        }
+    }
+
+    /**
+     * Write as much of the queue as the socket takes, waiting for it to be writable again if it does not take all
+     */
+    void flush() {
+        flushQueued.set(false);
+        if (closed) {
+            return;
+        }
+        try {
+            ByteBuffer next;
+            while ((next = out.peek()) != null) {
+                var size = next.remaining();
+                socket.write(next);
+                if (next.hasRemaining()) {
+                    backlog.addAndGet(next.remaining() - size);
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+                backlog.addAndGet(-size);
+                out.poll();
+            }
+        } catch (IOException e) {
+            logger.error("Unable to write: " + e.getMessage());
+            close();
+            return;
+        }
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        if (closeAfterFlush) {
+            close();
+        }
+    }
+
+    /**
+     * Close the socket and remove the player from the lobby. Must be called on the loop.
+     */
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        key.cancel();
+        try {
+            socket.close();
+        } catch (IOException e) {
+            //Already closed
+        }
+        out.clear();
+        if (player != null) {
+            lobby.close(player);
+        }
+    }
+
+    /**
+     * Get whether the socket has been closed
+     * @return true if closed
+     */
+    boolean isClosed() {
+        return closed;
+    }
+}
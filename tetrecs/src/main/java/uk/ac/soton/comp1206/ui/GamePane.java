@@ -1,11 +1,16 @@
 package uk.ac.soton.comp1206.ui;
 
+import javafx.animation.PauseTransition;
 import javafx.geometry.Pos;
+import javafx.scene.Parent;
 import javafx.scene.layout.*;
 import javafx.scene.transform.Scale;
 import javafx.scene.transform.Translate;
+import javafx.util.Duration;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.component.BlockSprites;
+import uk.ac.soton.comp1206.component.GameBoard;
 
 /**
  * The Game Pane is a special pane which will scale anything inside it to the screen and maintain the aspect ratio.
@@ -28,6 +33,12 @@ public class GamePane extends StackPane {
     private double scalar = 1;
     private final boolean autoScale = true;
 
+    /**
+     * Waits for the window to stop resizing before the block sprites are rendered at the new scale.
+     * Until then, blocks stretch the sprites they already have.
+     */
+    private final PauseTransition resizeSettled = new PauseTransition(Duration.millis(200));
+
     /**
      * Create a new scalable GamePane with the given drawing width and height.
      * @param width width
@@ -40,16 +51,46 @@ public class GamePane extends StackPane {
 
         getStyleClass().add("gamepane");
         setAlignment(Pos.TOP_LEFT);
+
+        resizeSettled.setOnFinished(event -> renderSprites());
     }
 
     /**
-     * Update the scalar being used by this draw pane
+     * Update the scalar being used by this draw pane. Block sprites are rendered again at the new scale
+     * once the resize has settled.
      * @param scalar scalar
      */
     protected void setScalar(double scalar) {
+        if (scalar != this.scalar) {
+            resizeSettled.playFromStart();
+        }
         this.scalar = scalar;
     }
 
+    /**
+     * Render the block sprites at the current scale, and repaint every board on screen with them
+     */
+    private void renderSprites() {
+        if (BlockSprites.setScale(scalar)) {
+            logger.info("Resize settled at scale {}, repainting boards", scalar);
+            repaintBoards(this);
+        }
+    }
+
+    /**
+     * Repaint every board under a node
+     * @param parent the node to search
+     */
+    private static void repaintBoards(Parent parent) {
+        for (var child : parent.getChildrenUnmodifiable()) {
+            if (child instanceof GameBoard board) {
+                board.repaint();
+            } else if (child instanceof Parent node) {
+                repaintBoards(node);
+            }
+        }
+    }
+
     /**
      * Use a Graphics Transformation to scale everything inside this pane. Padding is added to the edges to maintain
      * the correct aspect ratio and keep the display centred.
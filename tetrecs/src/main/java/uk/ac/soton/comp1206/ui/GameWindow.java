@@ -15,6 +15,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.App;
 import uk.ac.soton.comp1206.Utility.Multimedia;
+import uk.ac.soton.comp1206.Utility.SoundBank;
 import uk.ac.soton.comp1206.game.Game;
 import uk.ac.soton.comp1206.network.Communicator;
 import uk.ac.soton.comp1206.scene.*;
@@ -40,6 +41,8 @@ public class GameWindow {
 
     final Communicator communicator;
 
+    private final MetricsOverlay metricsOverlay;
+
     /**
      * Create a new GameWindow attached to the given stage with the specified width and height
      * @param stage stage
@@ -61,8 +64,14 @@ public class GameWindow {
         //Setup default scene
         setupDefaultScene();
 
-        //Setup communicator
-        communicator = new Communicator("ws://ofb-labs.soton.ac.uk:9700");
+        //Setup communicator, connecting in the background unless started offline
+        var server = System.getProperty("tetrecs.server", "ws://ofb-labs.soton.ac.uk:9700");
+        communicator = new Communicator(server, !Boolean.getBoolean("tetrecs.offline"));
+        metricsOverlay = new MetricsOverlay(communicator);
+
+        //Stop polling the server while the window is minimised or hidden
+        stage.iconifiedProperty().addListener((observable, oldValue, newValue) -> updatePolling());
+        stage.showingProperty().addListener((observable, oldValue, newValue) -> updatePolling());
 
         //Go to loading screen/start scene
         startStart();
@@ -78,6 +87,9 @@ public class GameWindow {
         Font.loadFont(getClass().getResourceAsStream("/style/Orbitron-Regular.ttf"),32);
         Font.loadFont(getClass().getResourceAsStream("/style/Orbitron-Bold.ttf"),32);
         Font.loadFont(getClass().getResourceAsStream("/style/Orbitron-ExtraBold.ttf"),32);
+
+        //Decode the sound effects in the background
+        SoundBank.preload();
     }
 
     /**
@@ -138,6 +150,22 @@ public class GameWindow {
         loadScene(new InstructionScene(this));
     }
 
+    /**
+     * Play back the most recently recorded game
+     */
+    public void startReplay(){
+        var file = ReplayScene.latestReplay();
+        if (file == null) {
+            logger.info("No replays recorded yet");
+            return;
+        }
+        var player = ReplayScene.load(file);
+        if (player != null) {
+            logger.info("Replaying {}", file);
+            loadScene(new ReplayScene(this, player));
+        }
+    }
+
     /**
      * Start a new lobby
      */
@@ -153,7 +181,10 @@ public class GameWindow {
         stage.setTitle("TetrECS");
         stage.setMinWidth(width);
         stage.setMinHeight(height + 20);
-        stage.setOnCloseRequest(ev -> App.getInstance().shutdown());
+        stage.setOnCloseRequest(ev -> {
+            metricsOverlay.dumpOnExit();
+            App.getInstance().shutdown();
+        });
     }
 
     /**
@@ -169,6 +200,8 @@ public class GameWindow {
         currentScene = newScene;
         scene = newScene.setScene();
         stage.setScene(scene);
+        //Keep the metrics overlay, and its keys, on every scene
+        metricsOverlay.attach(scene);
 
         //Initialise the scene when ready
         Platform.runLater(() -> currentScene.initialise());
@@ -182,12 +215,28 @@ public class GameWindow {
         stage.setScene(this.scene);
     }
 
+    /**
+     * Pause polling the server while the window cannot be seen
+     */
+    private void updatePolling() {
+        communicator.getPoller().setPaused(stage.isIconified() || !stage.isShowing());
+    }
+
     /**
      * When switching scenes, perform any cleanup needed, such as removing previous listeners
      */
     public void cleanup() {
         logger.info("Clearing up previous scene");
         communicator.clearListeners();
+        metricsOverlay.setGame(null);
+    }
+
+    /**
+     * Get the overlay showing the network metrics
+     * @return the metrics overlay
+     */
+    public MetricsOverlay getMetricsOverlay() {
+        return metricsOverlay;
     }
 
     /**
@@ -0,0 +1,180 @@
+package uk.ac.soton.comp1206.ui;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import javafx.animation.AnimationTimer;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.layout.Pane;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.game.MultiplayerGame;
+import uk.ac.soton.comp1206.network.Communicator;
+
+/**
+ * The MetricsOverlay shows the CommunicatorMetrics over whichever scene is displayed, so network lag can be seen
+ * while playing.
+ *
+ * F3 shows or hides the overlay and F4 writes the metrics to a new file in the metrics directory. While shown, the
+ * overlay also records the time between frames, so a busy FX thread shows up next to the network times. During a
+ * multiplayer game it shows the pieces buffered from the server too, so a stall can be told apart from lag. Starting
+ * the game with -Dtetrecs.metrics=file writes the metrics to that file when the window is closed.
+ */
+public class MetricsOverlay {
+
+    private static final Logger logger = LogManager.getLogger(MetricsOverlay.class);
+
+    /**
+     * The directory the metrics are written to
+     */
+    public static final String DIRECTORY = "metrics";
+
+    /**
+     * How often the text is updated, in nanoseconds
+     */
+    private static final long REFRESH_INTERVAL = 500_000_000L;
+
+    /**
+     * The communicator being measured
+     */
+    private final Communicator communicator;
+
+    /**
+     * The multiplayer game being played, or null if none
+     */
+    private MultiplayerGame game;
+
+    /**
+     * Displays the metrics
+     */
+    private final Label label = new Label();
+
+    /**
+     * Records the frames and updates the text while shown
+     */
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            if (lastFrame != 0) {
+                communicator.getMetrics().recordFrame(now - lastFrame);
+            }
+            lastFrame = now;
+            if (now - lastRefresh >= REFRESH_INTERVAL) {
+                lastRefresh = now;
+                refresh();
+            }
+        }
+    };
+
+    /**
+     * When the last frame was drawn, in nanoseconds, or 0 when hidden
+     */
+    private long lastFrame = 0;
+
+    /**
+     * When the text was last updated, in nanoseconds
+     */
+    private long lastRefresh = 0;
+
+    /**
+     * Create a new overlay, hidden until F3 is pressed
+     * @param communicator the communicator being measured
+     */
+    public MetricsOverlay(Communicator communicator) {
+        this.communicator = communicator;
+        label.getStyleClass().add("metrics");
+        label.setMouseTransparent(true);
+        label.setVisible(false);
+    }
+
+    /**
+     * Show the overlay on a new scene, and listen for its keys
+     * @param scene the scene
+     */
+    public void attach(Scene scene) {
+        if (scene.getRoot() instanceof Pane pane) {
+            pane.getChildren().add(label);
+        }
+        scene.addEventFilter(KeyEvent.KEY_PRESSED, (event) -> {
+            if (event.getCode() == KeyCode.F3) {
+                toggle();
+                event.consume();
+            } else if (event.getCode() == KeyCode.F4) {
+                dump();
+                event.consume();
+            }
+        });
+    }
+
+    /**
+     * Show the overlay if hidden, or hide it if shown
+     */
+    public void toggle() {
+        if (label.isVisible()) {
+            label.setVisible(false);
+            timer.stop();
+            lastFrame = 0;
+        } else {
+            refresh();
+            label.setVisible(true);
+            timer.start();
+        }
+    }
+
+    /**
+     * Set the multiplayer game whose piece buffer is shown
+     * @param game the game, or null once it is over
+     */
+    public void setGame(MultiplayerGame game) {
+        this.game = game;
+    }
+
+    /**
+     * Update the text from the metrics
+     */
+    private void refresh() {
+        var text = new StringBuilder("Server " + communicator.getState() + ", " + communicator.getQueued() + " queued");
+        text.append(System.lineSeparator());
+        if (game != null) {
+            text.append(String.format("Pieces %d/%d buffered, %d outstanding, %d stalls%s, round trip %.0fms%n",
+                game.getBufferDepth(), game.getTargetDepth(), game.getOutstanding(), game.getStalls(),
+                game.isWaiting() ? " (waiting)" : "", game.getRoundTrip()));
+        }
+        label.setText(text.append(communicator.getMetrics().report()).toString());
+    }
+
+    /**
+     * Write the metrics to a new file in the metrics directory
+     */
+    public void dump() {
+        var name = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".txt";
+        dump(new File(DIRECTORY, name));
+    }
+
+    /**
+     * Write the metrics to the file given by -Dtetrecs.metrics, if any
+     */
+    public void dumpOnExit() {
+        var file = System.getProperty("tetrecs.metrics");
+        if (file != null) {
+            dump(new File(file));
+        }
+    }
+
+    /**
+     * Write the metrics to a file
+     * @param file the file
+     */
+    private void dump(File file) {
+        try {
+            communicator.getMetrics().dump(file.toPath());
+            logger.info("Wrote metrics to {}", file);
+        } catch (IOException e) {
+            logger.error("Unable to write metrics to " + file + ": " + e.getMessage());
+        }
+    }
+}
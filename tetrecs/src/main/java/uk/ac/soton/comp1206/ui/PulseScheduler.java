@@ -0,0 +1,71 @@
+package uk.ac.soton.comp1206.ui;
+
+import java.util.ArrayList;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+/**
+ * The PulseScheduler runs UI updates once, on the next JavaFX pulse, so a burst of model changes is
+ * shown with a single render.
+ *
+ * Model adapters mark what changed and schedule a flush the first time something becomes dirty. Every
+ * flush scheduled before the pulse runs together, before the scene is laid out and drawn, and so
+ * does every flush scheduled while flushing: a grid flush marks board cells dirty, and the board
+ * schedules its repaint into the same pass. A piece being placed, lines cleared and the score
+ * changing therefore all appear in the same frame. Nothing run here should start an AnimationTimer
+ * to finish its work, as a timer started during a pulse first runs on the next one.
+ */
+public class PulseScheduler {
+
+    /**
+     * The flushes waiting for the next pulse
+     */
+    private static ArrayList<Runnable> pending = new ArrayList<>();
+
+    /**
+     * A spare list, swapped with the pending list while it is flushed
+     */
+    private static ArrayList<Runnable> flushing = new ArrayList<>();
+
+    /**
+     * Runs the pending flushes on the next pulse, then stops
+     */
+    private static final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            stop();
+            flush();
+        }
+    };
+
+    /**
+     * Run an update on the next pulse. May be called from any thread.
+     * @param update the update to run
+     */
+    public static void schedule(Runnable update) {
+        if (!Platform.isFxApplicationThread()) {
+            Platform.runLater(() -> schedule(update));
+            return;
+        }
+        if (pending.isEmpty()) {
+            timer.start();
+        }
+        pending.add(update);
+    }
+
+    /**
+     * Run every pending update now, on the FX thread
+     */
+    public static void flush() {
+        //Updates scheduled while flushing run in the same pass
+        while (!pending.isEmpty()) {
+            var updates = pending;
+            pending = flushing;
+            flushing = updates;
+            for (var update : updates) {
+                update.run();
+            }
+            updates.clear();
+        }
+    }
+}
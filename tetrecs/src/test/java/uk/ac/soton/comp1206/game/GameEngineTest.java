@@ -0,0 +1,235 @@
+package uk.ac.soton.comp1206.game;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.ac.soton.comp1206.event.GameActionListener;
+
+/**
+ * Tests the rules of the headless GameEngine: placing, scoring, levels and losing lives.
+ */
+class GameEngineTest {
+
+  /**
+   * The piece number of the single block
+   */
+  private static final int DOT = 3;
+
+  /**
+   * The time the current piece has at level 0, in nanoseconds
+   */
+  private static final long FIRST_DELAY = 12000 * 1_000_000L;
+
+  /**
+   * The clock the game is timed by
+   */
+  private ManualClock clock;
+
+  /**
+   * A 5x5 game dealt only single blocks
+   */
+  private GameEngine engine;
+
+  /**
+   * Start a new game before each test
+   */
+  @BeforeEach
+  void setUp() {
+    clock = new ManualClock();
+    engine = new GameEngine(5, 5, clock, new SequencePieceSource(new int[] {DOT}, new int[] {0}));
+    engine.start();
+  }
+
+  /**
+   * A legal placement fills the grid and deals the following piece
+   */
+  @Test
+  void placeFillsGridAndDealsNextPiece() {
+    var following = engine.getFollowingPiece();
+    assertTrue(engine.place(2, 2));
+    assertEquals(DOT + 1, engine.getGrid().get(2, 2));
+    assertSame(following, engine.getCurrentPiece());
+    assertNotSame(following, engine.getFollowingPiece());
+  }
+
+  /**
+   * Placing on a filled block is refused and keeps the current piece
+   */
+  @Test
+  void placeOnFilledBlockFails() {
+    engine.place(2, 2);
+    var current = engine.getCurrentPiece();
+    assertFalse(engine.place(2, 2));
+    assertSame(current, engine.getCurrentPiece());
+  }
+
+  /**
+   * A cleared line scores lines * blocks * 10 * multiplier, and raises the multiplier
+   */
+  @Test
+  void clearingALineScoresAndRaisesMultiplier() {
+    for (var x = 0; x < 5; x++) {
+      engine.place(x, 0);
+    }
+    assertEquals(50, engine.getScore());
+    assertEquals(2, engine.getMultiplier());
+    for (var x = 0; x < 5; x++) {
+      assertFalse(engine.getGrid().isFilled(x, 0));
+    }
+  }
+
+  /**
+   * A placement which clears nothing resets the multiplier
+   */
+  @Test
+  void placementWithoutClearResetsMultiplier() {
+    for (var x = 0; x < 5; x++) {
+      engine.place(x, 0);
+    }
+    engine.place(2, 2);
+    assertEquals(1, engine.getMultiplier());
+    assertEquals(50, engine.getScore());
+  }
+
+  /**
+   * A row and a column cleared together count both lines, and their shared block once
+   */
+  @Test
+  void clearingRowAndColumnTogether() {
+    for (var i = 1; i < 5; i++) {
+      engine.place(i, 0);
+      engine.place(0, i);
+    }
+    assertEquals(0, engine.getScore());
+    engine.place(0, 0);
+    assertEquals(2 * 9 * 10, engine.getScore());
+  }
+
+  /**
+   * Reaching 1000 points goes up a level, which shortens the time for each piece
+   */
+  @Test
+  void levelUpShortensTimer() {
+    engine.setScore(990);
+    engine.score(1, 5);
+    assertEquals(1, engine.getLevel());
+    assertEquals(11500, engine.getTimerDelay());
+  }
+
+  /**
+   * Running out of time loses a life and deals a new piece, and the game ends after the last life
+   */
+  @Test
+  void runningOutOfTimeLosesLives() {
+    clock.advance(FIRST_DELAY - 1);
+    assertFalse(engine.tick());
+    assertEquals(3, engine.getLives());
+
+    var following = engine.getFollowingPiece();
+    clock.advance(1);
+    assertTrue(engine.tick());
+    assertEquals(2, engine.getLives());
+    assertSame(following, engine.getCurrentPiece());
+
+    for (var lives = 1; lives >= 0; lives--) {
+      clock.advance(FIRST_DELAY);
+      engine.tick();
+      assertEquals(lives, engine.getLives());
+      assertTrue(engine.isRunning());
+    }
+    clock.advance(FIRST_DELAY);
+    engine.tick();
+    assertFalse(engine.isRunning());
+  }
+
+  /**
+   * Placing a piece restarts the time the next piece has
+   */
+  @Test
+  void placingResetsTimer() {
+    clock.advance(FIRST_DELAY - 1);
+    engine.place(2, 2);
+    clock.advance(FIRST_DELAY - 1);
+    assertFalse(engine.tick());
+    assertEquals(3, engine.getLives());
+  }
+
+  /**
+   * When neither the current nor the following piece fits, a life is lost at once, dealing pieces
+   * until one fits
+   */
+  @Test
+  void noLegalMoveLosesALifeAtOnce() {
+    var x = 10;
+    var pieces = new SequencePieceSource(new int[] {x, x, x, DOT}, new int[] {0, 0, 0, 0});
+    var small = new GameEngine(3, 3, clock, pieces);
+    small.start();
+    assertTrue(small.place(1, 1));
+    assertEquals(2, small.getLives());
+    assertEquals(DOT, small.getFollowingPiece().getPiece());
+    assertTrue(small.hasLegalMove());
+  }
+
+  /**
+   * The game ends once the lives run out with still no piece that fits
+   */
+  @Test
+  void noLegalMoveEndsGameWhenOutOfLives() {
+    var small = new GameEngine(3, 3, clock, new SequencePieceSource(new int[] {10}, new int[] {0}));
+    small.start();
+    small.place(1, 1);
+    assertEquals(0, small.getLives());
+    assertFalse(small.isRunning());
+  }
+
+  /**
+   * Swapping exchanges the pieces while playing, and does nothing before the start or after the end
+   */
+  @Test
+  void swapOnlyWhileRunning() {
+    var current = engine.getCurrentPiece();
+    var following = engine.getFollowingPiece();
+    engine.swapCurrentPiece();
+    assertSame(following, engine.getCurrentPiece());
+    assertSame(current, engine.getFollowingPiece());
+
+    engine.endGame();
+    engine.swapCurrentPiece();
+    assertSame(following, engine.getCurrentPiece());
+    assertSame(current, engine.getFollowingPiece());
+
+    var swaps = new int[1];
+    var unstarted = new GameEngine(5, 5, clock);
+    unstarted.setActionListener(new GameActionListener() {
+      @Override
+      public void pieceSpawned(GamePiece gamePiece) {
+      }
+
+      @Override
+      public void placeRequested(int x, int y) {
+      }
+
+      @Override
+      public void rotateRequested(boolean clockwise) {
+      }
+
+      @Override
+      public void swapRequested() {
+        swaps[0]++;
+      }
+
+      @Override
+      public void timerExpired() {
+      }
+    });
+    unstarted.swapCurrentPiece();
+    assertNull(unstarted.getCurrentPiece());
+    assertEquals(0, swaps[0]);
+  }
+}
@@ -0,0 +1,130 @@
+package uk.ac.soton.comp1206.game;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the legal-move bitmaps of the Grid against checking each position one at a time.
+ */
+class GridTest {
+
+  /**
+   * The piece number of the line, down the column in rotation 0 and across the row in rotation 1
+   */
+  private static final int LINE = 0;
+
+  /**
+   * The piece number of the single block
+   */
+  private static final int DOT = 3;
+
+  /**
+   * Every centre is legal for a single block on an empty grid
+   */
+  @Test
+  void emptyGridAllowsEveryCentre() {
+    var grid = new Grid(5, 5);
+    var moves = grid.legalMoves(GamePiece.createPiece(DOT));
+    for (var rotation = 0; rotation < GamePiece.ROTATIONS; rotation++) {
+      for (var y = 0; y < 5; y++) {
+        for (var x = 0; x < 5; x++) {
+          assertTrue(grid.isLegalMove(moves, rotation, x, y));
+        }
+      }
+    }
+  }
+
+  /**
+   * A piece is never legal where it would hang over the edge of the grid
+   */
+  @Test
+  void edgesLimitCentres() {
+    var grid = new Grid(5, 5);
+    var moves = grid.legalMoves(GamePiece.createPiece(LINE));
+    assertFalse(grid.isLegalMove(moves, 0, 2, 0));
+    assertTrue(grid.isLegalMove(moves, 0, 0, 1));
+    assertFalse(grid.isLegalMove(moves, 1, 0, 2));
+    assertTrue(grid.isLegalMove(moves, 1, 1, 0));
+    assertEquals(15, Long.bitCount(moves[0]));
+  }
+
+  /**
+   * A filled block rules out every centre which would cover it
+   */
+  @Test
+  void filledBlockRulesOutCoveringCentres() {
+    var grid = new Grid(5, 5);
+    grid.set(2, 2, 1);
+    var moves = grid.legalMoves(GamePiece.createPiece(LINE));
+    for (var y = 1; y <= 3; y++) {
+      assertFalse(grid.isLegalMove(moves, 0, 2, y));
+    }
+    assertTrue(grid.isLegalMove(moves, 0, 1, 2));
+  }
+
+  /**
+   * The placement mask sets the bits of the blocks the piece covers
+   */
+  @Test
+  void placementMaskCoversPieceBlocks() {
+    var grid = new Grid(5, 5);
+    var row = GamePiece.getOrientation(LINE, 1);
+    assertEquals(0b111L, grid.placementMask(row, 1, 0));
+    assertEquals(0b111L << 6, grid.placementMask(row, 2, 1));
+    var column = GamePiece.getOrientation(LINE, 0);
+    assertEquals(1L | 1L << 5 | 1L << 10, grid.placementMask(column, 0, 1));
+  }
+
+  /**
+   * The bitmaps agree with canPlayPiece for random boards, on grids of one and of several words
+   */
+  @Test
+  void legalMovesMatchCanPlayPiece() {
+    var random = new Random(1206);
+    for (var size : new int[] {5, 9}) {
+      for (var board = 0; board < 50; board++) {
+        var grid = new Grid(size, size);
+        for (var y = 0; y < size; y++) {
+          for (var x = 0; x < size; x++) {
+            if (random.nextInt(3) == 0) {
+              grid.set(x, y, 1);
+            }
+          }
+        }
+        for (var piece = 0; piece < GamePiece.PIECES; piece++) {
+          var moves = grid.legalMoves(GamePiece.createPiece(piece));
+          for (var rotation = 0; rotation < GamePiece.ROTATIONS; rotation++) {
+            var orientation = GamePiece.getOrientation(piece, rotation);
+            for (var y = 0; y < size; y++) {
+              for (var x = 0; x < size; x++) {
+                assertEquals(grid.canPlayPiece(orientation, x, y),
+                    grid.isLegalMove(moves, rotation, x, y),
+                    "piece " + piece + " rotation " + rotation + " at " + x + "," + y);
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * A full grid with one gap only has room for a single block
+   */
+  @Test
+  void hasLegalMoveOnNearlyFullGrid() {
+    var grid = new Grid(5, 5);
+    for (var y = 0; y < 5; y++) {
+      for (var x = 0; x < 5; x++) {
+        grid.set(x, y, 1);
+      }
+    }
+    grid.set(4, 4, 0);
+    assertTrue(grid.hasLegalMove(GamePiece.createPiece(DOT)));
+    assertFalse(grid.hasLegalMove(GamePiece.createPiece(LINE)));
+  }
+}
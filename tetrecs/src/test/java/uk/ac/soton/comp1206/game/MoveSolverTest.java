@@ -0,0 +1,143 @@
+package uk.ac.soton.comp1206.game;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that the MoveSolver only suggests legal moves, finds an obvious clear, and swaps when only
+ * the following piece fits.
+ */
+class MoveSolverTest {
+
+  /**
+   * The piece number of the line
+   */
+  private static final int LINE = 0;
+
+  /**
+   * The piece number of the single block
+   */
+  private static final int DOT = 3;
+
+  /**
+   * The solver, with a short time budget
+   */
+  private MoveSolver solver;
+
+  /**
+   * Create the solver before each test
+   */
+  @BeforeEach
+  void setUp() {
+    solver = new MoveSolver(5, 5);
+    solver.setTimeBudget(50);
+  }
+
+  /**
+   * Fill every block of a grid but one
+   *
+   * @param grid the grid
+   * @param gapX column of the gap
+   * @param gapY row of the gap
+   */
+  private static void fillAllBut(Grid grid, int gapX, int gapY) {
+    for (var y = 0; y < grid.getRows(); y++) {
+      for (var x = 0; x < grid.getCols(); x++) {
+        grid.set(x, y, x == gapX && y == gapY ? 0 : 1);
+      }
+    }
+  }
+
+  /**
+   * Looking at one piece only, a block finishing a row is played there
+   */
+  @Test
+  void completesTheRow() {
+    solver.setDepth(1);
+    var grid = new Grid(5, 5);
+    for (var x = 0; x < 4; x++) {
+      grid.set(x, 0, 1);
+    }
+    var move = solver.solve(grid, GamePiece.createPiece(DOT), GamePiece.createPiece(DOT));
+    assertNotNull(move);
+    assertEquals(4, move.getX());
+    assertEquals(0, move.getY());
+  }
+
+  /**
+   * When only the following piece fits, the move swaps to it
+   */
+  @Test
+  void swapsWhenOnlyFollowingPieceFits() {
+    var grid = new Grid(5, 5);
+    fillAllBut(grid, 4, 0);
+    var move = solver.solve(grid, GamePiece.createPiece(LINE), GamePiece.createPiece(DOT));
+    assertNotNull(move);
+    assertTrue(move.isSwap());
+    assertEquals(DOT, move.getPiece());
+    assertEquals(4, move.getX());
+    assertEquals(0, move.getY());
+  }
+
+  /**
+   * No move is found when neither piece fits
+   */
+  @Test
+  void nullWhenNeitherPieceFits() {
+    var grid = new Grid(5, 5);
+    fillAllBut(grid, 4, 0);
+    assertNull(solver.solve(grid, GamePiece.createPiece(LINE), GamePiece.createPiece(LINE)));
+  }
+
+  /**
+   * Every suggested move is legal, and its mask is the blocks the piece covers
+   */
+  @Test
+  void suggestsLegalMoves() throws Exception {
+    var random = new Random(1206);
+    for (var board = 0; board < 20; board++) {
+      var grid = new Grid(5, 5);
+      for (var y = 0; y < 5; y++) {
+        for (var x = 0; x < 5; x++) {
+          if (random.nextInt(3) == 0) {
+            grid.set(x, y, 1);
+          }
+        }
+      }
+      var current = GamePiece.createPiece(random.nextInt(GamePiece.PIECES));
+      var following = GamePiece.createPiece(random.nextInt(GamePiece.PIECES));
+      var move = solver.solveAsync(grid, current, following).get(5, TimeUnit.SECONDS);
+      if (move == null) {
+        assertFalse(grid.hasLegalMove(current) || grid.hasLegalMove(following));
+        continue;
+      }
+      assertEquals(move.isSwap() ? following.getPiece() : current.getPiece(), move.getPiece());
+      assertTrue(grid.canPlayPiece(move.getOrientation(), move.getX(), move.getY()));
+      assertEquals(grid.placementMask(move.getOrientation(), move.getX(), move.getY()),
+          move.getMask());
+    }
+  }
+
+  /**
+   * Applying a move to a game swaps to the block and plays it, clearing a row and a column
+   */
+  @Test
+  void applyPlaysTheMove() {
+    var pieces = new SequencePieceSource(new int[] {LINE, DOT}, new int[] {0, 0});
+    var engine = new GameEngine(5, 5, new ManualClock(), pieces);
+    engine.start();
+    fillAllBut(engine.getGrid(), 4, 0);
+    var move = solver.solve(engine);
+    assertTrue(move.apply(engine));
+    assertEquals(2 * 9 * 10, engine.getScore());
+    assertFalse(engine.getGrid().isFilled(4, 0));
+  }
+}
@@ -0,0 +1,167 @@
+package uk.ac.soton.comp1206.game;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that the TranspositionTable finds positions stored under any symmetry of the grid, and
+ * keeps positions apart which are not the same.
+ */
+class TranspositionTableTest {
+
+  /**
+   * The piece number of the line, down the column in rotation 0 and across the row in rotation 1
+   */
+  private static final int LINE = 0;
+
+  /**
+   * An uneven 5x5 board, which is not the same as any of its reflections
+   */
+  private static final long BOARD = 1L | 1L << 1 | 1L << 7 | 1L << 13 | 1L << 24;
+
+  /**
+   * The table, for 5x5 grids
+   */
+  private TranspositionTable table;
+
+  /**
+   * Create the table before each test
+   */
+  @BeforeEach
+  void setUp() {
+    table = new TranspositionTable(5, 5, 1);
+  }
+
+  /**
+   * Move every block of a board to another place
+   *
+   * @param board     the occupied blocks
+   * @param cols      number of columns
+   * @param rows      number of rows
+   * @param transform maps a column and row to the index of the block it moves to
+   * @return the moved blocks
+   */
+  private static long transform(long board, int cols, int rows, Transform transform) {
+    long moved = 0;
+    for (var y = 0; y < rows; y++) {
+      for (var x = 0; x < cols; x++) {
+        if ((board & 1L << (y * cols + x)) != 0) {
+          moved |= 1L << transform.apply(x, y);
+        }
+      }
+    }
+    return moved;
+  }
+
+  /**
+   * Where a block moves to
+   */
+  private interface Transform {
+
+    /**
+     * Find where a block moves to
+     *
+     * @param x column
+     * @param y row
+     * @return the index of the block it moves to
+     */
+    int apply(int x, int y);
+  }
+
+  /**
+   * A position never stored reads as NaN
+   */
+  @Test
+  void missIsNaN() {
+    assertTrue(Double.isNaN(table.lookup(BOARD, LINE, 0, 2)));
+    assertEquals(1, table.getMisses());
+  }
+
+  /**
+   * A stored position is found again with its value
+   */
+  @Test
+  void storeThenLookup() {
+    table.store(BOARD, LINE, 0, 2, 1.5);
+    assertEquals(1.5, table.lookup(BOARD, LINE, 0, 2));
+    assertEquals(1, table.getHits());
+  }
+
+  /**
+   * Mirror images of the board share an entry when any piece could be played
+   */
+  @Test
+  void reflectionsShareAnEntry() {
+    table.store(BOARD, TranspositionTable.ANY_PIECE, TranspositionTable.ANY_ROTATION, 1, 3);
+    long[] images = {
+        transform(BOARD, 5, 5, (x, y) -> y * 5 + 4 - x),
+        transform(BOARD, 5, 5, (x, y) -> (4 - y) * 5 + x),
+        transform(BOARD, 5, 5, (x, y) -> x * 5 + y),
+        transform(BOARD, 5, 5, (x, y) -> (4 - x) * 5 + 4 - y)
+    };
+    for (var image : images) {
+      assertEquals(3, table.lookup(image, TranspositionTable.ANY_PIECE,
+          TranspositionTable.ANY_ROTATION, 1));
+    }
+  }
+
+  /**
+   * The piece is turned with the board, so swapping rows and columns turns the line across
+   */
+  @Test
+  void pieceIsTransformedWithTheBoard() {
+    table.store(BOARD, LINE, 0, 1, 7);
+    var transposed = transform(BOARD, 5, 5, (x, y) -> x * 5 + y);
+    assertEquals(7, table.lookup(transposed, LINE, 1, 1));
+    assertTrue(Double.isNaN(table.lookup(transposed, LINE, 0, 1)));
+    assertTrue(Double.isNaN(table.lookup(BOARD, LINE, 1, 1)));
+  }
+
+  /**
+   * Positions searched to another depth, or with another piece, are kept apart
+   */
+  @Test
+  void depthAndPieceAreKeptApart() {
+    table.store(BOARD, LINE, TranspositionTable.ANY_ROTATION, 2, 5);
+    assertTrue(Double.isNaN(table.lookup(BOARD, LINE, TranspositionTable.ANY_ROTATION, 3)));
+    assertTrue(Double.isNaN(table.lookup(BOARD, 1, TranspositionTable.ANY_ROTATION, 2)));
+    assertTrue(Double.isNaN(table.lookup(BOARD, TranspositionTable.ANY_PIECE,
+        TranspositionTable.ANY_ROTATION, 2)));
+  }
+
+  /**
+   * A grid which is not square shares flips, but never swaps rows and columns
+   */
+  @Test
+  void rectangularGridOnlyFlips() {
+    var wide = new TranspositionTable(6, 4, 1);
+    long board = 1L | 1L << 1 | 1L << 8 | 1L << 20;
+    wide.store(board, TranspositionTable.ANY_PIECE, TranspositionTable.ANY_ROTATION, 1, 2);
+    var flipped = transform(board, 6, 4, (x, y) -> (3 - y) * 6 + 5 - x);
+    assertEquals(2, wide.lookup(flipped, TranspositionTable.ANY_PIECE,
+        TranspositionTable.ANY_ROTATION, 1));
+  }
+
+  /**
+   * Clearing removes every entry
+   */
+  @Test
+  void clearRemovesEntries() {
+    table.store(BOARD, LINE, 0, 2, 1);
+    table.clear();
+    assertTrue(Double.isNaN(table.lookup(BOARD, LINE, 0, 2)));
+    assertEquals(0, table.getHits());
+  }
+
+  /**
+   * Grids of more than 64 blocks cannot be keyed
+   */
+  @Test
+  void largeGridIsRefused() {
+    assertThrows(IllegalArgumentException.class, () -> new TranspositionTable(9, 9, 1));
+  }
+}
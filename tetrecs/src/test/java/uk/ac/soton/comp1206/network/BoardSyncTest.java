@@ -0,0 +1,202 @@
+package uk.ac.soton.comp1206.network;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that boards encoded as snapshots and deltas are applied back to the same board, and that a
+ * missed update is noticed.
+ */
+class BoardSyncTest {
+
+  /**
+   * The number of columns and rows of the boards
+   */
+  private static final int SIZE = 5;
+
+  /**
+   * Strip the command from a message, leaving the update to apply
+   */
+  private static String update(String message) {
+    assertTrue(message.startsWith(BoardSync.CAPABILITY + " "), message);
+    return message.substring(BoardSync.CAPABILITY.length() + 1);
+  }
+
+  /**
+   * Get the form of an update, F or D
+   */
+  private static String form(String message) {
+    return update(message).split(" ", 3)[1];
+  }
+
+  /**
+   * A board of random values with a few cells changed from another
+   */
+  private static int[] change(int[] board, Random random) {
+    var changed = board.clone();
+    for (var i = 0; i < 3; i++) {
+      changed[random.nextInt(changed.length)] = random.nextInt(16);
+    }
+    return changed;
+  }
+
+  /**
+   * The first update is a snapshot, later ones are deltas, and every one applies back to the board
+   */
+  @Test
+  void roundTrip() {
+    var sender = new BoardSync();
+    var receiver = new BoardSync();
+    var random = new Random(1206);
+    var board = new int[SIZE * SIZE];
+    for (var move = 0; move < 100; move++) {
+      board = change(board, random);
+      var message = sender.encode(SIZE, SIZE, board);
+      if (message == null) {
+        continue;
+      }
+      if (move == 0) {
+        assertEquals("F", form(message));
+      }
+      assertTrue(receiver.apply(update(message)), message);
+      assertArrayEquals(board, receiver.getCells(), message);
+    }
+    assertEquals(SIZE, receiver.getCols());
+    assertEquals(SIZE, receiver.getRows());
+    assertEquals(sender.getSequence(), receiver.getSequence());
+  }
+
+  /**
+   * A snapshot holds one base 36 character for each cell, column by column
+   */
+  @Test
+  void snapshotFormat() {
+    var board = new int[] {0, 1, 2, 10, 15, 0};
+    assertEquals(BoardSync.CAPABILITY + " 0 F 2x3 012af0", new BoardSync().encode(2, 3, board));
+  }
+
+  /**
+   * A board which has not changed sends nothing
+   */
+  @Test
+  void unchangedSendsNothing() {
+    var sync = new BoardSync();
+    var board = new int[SIZE * SIZE];
+    board[3] = 4;
+    sync.encode(SIZE, SIZE, board);
+    assertNull(sync.encode(SIZE, SIZE, board));
+    assertEquals(0, sync.getSequence());
+  }
+
+  /**
+   * Cleared rows and columns are sent as one token each, and single cells as index=value
+   */
+  @Test
+  void lineTokens() {
+    var sync = new BoardSync();
+    var board = new int[SIZE * SIZE];
+    for (var x = 0; x < SIZE; x++) {
+      board[x * SIZE + 2] = 5;
+    }
+    for (var y = 0; y < SIZE; y++) {
+      board[3 * SIZE + y] = 6;
+    }
+    board[0] = 7;
+    sync.encode(SIZE, SIZE, board);
+
+    var cleared = board.clone();
+    for (var x = 0; x < SIZE; x++) {
+      cleared[x * SIZE + 2] = 0;
+    }
+    for (var y = 0; y < SIZE; y++) {
+      cleared[3 * SIZE + y] = 0;
+    }
+    cleared[SIZE * SIZE - 1] = 9;
+    assertEquals(BoardSync.CAPABILITY + " 1 D R2 C3 24=9", sync.encode(SIZE, SIZE, cleared));
+
+    var receiver = new BoardSync();
+    receiver.apply("0 F 5x5 " + "7".repeat(SIZE * SIZE));
+    receiver.apply("1 D R2 C3 24=9");
+    var cells = receiver.getCells();
+    assertEquals(0, cells[4 * SIZE + 2]);
+    assertEquals(0, cells[3 * SIZE + 4]);
+    assertEquals(7, cells[4 * SIZE + 3]);
+    assertEquals(9, cells[24]);
+  }
+
+  /**
+   * A delta after a missed update is refused, and the board is forgotten until the next snapshot
+   */
+  @Test
+  void gapNeedsSnapshot() {
+    var sender = new BoardSync();
+    var receiver = new BoardSync();
+    var random = new Random(1206);
+    var board = change(new int[SIZE * SIZE], random);
+    assertTrue(receiver.apply(update(sender.encode(SIZE, SIZE, board))));
+
+    board = change(board, random);
+    sender.encode(SIZE, SIZE, board);
+    board = change(board, random);
+    var skipped = sender.encode(SIZE, SIZE, board);
+    assertEquals("D", form(skipped));
+    assertFalse(receiver.apply(update(skipped)));
+    assertNull(receiver.getCells());
+
+    board = change(board, random);
+    var delta = sender.encode(SIZE, SIZE, board);
+    assertFalse(receiver.apply(update(delta)));
+
+    sender.requestFull();
+    board = change(board, random);
+    var full = sender.encode(SIZE, SIZE, board);
+    assertEquals("F", form(full));
+    assertTrue(receiver.apply(update(full)));
+    assertArrayEquals(board, receiver.getCells());
+  }
+
+  /**
+   * A snapshot is sent after every twenty deltas, and whenever the board size changes
+   */
+  @Test
+  void periodicSnapshots() {
+    var sync = new BoardSync();
+    var board = new int[SIZE * SIZE];
+    var forms = new StringBuilder();
+    for (var move = 0; move < 43; move++) {
+      board = board.clone();
+      board[move % board.length] = move % 15 + 1;
+      forms.append(form(sync.encode(SIZE, SIZE, board)));
+    }
+    assertEquals("F" + "D".repeat(20) + "F" + "D".repeat(20) + "F", forms.toString());
+
+    assertEquals("F", form(sync.encode(4, 4, new int[16])));
+  }
+
+  /**
+   * Updates which cannot be read are refused rather than throwing
+   */
+  @Test
+  void malformedUpdates() {
+    var sync = new BoardSync();
+    assertFalse(sync.apply("0 F 2x2 012"));
+    assertFalse(sync.apply("zero F 2x2 0123"));
+    assertTrue(sync.apply("0 F 2x2 0123"));
+    assertFalse(sync.apply("1 D 9=1"));
+    assertNull(sync.getCells());
+  }
+
+  /**
+   * The classic message lists every cell in decimal
+   */
+  @Test
+  void classicFormat() {
+    assertEquals("BOARD 0 12 3", BoardSync.classic(new int[] {0, 12, 3}));
+  }
+}
@@ -0,0 +1,143 @@
+package uk.ac.soton.comp1206.network;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that recorded times come back as the right percentiles, counts and means, and that
+ * histograms can be merged and cleared.
+ */
+class LatencyHistogramTest {
+
+  /**
+   * A histogram with nothing recorded reports zero for everything
+   */
+  @Test
+  void emptyIsZero() {
+    var histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getPercentile(50));
+    assertEquals(0, histogram.getMean());
+    assertEquals(0, histogram.getMax());
+  }
+
+  /**
+   * Short times each have a bucket of their own, so they are reported exactly
+   */
+  @Test
+  void shortTimesAreExact() {
+    var histogram = new LatencyHistogram();
+    for (var micros = 1; micros <= 10; micros++) {
+      histogram.record(micros * 1000L);
+    }
+    assertEquals(5, histogram.getPercentile(50));
+    assertEquals(9, histogram.getPercentile(90));
+    assertEquals(10, histogram.getPercentile(100));
+    assertEquals(1, histogram.getPercentile(0));
+  }
+
+  /**
+   * Longer times are reported within the width of their bucket, never below the real time
+   */
+  @Test
+  void percentilesAreClose() {
+    var histogram = new LatencyHistogram();
+    var random = new Random(1206);
+    var times = new ArrayList<Long>();
+    for (var i = 0; i < 10_000; i++) {
+      var micros = 16 + (long) (Math.exp(random.nextDouble() * 14));
+      times.add(micros);
+      histogram.record(micros * 1000);
+    }
+    times.sort(null);
+    for (var percentile : new double[] {1, 25, 50, 90, 99, 99.9}) {
+      var expected = times.get((int) Math.ceil(times.size() * percentile / 100) - 1);
+      var reported = histogram.getPercentile(percentile);
+      assertTrue(reported >= expected && reported <= expected * 1.0625,
+          "p" + percentile + " was " + reported + ", expected " + expected);
+    }
+    assertEquals(times.get(times.size() - 1), histogram.getPercentile(100));
+  }
+
+  /**
+   * The count, mean and longest time are kept exactly
+   */
+  @Test
+  void countsMeanAndMax() {
+    var histogram = new LatencyHistogram();
+    histogram.record(1_000_000);
+    histogram.record(3_000_000);
+    histogram.record(-5);
+    assertEquals(3, histogram.getCount());
+    assertEquals(4000 / 3.0, histogram.getMean(), 1e-9);
+    assertEquals(3000, histogram.getMax());
+  }
+
+  /**
+   * Adding one histogram to another gives the same as recording every time into one
+   */
+  @Test
+  void addMerges() {
+    var first = new LatencyHistogram();
+    var second = new LatencyHistogram();
+    var both = new LatencyHistogram();
+    var random = new Random(1206);
+    for (var i = 0; i < 1000; i++) {
+      var nanos = random.nextInt(50_000_000);
+      (i % 2 == 0 ? first : second).record(nanos);
+      both.record(nanos);
+    }
+    first.add(second);
+    assertEquals(both.getCount(), first.getCount());
+    assertEquals(both.getMean(), first.getMean(), 1e-9);
+    assertEquals(both.getMax(), first.getMax());
+    for (var percentile = 0; percentile <= 100; percentile += 5) {
+      assertEquals(both.getPercentile(percentile), first.getPercentile(percentile));
+    }
+  }
+
+  /**
+   * Resetting forgets everything, and later times are counted alone
+   */
+  @Test
+  void resetClears() {
+    var histogram = new LatencyHistogram();
+    histogram.record(90_000_000);
+    histogram.record(1_000);
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMax());
+    assertEquals(0, histogram.getPercentile(99));
+
+    histogram.record(2_000);
+    assertEquals(1, histogram.getCount());
+    assertEquals(2, histogram.getPercentile(100));
+    assertEquals(2, histogram.getMean());
+  }
+
+  /**
+   * Times recorded from many threads at once are all counted
+   */
+  @Test
+  void concurrentRecording() throws Exception {
+    var histogram = new LatencyHistogram();
+    var threads = new Thread[4];
+    for (var i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(() -> {
+        for (var j = 0; j < 10_000; j++) {
+          histogram.record(j * 1000L);
+        }
+      });
+      threads[i].start();
+    }
+    for (var thread : threads) {
+      thread.join();
+    }
+    assertEquals(40_000, histogram.getCount());
+    assertEquals(9_999, histogram.getMax());
+  }
+}
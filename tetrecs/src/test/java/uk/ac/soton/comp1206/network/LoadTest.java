@@ -0,0 +1,308 @@
+package uk.ac.soton.comp1206.network;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.server.GameServer;
+
+/**
+ * The LoadTest runs many SimulatedPlayers against a server at once, to find how many players it can serve and
+ * where the Communicator stops keeping up.
+ *
+ * Players are put into channels, each host starts its game, and everyone plays for a fixed time, asking for pieces
+ * and scores and sending their board as the game does. The run is repeated for each number of players asked for,
+ * and one line is reported for each: the messages sent and received each second, the request to response times,
+ * and the share of messages which failed.
+ *
+ * Run it with: LoadTest [server URL, or local] [players, e.g. 10,100,500] [seconds] [channel size] [move millis]
+ * [compact or classic boards]. Using local starts a GameServer in the same process. Run with -Dtetrecs.log=warn to
+ * keep the logging of every message out of the results.
+ *
+ * It is a tool rather than part of the game, so it lives with the tests and is not shipped. Run it from the test
+ * classes, after mvn test-compile, with target/test-classes and target/classes on the classpath.
+ */
+public class LoadTest {
+
+    private static final Logger logger = LogManager.getLogger(LoadTest.class);
+
+    /**
+     * How long to wait for the players to connect, join and start, in milliseconds
+     */
+    private static final long SETUP_TIMEOUT = 30000;
+
+    /**
+     * The statistics of one run, shared by every player in it
+     */
+    static class Stats {
+
+        /**
+         * The number of messages sent
+         */
+        final AtomicLong sent = new AtomicLong();
+
+        /**
+         * The number of messages received
+         */
+        final AtomicLong received = new AtomicLong();
+
+        /**
+         * The number of characters sent
+         */
+        final AtomicLong bytes = new AtomicLong();
+
+        /**
+         * The number of errors from the server, unexpected messages and lost connections
+         */
+        final AtomicLong errors = new AtomicLong();
+
+        /**
+         * The number of moves skipped while waiting for a piece
+         */
+        final AtomicLong stalls = new AtomicLong();
+
+        /**
+         * The number of games played to the end
+         */
+        final AtomicLong games = new AtomicLong();
+
+        /**
+         * The time to respond to each kind of request
+         */
+        private final ConcurrentHashMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+
+        /**
+         * Get the times for one kind of request
+         * @param request the request
+         * @return the histogram
+         */
+        LatencyHistogram latency(String request) {
+            return latencies.computeIfAbsent(request, (key) -> new LatencyHistogram());
+        }
+
+        /**
+         * Forget every time recorded so far, so only the times from now on are reported
+         */
+        void resetLatencies() {
+            for (var histogram : latencies.values()) {
+                histogram.reset();
+            }
+        }
+
+        /**
+         * Get the times of every request together
+         * @return the histogram
+         */
+        LatencyHistogram total() {
+            var total = new LatencyHistogram();
+            for (var histogram : latencies.values()) {
+                total.add(histogram);
+            }
+            return total;
+        }
+
+        /**
+         * Get the times of each kind of request, in name order
+         * @return the histograms by request
+         */
+        Map<String, LatencyHistogram> byRequest() {
+            return new TreeMap<>(latencies);
+        }
+    }
+
+    /**
+     * The server to connect to
+     */
+    private final String server;
+
+    /**
+     * How long each run lasts, in milliseconds
+     */
+    private final long duration;
+
+    /**
+     * The number of players in each channel
+     */
+    private final int channelSize;
+
+    /**
+     * The average time between the moves of each player, in milliseconds
+     */
+    private final long moveInterval;
+
+    /**
+     * Whether the players ask for compact board updates
+     */
+    private final boolean compactBoards;
+
+    /**
+     * Create a new load test
+     * @param server the server to connect to
+     * @param duration how long each run lasts, in milliseconds
+     * @param channelSize the number of players in each channel
+     * @param moveInterval the average time between the moves of each player, in milliseconds
+     * @param compactBoards whether the players ask for compact board updates
+     */
+    public LoadTest(String server, long duration, int channelSize, long moveInterval, boolean compactBoards) {
+        this.server = server;
+        this.duration = duration;
+        this.channelSize = Math.max(1, channelSize);
+        this.moveInterval = moveInterval;
+        this.compactBoards = compactBoards;
+    }
+
+    /**
+     * Run the test once with the given number of players
+     * @param count the number of players
+     * @param run the number of this run, used to name its channels
+     * @return the statistics of the run
+     * @throws InterruptedException if interrupted while running
+     */
+    public Stats run(int count, int run) throws InterruptedException {
+        logger.info("Starting run with " + count + " players against " + server);
+        var stats = new Stats();
+        var scheduler = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors(), (runnable) -> {
+            var thread = new Thread(runnable, "LoadTest");
+            thread.setDaemon(true);
+            return thread;
+        });
+        var players = new ArrayList<SimulatedPlayer>();
+        try {
+            for (int i = 0; i < count; i++) {
+                players.add(new SimulatedPlayer(run * 100000 + i, server, stats, scheduler, moveInterval,
+                    compactBoards));
+            }
+            if (!await(players, SimulatedPlayer::isConnected)) {
+                logger.error("Not every player connected");
+            }
+
+            //The first player of each channel creates it, then the rest join
+            var hosts = new ArrayList<SimulatedPlayer>();
+            for (int i = 0; i < count; i += channelSize) {
+                var host = players.get(i);
+                host.create("load-" + run + "-" + i / channelSize);
+                hosts.add(host);
+            }
+            await(hosts, (host) -> host.getChannel() != null);
+            for (int i = 0; i < count; i++) {
+                if (i % channelSize != 0) {
+                    players.get(i).join(hosts.get(i / channelSize).getChannel());
+                }
+            }
+            await(players, (player) -> player.getChannel() != null);
+            for (var player : players) {
+                player.list();
+            }
+            for (var host : hosts) {
+                host.start();
+            }
+            if (!await(players, SimulatedPlayer::isStarted)) {
+                logger.error("Not every game started");
+            }
+
+            //Count only what happens while playing, leaving out the requests made while setting up
+            stats.resetLatencies();
+            var sentBefore = stats.sent.get();
+            var bytesBefore = stats.bytes.get();
+            var receivedBefore = stats.received.get();
+            var start = System.nanoTime();
+            Thread.sleep(duration);
+            var seconds = (System.nanoTime() - start) / 1e9;
+            report(count, stats, (stats.sent.get() - sentBefore) / seconds,
+                (stats.bytes.get() - bytesBefore) / seconds, (stats.received.get() - receivedBefore) / seconds);
+        } finally {
+            for (var player : players) {
+                player.stop();
+            }
+            scheduler.shutdownNow();
+        }
+        return stats;
+    }
+
+    /**
+     * Wait until every player is in a state, or the setup time runs out
+     * @param players the players
+     * @param ready the state
+     * @return true if every player reached the state
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static boolean await(List<SimulatedPlayer> players, Predicate<SimulatedPlayer> ready)
+        throws InterruptedException {
+        var deadline = System.currentTimeMillis() + SETUP_TIMEOUT;
+        while (System.currentTimeMillis() < deadline) {
+            if (players.stream().allMatch(ready)) {
+                return true;
+            }
+            Thread.sleep(50);
+        }
+        return false;
+    }
+
+    /**
+     * Print the results of a run
+     * @param count the number of players
+     * @param stats the statistics of the run
+     * @param sentRate the messages sent each second
+     * @param bytesRate the characters sent each second
+     * @param receivedRate the messages received each second
+     */
+    private static void report(int count, Stats stats, double sentRate, double bytesRate, double receivedRate) {
+        var total = stats.total();
+        var sent = stats.sent.get();
+        System.out.printf("%8d %10.0f %10.0f %10.0f %9.2f %9.2f %9.2f %8d %7.3f%% %8d %6d%n", count, sentRate,
+            bytesRate, receivedRate, total.getPercentile(50) / 1000.0, total.getPercentile(99) / 1000.0,
+            total.getMax() / 1000.0, stats.errors.get(), sent == 0 ? 0 : 100.0 * stats.errors.get() / sent,
+            stats.stalls.get(), stats.games.get());
+        for (var entry : stats.byRequest().entrySet()) {
+            if (entry.getValue().getCount() == 0) {
+                continue;
+            }
+            System.out.printf("%8s %s %s%n", "", entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Run the load test from the command line
+     * @param args the server URL or local, the numbers of players, the seconds per run, the channel size, the time
+     *             between moves in milliseconds and compact or classic boards, all optional
+     * @throws IOException if the local server cannot be started
+     * @throws InterruptedException if interrupted while running
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        var target = args.length > 0 ? args[0] : "local";
+        var counts = args.length > 1 ? args[1] : "10,50,100";
+        var seconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        var channelSize = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        var moveInterval = args.length > 4 ? Long.parseLong(args[4]) : 1000;
+        var compactBoards = args.length <= 5 || !args[5].equals("classic");
+
+        GameServer local = null;
+        var server = target;
+        if (target.equals("local")) {
+            local = new GameServer(0, Runtime.getRuntime().availableProcessors());
+            local.start();
+            server = "ws://localhost:" + local.getPort();
+        }
+
+        var loadTest = new LoadTest(server, seconds * 1000L, channelSize, moveInterval, compactBoards);
+        System.out.printf("%8s %10s %10s %10s %9s %9s %9s %8s %8s %8s %6s%n", "players", "sent/s", "sent B/s",
+            "recv/s", "p50 ms", "p99 ms", "max ms", "errors", "error", "stalls", "games");
+        var run = 0;
+        for (var count : counts.split(",")) {
+            loadTest.run(Integer.parseInt(count.trim()), run++);
+        }
+        if (local != null) {
+            local.stop();
+        }
+        //The socket library can leave timers running after a close, which would keep the process alive
+        System.exit(0);
+    }
+}
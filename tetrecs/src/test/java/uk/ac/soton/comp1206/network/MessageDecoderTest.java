@@ -0,0 +1,89 @@
+package uk.ac.soton.comp1206.network;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that each kind of server message is parsed into its typed Message, and that a message which
+ * cannot be parsed comes back as Unknown.
+ */
+class MessageDecoderTest {
+
+  /**
+   * Lists of channels and users are split into their non-empty lines
+   */
+  @Test
+  void decodesLists() {
+    assertEquals(new Message.Channels(List.of("lobby", "game two")),
+        MessageDecoder.decode("CHANNELS lobby\n\ngame two\n"));
+    assertEquals(new Message.Users(List.of("alice", "bob")),
+        MessageDecoder.decode("USERS alice\nbob"));
+    assertEquals(new Message.Channels(List.of()), MessageDecoder.decode("CHANNELS"));
+  }
+
+  /**
+   * Messages without a body, or with one field, are parsed
+   */
+  @Test
+  void decodesSimpleMessages() {
+    assertEquals(new Message.Join("lobby"), MessageDecoder.decode("JOIN lobby"));
+    assertEquals(new Message.Nick("alice"), MessageDecoder.decode("NICK alice"));
+    assertEquals(new Message.Piece(7), MessageDecoder.decode("PIECE 7"));
+    assertEquals(new Message.Error("Bad nick"), MessageDecoder.decode("ERROR Bad nick"));
+    assertInstanceOf(Message.Parted.class, MessageDecoder.decode("PARTED"));
+    assertInstanceOf(Message.Host.class, MessageDecoder.decode("HOST"));
+    assertInstanceOf(Message.Start.class, MessageDecoder.decode("START\n"));
+    assertInstanceOf(Message.Resync.class, MessageDecoder.decode("RESYNC"));
+  }
+
+  /**
+   * A chat message splits at the first colon only
+   */
+  @Test
+  void decodesChat() {
+    assertEquals(new Message.Msg("alice", "hi: there"), MessageDecoder.decode("MSG alice:hi: there"));
+    assertEquals(new Message.Msg("alice", ""), MessageDecoder.decode("MSG alice"));
+  }
+
+  /**
+   * Scores are parsed with and without lives, one on each line
+   */
+  @Test
+  void decodesScores() {
+    assertEquals(new Message.Scores(List.of(new Message.Score("alice", 120, "3"),
+            new Message.Score("bob", 0, "DEAD"))),
+        MessageDecoder.decode("SCORES alice:120:3\nbob:0:DEAD"));
+    assertEquals(new Message.HiScores(List.of(new Message.Score("alice", 5000, null),
+            new Message.Score("bob", 400, null))),
+        MessageDecoder.decode("HISCORES alice:5000\nbob:400\n"));
+    assertEquals(new Message.NewScore(new Message.Score("carol", 900, null)),
+        MessageDecoder.decode("NEWSCORE carol:900"));
+  }
+
+  /**
+   * Boards keep the player apart from the cells, and capabilities are split on whitespace
+   */
+  @Test
+  void decodesBoardsAndCaps() {
+    assertEquals(new Message.Board("alice", "0 1 2"), MessageDecoder.decode("BOARD alice:0 1 2"));
+    assertEquals(new Message.BoardUpdate("alice", "4 D 3=2 R1"),
+        MessageDecoder.decode(BoardSync.CAPABILITY + " alice:4 D 3=2 R1"));
+    assertEquals(new Message.Caps(List.of(BoardSync.CAPABILITY, "OTHER")),
+        MessageDecoder.decode("CAPS " + BoardSync.CAPABILITY + "  OTHER"));
+    assertEquals(new Message.Caps(List.of()), MessageDecoder.decode("CAPS"));
+  }
+
+  /**
+   * Unknown types and broken bodies are returned as Unknown rather than throwing
+   */
+  @Test
+  void malformedMessagesAreUnknown() {
+    assertEquals(new Message.Unknown("HELLO", "world"), MessageDecoder.decode("HELLO world"));
+    assertEquals(new Message.Unknown("PIECE", "seven"), MessageDecoder.decode("PIECE seven"));
+    assertEquals(new Message.Unknown("SCORES", "alice"), MessageDecoder.decode("SCORES alice"));
+    assertEquals(new Message.Unknown("BOARD", "alice"), MessageDecoder.decode("BOARD alice"));
+  }
+}
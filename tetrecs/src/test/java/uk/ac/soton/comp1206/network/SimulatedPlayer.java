@@ -0,0 +1,463 @@
+package uk.ac.soton.comp1206.network;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.game.GameClock;
+import uk.ac.soton.comp1206.game.GameEngine;
+import uk.ac.soton.comp1206.game.GamePiece;
+import uk.ac.soton.comp1206.game.PieceGenerator;
+import uk.ac.soton.comp1206.game.ServerPieceSource;
+
+/**
+ * A SimulatedPlayer is a headless player used by the LoadTest. It talks to the server through its own Communicator,
+ * exactly as the game does, and plays a GameEngine with a simple policy: each move places the current piece at a
+ * random legal position.
+ *
+ * Every request which has a response is timed from sending to the response reaching its listener, so the times
+ * include the dispatch of the Communicator. A player who runs out of lives starts again at once, so the load stays
+ * steady for the whole run.
+ */
+class SimulatedPlayer {
+
+    private static final Logger logger = LogManager.getLogger(SimulatedPlayer.class);
+
+    /**
+     * How often the scores are asked for during a game, as the multiplayer scene does, in milliseconds
+     */
+    private static final long SCORES_INTERVAL = 1000;
+
+    /**
+     * The number of pieces asked for when the game starts
+     */
+    private static final int INITIAL_PIECES = 3;
+
+    /**
+     * The communicator this player talks through
+     */
+    private final Communicator communicator;
+
+    /**
+     * The statistics of the run
+     */
+    private final LoadTest.Stats stats;
+
+    /**
+     * Runs the moves and score requests of every player
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * The average time between moves, in milliseconds
+     */
+    private final long moveInterval;
+
+    /**
+     * Chooses the moves and the time between them
+     */
+    private final Random random;
+
+    /**
+     * When each request waiting for a response was sent, by request
+     */
+    private final ConcurrentHashMap<String, ConcurrentLinkedQueue<Long>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * The pieces received from the server
+     */
+    private final ServerPieceSource pieces;
+
+    /**
+     * Encodes the board as compact updates
+     */
+    private final BoardSync boardSync = new BoardSync();
+
+    /**
+     * Whether the server agreed to compact board updates
+     */
+    private volatile boolean compactBoards;
+
+    /**
+     * Whether to ask the server for compact board updates
+     */
+    private final boolean askCompact;
+
+    /**
+     * The game being played
+     */
+    private Bot game;
+
+    /**
+     * The channel this player is in, or null
+     */
+    private volatile String channel;
+
+    /**
+     * Whether the game in the channel has started
+     */
+    private volatile boolean started;
+
+    /**
+     * Whether this player has been stopped
+     */
+    private volatile boolean stopped;
+
+    /**
+     * The next move
+     */
+    private ScheduledFuture<?> moveTask;
+
+    /**
+     * The repeated request for the scores
+     */
+    private ScheduledFuture<?> scoresTask;
+
+    /**
+     * A GameEngine which tells the server about every move, as the multiplayer game does
+     */
+    private class Bot extends GameEngine {
+
+        /**
+         * Create a new game
+         */
+        private Bot() {
+            super(5, 5, GameClock.SYSTEM, pieces);
+        }
+
+        /**
+         * Ask the server for another piece each time one is dealt
+         * @return the piece
+         */
+        @Override
+        protected GamePiece spawnPiece() {
+            request("PIECE", "PIECE");
+            return super.spawnPiece();
+        }
+
+        /**
+         * Send the score when lines are cleared
+         * @param lines cleared lines
+         * @param blocksCleared cleared blocks
+         */
+        @Override
+        protected void score(int lines, int blocksCleared) {
+            super.score(lines, blocksCleared);
+            if (lines != 0) {
+                send("SCORE " + getScore());
+            }
+        }
+
+        /**
+         * Send the lives left when one is lost
+         */
+        @Override
+        protected void lifeLost() {
+            super.lifeLost();
+            send("LIVES " + getLives());
+        }
+
+        /**
+         * Send the board once the lines made by a piece are cleared
+         * @param x column
+         * @param y row
+         */
+        @Override
+        protected void afterPiece(int x, int y) {
+            super.afterPiece(x, y);
+            var cells = new int[cols * rows];
+            for (int col = 0; col < cols; col++) {
+                for (int row = 0; row < rows; row++) {
+                    cells[col * rows + row] = grid.get(col, row);
+                }
+            }
+            if (compactBoards) {
+                var update = boardSync.encode(cols, rows, cells);
+                if (update != null) {
+                    send(update);
+                }
+            } else {
+                send(BoardSync.classic(cells));
+            }
+        }
+
+        /**
+         * Lose a life, as when the timer runs out
+         */
+        private void giveUp() {
+            gameLoop();
+        }
+    }
+
+    /**
+     * Create a new player and start connecting to the server
+     * @param id the number of this player, used to seed its moves
+     * @param server the server to connect to
+     * @param stats the statistics of the run
+     * @param scheduler runs the moves
+     * @param moveInterval the average time between moves, in milliseconds
+     * @param askCompact whether to ask the server for compact board updates
+     */
+    SimulatedPlayer(int id, String server, LoadTest.Stats stats, ScheduledExecutorService scheduler,
+        long moveInterval, boolean askCompact) {
+        this.stats = stats;
+        this.askCompact = askCompact;
+        this.scheduler = scheduler;
+        this.moveInterval = moveInterval;
+        this.random = new Random(id);
+        this.pieces = new ServerPieceSource(new PieceGenerator(id));
+        this.communicator = new Communicator(server, false);
+
+        communicator.addListener((message) -> stats.received.incrementAndGet());
+        communicator.addConnectionListener((state) -> {
+            if (state == ConnectionState.RECONNECTING) {
+                stats.errors.incrementAndGet();
+            }
+        });
+        communicator.subscribe(Message.Join.class, (message) -> channel = message.channel());
+        communicator.subscribe(Message.Start.class, (message) -> begin());
+        communicator.subscribe(Message.Piece.class, this::receivePiece);
+        communicator.subscribe(Message.Scores.class, (message) -> answered("SCORES"));
+        communicator.subscribe(Message.Channels.class, (message) -> answered("LIST"));
+        communicator.subscribe(Message.Error.class, (message) -> {
+            logger.error("Server error: " + message.error());
+            stats.errors.incrementAndGet();
+        });
+        communicator.subscribe(Message.Caps.class,
+            (message) -> compactBoards = message.capabilities().contains(BoardSync.CAPABILITY));
+        communicator.subscribe(Message.Resync.class, (message) -> resync());
+        communicator.subscribe(Message.Unknown.class, (message) -> stats.errors.incrementAndGet());
+        communicator.connect();
+    }
+
+    /**
+     * Send a message to the server
+     * @param message the message
+     */
+    private void send(String message) {
+        stats.sent.incrementAndGet();
+        stats.bytes.addAndGet(message.length());
+        communicator.send(message);
+    }
+
+    /**
+     * Send a request and time how long its response takes
+     * @param message the request
+     * @param request the name the time is recorded under
+     */
+    private void request(String message, String request) {
+        pending.computeIfAbsent(request, (key) -> new ConcurrentLinkedQueue<>()).add(System.nanoTime());
+        send(message);
+    }
+
+    /**
+     * Record the time taken by the oldest request waiting for this response
+     * @param request the name of the request
+     */
+    private void answered(String request) {
+        var waiting = pending.get(request);
+        var sentAt = waiting == null ? null : waiting.poll();
+        if (sentAt != null) {
+            stats.latency(request).record(System.nanoTime() - sentAt);
+        }
+    }
+
+    /**
+     * Create a channel and host it
+     * @param name the name of the channel
+     */
+    void create(String name) {
+        send("CREATE " + name);
+    }
+
+    /**
+     * Join a channel
+     * @param name the name of the channel
+     */
+    void join(String name) {
+        send("JOIN " + name);
+    }
+
+    /**
+     * Start the game in the channel this player hosts
+     */
+    void start() {
+        send("START");
+    }
+
+    /**
+     * Ask for the channels which can be joined
+     */
+    void list() {
+        request("LIST", "LIST");
+    }
+
+    /**
+     * Get whether this player is connected to the server
+     * @return true if connected
+     */
+    boolean isConnected() {
+        return communicator.getState() == ConnectionState.CONNECTED;
+    }
+
+    /**
+     * Get the channel this player is in
+     * @return the channel name, or null
+     */
+    String getChannel() {
+        return channel;
+    }
+
+    /**
+     * Get whether the game has started
+     * @return true once started
+     */
+    boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * Begin playing once the game starts
+     */
+    private synchronized void begin() {
+        if (started || stopped) {
+            return;
+        }
+        started = true;
+        if (askCompact) {
+            send("CAPS " + BoardSync.CAPABILITY);
+        }
+        for (int i = 0; i < INITIAL_PIECES; i++) {
+            request("PIECE", "PIECE");
+        }
+        scoresTask = scheduler.scheduleAtFixedRate(() -> request("SCORES", "SCORES"),
+            random.nextInt((int) SCORES_INTERVAL), SCORES_INTERVAL, TimeUnit.MILLISECONDS);
+        scheduleMove();
+    }
+
+    /**
+     * Send a full board next, as the server missed an update
+     */
+    private synchronized void resync() {
+        stats.errors.incrementAndGet();
+        boardSync.requestFull();
+    }
+
+    /**
+     * Take a piece from the server, starting the game once there are enough to deal
+     * @param message the piece message
+     */
+    private synchronized void receivePiece(Message.Piece message) {
+        answered("PIECE");
+        pieces.add(message.piece());
+        if (game == null && pieces.size() >= 2) {
+            game = new Bot();
+            game.start();
+        }
+    }
+
+    /**
+     * Wait a random time around the move interval, then move
+     */
+    private void scheduleMove() {
+        var delay = moveInterval / 2 + random.nextInt((int) Math.max(1, moveInterval));
+        moveTask = scheduler.schedule(this::move, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Play the current piece at a random legal position, or lose a life if it cannot be played
+     */
+    private synchronized void move() {
+        if (stopped) {
+            return;
+        }
+        scheduleMove();
+        if (game == null) {
+            return;
+        }
+        var needed = game.isRunning() ? 1 : 2;
+        if (pieces.size() < needed) {
+            //Playing now would need a piece the server has not sent yet
+            stats.stalls.incrementAndGet();
+            return;
+        }
+        if (!game.isRunning()) {
+            //Out of lives, play again
+            stats.games.incrementAndGet();
+            send("LIVES 3");
+            game = new Bot();
+            game.start();
+            return;
+        }
+
+        var piece = game.getCurrentPiece();
+        var moves = game.getGrid().legalMoves(piece);
+        var words = moves.length / GamePiece.ROTATIONS;
+        var first = random.nextInt(GamePiece.ROTATIONS);
+        for (int i = 0; i < GamePiece.ROTATIONS; i++) {
+            var rotation = (first + i) % GamePiece.ROTATIONS;
+            var legal = 0;
+            for (int word = 0; word < words; word++) {
+                legal += Long.bitCount(moves[rotation * words + word]);
+            }
+            if (legal == 0) {
+                continue;
+            }
+            var index = pickMove(moves, rotation * words, words, random.nextInt(legal));
+            while (piece.getRotation() != rotation) {
+                game.rotateCurrentPiece(true);
+            }
+            game.place(index % game.getCols(), index / game.getCols());
+            return;
+        }
+        game.giveUp();
+    }
+
+    /**
+     * Find the nth legal position in the bitmap of one rotation
+     * @param moves the legal moves of every rotation
+     * @param offset the first word of the rotation
+     * @param words the number of words for each rotation
+     * @param n which legal position to find, counting from 0
+     * @return the index of the position
+     */
+    private static int pickMove(long[] moves, int offset, int words, int n) {
+        for (int word = 0; word < words; word++) {
+            var bits = moves[offset + word];
+            var count = Long.bitCount(bits);
+            if (n >= count) {
+                n -= count;
+                continue;
+            }
+            for (int i = 0; i < n; i++) {
+                //Clear the lowest set bit
+                bits &= bits - 1;
+            }
+            return word * 64 + Long.numberOfTrailingZeros(bits);
+        }
+        throw new IllegalArgumentException("Only " + n + " legal positions");
+    }
+
+    /**
+     * Stop playing, tell the server and disconnect
+     */
+    void stop() {
+        synchronized (this) {
+            stopped = true;
+            if (moveTask != null) {
+                moveTask.cancel(false);
+            }
+            if (scoresTask != null) {
+                scoresTask.cancel(false);
+            }
+        }
+        if (started) {
+            send("DIE");
+        }
+        communicator.close();
+    }
+}
@@ -0,0 +1,220 @@
+package uk.ac.soton.comp1206.replay;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.ac.soton.comp1206.game.GameEngine;
+import uk.ac.soton.comp1206.game.GamePiece;
+import uk.ac.soton.comp1206.game.ManualClock;
+import uk.ac.soton.comp1206.game.PieceSource;
+
+/**
+ * Tests that the recorder writes the header and every action of a game in the layout described by
+ * ReplayFormat, reading the file back byte by byte.
+ */
+class ReplayRecorderTest {
+
+  /**
+   * The directory replays are written to
+   */
+  @TempDir
+  Path directory;
+
+  /**
+   * The replay file
+   */
+  private File file;
+
+  /**
+   * The clock the game is played on
+   */
+  private ManualClock clock;
+
+  /**
+   * The recorded game
+   */
+  private GameEngine engine;
+
+  /**
+   * The recorder
+   */
+  private ReplayRecorder recorder;
+
+  /**
+   * Start recording a new game
+   */
+  @BeforeEach
+  void setUp() {
+    file = directory.resolve("game" + ReplayFormat.EXTENSION).toFile();
+    clock = new ManualClock();
+    engine = new GameEngine(5, 5, clock, PieceSource.random(1206));
+    recorder = new ReplayRecorder(engine, file);
+    engine.setActionListener(recorder);
+  }
+
+  /**
+   * The header holds the version, the size, the lives, the mode, the start time and the seed
+   */
+  @Test
+  void writesHeader() throws Exception {
+    var before = System.currentTimeMillis();
+    engine.start();
+    recorder.close();
+    var in = awaitReplay();
+
+    var magic = in.readNBytes(ReplayFormat.MAGIC.length);
+    assertArrayEquals(ReplayFormat.MAGIC, magic);
+    assertEquals(ReplayFormat.VERSION, readVarint(in));
+    assertEquals(5, readVarint(in));
+    assertEquals(5, readVarint(in));
+    assertEquals(engine.getLives(), readVarint(in));
+    assertEquals(0, readVarint(in));
+    var started = readVarint(in);
+    assertTrue(started >= before - 1000 && started <= System.currentTimeMillis());
+    var seed = 0L;
+    for (var i = 0; i < 8; i++) {
+      seed = seed << 8 | in.read();
+    }
+    assertEquals(1206, seed);
+  }
+
+  /**
+   * Each action is written with the time since the one before, and the game ends with the score
+   */
+  @Test
+  void writesEventsInOrder() throws Exception {
+    engine.start();
+    var current = code(engine.getCurrentPiece());
+    var following = code(engine.getFollowingPiece());
+    clock.advance(1000);
+    engine.rotateCurrentPiece(true);
+    clock.advance(500);
+    engine.swapCurrentPiece();
+    clock.advance(70_000);
+    //Every piece fits in the middle of an empty board
+    assertTrue(engine.place(2, 2));
+    var dealt = code(engine.getFollowingPiece());
+    clock.advance(3);
+    recorder.close();
+    //Nothing is written once closed
+    engine.rotateCurrentPiece(false);
+
+    var events = readEvents(awaitReplay());
+    assertEquals(List.of(
+        List.of((long) ReplayFormat.PIECE, 0L, current),
+        List.of((long) ReplayFormat.PIECE, 0L, following),
+        List.of((long) ReplayFormat.ROTATE, 1000L, 1L),
+        List.of((long) ReplayFormat.SWAP, 500L),
+        List.of((long) ReplayFormat.PLACE, 70_000L, 2L, 2L),
+        List.of((long) ReplayFormat.PIECE, 0L, dealt),
+        List.of((long) ReplayFormat.END, 3L, (long) engine.getScore())), events);
+  }
+
+  /**
+   * The time running out is written as its own event
+   */
+  @Test
+  void writesExpiry() throws Exception {
+    engine.start();
+    clock.advance(60_000_000_000L);
+    assertTrue(engine.tick());
+    recorder.close();
+
+    var events = readEvents(awaitReplay());
+    assertEquals(List.of((long) ReplayFormat.EXPIRE, 60_000_000_000L), events.get(2));
+    assertEquals(ReplayFormat.PIECE, events.get(3).get(0));
+  }
+
+  /**
+   * Get the number a piece is recorded as
+   */
+  private static long code(GamePiece piece) {
+    return piece.getPiece() * GamePiece.ROTATIONS + piece.getRotation();
+  }
+
+  /**
+   * Wait for the writer thread to finish the file, which ends with END and the score
+   *
+   * @return the whole file
+   */
+  private InputStream awaitReplay() throws Exception {
+    var deadline = System.nanoTime() + 5_000_000_000L;
+    while (System.nanoTime() < deadline) {
+      try {
+        var bytes = Files.readAllBytes(file.toPath());
+        readEvents(new ByteArrayInputStream(bytes));
+        return new ByteArrayInputStream(bytes);
+      } catch (IOException e) {
+        //Not created or not written yet
+      }
+      Thread.sleep(10);
+    }
+    throw new IOException("Replay was not written");
+  }
+
+  /**
+   * Skip the header, then read each event as its type, its time and its arguments
+   *
+   * @param in the whole file
+   * @return the events, the last of them END
+   * @throws IOException if the file ends before END and the score
+   */
+  private static List<List<Long>> readEvents(InputStream in) throws IOException {
+    in.skipNBytes(ReplayFormat.MAGIC.length);
+    for (var i = 0; i < 6; i++) {
+      readVarint(in);
+    }
+    in.skipNBytes(8);
+    var events = new ArrayList<List<Long>>();
+    while (true) {
+      var type = in.read();
+      if (type < 0) {
+        throw new EOFException("No END");
+      }
+      var event = new ArrayList<Long>(List.of((long) type, readVarint(in)));
+      var arguments = switch (type) {
+        case ReplayFormat.PLACE -> 2;
+        case ReplayFormat.PIECE, ReplayFormat.ROTATE, ReplayFormat.END -> 1;
+        default -> 0;
+      };
+      for (var i = 0; i < arguments; i++) {
+        event.add(readVarint(in));
+      }
+      events.add(event);
+      if (type == ReplayFormat.END) {
+        assertEquals(-1, in.read());
+        return events;
+      }
+    }
+  }
+
+  /**
+   * Read an unsigned LEB128 varint
+   */
+  private static long readVarint(InputStream in) throws IOException {
+    var value = 0L;
+    for (var shift = 0; ; shift += 7) {
+      var b = in.read();
+      if (b < 0) {
+        throw new EOFException();
+      }
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+  }
+}
@@ -0,0 +1,156 @@
+package uk.ac.soton.comp1206.replay;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.ac.soton.comp1206.game.GameEngine;
+import uk.ac.soton.comp1206.game.ManualClock;
+import uk.ac.soton.comp1206.game.PieceSource;
+
+/**
+ * Tests that a recorded game reads back and plays back to the same end, and that a recording cut
+ * short still loads.
+ */
+class ReplayTest {
+
+  /**
+   * The directory replays are written to
+   */
+  @TempDir
+  Path directory;
+
+  /**
+   * The replay file
+   */
+  private File file;
+
+  /**
+   * The recorded game
+   */
+  private GameEngine engine;
+
+  /**
+   * Record a game of random moves, with the occasional piece left to run out of time
+   */
+  @BeforeEach
+  void setUp() throws Exception {
+    file = directory.resolve("game" + ReplayFormat.EXTENSION).toFile();
+    var clock = new ManualClock();
+    engine = new GameEngine(5, 5, clock, PieceSource.random(1206));
+    var recorder = new ReplayRecorder(engine, file);
+    engine.setActionListener(recorder);
+    engine.start();
+
+    var random = new Random(1206);
+    for (var action = 0; action < 300 && engine.isRunning(); action++) {
+      clock.advance(random.nextInt(2_000_000_000));
+      engine.tick();
+      switch (random.nextInt(8)) {
+        case 0 -> engine.rotateCurrentPiece(random.nextBoolean());
+        case 1 -> engine.swapCurrentPiece();
+        default -> engine.place(random.nextInt(5), random.nextInt(5));
+      }
+    }
+    recorder.close();
+    awaitEnd();
+  }
+
+  /**
+   * Wait for the writer thread to finish the file, which ends with the score
+   */
+  private void awaitEnd() throws Exception {
+    var deadline = System.nanoTime() + 5_000_000_000L;
+    while (System.nanoTime() < deadline) {
+      try {
+        if (Replay.load(file).getScore() >= 0) {
+          return;
+        }
+      } catch (IOException e) {
+        //Not created or not written yet
+      }
+      Thread.sleep(10);
+    }
+    throw new IOException("Replay was not written");
+  }
+
+  /**
+   * The header and final score are read back as recorded
+   */
+  @Test
+  void readsHeaderAndScore() throws Exception {
+    var replay = Replay.load(file);
+    assertEquals(5, replay.getCols());
+    assertEquals(5, replay.getRows());
+    assertEquals(1206, replay.getSeed());
+    assertEquals(engine.getScore(), replay.getScore());
+    assertEquals(ReplayFormat.END, replay.getType(replay.getEventCount() - 1));
+  }
+
+  /**
+   * Playing the replay through reaches the same board and score, with nothing out of step
+   */
+  @Test
+  void playsBackToTheSameGame() throws Exception {
+    var player = new ReplayPlayer(Replay.load(file));
+    assertEquals(0, player.getMismatches());
+    player.playToEnd();
+    assertTrue(player.isFinished());
+    assertEquals(engine.getScore(), player.getEngine().getScore());
+    assertEquals(engine.getLives(), player.getEngine().getLives());
+    assertArrayEquals(engine.getGrid().copyValues(), player.getEngine().getGrid().copyValues());
+  }
+
+  /**
+   * Seeking to a move gives the same game as stepping there from the start
+   */
+  @Test
+  void seekMatchesStepping() throws Exception {
+    var player = new ReplayPlayer(Replay.load(file));
+    assertTrue(player.getMoveCount() > 2 * ReplayPlayer.KEYFRAME_INTERVAL);
+    var target = player.getMoveCount() / 2 + 3;
+    while (player.getMove() < target) {
+      player.step();
+    }
+    var score = player.getEngine().getScore();
+    var values = player.getEngine().getGrid().copyValues();
+
+    player.seek(0);
+    player.seek(target);
+    assertEquals(target, player.getMove());
+    assertEquals(score, player.getEngine().getScore());
+    assertArrayEquals(values, player.getEngine().getGrid().copyValues());
+  }
+
+  /**
+   * A recording cut short loads every complete event, with no score
+   */
+  @Test
+  void truncatedRecordingLoads() throws Exception {
+    var bytes = Files.readAllBytes(file.toPath());
+    var replay = Replay.read(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 3)));
+    assertEquals(-1, replay.getScore());
+    assertTrue(replay.getEventCount() > 0);
+  }
+
+  /**
+   * A file from another version of the format is refused
+   */
+  @Test
+  void otherVersionIsRefused() throws Exception {
+    var bytes = Files.readAllBytes(file.toPath());
+    bytes[ReplayFormat.MAGIC.length] = (byte) (ReplayFormat.VERSION + 1);
+    assertThrows(IOException.class, () -> Replay.read(new ByteArrayInputStream(bytes)));
+  }
+}
@@ -0,0 +1,57 @@
+package uk.ac.soton.comp1206.scene;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import javafx.util.Pair;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests deciding whether a score makes the online leaderboard, including the short lists of a new
+ * server.
+ */
+class ScoresSceneTest {
+
+  /**
+   * A server with no scores yet takes any score
+   */
+  @Test
+  void emptyLeaderboardTakesAnyScore() {
+    assertTrue(ScoresScene.isOnlineHigh(List.of(), 0));
+    assertTrue(ScoresScene.isOnlineHigh(List.of(), 500));
+  }
+
+  /**
+   * A leaderboard with places left takes a score below its lowest
+   */
+  @Test
+  void shortLeaderboardTakesAnyScore() {
+    assertTrue(ScoresScene.isOnlineHigh(scores(3), 1));
+    assertTrue(ScoresScene.isOnlineHigh(scores(9), 1));
+  }
+
+  /**
+   * A full leaderboard only takes a score above its tenth, whatever comes after it
+   */
+  @Test
+  void fullLeaderboardComparesTenth() {
+    var scores = scores(12);
+    //Scores run 1200 down to 100, so the tenth is 300
+    assertFalse(ScoresScene.isOnlineHigh(scores, 300));
+    assertTrue(ScoresScene.isOnlineHigh(scores, 301));
+    assertFalse(ScoresScene.isOnlineHigh(scores(10), 100));
+  }
+
+  /**
+   * Make a leaderboard of scores 100 apart, highest first
+   */
+  private static List<Pair<String, Integer>> scores(int count) {
+    var scores = new ArrayList<Pair<String, Integer>>();
+    for (var i = count; i > 0; i--) {
+      scores.add(new Pair<>("player" + i, i * 100));
+    }
+    return scores;
+  }
+}
@@ -0,0 +1,344 @@
+package uk.ac.soton.comp1206.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.ac.soton.comp1206.network.Communicator;
+import uk.ac.soton.comp1206.network.Message;
+
+/**
+ * Tests the game server end to end, through real communicators and through raw frames which the
+ * communicator would never send.
+ */
+class GameServerTest {
+
+  /**
+   * The largest message the server accepts
+   */
+  private static final int MAX_MESSAGE = 64 * 1024;
+
+  /**
+   * The opcodes of the frames sent
+   */
+  private static final int OP_CONTINUATION = 0x0;
+  private static final int OP_TEXT = 0x1;
+  private static final int OP_CLOSE = 0x8;
+
+  /**
+   * The server, on any free port
+   */
+  private GameServer server;
+
+  /**
+   * The communicators connected to the server
+   */
+  private final List<Communicator> communicators = new ArrayList<>();
+
+  /**
+   * Start a server keeping its high scores in memory
+   */
+  @BeforeEach
+  void setUp() throws IOException {
+    server = new GameServer(0, 1);
+    server.start();
+  }
+
+  /**
+   * Close every communicator and stop the server
+   */
+  @AfterEach
+  void tearDown() {
+    communicators.forEach(Communicator::close);
+    server.stop();
+  }
+
+  /**
+   * A host and a guest create, join and start a game, are dealt pieces, see the scores and leave
+   */
+  @Test
+  void playsAGame() throws Exception {
+    var host = connect();
+    var guest = connect();
+
+    host.communicator.send("CREATE test");
+    assertEquals("test", host.await(Message.Join.class).channel());
+    var hostName = host.await(Message.Nick.class).name();
+    host.await(Message.Host.class);
+
+    guest.communicator.send("JOIN test");
+    assertEquals("test", guest.await(Message.Join.class).channel());
+    var guestName = guest.await(Message.Nick.class).name();
+
+    host.communicator.send("START");
+    host.await(Message.Start.class);
+    guest.await(Message.Start.class);
+
+    for (var i = 0; i < 3; i++) {
+      host.communicator.send("PIECE");
+      var piece = host.await(Message.Piece.class).piece();
+      assertTrue(piece >= 0 && piece < 15, "Piece " + piece);
+    }
+
+    //Asked on the same connection, so the score is set before the scores are sent
+    host.communicator.send("SCORE 120");
+    host.communicator.send("SCORES");
+    var scores = host.await(Message.Scores.class).scores();
+    assertEquals(2, scores.size());
+    assertEquals(new Message.Score(hostName, 120, "3"), find(scores, hostName));
+    assertEquals(0, find(scores, guestName).score());
+
+    guest.communicator.send("PART");
+    guest.await(Message.Parted.class);
+    host.communicator.send("SCORES");
+    assertEquals(1, host.await(Message.Scores.class).scores().size());
+  }
+
+  /**
+   * A new server has no high scores, and sends back each one added, highest first
+   */
+  @Test
+  void keepsHighScores() throws Exception {
+    var client = connect();
+
+    client.communicator.send("HISCORES");
+    assertTrue(client.await(Message.HiScores.class).scores().isEmpty());
+
+    client.communicator.send("HISCORE alice:500");
+    assertEquals(new Message.Score("alice", 500, null), client.await(Message.NewScore.class).score());
+    client.communicator.send("HISCORE bob:900");
+    client.await(Message.NewScore.class);
+
+    client.communicator.send("HISCORES");
+    var scores = client.await(Message.HiScores.class).scores();
+    assertEquals(List.of(new Message.Score("bob", 900, null), new Message.Score("alice", 500, null)),
+        scores);
+
+    //A high score needs a name
+    client.communicator.send("HISCORE :100");
+    assertTrue(client.await(Message.Error.class).error().startsWith("Invalid high score"));
+  }
+
+  /**
+   * A message split over a text frame and continuations is handled once the last arrives
+   */
+  @Test
+  void joinsFragmentedMessages() throws Exception {
+    try (var socket = open()) {
+      var out = socket.getOutputStream();
+      var in = new DataInputStream(socket.getInputStream());
+      writeFrame(out, false, OP_TEXT, "HISC".getBytes(StandardCharsets.UTF_8), true);
+      writeFrame(out, false, OP_CONTINUATION, "ORE alice".getBytes(StandardCharsets.UTF_8), true);
+      writeFrame(out, true, OP_CONTINUATION, ":42".getBytes(StandardCharsets.UTF_8), true);
+      var reply = readFrame(in);
+      assertEquals(OP_TEXT, reply.opcode());
+      assertEquals("NEWSCORE alice:42", reply.text());
+    }
+  }
+
+  /**
+   * A frame from the client without a mask closes the connection as a protocol error
+   */
+  @Test
+  void closesOnUnmaskedFrame() throws Exception {
+    try (var socket = open()) {
+      var in = new DataInputStream(socket.getInputStream());
+      writeFrame(socket.getOutputStream(), true, OP_TEXT, "HISCORES".getBytes(StandardCharsets.UTF_8),
+          false);
+      assertClosedWith(in, 1002);
+    }
+  }
+
+  /**
+   * A frame longer than the limit closes the connection as too big, without the payload being sent
+   */
+  @Test
+  void closesOnOversizedFrame() throws Exception {
+    try (var socket = open()) {
+      var in = new DataInputStream(socket.getInputStream());
+      var out = socket.getOutputStream();
+      //Just the header, claiming one byte more than the limit
+      out.write(new byte[] {(byte) (0x80 | OP_TEXT), (byte) (0x80 | 127), 0, 0, 0, 0, 0, 1, 0, 1});
+      out.write(new byte[] {1, 2, 3, 4});
+      out.flush();
+      assertClosedWith(in, 1009);
+    }
+  }
+
+  /**
+   * Fragments which together pass the limit close the connection as too big
+   */
+  @Test
+  void closesOnOversizedFragments() throws Exception {
+    try (var socket = open()) {
+      var in = new DataInputStream(socket.getInputStream());
+      var out = socket.getOutputStream();
+      var half = new byte[MAX_MESSAGE / 2 + 1];
+      writeFrame(out, false, OP_TEXT, half, true);
+      writeFrame(out, true, OP_CONTINUATION, half, true);
+      assertClosedWith(in, 1009);
+    }
+  }
+
+  /**
+   * A communicator connected to the server, with every message it receives
+   */
+  private record Client(Communicator communicator, BlockingQueue<Message> received) {
+
+    /**
+     * Wait for a message of one kind, skipping any others sent before it
+     */
+    <T extends Message> T await(Class<T> type) throws InterruptedException {
+      var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while (true) {
+        var message = received.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        assertNotNull(message, "No " + type.getSimpleName() + " received");
+        if (type.isInstance(message)) {
+          return type.cast(message);
+        }
+      }
+    }
+  }
+
+  /**
+   * Connect a new communicator to the server, collecting the messages it receives
+   */
+  private Client connect() {
+    var communicator = new Communicator("ws://localhost:" + server.getPort());
+    communicators.add(communicator);
+    var received = new LinkedBlockingQueue<Message>();
+    List<Class<? extends Message>> types = List.of(Message.Join.class, Message.Nick.class,
+        Message.Host.class, Message.Start.class, Message.Piece.class, Message.Scores.class,
+        Message.Parted.class, Message.HiScores.class, Message.NewScore.class, Message.Error.class);
+    for (var type : types) {
+      communicator.subscribe(type, received::add);
+    }
+    return new Client(communicator, received);
+  }
+
+  /**
+   * Find the score of a player
+   */
+  private static Message.Score find(List<Message.Score> scores, String name) {
+    return scores.stream().filter((score) -> score.name().equals(name)).findFirst().orElseThrow();
+  }
+
+  /**
+   * Open a raw socket to the server and complete the opening handshake
+   */
+  private Socket open() throws IOException {
+    var socket = new Socket("localhost", server.getPort());
+    socket.setSoTimeout(5000);
+    var request = "GET / HTTP/1.1\r\n"
+        + "Host: localhost\r\n"
+        + "Upgrade: websocket\r\n"
+        + "Connection: Upgrade\r\n"
+        + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"
+        + "Sec-WebSocket-Version: 13\r\n\r\n";
+    socket.getOutputStream().write(request.getBytes(StandardCharsets.ISO_8859_1));
+    socket.getOutputStream().flush();
+
+    //Read the response up to the blank line, byte by byte so no frame is read with it
+    var in = socket.getInputStream();
+    var response = new ByteArrayOutputStream();
+    while (!response.toString(StandardCharsets.ISO_8859_1).endsWith("\r\n\r\n")) {
+      var b = in.read();
+      assertTrue(b >= 0, "Handshake not answered");
+      response.write(b);
+    }
+    var text = response.toString(StandardCharsets.ISO_8859_1);
+    assertTrue(text.startsWith("HTTP/1.1 101"), text);
+    //The accept key for the key in RFC 6455
+    assertTrue(text.contains("Sec-WebSocket-Accept: s3pPLMBiTxaQ9kYGzzhZRbK+xOo="), text);
+    return socket;
+  }
+
+  /**
+   * Write a frame, masked as a client must unless testing that it is refused
+   */
+  private static void writeFrame(OutputStream out, boolean fin, int opcode, byte[] payload,
+      boolean masked) throws IOException {
+    var frame = new ByteArrayOutputStream();
+    frame.write((fin ? 0x80 : 0) | opcode);
+    var maskBit = masked ? 0x80 : 0;
+    if (payload.length < 126) {
+      frame.write(maskBit | payload.length);
+    } else if (payload.length <= 0xFFFF) {
+      frame.write(maskBit | 126);
+      frame.write(payload.length >> 8);
+      frame.write(payload.length);
+    } else {
+      frame.write(maskBit | 127);
+      for (var shift = 56; shift >= 0; shift -= 8) {
+        frame.write((int) ((long) payload.length >> shift));
+      }
+    }
+    if (masked) {
+      var mask = new byte[] {0x12, 0x34, 0x56, 0x78};
+      frame.write(mask);
+      for (var i = 0; i < payload.length; i++) {
+        frame.write(payload[i] ^ mask[i & 3]);
+      }
+    } else {
+      frame.write(payload);
+    }
+    out.write(frame.toByteArray());
+    out.flush();
+  }
+
+  /**
+   * A frame from the server
+   */
+  private record Frame(int opcode, byte[] payload) {
+
+    /**
+     * Get the payload as text
+     */
+    String text() {
+      return new String(payload, StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Read an unmasked frame from the server
+   */
+  private static Frame readFrame(DataInputStream in) throws IOException {
+    var first = in.readUnsignedByte();
+    var second = in.readUnsignedByte();
+    assertFalse((second & 0x80) != 0, "The server must not mask frames");
+    long length = second & 0x7F;
+    if (length == 126) {
+      length = in.readUnsignedShort();
+    } else if (length == 127) {
+      length = in.readLong();
+    }
+    var payload = new byte[(int) length];
+    in.readFully(payload);
+    return new Frame(first & 0x0F, payload);
+  }
+
+  /**
+   * Check the server closes the connection with a status, then hangs up
+   */
+  private static void assertClosedWith(DataInputStream in, int status) throws IOException {
+    var frame = readFrame(in);
+    assertEquals(OP_CLOSE, frame.opcode());
+    assertEquals(status, (frame.payload()[0] & 0xFF) << 8 | frame.payload()[1] & 0xFF);
+    assertEquals(-1, in.read());
+  }
+}